@@ -22,7 +22,20 @@ import com.sqman.commands.*;
         DeleteCommand.class,
         ConfigCommand.class,
         InstallPluginCommand.class,
-        RestorePluginCommand.class
+        RestorePluginCommand.class,
+        PoolCommand.class,
+        WatchCommand.class,
+        CiCommand.class,
+        CheckpointCommand.class,
+        ResetCommand.class,
+        ExportCommand.class,
+        ImportCommand.class,
+        CloneCommand.class,
+        HibernateCommand.class,
+        PurgeTrashCommand.class,
+        DuCommand.class,
+        UpgradeCommand.class,
+        CompactCommand.class
     }
 )
 public class SQManCLI implements Runnable {
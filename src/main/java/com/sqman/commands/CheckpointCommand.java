@@ -0,0 +1,129 @@
+package com.sqman.commands;
+
+import com.sqman.service.CheckpointService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to save a named checkpoint of an instance
+ */
+@Command(
+    name = "checkpoint",
+    description = "Save the data, conf, plugins and token of an instance as a named checkpoint",
+    mixinStandardHelpOptions = true
+)
+public class CheckpointCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Checkpoint name (letters, digits, '.', '_' and '-'), or the version with --list",
+        arity = "0..1"
+    )
+    private String name;
+
+    @Parameters(
+        index = "1",
+        description = "Version of the instance (e.g., 10.3.0.82913 or partial like 10.3). If omitted, uses the running instance.",
+        arity = "0..1"
+    )
+    private String version;
+
+    @Option(
+        names = {"-l", "--list"},
+        description = "List the checkpoints of the instance (e.g., --list 10.7)"
+    )
+    private boolean list;
+
+    @Option(
+        names = {"--delete"},
+        description = "Delete the checkpoint instead of saving it"
+    )
+    private boolean delete;
+
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final CheckpointService checkpointService;
+
+    public CheckpointCommand() {
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+        this.checkpointService = new CheckpointService();
+    }
+
+    // Constructor for testing
+    public CheckpointCommand(ProcessService processService, InstanceService instanceService,
+                             CheckpointService checkpointService) {
+        this.processService = processService;
+        this.instanceService = instanceService;
+        this.checkpointService = checkpointService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            // A listing takes no name, so its only argument is the version
+            String versionInput = list && version == null ? name : version;
+            String resolvedVersion = InstanceResolver.resolve(instanceService, versionInput);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+
+            if (list) {
+                return listCheckpoints(instancePath, resolvedVersion);
+            }
+
+            if (name == null || !CheckpointService.isValidName(name)) {
+                System.err.println("Error: A checkpoint name made of letters, digits, '.', '_' and '-' is required");
+                return 1;
+            }
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "checkpoint");
+            try (lock) {
+                if (delete) {
+                    if (!checkpointService.delete(instancePath, name)) {
+                        System.err.println("Error: Checkpoint not found: " + name);
+                        return 1;
+                    }
+                    System.out.println("✓ Checkpoint '" + name + "' deleted");
+                    return 0;
+                }
+
+                return StoppedInstance.run(instanceService, processService, resolvedVersion, instancePath,
+                    "a consistent checkpoint", () -> {
+                        long start = System.currentTimeMillis();
+                        CheckpointService.TreeStats stats = checkpointService.create(instancePath, name);
+                        System.out.printf("✓ Checkpoint '%s' of %s saved in %.1fs (%s)%n",
+                            name, resolvedVersion, (System.currentTimeMillis() - start) / 1000.0, stats);
+                    });
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error saving checkpoint: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private int listCheckpoints(Path instancePath, String resolvedVersion) throws Exception {
+        List<String> checkpoints = checkpointService.list(instancePath);
+        if (checkpoints.isEmpty()) {
+            System.out.println("No checkpoints for " + resolvedVersion);
+            return 0;
+        }
+        System.out.println("Checkpoints of " + resolvedVersion + " (oldest first):");
+        for (String checkpoint : checkpoints) {
+            System.out.println("  " + checkpoint);
+        }
+        return 0;
+    }
+}
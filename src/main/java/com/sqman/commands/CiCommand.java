@@ -0,0 +1,299 @@
+package com.sqman.commands;
+
+import com.sqman.model.Edition;
+import com.sqman.service.AdmissionService;
+import com.sqman.service.ConfigService;
+import com.sqman.service.DownloadService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import com.sqman.service.SonarPropertiesService;
+import com.sqman.service.SonarQubeSetupService;
+import com.sqman.service.TemplateService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command to run a CI job against a throwaway SonarQube instance
+ */
+@Command(
+    name = "ci",
+    description = "Download, start and set up an instance, run a command against it, then tear it down",
+    mixinStandardHelpOptions = true
+)
+public class CiCommand implements Callable<Integer> {
+
+    private static final long READY_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Parameters(
+        index = "0",
+        description = "SonarQube version (e.g., 10.3.0.82913). Reused if already installed."
+    )
+    private String version;
+
+    @Parameters(
+        index = "1..*",
+        arity = "1..*",
+        paramLabel = "COMMAND",
+        description = "Command to run with SONAR_HOST_URL and SONAR_TOKEN set (put it after --)"
+    )
+    private List<String> command;
+
+    @Option(
+        names = {"-e", "--edition"},
+        description = "Edition to download: community, developer, enterprise, datacenter (default: community)",
+        defaultValue = "community"
+    )
+    private String edition;
+
+    @Option(
+        names = {"--keep"},
+        description = "Leave the instance running and installed after the command"
+    )
+    private boolean keep;
+
+    @Option(
+        names = {"--no-template"},
+        description = "Do not seed the instance from the golden template of its version, "
+            + "and do not capture one after the first setup"
+    )
+    private boolean noTemplate;
+
+    private final DownloadService downloadService;
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private volatile long configureMillis = -1;
+
+    public CiCommand() {
+        this.downloadService = new DownloadService();
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+    }
+
+    // Constructor for testing
+    public CiCommand(DownloadService downloadService, ProcessService processService, InstanceService instanceService) {
+        this.downloadService = downloadService;
+        this.processService = processService;
+        this.instanceService = instanceService;
+    }
+
+    @Override
+    public Integer call() {
+        long startNanos = System.nanoTime();
+
+        Edition ed;
+        try {
+            ed = Edition.fromString(edition);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid edition '" + edition + "'");
+            System.err.println("Valid editions: community, developer, enterprise, datacenter");
+            return 1;
+        }
+
+        if (isAnyInstanceRunning()) {
+            return 1;
+        }
+
+        LockService.InstanceLock lock = null;
+        boolean installedByCi = false;
+        Path instancePath = null;
+        boolean started = false;
+        int exitCode = 1;
+
+        try {
+            // Parallel jobs using the same version run one after another
+            lock = instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "ci");
+            // An instance may have been started while this job waited for the lock
+            if (isAnyInstanceRunning()) {
+                return 1;
+            }
+            installedByCi = !instanceService.isInstalled(version);
+
+            // Download and extraction overlap, and sonar.properties is configured as soon as it is extracted
+            long stageStart = System.nanoTime();
+            if (installedByCi) {
+                instancePath = downloadService.downloadAndExtractStreaming(
+                    version, ed, new ConfigService().getDistributionsDir(), this::configureForCi);
+                record("download+extract", stageStart);
+            } else {
+                // The user's own instance keeps its settings
+                System.out.println("Using installed SonarQube " + version);
+                if (InstanceResolver.rehydrate(instanceService, version)) {
+                    record("rehydrate", stageStart);
+                }
+                instancePath = instanceService.getInstancePath(version);
+            }
+
+            // A template skips database creation, index creation and the setup
+            if (!noTemplate && instanceService.seedFromTemplate(version)) {
+                System.out.println("Seeded from the golden template of " + version);
+            }
+
+            stageStart = System.nanoTime();
+            AdmissionService admissionService = new AdmissionService();
+            admissionService.admit(instancePath, version, admissionService.getDefaultPolicy());
+            started = processService.startInstance(instancePath, version, true);
+            record("start", stageStart);
+            if (!started) {
+                admissionService.cancel(version);
+                System.err.println("✗ Failed to start SonarQube " + version);
+                return 1;
+            }
+            instanceService.recordRun(version);
+
+            String url = "http://localhost:" + new SonarPropertiesService().getWebPort(instancePath);
+            SonarQubeSetupService setupService = new SonarQubeSetupService(url);
+
+            stageStart = System.nanoTime();
+            boolean ready = setupService.waitForStatusUp(READY_TIMEOUT_MILLIS);
+            record("ready", stageStart);
+            if (!ready) {
+                System.err.println("✗ SonarQube did not become ready, see " + instancePath.resolve("logs"));
+                return 1;
+            }
+
+            stageStart = System.nanoTime();
+            boolean firstSetup = setupService.isSetupNeeded(instancePath);
+            String token = firstSetup
+                ? setupService.performAutomaticSetup(instancePath)
+                : Files.readString(instancePath.resolve("token")).trim();
+            record("setup", stageStart);
+
+            if (firstSetup && !noTemplate) {
+                stageStart = System.nanoTime();
+                saveTemplate(instancePath, setupService);
+                record("template", stageStart);
+            }
+
+            stageStart = System.nanoTime();
+            exitCode = runCommand(url, token);
+            record("command", stageStart);
+            return exitCode;
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+
+        } finally {
+            if (!keep) {
+                teardown(instancePath, started, installedByCi);
+            }
+            printTimings(startNanos, exitCode);
+            releaseLock(lock);
+        }
+    }
+
+    private boolean isAnyInstanceRunning() {
+        String runningVersion = instanceService.getRunningInstance();
+        if (runningVersion == null) {
+            return false;
+        }
+        System.err.println("Error: An instance is already running: " + runningVersion);
+        System.err.println();
+        System.err.println("Stop it first with:");
+        System.err.println("  sqman stop");
+        return true;
+    }
+
+    /**
+     * Settings that make a throwaway instance start faster: no outbound calls at startup.
+     */
+    private void configureForCi(Path instanceDir) {
+        long start = System.nanoTime();
+        try {
+            SonarPropertiesService propertiesService = new SonarPropertiesService();
+            propertiesService.setProperty(instanceDir, "sonar.telemetry.enable", "false");
+            propertiesService.setProperty(instanceDir, "sonar.updatecenter.activate", "false");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        configureMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Save the freshly set up instance as the golden template of its version, so the next
+     * runs of this version skip the setup. The capture restarts the instance once.
+     */
+    private void saveTemplate(Path instancePath, SonarQubeSetupService setupService)
+            throws IOException, InterruptedException {
+        TemplateService templateService = new TemplateService();
+        if (templateService.hasTemplate(version)) {
+            return;
+        }
+        if (!templateService.captureAfterSetup(instancePath, version, version, processService)
+                || !setupService.waitForStatusUp(READY_TIMEOUT_MILLIS)) {
+            throw new IOException("SonarQube did not become ready again after saving the template");
+        }
+    }
+
+    private int runCommand(String url, String token) throws IOException, InterruptedException {
+        System.out.println();
+        System.out.println("Running: " + String.join(" ", command));
+        System.out.println();
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.environment().put("SONAR_HOST_URL", url);
+        pb.environment().put("SONAR_TOKEN", token);
+        pb.inheritIO();
+        return pb.start().waitFor();
+    }
+
+    /**
+     * Stop the instance, and delete it if this run installed it.
+     */
+    private void teardown(Path instancePath, boolean started, boolean installedByCi) {
+        long stageStart = System.nanoTime();
+        try {
+            if (started && !processService.stopInstance(instancePath, false)) {
+                processService.stopInstance(instancePath, true);
+            }
+            if (installedByCi && instancePath != null) {
+                instanceService.deleteInstance(version);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠ Warning: Teardown failed: " + e.getMessage());
+        }
+        record("teardown", stageStart);
+    }
+
+    private void releaseLock(LockService.InstanceLock lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.close();
+        } catch (IOException e) {
+            System.err.println("⚠ Warning: Could not release lock: " + e.getMessage());
+        }
+    }
+
+    private void record(String stage, long stageStartNanos) {
+        stageMillis.put(stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stageStartNanos));
+    }
+
+    private void printTimings(long startNanos, int exitCode) {
+        System.out.println();
+        System.out.println("Stage timings:");
+        if (configureMillis >= 0) {
+            System.out.printf("  %-18s %8.1fs (overlapped)%n", "configure", configureMillis / 1000.0);
+        }
+        for (Map.Entry<String, Long> stage : stageMillis.entrySet()) {
+            System.out.printf("  %-18s %8.1fs%n", stage.getKey(), stage.getValue() / 1000.0);
+        }
+        System.out.printf("  %-18s %8.1fs (exit code %d)%n", "total",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / 1000.0, exitCode);
+    }
+}
@@ -0,0 +1,95 @@
+package com.sqman.commands;
+
+import com.sqman.service.CheckpointService;
+import com.sqman.service.CloneService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to clone an installed instance
+ */
+@Command(
+    name = "clone",
+    description = "Create a new instance from an installed one, hardlinking the distribution files",
+    mixinStandardHelpOptions = true
+)
+public class CloneCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Version of the instance to clone (e.g., 10.3.0.82913 or partial like 10.3)"
+    )
+    private String version;
+
+    @Parameters(
+        index = "1",
+        description = "Name of the clone (letters, digits, '.', '_' and '-'), it becomes instance {version}-{name}"
+    )
+    private String name;
+
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final CloneService cloneService;
+
+    public CloneCommand() {
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+        this.cloneService = new CloneService();
+    }
+
+    // Constructor for testing
+    public CloneCommand(ProcessService processService, InstanceService instanceService,
+                        CloneService cloneService) {
+        this.processService = processService;
+        this.instanceService = instanceService;
+        this.cloneService = cloneService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            if (!CheckpointService.isValidName(name)) {
+                System.err.println("Error: The clone name can only contain letters, digits, '.', '_' and '-'");
+                return 1;
+            }
+
+            String resolvedVersion = InstanceResolver.resolve(instanceService, version);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            String cloneId = CloneService.getCloneId(resolvedVersion, name);
+            if (instanceService.isInstalled(cloneId)) {
+                System.err.println("Error: Instance " + cloneId + " already exists");
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "clone");
+            try (lock) {
+                return StoppedInstance.run(instanceService, processService, resolvedVersion, instancePath,
+                    "a consistent clone", () -> {
+                        long start = System.currentTimeMillis();
+                        long bytesCopied = cloneService.cloneInstance(resolvedVersion, name);
+                        System.out.printf("✓ Cloned %s to %s in %dms (%.1f MB copied, distribution hardlinked)%n",
+                            resolvedVersion, cloneId, System.currentTimeMillis() - start,
+                            bytesCopied / (1024.0 * 1024.0));
+                        System.out.println("Start it with: sqman run " + cloneId);
+                        System.out.println("Note: the clone uses the same ports as " + resolvedVersion
+                            + ", run one of them at a time");
+                    });
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error cloning instance: " + e.getMessage());
+            return 1;
+        }
+    }
+}
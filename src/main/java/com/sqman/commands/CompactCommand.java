@@ -0,0 +1,79 @@
+package com.sqman.commands;
+
+import com.sqman.service.CompactionService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.MemoryService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to compact the embedded database of a stopped instance
+ */
+@Command(
+    name = "compact",
+    description = "Rewrite the embedded H2 database of a stopped instance to reclaim the space of deleted data",
+    mixinStandardHelpOptions = true
+)
+public class CompactCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Version of the instance (e.g., 10.3.0.82913 or partial like 10.3)"
+    )
+    private String version;
+
+    private final InstanceService instanceService;
+    private final CompactionService compactionService;
+
+    public CompactCommand() {
+        this.instanceService = new InstanceService();
+        this.compactionService = new CompactionService();
+    }
+
+    // Constructor for testing
+    public CompactCommand(InstanceService instanceService, CompactionService compactionService) {
+        this.instanceService = instanceService;
+        this.compactionService = compactionService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            String resolvedVersion = InstanceResolver.resolve(instanceService, version);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "compact");
+            try (lock) {
+                if (instanceService.isInstanceRunning(resolvedVersion)) {
+                    System.err.println("Error: SonarQube " + resolvedVersion + " is running, stop it first:");
+                    System.err.println("  sqman stop " + resolvedVersion);
+                    return 1;
+                }
+
+                long sizeBefore = Files.size(compactionService.getDatabaseFile(instancePath));
+                System.out.println("Compacting the database of " + resolvedVersion + " ("
+                    + MemoryService.formatSize(sizeBefore) + ")...");
+                long start = System.currentTimeMillis();
+                long sizeAfter = compactionService.compact(instancePath);
+                System.out.printf("✓ Compacted in %.1fs: %s -> %s (%s reclaimed)%n",
+                    (System.currentTimeMillis() - start) / 1000.0, MemoryService.formatSize(sizeBefore),
+                    MemoryService.formatSize(sizeAfter), MemoryService.formatSize(Math.max(0, sizeBefore - sizeAfter)));
+                return 0;
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error compacting database: " + e.getMessage());
+            return 1;
+        }
+    }
+}
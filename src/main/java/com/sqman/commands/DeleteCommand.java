@@ -1,6 +1,7 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
 import com.sqman.service.ProcessService;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -117,24 +118,28 @@ public class DeleteCommand implements Callable<Integer> {
                 }
             }
 
-            // Stop instance if running
-            if (isRunning) {
-                System.out.println("Stopping instance...");
-                processService.stopInstance(resolvedVersion, true);
-            }
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "delete");
+            try (lock) {
+                // Stop instance if running
+                if (isRunning) {
+                    System.out.println("Stopping instance...");
+                    processService.stopInstance(resolvedVersion, true);
+                }
 
-            // Delete the instance
-            System.out.println("Deleting instance...");
-            boolean deleted = instanceService.deleteInstance(resolvedVersion);
+                // Delete the instance
+                System.out.println("Deleting instance...");
+                boolean deleted = instanceService.deleteInstance(resolvedVersion);
 
-            if (deleted) {
-                System.out.println();
-                System.out.println("Successfully deleted instance: " + resolvedVersion);
-                return 0;
-            } else {
-                System.err.println();
-                System.err.println("Failed to delete instance.");
-                return 1;
+                if (deleted) {
+                    System.out.println();
+                    System.out.println("Successfully deleted instance: " + resolvedVersion);
+                    return 0;
+                } else {
+                    System.err.println();
+                    System.err.println("Failed to delete instance.");
+                    return 1;
+                }
             }
 
         } catch (Exception e) {
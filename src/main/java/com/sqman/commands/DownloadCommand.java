@@ -2,7 +2,9 @@ package com.sqman.commands;
 
 import com.sqman.model.Edition;
 import com.sqman.model.SonarQubeVersion;
+import com.sqman.service.DiskUsageService;
 import com.sqman.service.DownloadService;
+import com.sqman.service.InstanceService;
 import com.sqman.service.SonarQubeVersionService;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -10,6 +12,7 @@ import picocli.CommandLine.Parameters;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
@@ -45,16 +48,23 @@ public class DownloadCommand implements Callable<Integer> {
 
     private final DownloadService downloadService;
     private final SonarQubeVersionService versionService;
+    private final InstanceService instanceService;
+    private final DiskUsageService diskUsageService;
 
     public DownloadCommand() {
         this.downloadService = new DownloadService();
         this.versionService = new SonarQubeVersionService();
+        this.instanceService = new InstanceService();
+        this.diskUsageService = new DiskUsageService();
     }
 
     // Constructor for testing
-    public DownloadCommand(DownloadService downloadService, SonarQubeVersionService versionService) {
+    public DownloadCommand(DownloadService downloadService, SonarQubeVersionService versionService,
+                           InstanceService instanceService, DiskUsageService diskUsageService) {
         this.downloadService = downloadService;
         this.versionService = versionService;
+        this.instanceService = instanceService;
+        this.diskUsageService = diskUsageService;
     }
 
     @Override
@@ -120,6 +130,11 @@ public class DownloadCommand implements Callable<Integer> {
                 System.out.println("Target: " + downloadTarget);
             }
 
+            // Make room first when a disk quota is configured
+            if (downloadTarget == null) {
+                DuCommand.checkQuota(instanceService, diskUsageService, Set.of(resolvedVersion));
+            }
+
             System.out.println();
 
             // Download and extract
@@ -0,0 +1,212 @@
+package com.sqman.commands;
+
+import com.sqman.service.DiskUsageService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.MemoryService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Command to show the disk usage of instances and evict the least recently run ones
+ */
+@Command(
+    name = "du",
+    description = "Show the disk usage of each instance and evict unused instances when over quota",
+    mixinStandardHelpOptions = true
+)
+public class DuCommand implements Callable<Integer> {
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+        .withZone(ZoneId.systemDefault());
+
+    @Option(
+        names = {"-d", "--details"},
+        description = "Show the size of each top-level directory of the instances"
+    )
+    private boolean details;
+
+    @Option(
+        names = {"--evict"},
+        description = "Delete the least recently run stopped instances until the quota is met"
+    )
+    private boolean evict;
+
+    @Option(
+        names = {"-y", "--yes"},
+        description = "Skip the confirmation prompt of --evict"
+    )
+    private boolean skipConfirmation;
+
+    private final InstanceService instanceService;
+    private final DiskUsageService diskUsageService;
+
+    public DuCommand() {
+        this.instanceService = new InstanceService();
+        this.diskUsageService = new DiskUsageService();
+    }
+
+    // Constructor for testing
+    public DuCommand(InstanceService instanceService, DiskUsageService diskUsageService) {
+        this.instanceService = instanceService;
+        this.diskUsageService = diskUsageService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            long start = System.currentTimeMillis();
+            List<DiskUsageService.InstanceUsage> usages = scan(instanceService, diskUsageService);
+            Set<String> running = findRunning(instanceService, usages);
+
+            System.out.println("Disk usage of SonarQube instances:");
+            System.out.println();
+            for (DiskUsageService.InstanceUsage usage : usages) {
+                String status = running.contains(usage.getId()) ? "running"
+                    : usage.isHibernated() ? "hibernated"
+                    : "last used " + DATE.format(Instant.ofEpochMilli(usage.getLastUsed()));
+                if (usage.getShared() > 0) {
+                    status += ", " + MemoryService.formatSize(usage.getShared()) + " shared";
+                }
+                System.out.printf("  %-28s %10s   %s%n",
+                    usage.getId(), MemoryService.formatSize(usage.getTotal()), status);
+                if (details) {
+                    for (Map.Entry<String, Long> dir : usage.getDirs().entrySet()) {
+                        System.out.printf("      %-24s %10s%n", dir.getKey(), MemoryService.formatSize(dir.getValue()));
+                    }
+                }
+            }
+
+            long templates = diskUsageService.getTemplatesSize();
+            long trash = diskUsageService.getTrashSize();
+            System.out.println();
+            System.out.printf("  %-28s %10s%n", "Instances",
+                MemoryService.formatSize(diskUsageService.getTotal(usages)));
+            if (templates > 0) {
+                System.out.printf("  %-28s %10s%n", "Golden templates", MemoryService.formatSize(templates));
+            }
+            if (trash > 0) {
+                System.out.printf("  %-28s %10s   (being deleted)%n", "Trash", MemoryService.formatSize(trash));
+            }
+            System.out.printf("%nScanned in %.1fs%n", (System.currentTimeMillis() - start) / 1000.0);
+
+            boolean auto = diskUsageService.isAutoEvict();
+            return enforceQuota(instanceService, diskUsageService, usages, running,
+                evict || auto, skipConfirmation || auto);
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error computing disk usage: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Check the quota before more disk space is used (e.g. a download): instances are evicted
+     * when disk.evict is auto, otherwise the evictions are only suggested.
+     *
+     * @param keep Instances that must not be evicted
+     */
+    static void checkQuota(InstanceService instanceService, DiskUsageService diskUsageService, Set<String> keep)
+            throws Exception {
+        if (!diskUsageService.isQuotaConfigured()) {
+            return;
+        }
+        List<DiskUsageService.InstanceUsage> usages = scan(instanceService, diskUsageService);
+        Set<String> excluded = findRunning(instanceService, usages);
+        excluded.addAll(keep);
+        boolean auto = diskUsageService.isAutoEvict();
+        enforceQuota(instanceService, diskUsageService, usages, excluded, auto, auto);
+    }
+
+    /**
+     * Report or apply the evictions needed to satisfy disk.quotaGb and disk.minFreeGb.
+     */
+    private static int enforceQuota(InstanceService instanceService, DiskUsageService diskUsageService,
+                                    List<DiskUsageService.InstanceUsage> usages, Set<String> keep,
+                                    boolean doEvict, boolean confirmed) throws Exception {
+        long bytesToFree = diskUsageService.getBytesToFree(diskUsageService.getTotal(usages));
+        if (bytesToFree == 0) {
+            return 0;
+        }
+
+        List<DiskUsageService.InstanceUsage> evictions = diskUsageService.selectEvictions(usages, bytesToFree, keep);
+        System.out.println();
+        System.out.println("⚠ " + MemoryService.formatSize(bytesToFree) + " over the disk quota");
+        if (evictions.isEmpty()) {
+            System.out.println("No stopped instance can be evicted");
+            return 1;
+        }
+        System.out.println("Least recently run stopped instances:");
+        for (DiskUsageService.InstanceUsage usage : evictions) {
+            System.out.printf("  %-28s %10s%n", usage.getId(), MemoryService.formatSize(usage.getUnique()));
+        }
+
+        if (!doEvict) {
+            System.out.println();
+            System.out.println("Delete them with:");
+            System.out.println("  sqman du --evict");
+            return 0;
+        }
+        if (!confirmed) {
+            System.out.print("Delete these instances? (yes/no): ");
+            String confirmation = new BufferedReader(new InputStreamReader(System.in)).readLine();
+            if (confirmation == null
+                || !(confirmation.equalsIgnoreCase("yes") || confirmation.equalsIgnoreCase("y"))) {
+                System.out.println("Eviction cancelled.");
+                return 0;
+            }
+        }
+
+        int failures = 0;
+        for (DiskUsageService.InstanceUsage usage : evictions) {
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(usage.getId(), LockService.Mode.EXCLUSIVE, "evict");
+            try (lock) {
+                // A run may have started since the scan
+                if (instanceService.isInstanceRunning(usage.getId())) {
+                    System.out.println("⚠ Skipped " + usage.getId() + ": it is running");
+                    continue;
+                }
+                if (instanceService.deleteInstance(usage.getId())) {
+                    System.out.println("✓ Evicted " + usage.getId());
+                } else {
+                    System.err.println("✗ Could not evict " + usage.getId());
+                    failures++;
+                }
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    private static List<DiskUsageService.InstanceUsage> scan(InstanceService instanceService,
+                                                             DiskUsageService diskUsageService) throws Exception {
+        List<String> ids = instanceService.listInstalled().stream()
+            .map(name -> name.replace("sonarqube-", ""))
+            .collect(Collectors.toList());
+        return diskUsageService.scan(ids);
+    }
+
+    private static Set<String> findRunning(InstanceService instanceService,
+                                           List<DiskUsageService.InstanceUsage> usages) {
+        Set<String> running = new HashSet<>();
+        for (DiskUsageService.InstanceUsage usage : usages) {
+            if (!usage.isHibernated() && instanceService.isInstanceRunning(usage.getId())) {
+                running.add(usage.getId());
+            }
+        }
+        return running;
+    }
+}
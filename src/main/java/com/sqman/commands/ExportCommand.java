@@ -0,0 +1,123 @@
+package com.sqman.commands;
+
+import com.sqman.model.Edition;
+import com.sqman.model.ExportManifest;
+import com.sqman.model.InstanceManifest;
+import com.sqman.service.InstanceArchiveService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to export an instance to a portable archive
+ */
+@Command(
+    name = "export",
+    description = "Export the data, conf, plugins and token of an instance to a single archive",
+    mixinStandardHelpOptions = true
+)
+public class ExportCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Archive to write (e.g., sonarqube-10.3.tar.gz)"
+    )
+    private Path archive;
+
+    @Parameters(
+        index = "1",
+        description = "Version of the instance (e.g., 10.3.0.82913 or partial like 10.3). If omitted, uses the running instance.",
+        arity = "0..1"
+    )
+    private String version;
+
+    @Option(
+        names = {"-e", "--edition"},
+        description = "Edition of the instance, downloaded on import if missing: community, developer, enterprise, datacenter "
+            + "(default: the edition it was downloaded with)"
+    )
+    private String edition;
+
+    @Option(
+        names = {"--level"},
+        description = "Compression level from 1 (fastest) to 9 (smallest) (default: 1)",
+        defaultValue = "1"
+    )
+    private int level;
+
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final InstanceArchiveService archiveService;
+
+    public ExportCommand() {
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+        this.archiveService = new InstanceArchiveService();
+    }
+
+    // Constructor for testing
+    public ExportCommand(ProcessService processService, InstanceService instanceService,
+                         InstanceArchiveService archiveService) {
+        this.processService = processService;
+        this.instanceService = instanceService;
+        this.archiveService = archiveService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            Edition ed = null;
+            if (edition != null) {
+                try {
+                    ed = Edition.fromString(edition);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error: Invalid edition '" + edition + "'");
+                    System.err.println("Valid editions: community, developer, enterprise, datacenter");
+                    return 1;
+                }
+            }
+            if (level < 1 || level > 9) {
+                System.err.println("Error: Compression level must be between 1 and 9");
+                return 1;
+            }
+
+            String resolvedVersion = InstanceResolver.resolve(instanceService, version);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+            if (ed == null) {
+                InstanceManifest instanceManifest = instanceService.getManifest(resolvedVersion);
+                ed = instanceManifest != null && instanceManifest.getEdition() != null
+                    ? Edition.fromString(instanceManifest.getEdition()) : Edition.COMMUNITY;
+            }
+            Edition exportEdition = ed;
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "export");
+            try (lock) {
+                return StoppedInstance.run(instanceService, processService, resolvedVersion, instancePath,
+                    "a consistent export", () -> {
+                        long start = System.currentTimeMillis();
+                        ExportManifest manifest =
+                            archiveService.export(instancePath, resolvedVersion, exportEdition, archive, level);
+                        System.out.printf("✓ Exported %s to %s in %.1fs (%d plugins, %.1f MB)%n",
+                            resolvedVersion, archive, (System.currentTimeMillis() - start) / 1000.0,
+                            manifest.getPlugins().size(), Files.size(archive) / (1024.0 * 1024.0));
+                    });
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error exporting instance: " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.sqman.commands;
+
+import com.sqman.service.HibernationService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to hibernate instances that are not used
+ */
+@Command(
+    name = "hibernate",
+    description = "Pack instances into compressed archives to reclaim disk space, they are rehydrated on their next run",
+    mixinStandardHelpOptions = true
+)
+public class HibernateCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Version of the instance to hibernate. If omitted, hibernates all instances not run for --unused-days.",
+        arity = "0..1"
+    )
+    private String version;
+
+    @Option(
+        names = {"--unused-days"},
+        description = "Days without a run before an instance is hibernated (default: hibernate.unusedDays, 90)"
+    )
+    private Long unusedDays;
+
+    @Option(
+        names = {"--dry-run"},
+        description = "Only show the instances that would be hibernated"
+    )
+    private boolean dryRun;
+
+    private final InstanceService instanceService;
+    private final HibernationService hibernationService;
+
+    public HibernateCommand() {
+        this.instanceService = new InstanceService();
+        this.hibernationService = new HibernationService();
+    }
+
+    // Constructor for testing
+    public HibernateCommand(InstanceService instanceService, HibernationService hibernationService) {
+        this.instanceService = instanceService;
+        this.hibernationService = hibernationService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            List<String> candidates;
+            if (version != null) {
+                String resolvedVersion = resolveVersion(version);
+                if (resolvedVersion == null) {
+                    return 1;
+                }
+                if (instanceService.isHibernated(resolvedVersion)) {
+                    System.out.println("SonarQube " + resolvedVersion + " is already hibernated");
+                    return 0;
+                }
+                if (instanceService.isInstanceRunning(resolvedVersion)) {
+                    System.err.println("Error: SonarQube " + resolvedVersion + " is running, stop it first with:");
+                    System.err.println("  sqman stop");
+                    return 1;
+                }
+                candidates = List.of(resolvedVersion);
+            } else {
+                long days = unusedDays != null ? unusedDays : hibernationService.getUnusedDays();
+                List<String> awake = new ArrayList<>();
+                for (String instance : instanceService.listInstalled()) {
+                    String id = instance.replace("sonarqube-", "");
+                    if (!instanceService.isHibernated(id) && !instanceService.isInstanceRunning(id)) {
+                        awake.add(id);
+                    }
+                }
+                candidates = hibernationService.findUnused(awake, days);
+                if (candidates.isEmpty()) {
+                    System.out.println("No instance unused for " + days + " days");
+                    return 0;
+                }
+            }
+
+            if (dryRun) {
+                System.out.println("Instances that would be hibernated:");
+                candidates.forEach(candidate -> System.out.println("  " + candidate));
+                return 0;
+            }
+
+            int failures = 0;
+            for (String candidate : candidates) {
+                LockService.InstanceLock lock =
+                    instanceService.lockInstance(candidate, LockService.Mode.EXCLUSIVE, "hibernate");
+                try (lock) {
+                    // Checked again under the lock, a run may have started meanwhile
+                    if (instanceService.isInstanceRunning(candidate)) {
+                        System.out.println("⚠ Skipped " + candidate + ": it is running");
+                        continue;
+                    }
+                    long start = System.currentTimeMillis();
+                    long size = hibernationService.hibernate(candidate);
+                    System.out.printf("✓ Hibernated %s in %.1fs (%.1f MB archive)%n",
+                        candidate, (System.currentTimeMillis() - start) / 1000.0, size / (1024.0 * 1024.0));
+                } catch (Exception e) {
+                    System.err.println("✗ Could not hibernate " + candidate + ": " + e.getMessage());
+                    failures++;
+                }
+            }
+            return failures == 0 ? 0 : 1;
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error hibernating instances: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private String resolveVersion(String versionInput) {
+        if (instanceService.isInstalled(versionInput)) {
+            return versionInput;
+        }
+        List<String> matches = instanceService.getInstalledByVersion(versionInput);
+        if (matches.size() == 1) {
+            return matches.get(0).replace("sonarqube-", "");
+        }
+        if (matches.isEmpty()) {
+            System.err.println("Error: No installed instance found matching: " + versionInput);
+        } else {
+            System.err.println("Error: Multiple instances match '" + versionInput + "', please be more precise");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+package com.sqman.commands;
+
+import com.sqman.model.ExportManifest;
+import com.sqman.service.InstanceArchiveService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to import an instance exported with "sqman export"
+ */
+@Command(
+    name = "import",
+    description = "Import an instance from an archive written by 'sqman export', downloading its version if needed",
+    mixinStandardHelpOptions = true
+)
+public class ImportCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Archive to import"
+    )
+    private Path archive;
+
+    @Option(
+        names = {"--force"},
+        description = "Replace the data, plugins and token of the instance if its version is already installed"
+    )
+    private boolean force;
+
+    private final InstanceService instanceService;
+    private final InstanceArchiveService archiveService;
+
+    public ImportCommand() {
+        this.instanceService = new InstanceService();
+        this.archiveService = new InstanceArchiveService();
+    }
+
+    // Constructor for testing
+    public ImportCommand(InstanceService instanceService, InstanceArchiveService archiveService) {
+        this.instanceService = instanceService;
+        this.archiveService = archiveService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            if (!Files.isRegularFile(archive)) {
+                System.err.println("Error: Archive not found: " + archive);
+                return 1;
+            }
+
+            ExportManifest manifest = archiveService.readManifest(archive);
+            String version = manifest.getVersion();
+            boolean installed = instanceService.isInstalled(version);
+            if (installed && !force) {
+                System.err.println("Error: SonarQube " + version + " is already installed");
+                System.err.println("Use --force to replace its data, plugins and token");
+                return 1;
+            }
+            if (installed && instanceService.isInstanceRunning(version)) {
+                System.err.println("Error: SonarQube " + version + " is running, stop it first with: sqman stop");
+                return 1;
+            }
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "import");
+            try (lock) {
+                if (!installed) {
+                    System.out.println("Downloading SonarQube " + version + " (" + manifest.getEdition() + ")...");
+                } else {
+                    InstanceResolver.rehydrate(instanceService, version);
+                }
+                long start = System.currentTimeMillis();
+                Path instancePath = archiveService.importArchive(archive, force);
+                System.out.printf("✓ Imported SonarQube %s into %s in %.1fs (%d plugins)%n",
+                    version, instancePath, (System.currentTimeMillis() - start) / 1000.0,
+                    manifest.getPlugins().size());
+                System.out.println("Start it with: sqman run " + version);
+                return 0;
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error importing instance: " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -1,76 +1,122 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.PluginRolloutService;
+import com.sqman.service.PluginService;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 /**
- * Command to install a plugin JAR into a SonarQube instance
+ * Command to install plugin JARs into a SonarQube instance
  */
 @Command(
     name = "plugin",
-    description = "Install a plugin JAR into a SonarQube instance",
-    mixinStandardHelpOptions = true
+    description = "Install plugin JARs into a SonarQube instance",
+    mixinStandardHelpOptions = true,
+    subcommands = {PluginWatchCommand.class}
 )
 public class InstallPluginCommand implements Callable<Integer> {
 
     @Parameters(
-        index = "0",
-        description = "Path to the plugin JAR file to install"
+        // Optional for picocli so that the watch subcommand can be used alone
+        arity = "0..*",
+        paramLabel = "<path>",
+        description = "Plugin JAR files, directories of JARs or globs (e.g., 'plugins/*.jar') to install"
     )
-    private String pluginPath;
+    private List<String> pluginPaths;
+
+    @Option(
+        names = {"-i", "--instance"},
+        description = "Target instance (e.g., 10.3.0.82913 or partial like 10.3), prompted for when not given"
+    )
+    private String instance;
+
+    @Option(
+        names = {"--instances"},
+        split = ",",
+        description = "Install into several instances at once: all, or a comma-separated list of versions"
+    )
+    private List<String> instances;
+
+    @Option(
+        names = {"--verify"},
+        description = "With --instances, start the instances to check that they come UP with the plugins"
+    )
+    private boolean verify;
 
     private final InstanceService instanceService;
+    private final PluginService pluginService;
+    private final PluginRolloutService rolloutService;
 
     public InstallPluginCommand() {
         this.instanceService = new InstanceService();
+        this.pluginService = new PluginService();
+        this.rolloutService = new PluginRolloutService();
     }
 
     // Constructor for testing
     public InstallPluginCommand(InstanceService instanceService) {
+        this(instanceService, null);
+    }
+
+    // Constructor for testing
+    public InstallPluginCommand(InstanceService instanceService, PluginRolloutService rolloutService) {
         this.instanceService = instanceService;
+        this.pluginService = new PluginService();
+        this.rolloutService = rolloutService;
     }
 
     @Override
     public Integer call() {
         try {
-            // Validate plugin file exists
-            Path pluginFile = Paths.get(pluginPath);
-            if (!Files.exists(pluginFile)) {
-                System.err.println("Error: Plugin file not found: " + pluginPath);
+            if (pluginPaths == null || pluginPaths.isEmpty()) {
+                System.err.println("Error: Specify the plugin JARs to install");
+                System.err.println("  sqman plugin <path/to/plugin.jar>...");
+                System.err.println("  sqman plugin watch <build dir> <version>");
                 return 1;
             }
-
-            if (!Files.isRegularFile(pluginFile)) {
-                System.err.println("Error: Path is not a file: " + pluginPath);
+            List<Path> pluginFiles = resolvePluginFiles();
+            if (pluginFiles == null) {
                 return 1;
             }
-
-            if (!pluginFile.getFileName().toString().endsWith(".jar")) {
-                System.err.println("Error: File must be a JAR file (.jar extension)");
+            if (instances != null) {
+                return rollout(pluginFiles);
+            }
+            if (verify) {
+                System.err.println("Error: --verify requires --instances");
                 return 1;
             }
 
             // Prompt user to select target instance
-            String targetVersion = promptForInstanceSelection();
+            String targetVersion = instance != null
+                ? InstanceResolver.resolve(instanceService, instance)
+                : promptForInstanceSelection();
             if (targetVersion == null) {
                 return 1; // User cancelled or error
             }
 
-            // Install the plugin
-            return installPlugin(pluginFile, targetVersion);
+            // Install the plugins
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(targetVersion, LockService.Mode.EXCLUSIVE, "install plugin");
+            try (lock) {
+                InstanceResolver.rehydrate(instanceService, targetVersion);
+                return installPlugins(pluginFiles, targetVersion);
+            }
 
         } catch (Exception e) {
             System.err.println();
@@ -80,6 +126,106 @@ public class InstallPluginCommand implements Callable<Integer> {
         }
     }
 
+    /**
+     * Install the plugins into several instances in parallel, without prompting.
+     */
+    private int rollout(List<Path> pluginFiles) throws IOException, InterruptedException {
+        List<String> versions = new ArrayList<>();
+        if (instances.size() == 1 && "all".equals(instances.get(0))) {
+            for (String dirName : instanceService.listInstalled()) {
+                String version = dirName.replace("sonarqube-", "");
+                // Rolling out into every instance should not unpack the archived ones
+                if (instanceService.isHibernated(version)) {
+                    System.out.println("Skipping hibernated instance " + version);
+                } else {
+                    versions.add(version);
+                }
+            }
+        } else {
+            for (String versionInput : instances) {
+                String version = InstanceResolver.resolve(instanceService, versionInput.trim());
+                if (version == null) {
+                    return 1;
+                }
+                if (!versions.contains(version)) {
+                    versions.add(version);
+                }
+            }
+        }
+        if (versions.isEmpty()) {
+            System.out.println("No SonarQube instances installed.");
+            return 1;
+        }
+
+        System.out.println("Installing " + pluginFiles.size() + " plugin(s) into " + versions.size()
+            + " instance(s)...");
+        long start = System.currentTimeMillis();
+        List<PluginRolloutService.Result> results = rolloutService.rollout(versions, pluginFiles);
+        System.out.printf("Installed in %.1fs%n", (System.currentTimeMillis() - start) / 1000.0);
+        if (verify) {
+            System.out.println();
+            System.out.println("Starting the instances to check them...");
+            rolloutService.verify(results);
+        }
+
+        System.out.println();
+        int failed = 0;
+        for (PluginRolloutService.Result result : results) {
+            if (result.getError() != null || Boolean.FALSE.equals(result.getUp())) {
+                failed++;
+                System.out.println("✗ " + result.getVersion() + ": "
+                    + (result.getError() != null ? result.getError() : "did not come UP, see its logs"));
+                continue;
+            }
+            long replaced = result.getChanges().stream().filter(change -> change.getReplaced() != null).count();
+            System.out.println("✓ " + result.getVersion() + ": " + (result.getChanges().size() - replaced)
+                + " installed, " + replaced + " replaced"
+                + (result.getUp() != null ? String.format(", UP in %.0fs", result.getStartMillis() / 1000.0) : ""));
+        }
+        if (!verify && results.stream().anyMatch(result -> instanceService.isInstanceRunning(result.getVersion()))) {
+            System.out.println();
+            System.out.println("⚠ Restart the running instances for the changes to take effect");
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Expand the arguments into plugin JARs: files, all JARs of a directory, or the files
+     * matching a glob in its parent directory.
+     * Returns null after printing the error if an argument matches nothing.
+     */
+    private List<Path> resolvePluginFiles() throws IOException {
+        List<Path> pluginFiles = new ArrayList<>();
+        for (String pluginPath : pluginPaths) {
+            Path path = Paths.get(pluginPath);
+            String fileName = path.getFileName() != null ? path.getFileName().toString() : "";
+            List<Path> matches;
+            if (fileName.contains("*") || fileName.contains("?") || fileName.contains("[")) {
+                Path parent = path.getParent() != null ? path.getParent() : Paths.get(".");
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileName);
+                matches = !Files.isDirectory(parent) ? List.of() : pluginService.listJars(parent).stream()
+                    .filter(jar -> matcher.matches(jar.getFileName()))
+                    .collect(Collectors.toList());
+            } else if (Files.isDirectory(path)) {
+                matches = pluginService.listJars(path);
+            } else if (!Files.exists(path)) {
+                System.err.println("Error: Plugin file not found: " + pluginPath);
+                return null;
+            } else if (!fileName.endsWith(".jar")) {
+                System.err.println("Error: File must be a JAR file (.jar extension): " + pluginPath);
+                return null;
+            } else {
+                matches = List.of(path);
+            }
+            if (matches.isEmpty()) {
+                System.err.println("Error: No plugin JAR found in: " + pluginPath);
+                return null;
+            }
+            pluginFiles.addAll(matches);
+        }
+        return pluginFiles;
+    }
+
     /**
      * Show list of installed instances and prompt user to select one.
      * Returns the selected version or null if cancelled/error.
@@ -143,50 +289,33 @@ public class InstallPluginCommand implements Callable<Integer> {
     }
 
     /**
-     * Install the plugin into the target instance.
-     * Handles backup of existing plugin if present (only backs up once - the original).
+     * Install the plugins into the target instance in one pass.
+     * The original version of a replaced plugin is backed up only once.
      */
-    private int installPlugin(Path pluginFile, String version) {
+    private int installPlugins(List<Path> pluginFiles, String version) {
         try {
             Path instancePath = instanceService.getInstancePath(version);
-            Path extensionsDir = instancePath.resolve("lib/extensions");
-
-            // Verify extensions directory exists
-            if (!Files.exists(extensionsDir)) {
-                System.err.println("Error: Extensions directory not found: " + extensionsDir);
+            if (!Files.exists(instancePath.resolve(PluginService.EXTENSIONS_DIR))) {
+                System.err.println("Error: Extensions directory not found: "
+                    + instancePath.resolve(PluginService.EXTENSIONS_DIR));
                 System.err.println("Is this a valid SonarQube instance?");
                 return 1;
             }
 
-            String newPluginFileName = pluginFile.getFileName().toString();
-            String basePluginName = extractBasePluginName(newPluginFileName);
-
-            // Find existing plugin with the same base name (e.g., sonar-java-plugin)
-            Path existingPlugin = findExistingPlugin(extensionsDir, basePluginName);
-
-            if (existingPlugin != null) {
-                String existingFileName = existingPlugin.getFileName().toString();
-                System.out.println("Found existing plugin: " + existingFileName);
+            List<PluginService.Change> changes = pluginService.install(instancePath, pluginFiles);
+            instanceService.updateManifestPlugins(version);
 
-                // Backup only if this is the first time (original plugin from distribution)
-                boolean backedUp = backupOriginalPluginIfNeeded(instancePath, existingPlugin, basePluginName);
-
-                // Remove the existing plugin
-                System.out.println("Removing existing plugin...");
-                Files.delete(existingPlugin);
+            for (PluginService.Change change : changes) {
+                if (change.getReplaced() == null) {
+                    System.out.println("  Installed " + change.getFileName());
+                } else {
+                    System.out.println("  Replaced " + change.getReplaced() + " with " + change.getFileName()
+                        + (change.isBackedUp() ? " (original backed up)" : ""));
+                }
             }
-
-            // Copy the new plugin
-            Path targetPluginPath = extensionsDir.resolve(newPluginFileName);
-            System.out.println("Installing plugin to: " + targetPluginPath);
-            Files.copy(pluginFile, targetPluginPath, StandardCopyOption.REPLACE_EXISTING);
-
-            System.out.println();
-            System.out.println("✓ Plugin installed successfully!");
             System.out.println();
-            System.out.println("Instance: " + version);
-            System.out.println("Plugin: " + newPluginFileName);
-            System.out.println("Location: " + targetPluginPath);
+            System.out.println("✓ " + changes.size() + " plugin(s) installed into " + version);
+            System.out.println("Location: " + instancePath.resolve(PluginService.EXTENSIONS_DIR));
 
             // Remind user to restart if instance is running
             if (instanceService.isInstanceRunning(version)) {
@@ -200,98 +329,8 @@ public class InstallPluginCommand implements Callable<Integer> {
 
         } catch (IOException e) {
             System.err.println();
-            System.err.println("Error installing plugin: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Error installing plugins: " + e.getMessage());
             return 1;
         }
     }
-
-    /**
-     * Extract base plugin name from JAR filename.
-     * Examples:
-     *   sonar-java-plugin-8.22.0.41895.jar -> sonar-java-plugin
-     *   sonar-java-plugin-SNAPSHOT.jar -> sonar-java-plugin
-     *   my-custom-plugin-1.0.0.jar -> my-custom-plugin
-     */
-    private String extractBasePluginName(String pluginFileName) {
-        // Remove .jar extension
-        String nameWithoutExt = pluginFileName.replaceFirst("\\.jar$", "");
-
-        // Remove version pattern (matches numbers, dots, dashes, and "SNAPSHOT")
-        // Pattern: -X.Y.Z.BUILD or -SNAPSHOT or -X.Y.Z-SNAPSHOT
-        String baseName = nameWithoutExt.replaceFirst("-[0-9].*$", "")
-                                        .replaceFirst("-SNAPSHOT$", "");
-
-        return baseName;
-    }
-
-    /**
-     * Find existing plugin in extensions directory with the same base name.
-     * Returns the path to the existing plugin, or null if not found.
-     */
-    private Path findExistingPlugin(Path extensionsDir, String basePluginName) throws IOException {
-        try (var stream = Files.list(extensionsDir)) {
-            return stream
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().endsWith(".jar"))
-                .filter(path -> {
-                    String fileName = path.getFileName().toString();
-                    String existingBaseName = extractBasePluginName(fileName);
-                    return existingBaseName.equals(basePluginName);
-                })
-                .findFirst()
-                .orElse(null);
-        }
-    }
-
-    /**
-     * Backup an existing plugin ONLY if it's the original (no backup exists yet).
-     * This ensures we only backup the plugin that came with the SonarQube distribution,
-     * not subsequent user-installed versions.
-     *
-     * Returns true if backup was created, false if backup already exists (skipped).
-     */
-    private boolean backupOriginalPluginIfNeeded(Path instancePath, Path existingPluginPath, String basePluginName)
-            throws IOException {
-
-        // Create original-plugins directory if it doesn't exist
-        Path backupDir = instancePath.resolve("original-plugins");
-        if (!Files.exists(backupDir)) {
-            Files.createDirectories(backupDir);
-            System.out.println("Created backup directory: " + backupDir);
-        }
-
-        // Check if a backup already exists for this plugin base name
-        boolean backupExists = false;
-        try (var stream = Files.list(backupDir)) {
-            backupExists = stream
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().endsWith(".jar"))
-                .anyMatch(path -> {
-                    String fileName = path.getFileName().toString();
-                    return fileName.startsWith(basePluginName + "-");
-                });
-        }
-
-        if (backupExists) {
-            System.out.println("Backup already exists for this plugin (original already saved)");
-            System.out.println("Skipping backup...");
-            System.out.println();
-            return false;
-        }
-
-        // No backup exists - this is the original plugin, so back it up
-        String existingFileName = existingPluginPath.getFileName().toString();
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
-        String backupFileName = existingFileName.replace(".jar", "") + "-backup-" + timestamp + ".jar";
-        Path backupPath = backupDir.resolve(backupFileName);
-
-        // Copy existing plugin to backup
-        System.out.println("Backing up ORIGINAL plugin to: " + backupPath.getFileName());
-        Files.copy(existingPluginPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
-        System.out.println("✓ Original plugin backed up");
-        System.out.println();
-
-        return true;
-    }
 }
@@ -0,0 +1,83 @@
+package com.sqman.commands;
+
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Resolves the instance a command works on from its version argument,
+ * rehydrating it if it is hibernated.
+ */
+final class InstanceResolver {
+
+    private InstanceResolver() {
+    }
+
+    /**
+     * Resolve the instance to work on: the given version (exact or partial) or the running instance.
+     * A hibernated instance is rehydrated.
+     *
+     * @return The version, or null after printing an error
+     */
+    static String resolve(InstanceService instanceService, String versionInput)
+            throws IOException, InterruptedException {
+        String resolvedVersion = resolveVersion(instanceService, versionInput);
+        if (resolvedVersion != null) {
+            rehydrate(instanceService, resolvedVersion);
+        }
+        return resolvedVersion;
+    }
+
+    /**
+     * Rehydrate an instance if it is hibernated. The exclusive instance lock is taken for it,
+     * or re-entered when the caller already holds it.
+     *
+     * @return true if the instance was hibernated
+     */
+    static boolean rehydrate(InstanceService instanceService, String version)
+            throws IOException, InterruptedException {
+        if (!instanceService.isHibernated(version)) {
+            return false;
+        }
+        LockService.InstanceLock lock = instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "rehydrate");
+        try (lock) {
+            // Another sqman may have rehydrated it while this one waited for the lock
+            if (!instanceService.isHibernated(version)) {
+                return false;
+            }
+            System.out.println("Rehydrating hibernated instance " + version + "...");
+            long start = System.currentTimeMillis();
+            instanceService.rehydrate(version);
+            System.out.printf("✓ Rehydrated in %.1fs%n", (System.currentTimeMillis() - start) / 1000.0);
+            return true;
+        }
+    }
+
+    private static String resolveVersion(InstanceService instanceService, String versionInput) {
+        if (versionInput == null || versionInput.trim().isEmpty()) {
+            String runningVersion = instanceService.getRunningInstance();
+            if (runningVersion == null) {
+                System.err.println("Error: No instance is running, specify the version");
+            }
+            return runningVersion;
+        }
+
+        if (instanceService.isInstalled(versionInput)) {
+            return versionInput;
+        }
+
+        List<String> matches = instanceService.getInstalledByVersion(versionInput);
+        if (matches.size() == 1) {
+            return matches.get(0).replace("sonarqube-", "");
+        }
+
+        if (matches.isEmpty()) {
+            System.err.println("Error: No installed instance found matching: " + versionInput);
+        } else {
+            System.err.println("Error: Multiple instances match '" + versionInput + "', please be more precise");
+        }
+        return null;
+    }
+}
@@ -1,11 +1,21 @@
 package com.sqman.commands;
 
+import com.sqman.model.Edition;
+import com.sqman.model.InstanceManifest;
 import com.sqman.service.InstanceService;
+import com.sqman.service.InstanceStatusService;
+import com.sqman.service.MemoryService;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 /**
  * Command to list SonarQube instances
@@ -17,6 +27,9 @@ import java.util.concurrent.Callable;
 )
 public class ListCommand implements Callable<Integer> {
 
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+        .withZone(ZoneId.systemDefault());
+
     @Option(
         names = {"-r", "--running"},
         description = "Show only running instances"
@@ -24,18 +37,25 @@ public class ListCommand implements Callable<Integer> {
     private boolean runningOnly;
 
     private final InstanceService instanceService;
+    private final InstanceStatusService statusService;
 
     public ListCommand() {
         this.instanceService = new InstanceService();
+        this.statusService = new InstanceStatusService(instanceService);
     }
 
     // Constructor for testing
-    public ListCommand(InstanceService instanceService) {
+    public ListCommand(InstanceService instanceService, InstanceStatusService statusService) {
         this.instanceService = instanceService;
+        this.statusService = statusService;
     }
 
     @Override
     public Integer call() {
+        if (runningOnly) {
+            return listRunning();
+        }
+
         System.out.println("Installed SonarQube instances:");
         System.out.println("Location: " + InstanceService.getSqmanHome());
         System.out.println();
@@ -57,14 +77,105 @@ public class ListCommand implements Callable<Integer> {
             String instance = instances.get(i);
             // Extract version from directory name (sonarqube-X.Y.Z.BUILD)
             String version = instance.replace("sonarqube-", "");
-            System.out.println("  " + (i + 1) + ". " + version);
+            if (instanceService.isHibernated(version)) {
+                System.out.println("  " + (i + 1) + ". " + version + " (hibernated)");
+                continue;
+            }
+            // Details come from instance.json, the instance tree is never walked
+            InstanceManifest manifest = instanceService.getManifest(version);
+            System.out.println("  " + (i + 1) + ". " + version + describe(manifest));
         }
 
-        if (runningOnly) {
-            System.out.println();
-            System.out.println("[Running instances detection not yet implemented]");
+        return 0;
+    }
+
+    /**
+     * Probe all instances at once and print the running ones as a table.
+     */
+    private int listRunning() {
+        List<String> ids = instanceService.listInstalled().stream()
+            .map(name -> name.replace("sonarqube-", ""))
+            .collect(Collectors.toList());
+        List<InstanceStatusService.InstanceStatus> statuses;
+        try {
+            statuses = statusService.probeAll(ids, InstanceStatusService.DEFAULT_DEADLINE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"VERSION", "EDITION", "STATE", "PID", "PORT", "UPTIME", "RSS", "DISK"});
+        Instant now = Instant.now();
+        for (InstanceStatusService.InstanceStatus status : statuses) {
+            // Probes past the deadline are shown, a slow instance is still an instance worth seeing
+            if (!status.isRunning() && !InstanceStatusService.UNKNOWN.equals(status.getState())) {
+                continue;
+            }
+            rows.add(new String[] {
+                status.getId(),
+                status.getEdition() != null ? status.getEdition() : "-",
+                status.getState(),
+                status.getPid() > 0 ? String.valueOf(status.getPid()) : "-",
+                status.getPort() > 0 ? String.valueOf(status.getPort()) : "-",
+                status.getStartedAt() != null ? formatUptime(Duration.between(status.getStartedAt(), now)) : "-",
+                status.getRssBytes() >= 0 ? MemoryService.formatSize(status.getRssBytes()) : "-",
+                status.getDiskBytes() > 0 ? MemoryService.formatSize(status.getDiskBytes()) : "-"
+            });
         }
 
+        if (rows.size() == 1) {
+            System.out.println("No running instances.");
+            return 0;
+        }
+        printTable(rows);
         return 0;
     }
+
+    private void printTable(List<String[]> rows) {
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int column = 0; column < row.length; column++) {
+                widths[column] = Math.max(widths[column], row[column].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int column = 0; column < row.length; column++) {
+                line.append(String.format("%-" + (widths[column] + 2) + "s", row[column]));
+            }
+            System.out.println(line.toString().stripTrailing());
+        }
+    }
+
+    static String formatUptime(Duration uptime) {
+        long days = uptime.toDays();
+        long hours = uptime.toHoursPart();
+        long minutes = uptime.toMinutesPart();
+        if (days > 0) {
+            return days + "d" + hours + "h";
+        }
+        if (hours > 0) {
+            return hours + "h" + minutes + "m";
+        }
+        return minutes + "m" + uptime.toSecondsPart() + "s";
+    }
+
+    private String describe(InstanceManifest manifest) {
+        if (manifest == null) {
+            return "";
+        }
+        StringBuilder details = new StringBuilder();
+        if (manifest.getEdition() != null) {
+            details.append(Edition.fromString(manifest.getEdition()).getDisplayName());
+        }
+        if (manifest.getInstalledAt() > 0) {
+            details.append(details.length() > 0 ? ", " : "")
+                .append("installed ").append(DATE.format(Instant.ofEpochMilli(manifest.getInstalledAt())));
+        }
+        if (manifest.getSize() > 0) {
+            details.append(", ").append(MemoryService.formatSize(manifest.getSize()));
+        }
+        return details.length() > 0 ? " (" + details + ")" : "";
+    }
 }
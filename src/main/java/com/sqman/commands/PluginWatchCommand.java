@@ -0,0 +1,170 @@
+package com.sqman.commands;
+
+import com.sqman.service.ConfigService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.PluginRolloutService;
+import com.sqman.service.PluginService;
+import com.sqman.service.PluginWatchService;
+import com.sqman.service.ProcessService;
+import com.sqman.service.SonarPropertiesService;
+import com.sqman.service.SonarQubeSetupService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Command to install plugin builds into an instance as soon as they are written
+ */
+@Command(
+    name = "watch",
+    description = "Install each new plugin build of a directory into an instance and restart it",
+    mixinStandardHelpOptions = true
+)
+public class PluginWatchCommand implements Callable<Integer> {
+
+    private static final long DEFAULT_UP_TIMEOUT_MINUTES = 10;
+
+    @Parameters(
+        index = "0",
+        description = "Build output directory to watch (e.g., target)"
+    )
+    private String directory;
+
+    @Parameters(
+        index = "1",
+        description = "Instance to install the builds into (e.g., 10.3.0.82913 or partial like 10.3)"
+    )
+    private String version;
+
+    @Option(
+        names = {"--full"},
+        description = "Do a full stop/start instead of the faster in-place restart"
+    )
+    private boolean full;
+
+    private final InstanceService instanceService;
+    private final ProcessService processService;
+    private final PluginService pluginService;
+    private final PluginWatchService watchService;
+
+    public PluginWatchCommand() {
+        this.instanceService = new InstanceService();
+        this.processService = new ProcessService();
+        this.pluginService = new PluginService();
+        this.watchService = new PluginWatchService();
+    }
+
+    // Constructor for testing
+    public PluginWatchCommand(InstanceService instanceService, ProcessService processService,
+                              PluginWatchService watchService) {
+        this.instanceService = instanceService;
+        this.processService = processService;
+        this.pluginService = new PluginService();
+        this.watchService = watchService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            String resolvedVersion = InstanceResolver.resolve(instanceService, version);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+            Path buildDir = Paths.get(directory).toAbsolutePath();
+
+            System.out.println("Watching " + buildDir + " for plugin builds (Ctrl+C to stop)");
+            System.out.println("Each build is installed into " + resolvedVersion + " and the instance restarted");
+            System.out.println();
+
+            try (PluginWatchService.Watcher watcher = watchService.watch(buildDir)) {
+                for (int iteration = 1; ; iteration++) {
+                    PluginWatchService.Build build = watcher.next();
+                    String jars = build.getJars().stream()
+                        .map(jar -> jar.getFileName().toString())
+                        .collect(Collectors.joining(", "));
+                    System.out.println("#" + iteration + " " + jars);
+                    try {
+                        iterate(build, resolvedVersion, instancePath);
+                    } catch (IOException e) {
+                        System.err.println("✗ #" + iteration + " failed: " + e.getMessage());
+                        System.err.println("  Still watching, fix the build and rebuild");
+                    }
+                    System.out.println();
+                }
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error watching plugin builds: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Swap the plugins of a build in and restart the instance, printing the latency of each step.
+     */
+    private void iterate(PluginWatchService.Build build, String version, Path instancePath)
+            throws IOException, InterruptedException {
+        long swapStart = System.currentTimeMillis();
+        LockService.InstanceLock lock =
+            instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "plugin watch");
+        try (lock) {
+            // The instance may have been hibernated since the previous build
+            InstanceResolver.rehydrate(instanceService, version);
+            List<PluginService.Change> changes = pluginService.install(instancePath, build.getJars());
+            instanceService.updateManifestPlugins(version);
+            long swapped = System.currentTimeMillis();
+            for (PluginService.Change change : changes) {
+                if (change.getReplaced() != null && !change.getReplaced().equals(change.getFileName())) {
+                    System.out.println("  Replaced " + change.getReplaced());
+                }
+            }
+
+            restart(version, instancePath);
+            long up = System.currentTimeMillis();
+            System.out.printf("✓ UP %.1fs after the build: written in %.1fs, swapped in %.1fs, restarted in %.1fs%n",
+                (up - build.getFirstWriteMillis()) / 1000.0,
+                (build.getReadyMillis() - build.getFirstWriteMillis()) / 1000.0,
+                (swapped - swapStart) / 1000.0, (up - swapped) / 1000.0);
+        }
+    }
+
+    /**
+     * Restart the instance the fastest way available: in place when it is running,
+     * otherwise with a full start.
+     */
+    private void restart(String version, Path instancePath) throws IOException, InterruptedException {
+        SonarQubeSetupService setupService =
+            new SonarQubeSetupService("http://localhost:" + new SonarPropertiesService().getWebPort(instancePath));
+        boolean running = processService.isInstanceRunning(instancePath);
+        if (running && !full) {
+            System.out.println("  Restarting in place...");
+            if (setupService.restartInPlace(instancePath)) {
+                return;
+            }
+            System.out.println("  ⚠ In-place restart failed, falling back to a full stop/start");
+        }
+        if (running && !processService.stopAndWait(instancePath, StoppedInstance.STOP_TIMEOUT_SECONDS)) {
+            throw new IOException("Could not stop " + version);
+        }
+        if (!processService.startInstance(instancePath, version, true)) {
+            throw new IOException("Could not start " + version);
+        }
+        instanceService.recordRun(version);
+        long timeoutMinutes = new ConfigService().getLong(PluginRolloutService.VERIFY_TIMEOUT_MINUTES,
+            DEFAULT_UP_TIMEOUT_MINUTES);
+        if (!setupService.waitForStatusUp(TimeUnit.MINUTES.toMillis(timeoutMinutes))) {
+            throw new IOException(version + " did not come UP within " + timeoutMinutes + " minutes, see its logs");
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.sqman.commands;
+
+import com.sqman.model.PoolSlot;
+import com.sqman.service.BackgroundTaskService;
+import com.sqman.service.PoolService;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to manage a pool of pre-started SonarQube instances for CI
+ */
+@Command(
+    name = "pool",
+    description = "Manage a pool of pre-started SonarQube instances for CI",
+    mixinStandardHelpOptions = true,
+    subcommands = {
+        PoolCommand.FillCommand.class,
+        PoolCommand.AcquireCommand.class,
+        PoolCommand.ReleaseCommand.class,
+        PoolCommand.RecycleCommand.class,
+        PoolCommand.StatusCommand.class,
+        PoolCommand.DrainCommand.class
+    }
+)
+public class PoolCommand implements Runnable {
+
+    @Override
+    public void run() {
+        // Show help when no subcommand is provided
+        CommandLine.usage(this, System.out);
+    }
+
+    /**
+     * Log file of the background pool tasks.
+     */
+    static Path backgroundLog(PoolService poolService) {
+        return poolService.getPoolRoot().resolve("pool-tasks.log");
+    }
+
+    @Command(
+        name = "fill",
+        description = "Start slots until pool.size idle instances of a version are ready",
+        mixinStandardHelpOptions = true
+    )
+    static class FillCommand implements Callable<Integer> {
+
+        @Parameters(index = "0", description = "Installed version to keep in the pool")
+        private String version;
+
+        @Override
+        public Integer call() {
+            try {
+                List<PoolSlot> ready = new PoolService().fill(version);
+                System.out.println();
+                System.out.println("✓ " + ready.size() + " new slot(s) ready for " + version);
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error filling pool: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    @Command(
+        name = "acquire",
+        description = "Lease a ready instance and print its URL and token",
+        mixinStandardHelpOptions = true
+    )
+    static class AcquireCommand implements Callable<Integer> {
+
+        @Parameters(index = "0", description = "Version (or version prefix) to acquire")
+        private String version;
+
+        @Option(
+            names = {"--no-refill"},
+            description = "Do not start a replacement slot in the background"
+        )
+        private boolean noRefill;
+
+        @Override
+        public Integer call() {
+            try {
+                PoolService poolService = new PoolService();
+                PoolSlot slot = poolService.acquire(version);
+
+                if (slot == null) {
+                    System.err.println("Error: No ready pool instance for version " + version);
+                    System.err.println();
+                    System.err.println("Fill the pool with:");
+                    System.err.println("  sqman pool fill <version>");
+                    return 1;
+                }
+
+                // Output is meant to be eval'ed by CI scripts
+                System.out.println("SQMAN_POOL_SLOT=" + slot.getId());
+                System.out.println("SONAR_HOST_URL=" + slot.getUrl());
+                System.out.println("SONAR_TOKEN=" + slot.getToken());
+
+                if (!noRefill) {
+                    new BackgroundTaskService().spawn(backgroundLog(poolService), "pool", "fill", slot.getVersion());
+                }
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error acquiring pool instance: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    @Command(
+        name = "release",
+        description = "Give a leased instance back to the pool (it is reset in the background)",
+        mixinStandardHelpOptions = true
+    )
+    static class ReleaseCommand implements Callable<Integer> {
+
+        @Parameters(index = "0", description = "Slot id printed by acquire (SQMAN_POOL_SLOT)")
+        private String slotId;
+
+        @Override
+        public Integer call() {
+            try {
+                PoolService poolService = new PoolService();
+                PoolSlot slot = poolService.release(slotId);
+
+                if (slot == null) {
+                    System.err.println("Error: " + slotId + " is not a leased pool slot");
+                    return 1;
+                }
+
+                new BackgroundTaskService().spawn(backgroundLog(poolService), "pool", "recycle", slot.getId());
+                System.out.println("Released " + slot.getId() + ", recycling in the background.");
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error releasing pool instance: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    @Command(
+        name = "recycle",
+        description = "Reset a released slot and make it available again",
+        hidden = true
+    )
+    static class RecycleCommand implements Callable<Integer> {
+
+        @Parameters(index = "0", description = "Slot id")
+        private String slotId;
+
+        @Override
+        public Integer call() {
+            try {
+                PoolSlot slot = new PoolService().recycle(slotId);
+                System.out.println("✓ " + slot.getId() + " is ready again");
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error recycling " + slotId + ": " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    @Command(
+        name = "status",
+        description = "Show the pool slots",
+        mixinStandardHelpOptions = true
+    )
+    static class StatusCommand implements Callable<Integer> {
+
+        @Override
+        public Integer call() {
+            try {
+                PoolService poolService = new PoolService();
+                poolService.reapIdle();
+                List<PoolSlot> slots = poolService.listSlots();
+
+                if (slots.isEmpty()) {
+                    System.out.println("The pool is empty.");
+                    return 0;
+                }
+
+                System.out.printf("  %-8s %-16s %-10s %s%n", "SLOT", "VERSION", "STATUS", "URL");
+                for (PoolSlot slot : slots) {
+                    System.out.printf("  %-8s %-16s %-10s %s%n",
+                        slot.getId(), slot.getVersion(), slot.getStatus(), slot.getUrl());
+                }
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error reading pool: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+
+    @Command(
+        name = "drain",
+        description = "Stop and remove all slots that are not leased",
+        mixinStandardHelpOptions = true
+    )
+    static class DrainCommand implements Callable<Integer> {
+
+        @Parameters(index = "0", description = "Only drain this version", arity = "0..1")
+        private String version;
+
+        @Override
+        public Integer call() {
+            try {
+                int drained = new PoolService().drain(version);
+                System.out.println("✓ Removed " + drained + " slot(s)");
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Error draining pool: " + e.getMessage());
+                return 1;
+            }
+        }
+    }
+}
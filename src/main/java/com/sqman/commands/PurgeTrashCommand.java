@@ -0,0 +1,33 @@
+package com.sqman.commands;
+
+import com.sqman.service.TrashService;
+import picocli.CommandLine.Command;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Command run in the background after a delete to reclaim the disk space of trashed instances
+ */
+@Command(
+    name = "purge-trash",
+    description = "Delete the instances moved to the trash (resumes an interrupted purge)",
+    hidden = true
+)
+public class PurgeTrashCommand implements Callable<Integer> {
+
+    @Override
+    public Integer call() {
+        try {
+            int deleted = new TrashService().purge();
+            if (deleted < 0) {
+                System.out.println("Another process is already purging the trash");
+            } else {
+                System.out.println("✓ Purged " + deleted + " trash entries");
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error purging the trash: " + e.getMessage());
+            return 1;
+        }
+    }
+}
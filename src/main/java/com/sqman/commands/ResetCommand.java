@@ -0,0 +1,88 @@
+package com.sqman.commands;
+
+import com.sqman.service.CheckpointService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to bring an instance back to a checkpoint
+ */
+@Command(
+    name = "reset",
+    description = "Reset the data, conf, plugins and token of an instance to a checkpoint",
+    mixinStandardHelpOptions = true
+)
+public class ResetCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Checkpoint name (see sqman checkpoint --list)"
+    )
+    private String name;
+
+    @Parameters(
+        index = "1",
+        description = "Version of the instance (e.g., 10.3.0.82913 or partial like 10.3). If omitted, uses the running instance.",
+        arity = "0..1"
+    )
+    private String version;
+
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final CheckpointService checkpointService;
+
+    public ResetCommand() {
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+        this.checkpointService = new CheckpointService();
+    }
+
+    // Constructor for testing
+    public ResetCommand(ProcessService processService, InstanceService instanceService,
+                        CheckpointService checkpointService) {
+        this.processService = processService;
+        this.instanceService = instanceService;
+        this.checkpointService = checkpointService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            String resolvedVersion = InstanceResolver.resolve(instanceService, version);
+            if (resolvedVersion == null) {
+                return 1;
+            }
+            Path instancePath = instanceService.getInstancePath(resolvedVersion);
+
+            if (!checkpointService.list(instancePath).contains(name)) {
+                System.err.println("Error: Checkpoint not found: " + name);
+                System.err.println();
+                System.err.println("List checkpoints with:");
+                System.err.println("  sqman checkpoint --list " + resolvedVersion);
+                return 1;
+            }
+
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "reset");
+            try (lock) {
+                return StoppedInstance.run(instanceService, processService, resolvedVersion, instancePath, null, () -> {
+                    long start = System.currentTimeMillis();
+                    CheckpointService.TreeStats stats = checkpointService.restore(instancePath, name);
+                    System.out.printf("✓ %s reset to checkpoint '%s' in %.1fs (%s)%n",
+                        resolvedVersion, name, (System.currentTimeMillis() - start) / 1000.0, stats);
+                });
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error resetting instance: " + e.getMessage());
+            return 1;
+        }
+    }
+}
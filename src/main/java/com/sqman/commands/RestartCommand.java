@@ -1,9 +1,13 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
 import com.sqman.service.ProcessService;
+import com.sqman.service.SonarQubeSetupService;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 
+import java.nio.file.Path;
 import java.util.concurrent.Callable;
 
 /**
@@ -16,18 +20,28 @@ import java.util.concurrent.Callable;
 )
 public class RestartCommand implements Callable<Integer> {
 
+    @Option(
+        names = {"--full"},
+        description = "Do a full stop/start instead of the faster in-place restart"
+    )
+    private boolean full;
+
     private final ProcessService processService;
     private final InstanceService instanceService;
+    private final SonarQubeSetupService setupService;
 
     public RestartCommand() {
         this.processService = new ProcessService();
         this.instanceService = new InstanceService();
+        this.setupService = new SonarQubeSetupService("http://localhost:9000");
     }
 
     // Constructor for testing
-    public RestartCommand(ProcessService processService, InstanceService instanceService) {
+    public RestartCommand(ProcessService processService, InstanceService instanceService,
+                          SonarQubeSetupService setupService) {
         this.processService = processService;
         this.instanceService = instanceService;
+        this.setupService = setupService;
     }
 
     @Override
@@ -47,32 +61,54 @@ public class RestartCommand implements Callable<Integer> {
             System.out.println("Restarting SonarQube " + runningVersion);
             System.out.println();
 
-            // Stop the instance gracefully
-            System.out.println("Stopping instance...");
-            boolean stopped = processService.stopInstance(runningVersion, false);
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(runningVersion, LockService.Mode.EXCLUSIVE, "restart");
+            try (lock) {
+                // Try the in-place restart first: it avoids tearing down the whole process tree
+                if (!full) {
+                    System.out.println("Restarting in place via /api/system/restart...");
+                    long startTime = System.currentTimeMillis();
+                    Path instancePath = instanceService.getInstancePath(runningVersion);
+
+                    if (setupService.restartInPlace(instancePath)) {
+                        long elapsed = System.currentTimeMillis() - startTime;
+                        System.out.println();
+                        System.out.printf("✓ SonarQube restarted in %.1fs%n", elapsed / 1000.0);
+                        return 0;
+                    }
+
+                    System.out.println();
+                    System.out.println("⚠ In-place restart failed, falling back to a full stop/start.");
+                    System.out.println();
+                }
+
+                // Stop the instance gracefully
+                System.out.println("Stopping instance...");
+                boolean stopped = processService.stopInstance(runningVersion, false);
+
+                if (!stopped) {
+                    System.err.println();
+                    System.err.println("Failed to stop instance. Try stopping manually with:");
+                    System.err.println("  sqman stop --force");
+                    return 1;
+                }
 
-            if (!stopped) {
-                System.err.println();
-                System.err.println("Failed to stop instance. Try stopping manually with:");
-                System.err.println("  sqman stop --force");
-                return 1;
-            }
+                System.out.println();
 
-            System.out.println();
+                // Start the instance again
+                System.out.println("Starting instance...");
+                boolean started = processService.startInstance(runningVersion, 0, true);
 
-            // Start the instance again
-            System.out.println("Starting instance...");
-            boolean started = processService.startInstance(runningVersion, 0, true);
+                if (!started) {
+                    System.err.println();
+                    System.err.println("Failed to start instance. Try starting manually with:");
+                    System.err.println("  sqman run " + runningVersion);
+                    return 1;
+                }
 
-            if (!started) {
-                System.err.println();
-                System.err.println("Failed to start instance. Try starting manually with:");
-                System.err.println("  sqman run " + runningVersion);
-                return 1;
+                return 0;
             }
 
-            return 0;
-
         } catch (Exception e) {
             System.err.println();
             System.err.println("Error restarting instance: " + e.getMessage());
@@ -1,6 +1,10 @@
 package com.sqman.commands;
 
+import com.sqman.model.PluginBackup;
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.PluginBackupService;
+import com.sqman.service.PluginService;
 import picocli.CommandLine.Command;
 
 import java.io.BufferedReader;
@@ -8,10 +12,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
 
 /**
  * Command to restore a backed-up original plugin
@@ -23,15 +28,22 @@ import java.util.stream.Collectors;
 )
 public class RestorePluginCommand implements Callable<Integer> {
 
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
     private final InstanceService instanceService;
+    private final PluginService pluginService;
+    private final PluginBackupService backupService;
 
     public RestorePluginCommand() {
-        this.instanceService = new InstanceService();
+        this(new InstanceService());
     }
 
     // Constructor for testing
     public RestorePluginCommand(InstanceService instanceService) {
         this.instanceService = instanceService;
+        this.pluginService = new PluginService();
+        this.backupService = pluginService.getBackupService();
     }
 
     @Override
@@ -43,33 +55,33 @@ public class RestorePluginCommand implements Callable<Integer> {
                 return 1; // User cancelled or error
             }
 
-            // Get backup directory for selected instance
-            Path instancePath = instanceService.getInstancePath(targetVersion);
-            Path backupDir = instancePath.resolve("original-plugins");
+            InstanceResolver.rehydrate(instanceService, targetVersion);
 
-            // Check if backup directory exists
-            if (!Files.exists(backupDir)) {
-                System.out.println("No backed-up plugins found for instance: " + targetVersion);
-                System.out.println();
-                System.out.println("Backup directory does not exist: " + backupDir);
-                return 0;
+            // List backed-up plugins (older backups are moved into the plugin store on the way)
+            Path instancePath = instanceService.getInstancePath(targetVersion);
+            List<PluginBackup> backups;
+            LockService.InstanceLock listLock =
+                instanceService.lockInstance(targetVersion, LockService.Mode.EXCLUSIVE, "list plugin backups");
+            try (listLock) {
+                backups = backupService.list(instancePath);
             }
-
-            // List backed-up plugins
-            List<Path> backups = listBackedUpPlugins(backupDir);
             if (backups.isEmpty()) {
                 System.out.println("No backed-up plugins found for instance: " + targetVersion);
                 return 0;
             }
 
             // Prompt user to select plugin to restore
-            Path selectedBackup = promptForBackupSelection(backups);
+            PluginBackup selectedBackup = promptForBackupSelection(backups);
             if (selectedBackup == null) {
                 return 1; // User cancelled or error
             }
 
             // Restore the plugin
-            return restorePlugin(instancePath, selectedBackup, targetVersion);
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(targetVersion, LockService.Mode.EXCLUSIVE, "restore plugin");
+            try (lock) {
+                return restorePlugin(instancePath, selectedBackup, targetVersion);
+            }
 
         } catch (Exception e) {
             System.err.println();
@@ -140,30 +152,18 @@ public class RestorePluginCommand implements Callable<Integer> {
         }
     }
 
-    /**
-     * List all backed-up plugin files in the backup directory.
-     */
-    private List<Path> listBackedUpPlugins(Path backupDir) throws IOException {
-        try (var stream = Files.list(backupDir)) {
-            return stream
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().endsWith(".jar"))
-                .sorted()
-                .collect(Collectors.toList());
-        }
-    }
-
     /**
      * Prompt user to select a backed-up plugin to restore.
      */
-    private Path promptForBackupSelection(List<Path> backups) {
+    private PluginBackup promptForBackupSelection(List<PluginBackup> backups) {
         System.out.println();
         System.out.println("Available backed-up plugins:");
         System.out.println();
 
         for (int i = 0; i < backups.size(); i++) {
-            String fileName = backups.get(i).getFileName().toString();
-            System.out.printf("  %d. %s%n", (i + 1), fileName);
+            PluginBackup backup = backups.get(i);
+            System.out.printf("  %d. %s (%s, backed up %s)%n", (i + 1), backup.getFileName(), backup.getKey(),
+                DATE_FORMAT.format(Instant.ofEpochMilli(backup.getBackedUpAt())));
         }
 
         System.out.println();
@@ -204,9 +204,9 @@ public class RestorePluginCommand implements Callable<Integer> {
     /**
      * Restore a backed-up plugin to the extensions directory.
      */
-    private int restorePlugin(Path instancePath, Path backupPath, String version) {
+    private int restorePlugin(Path instancePath, PluginBackup backup, String version) {
         try {
-            Path extensionsDir = instancePath.resolve("lib/extensions");
+            Path extensionsDir = instancePath.resolve(PluginService.EXTENSIONS_DIR);
 
             // Verify extensions directory exists
             if (!Files.exists(extensionsDir)) {
@@ -215,39 +215,26 @@ public class RestorePluginCommand implements Callable<Integer> {
                 return 1;
             }
 
-            String backupFileName = backupPath.getFileName().toString();
-
-            // Extract the original plugin name (remove -backup-timestamp.jar suffix)
-            String originalPluginName = extractOriginalPluginName(backupFileName);
-            String basePluginName = extractBasePluginName(originalPluginName);
-
             // Find and remove any existing version of this plugin
-            Path existingPlugin = findExistingPlugin(extensionsDir, basePluginName);
-            if (existingPlugin != null) {
-                String existingFileName = existingPlugin.getFileName().toString();
-                System.out.println("Found existing plugin: " + existingFileName);
-                System.out.println("Removing current plugin...");
+            Path existingPlugin = pluginService.scan(extensionsDir).get(backup.getKey());
+            Path targetPluginPath = extensionsDir.resolve(backup.getFileName());
+            if (existingPlugin != null && !existingPlugin.equals(targetPluginPath)) {
+                System.out.println("Removing current plugin: " + existingPlugin.getFileName());
                 Files.delete(existingPlugin);
             }
 
-            // Restore the backed-up plugin (use the original name without backup suffix)
-            Path targetPluginPath = extensionsDir.resolve(originalPluginName);
-            System.out.println();
+            // Linked back from the plugin store, no data is copied
             System.out.println("Restoring plugin to: " + targetPluginPath);
-            Files.copy(backupPath, targetPluginPath, StandardCopyOption.REPLACE_EXISTING);
-
-            // Delete the backup file after successful restoration
-            System.out.println("Deleting backup file...");
-            Files.delete(backupPath);
+            backupService.restore(instancePath, backup, targetPluginPath);
+            instanceService.updateManifestPlugins(version);
 
             System.out.println();
             System.out.println("✓ Plugin restored successfully!");
             System.out.println();
             System.out.println("Instance: " + version);
-            System.out.println("Plugin: " + originalPluginName);
+            System.out.println("Plugin: " + backup.getFileName());
             System.out.println("Location: " + targetPluginPath);
             System.out.println();
-            System.out.println("Note: Backup file has been deleted.");
             System.out.println("If you install a custom plugin again, a new backup will be created.");
 
             // Remind user to restart if instance is running
@@ -263,49 +250,7 @@ public class RestorePluginCommand implements Callable<Integer> {
         } catch (IOException e) {
             System.err.println();
             System.err.println("Error restoring plugin: " + e.getMessage());
-            e.printStackTrace();
             return 1;
         }
     }
-
-    /**
-     * Extract original plugin name from backup filename.
-     * Example: sonar-java-plugin-8.22.0.41895-backup-20260219-153045.jar
-     *       -> sonar-java-plugin-8.22.0.41895.jar
-     */
-    private String extractOriginalPluginName(String backupFileName) {
-        // Remove -backup-YYYYMMDD-HHMMSS.jar suffix
-        return backupFileName.replaceFirst("-backup-\\d{8}-\\d{6}\\.jar$", ".jar");
-    }
-
-    /**
-     * Extract base plugin name from JAR filename.
-     * Examples:
-     *   sonar-java-plugin-8.22.0.41895.jar -> sonar-java-plugin
-     *   sonar-java-plugin-SNAPSHOT.jar -> sonar-java-plugin
-     */
-    private String extractBasePluginName(String pluginFileName) {
-        String nameWithoutExt = pluginFileName.replaceFirst("\\.jar$", "");
-        String baseName = nameWithoutExt.replaceFirst("-[0-9].*$", "")
-                                        .replaceFirst("-SNAPSHOT$", "");
-        return baseName;
-    }
-
-    /**
-     * Find existing plugin in extensions directory with the same base name.
-     */
-    private Path findExistingPlugin(Path extensionsDir, String basePluginName) throws IOException {
-        try (var stream = Files.list(extensionsDir)) {
-            return stream
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().endsWith(".jar"))
-                .filter(path -> {
-                    String fileName = path.getFileName().toString();
-                    String existingBaseName = extractBasePluginName(fileName);
-                    return existingBaseName.equals(basePluginName);
-                })
-                .findFirst()
-                .orElse(null);
-        }
-    }
 }
@@ -1,9 +1,21 @@
 package com.sqman.commands;
 
+import com.sqman.model.IsolationInfo;
+import com.sqman.service.AdmissionService;
+import com.sqman.service.AppCdsService;
+import com.sqman.service.BackgroundTaskService;
+import com.sqman.service.ConfigService;
+import com.sqman.service.CpuIsolationService;
+import com.sqman.service.EphemeralStorageService;
+import com.sqman.service.IdleWatchService;
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
 import com.sqman.service.ProcessService;
 import com.sqman.service.SonarQubeSetupService;
+import com.sqman.service.StorageTierService;
+import com.sqman.service.TemplateService;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.io.BufferedReader;
@@ -12,6 +24,7 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -31,38 +44,108 @@ public class RunCommand implements Callable<Integer> {
     )
     private String version;
 
+    @Option(
+        names = {"--cds"},
+        description = "Use AppCDS archives for the web, compute engine and search JVMs. "
+            + "Archives are recorded on the first start and reused on later starts."
+    )
+    private boolean cds;
+
+    @Option(
+        names = {"--ephemeral"},
+        description = "Keep data and temp files on a RAM-backed tmpfs. They are discarded when the instance stops, "
+            + "or by the next run, stop or delete of an instance that stopped on its own."
+    )
+    private boolean ephemeral;
+
+    @Option(
+        names = {"--tmpfs"},
+        description = "tmpfs directory used with --ephemeral (default: " + EphemeralStorageService.DEFAULT_TMPFS + ")"
+    )
+    private String tmpfsDirectory;
+
+    @Option(
+        names = {"--ephemeral-min-free"},
+        description = "Free memory in MB required to start with --ephemeral (default: 2048)",
+        defaultValue = "2048"
+    )
+    private long ephemeralMinFreeMb;
+
+    @Option(
+        names = {"--on-low-memory"},
+        description = "What to do when the instance does not fit in free memory: refuse, queue (wait for memory) "
+            + "or shrink (reduce heaps). Default: admission.policy setting, or refuse."
+    )
+    private String lowMemoryPolicy;
+
+    @Option(
+        names = {"--isolate"},
+        description = "Benchmark mode: pin the web, compute engine and search JVMs to their own CPUs (Linux, needs taskset). "
+            + "Without CPU lists, the CPUs except CPU 0 are split in three."
+    )
+    private boolean isolate;
+
+    @Option(
+        names = {"--web-cpus"},
+        description = "CPUs of the web JVM with --isolate (e.g. 2-3)"
+    )
+    private String webCpus;
+
+    @Option(
+        names = {"--ce-cpus"},
+        description = "CPUs of the compute engine JVM with --isolate (e.g. 4-5)"
+    )
+    private String ceCpus;
+
+    @Option(
+        names = {"--search-cpus"},
+        description = "CPUs of the search JVM with --isolate (e.g. 6-7)"
+    )
+    private String searchCpus;
+
+    @Option(
+        names = {"--no-template"},
+        description = "Do not seed a fresh instance from the golden template of its version, "
+            + "and do not capture one after the first setup"
+    )
+    private boolean noTemplate;
+
     private final ProcessService processService;
     private final InstanceService instanceService;
+    private final AdmissionService admissionService;
 
     public RunCommand() {
         this.processService = new ProcessService();
         this.instanceService = new InstanceService();
+        this.admissionService = new AdmissionService();
     }
 
     // Constructor for testing
-    public RunCommand(ProcessService processService, InstanceService instanceService) {
+    public RunCommand(ProcessService processService, InstanceService instanceService,
+                      AdmissionService admissionService) {
         this.processService = processService;
         this.instanceService = instanceService;
+        this.admissionService = admissionService;
     }
 
     @Override
     public Integer call() {
         try {
-            // Check if any instance is already running
-            String runningVersion = instanceService.getRunningInstance();
-            if (runningVersion != null) {
-                System.err.println("Error: An instance is already running: " + runningVersion);
-                System.err.println();
-                System.err.println("Stop it first with:");
-                System.err.println("  sqman stop");
+            // Check if any instance is already running (again under the lock, this one avoids a useless prompt)
+            if (isAnyInstanceRunning()) {
                 return 1;
             }
 
             String resolvedVersion;
 
-            // If no version specified, show interactive selection
+            // If no version specified, resume the instance stopped for inactivity or show interactive selection
             if (version == null || version.trim().isEmpty()) {
-                resolvedVersion = promptForInstanceSelection();
+                resolvedVersion = instanceService.getIdleStoppedInstance();
+                if (resolvedVersion != null) {
+                    System.out.println("Resuming SonarQube " + resolvedVersion + " (stopped after being idle)");
+                } else {
+                    resolvedVersion = promptForInstanceSelection();
+                }
                 if (resolvedVersion == null) {
                     return 1; // User cancelled or error
                 }
@@ -81,43 +164,27 @@ public class RunCommand implements Callable<Integer> {
             System.out.println("Running SonarQube " + resolvedVersion);
             System.out.println();
 
-            // Start the instance in background mode on default port (9000)
-            boolean started = processService.startInstance(resolvedVersion, 0, true);
-
-            if (!started) {
-                return 1;
+            Map<AppCdsService.JvmProcess, String> isolationCpus = null;
+            if (isolate) {
+                isolationCpus = planIsolation();
+                if (isolationCpus == null) {
+                    return 1;
+                }
             }
 
-            // Check if automatic setup is needed (first time running this instance)
-            Path instancePath = instanceService.getInstancePath(resolvedVersion);
-            SonarQubeSetupService setupService = new SonarQubeSetupService("http://localhost:9000");
-
-            if (setupService.isSetupNeeded(instancePath)) {
-                try {
-                    // Wait for SonarQube to be fully operational
-                    boolean ready = setupService.waitForSonarQubeReady();
-                    if (!ready) {
-                        System.err.println();
-                        System.err.println("⚠ Warning: Could not verify SonarQube is ready.");
-                        System.err.println("Automatic setup skipped. You can configure manually at http://localhost:9000");
-                        return 0;
-                    }
-
-                    // Perform automatic setup
-                    setupService.performAutomaticSetup(instancePath);
-
-                } catch (Exception e) {
-                    System.err.println();
-                    System.err.println("⚠ Warning: Automatic setup failed: " + e.getMessage());
-                    System.err.println("You can configure manually at http://localhost:9000");
-                    System.err.println("Default credentials: admin/admin");
-                    // Don't fail the command - instance is running
+            // Keep other sqman processes away from this instance while it is prepared and started
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "run");
+            try (lock) {
+                if (isAnyInstanceRunning() || !startInstance(resolvedVersion, isolationCpus)) {
+                    return 1;
                 }
-            } else {
-                // Display saved token for convenience
-                displayToken(instancePath);
             }
 
+            // Pinning waits for the JVMs and the setup only talks to the started instance,
+            // other sqman processes can use it meanwhile
+            pinProcesses(resolvedVersion, isolationCpus);
+            setUpInstance(resolvedVersion, isolationCpus);
             return 0;
 
         } catch (Exception e) {
@@ -128,6 +195,272 @@ public class RunCommand implements Callable<Integer> {
         }
     }
 
+    /**
+     * Report the running instance, if any.
+     *
+     * @return true if an instance is already running
+     */
+    private boolean isAnyInstanceRunning() {
+        String runningVersion = instanceService.getRunningInstance();
+        if (runningVersion == null) {
+            return false;
+        }
+        System.err.println("Error: An instance is already running: " + runningVersion);
+        System.err.println();
+        System.err.println("Stop it first with:");
+        System.err.println("  sqman stop");
+        return true;
+    }
+
+    /**
+     * Prepare and start an instance. Must be called with the instance lock held.
+     *
+     * @return true if the instance was started
+     */
+    private boolean startInstance(String resolvedVersion, Map<AppCdsService.JvmProcess, String> isolationCpus)
+            throws Exception {
+        if (InstanceResolver.rehydrate(instanceService, resolvedVersion)) {
+            System.out.println();
+        }
+
+        Path instancePath = instanceService.getInstancePath(resolvedVersion);
+        configureAppCds(instancePath);
+
+        // Nothing is running, so leftovers of a previous ephemeral run can be discarded
+        instanceService.cleanupEphemeralStorage(resolvedVersion);
+
+        // Keep data, temp and logs on the fast storage tier when one is configured
+        new StorageTierService().apply(instancePath);
+
+        if (!admit(instancePath, resolvedVersion)) {
+            return false;
+        }
+
+        if (ephemeral) {
+            Path runDir = new EphemeralStorageService().prepare(
+                instancePath, resolvedVersion, tmpfsDirectory, ephemeralMinFreeMb * 1024 * 1024);
+            System.out.println("Ephemeral mode: data and temp files in " + runDir);
+            System.out.println("They will be discarded when the instance stops.");
+            System.out.println();
+        }
+
+        if (!noTemplate && instanceService.seedFromTemplate(resolvedVersion)) {
+            System.out.println("Seeded from the golden template of " + resolvedVersion + ", setup will be skipped");
+            System.out.println();
+        }
+
+        // Start the instance in background mode on default port (9000)
+        boolean started = processService.startInstance(resolvedVersion, 0, true);
+
+        if (!started) {
+            admissionService.cancel(resolvedVersion);
+            if (ephemeral) {
+                instanceService.cleanupEphemeralStorage(resolvedVersion);
+            }
+            return false;
+        }
+
+        instanceService.clearIdleStopped(resolvedVersion);
+        instanceService.recordRun(resolvedVersion);
+        startIdleWatcher();
+        return true;
+    }
+
+    /**
+     * Run the automatic setup on first start, or display the token of the instance.
+     */
+    private void setUpInstance(String resolvedVersion, Map<AppCdsService.JvmProcess, String> isolationCpus)
+            throws InterruptedException {
+        Path instancePath = instanceService.getInstancePath(resolvedVersion);
+
+        // Check if automatic setup is needed (first time running this instance)
+        SonarQubeSetupService setupService = new SonarQubeSetupService("http://localhost:9000");
+
+        if (setupService.isSetupNeeded(instancePath)) {
+            try {
+                // Wait for SonarQube to be fully operational
+                boolean ready = setupService.waitForSonarQubeReady();
+                if (!ready) {
+                    System.err.println();
+                    System.err.println("⚠ Warning: Could not verify SonarQube is ready.");
+                    System.err.println("Automatic setup skipped. You can configure manually at http://localhost:9000");
+                    return;
+                }
+
+                // Perform automatic setup
+                setupService.performAutomaticSetup(instancePath);
+
+                if (!noTemplate) {
+                    captureTemplate(instancePath, resolvedVersion, isolationCpus);
+                }
+
+            } catch (Exception e) {
+                System.err.println();
+                System.err.println("⚠ Warning: Automatic setup failed: " + e.getMessage());
+                System.err.println("You can configure manually at http://localhost:9000");
+                System.err.println("Default credentials: admin/admin");
+                // Don't fail the command - instance is running
+            }
+        } else {
+            // Display saved token for convenience
+            displayToken(instancePath);
+        }
+    }
+
+    /**
+     * Check that the instance fits in memory, refusing, queueing or shrinking heaps as requested.
+     *
+     * @return true if the instance can be started
+     */
+    private boolean admit(Path instancePath, String resolvedVersion) throws InterruptedException {
+        try {
+            AdmissionService.Policy policy = lowMemoryPolicy != null
+                ? AdmissionService.Policy.parse(lowMemoryPolicy)
+                : admissionService.getDefaultPolicy();
+            admissionService.admit(instancePath, resolvedVersion, policy);
+            return true;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Save the freshly set up instance as the golden template of its version (once per version).
+     * The capture restarts the instance, so its JVMs are pinned again in isolation mode.
+     */
+    private void captureTemplate(Path instancePath, String resolvedVersion,
+                                 Map<AppCdsService.JvmProcess, String> isolationCpus) throws InterruptedException {
+        TemplateService templateService = new TemplateService();
+        if (templateService.hasTemplate(resolvedVersion)) {
+            return;
+        }
+        try {
+            // The capture restarts the instance, which needs the lock again
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "capture template");
+            try (lock) {
+                if (!templateService.captureAfterSetup(instancePath, resolvedVersion, resolvedVersion, processService)) {
+                    System.err.println("⚠ Warning: SonarQube did not start again after saving the template, run:");
+                    System.err.println("  sqman run " + resolvedVersion);
+                    return;
+                }
+            }
+            pinProcesses(resolvedVersion, isolationCpus);
+        } catch (IOException e) {
+            System.err.println("⚠ Warning: Could not save the golden template: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check that CPU pinning is possible and compute the CPU set of each JVM.
+     *
+     * @return CPU sets, or null if isolation is not possible
+     */
+    private Map<AppCdsService.JvmProcess, String> planIsolation() {
+        CpuIsolationService isolationService = new CpuIsolationService();
+        if (!isolationService.isSupported()) {
+            System.err.println("Error: --isolate requires Linux with taskset (util-linux) installed");
+            return null;
+        }
+        try {
+            return isolationService.assignCpus(webCpus, ceCpus, searchCpus,
+                Runtime.getRuntime().availableProcessors());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Pin the JVMs of the started instance and record the isolation, or clear a previous one.
+     * The JVMs can take minutes to appear, so only the record is made under the instance lock.
+     */
+    private void pinProcesses(String resolvedVersion, Map<AppCdsService.JvmProcess, String> cpus)
+            throws IOException, InterruptedException {
+        IsolationInfo isolation = isolateProcesses(instanceService.getInstancePath(resolvedVersion), cpus);
+        LockService.InstanceLock lock =
+            instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "record isolation");
+        try (lock) {
+            instanceService.setIsolation(resolvedVersion, isolation);
+        }
+    }
+
+    /**
+     * Pin the JVMs of the started instance and report the host conditions of the benchmark.
+     *
+     * @return Isolation to record with the instance, null when not isolated
+     */
+    private IsolationInfo isolateProcesses(Path instancePath, Map<AppCdsService.JvmProcess, String> cpus)
+            throws InterruptedException {
+        if (cpus == null) {
+            return null;
+        }
+
+        long pid = processService.getPid(instancePath);
+        if (pid <= 0) {
+            System.err.println("⚠ Warning: SonarQube PID not found, JVMs were not pinned");
+            return null;
+        }
+
+        CpuIsolationService isolationService = new CpuIsolationService();
+        try {
+            IsolationInfo info = isolationService.pin(pid, cpus);
+            System.out.println("CPU governor: " + info.getGovernor() + ", load average: " + info.getLoadAverage());
+            if (!"performance".equals(info.getGovernor())) {
+                System.out.println("⚠ CPU frequency scaling may skew results, consider the 'performance' governor");
+            }
+            System.out.println();
+            return info;
+        } catch (IOException e) {
+            System.err.println("⚠ Warning: Could not pin JVMs: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Add or remove the AppCDS flags in sonar.properties before starting the instance.
+     */
+    private void configureAppCds(Path instancePath) throws IOException {
+        AppCdsService appCdsService = new AppCdsService();
+
+        if (!cds) {
+            appCdsService.disable(instancePath);
+            return;
+        }
+
+        if (!appCdsService.isSupported()) {
+            System.out.println("⚠ AppCDS requires Java 13 or newer for SonarQube, starting without it.");
+            System.out.println();
+            appCdsService.disable(instancePath);
+            return;
+        }
+
+        List<AppCdsService.JvmProcess> recording = appCdsService.configure(instancePath);
+        if (recording.isEmpty()) {
+            System.out.println("AppCDS: using archives for web, compute engine and search JVMs");
+        } else {
+            System.out.println("AppCDS: recording class archives for " + recording.size() + " JVM(s)");
+            System.out.println("        Archives are written when the instance stops and used on the next start.");
+        }
+        System.out.println();
+    }
+
+    /**
+     * Start the background idle watcher when idle.timeoutMinutes is set.
+     * The watcher exits on its own if one is already running.
+     */
+    private void startIdleWatcher() {
+        if (new IdleWatchService().getTimeoutMinutes() <= 0) {
+            return;
+        }
+        try {
+            new BackgroundTaskService().spawn(ConfigService.getSqmanHome().resolve("watch.log"), "watch");
+        } catch (IOException e) {
+            System.err.println("⚠ Warning: Could not start the idle watcher: " + e.getMessage());
+        }
+    }
+
     private void displayToken(Path instancePath) {
         try {
             Path tokenFile = instancePath.resolve("token");
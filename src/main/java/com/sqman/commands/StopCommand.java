@@ -1,11 +1,13 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
 import com.sqman.service.ProcessService;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -75,6 +77,7 @@ public class StopCommand implements Callable<Integer> {
 
                 // Check if this specific version is running
                 if (!instanceService.isInstanceRunning(resolvedVersion)) {
+                    discardEphemeralData(resolvedVersion);
                     System.err.println("Error: Instance " + resolvedVersion + " is not running.");
                     return 1;
                 }
@@ -86,16 +89,23 @@ public class StopCommand implements Callable<Integer> {
             }
             System.out.println();
 
-            // Stop the instance
-            boolean stopped = processService.stopInstance(resolvedVersion, force);
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "stop");
+            try (lock) {
+                // Stop the instance
+                boolean stopped = processService.stopInstance(resolvedVersion, force);
 
-            if (stopped) {
-                return 0;
-            } else {
-                System.err.println();
-                System.err.println("Failed to stop instance. Try with --force flag:");
-                System.err.println("  sqman stop --force");
-                return 1;
+                if (stopped) {
+                    if (instanceService.cleanupEphemeralStorage(resolvedVersion)) {
+                        System.out.println("✓ Ephemeral data discarded");
+                    }
+                    return 0;
+                } else {
+                    System.err.println();
+                    System.err.println("Failed to stop instance. Try with --force flag:");
+                    System.err.println("  sqman stop --force");
+                    return 1;
+                }
             }
 
         } catch (Exception e) {
@@ -110,6 +120,21 @@ public class StopCommand implements Callable<Integer> {
      * Resolve version input - handles both version strings and numeric indices.
      * If input is a number, treats it as an index from the list command (1-based).
      */
+    /**
+     * Discard the ephemeral data an instance that crashed or was killed left on the tmpfs.
+     */
+    private void discardEphemeralData(String resolvedVersion) throws IOException, InterruptedException {
+        LockService.InstanceLock lock =
+            instanceService.lockInstance(resolvedVersion, LockService.Mode.EXCLUSIVE, "stop");
+        try (lock) {
+            // A run may have started since the check
+            if (!instanceService.isInstanceRunning(resolvedVersion)
+                    && instanceService.cleanupEphemeralStorage(resolvedVersion)) {
+                System.out.println("✓ Ephemeral data of the stopped instance discarded");
+            }
+        }
+    }
+
     private String resolveVersionOrIndex(String versionInput) {
         // Check if input is a numeric index
         try {
@@ -0,0 +1,91 @@
+package com.sqman.commands;
+
+import com.sqman.service.InstanceService;
+import com.sqman.service.ProcessService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Runs an operation on the files of an instance while it is stopped, since its data files are only
+ * consistent then. An instance that was running is stopped first and started again afterwards,
+ * even if the operation fails.
+ * The caller must hold the exclusive lock of the instance.
+ */
+final class StoppedInstance {
+
+    static final long STOP_TIMEOUT_SECONDS = 120;
+
+    /**
+     * An operation on the files of a stopped instance.
+     */
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    private StoppedInstance() {
+    }
+
+    /**
+     * Run an operation with the instance stopped, and start it again if it was running.
+     *
+     * @param reason What the instance is stopped for, shown to the user (e.g. "a consistent clone"), or null
+     * @return The exit code of the command: 0 on success, 1 if the instance could not be stopped or started again
+     */
+    static int run(InstanceService instanceService, ProcessService processService, String version,
+                   Path instancePath, String reason, Operation operation) throws Exception {
+        boolean wasRunning = instanceService.isInstanceRunning(version);
+        if (wasRunning && !stop(processService, version, instancePath, reason)) {
+            return 1;
+        }
+
+        try {
+            operation.run();
+        } catch (Exception e) {
+            if (wasRunning) {
+                try {
+                    start(processService, version);
+                } catch (Exception startFailure) {
+                    e.addSuppressed(startFailure);
+                }
+            }
+            throw e;
+        }
+        return wasRunning && !start(processService, version) ? 1 : 0;
+    }
+
+    /**
+     * Stop an instance if it is running, without starting it again.
+     *
+     * @param reason What the instance is stopped for, shown to the user, or null
+     * @return true if the instance is stopped
+     */
+    static boolean stopIfRunning(InstanceService instanceService, ProcessService processService, String version,
+                                 Path instancePath, String reason) throws IOException, InterruptedException {
+        return !instanceService.isInstanceRunning(version) || stop(processService, version, instancePath, reason);
+    }
+
+    private static boolean start(ProcessService processService, String version)
+            throws IOException, InterruptedException {
+        boolean started = false;
+        try {
+            started = processService.startInstance(version, 0, true);
+            return started;
+        } finally {
+            if (!started) {
+                System.err.println("Failed to start instance again. Start it with:");
+                System.err.println("  sqman run " + version);
+            }
+        }
+    }
+
+    private static boolean stop(ProcessService processService, String version, Path instancePath, String reason)
+            throws IOException, InterruptedException {
+        System.out.println("Stopping SonarQube " + version + (reason != null ? " for " + reason : "") + "...");
+        if (!processService.stopAndWait(instancePath, STOP_TIMEOUT_SECONDS)) {
+            System.err.println("Error: Could not stop SonarQube " + version);
+            return false;
+        }
+        return true;
+    }
+}
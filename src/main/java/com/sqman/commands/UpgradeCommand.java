@@ -0,0 +1,177 @@
+package com.sqman.commands;
+
+import com.sqman.model.InstanceManifest;
+import com.sqman.model.SonarQubeVersion;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import com.sqman.service.SonarPropertiesService;
+import com.sqman.service.StorageTierService;
+import com.sqman.service.UpgradeService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Command to move the data of an instance to a newer installed version
+ */
+@Command(
+    name = "upgrade",
+    description = "Copy the data, settings and plugins of an instance to a newer installed version and migrate its database",
+    mixinStandardHelpOptions = true
+)
+public class UpgradeCommand implements Callable<Integer> {
+
+    @Parameters(
+        index = "0",
+        description = "Instance to upgrade from (e.g., 10.3.0.82913 or partial like 10.3)"
+    )
+    private String fromVersion;
+
+    @Parameters(
+        index = "1",
+        description = "Installed instance to upgrade to (download it first with sqman download)"
+    )
+    private String toVersion;
+
+    @Option(
+        names = {"--force"},
+        description = "Replace the data of the target instance if it already has some"
+    )
+    private boolean force;
+
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final UpgradeService upgradeService;
+
+    public UpgradeCommand() {
+        this.processService = new ProcessService();
+        this.instanceService = new InstanceService();
+        this.upgradeService = new UpgradeService();
+    }
+
+    // Constructor for testing
+    public UpgradeCommand(ProcessService processService, InstanceService instanceService,
+                          UpgradeService upgradeService) {
+        this.processService = processService;
+        this.instanceService = instanceService;
+        this.upgradeService = upgradeService;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            String from = InstanceResolver.resolve(instanceService, fromVersion);
+            if (from == null) {
+                return 1;
+            }
+            String to = InstanceResolver.resolve(instanceService, toVersion);
+            if (to == null) {
+                return 1;
+            }
+            if (compare(from, to) >= 0) {
+                System.err.println("Error: " + to + " is not newer than " + from);
+                return 1;
+            }
+
+            // Always locked in the same order, so two opposite upgrades cannot deadlock
+            String first = from.compareTo(to) < 0 ? from : to;
+            String second = first.equals(from) ? to : from;
+            LockService.InstanceLock firstLock =
+                instanceService.lockInstance(first, LockService.Mode.EXCLUSIVE, "upgrade");
+            try (firstLock) {
+                LockService.InstanceLock secondLock =
+                    instanceService.lockInstance(second, LockService.Mode.EXCLUSIVE, "upgrade");
+                try (secondLock) {
+                    if (!upgrade(from, to)) {
+                        return 1;
+                    }
+                }
+            }
+
+            System.out.println("✓ SonarQube " + to + " is up with the data of " + from);
+            System.out.println("Once checked, delete the old instance with: sqman delete " + from);
+            return 0;
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error upgrading instance: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Copy the state of an instance to the newer one and migrate it. Both instances must be locked.
+     *
+     * @return true if the newer instance is up with the migrated data
+     */
+    private boolean upgrade(String from, String to) throws IOException, InterruptedException {
+        Path fromPath = instanceService.getInstancePath(from);
+        Path toPath = instanceService.getInstancePath(to);
+
+        if (instanceService.isInstanceRunning(to)) {
+            System.err.println("Error: SonarQube " + to + " is running, stop it first");
+            return false;
+        }
+        if (upgradeService.hasData(toPath) && !force) {
+            System.err.println("Error: SonarQube " + to + " already has data, use --force to replace it");
+            return false;
+        }
+        if (!upgradeService.isMigratable(fromPath)) {
+            System.err.println("Error: " + from + " uses the embedded H2 database, which SonarQube does not migrate");
+            System.err.println("Only instances on an external database (sonar.jdbc.url) can be upgraded");
+            return false;
+        }
+        if (!StoppedInstance.stopIfRunning(instanceService, processService, from, fromPath, null)) {
+            return false;
+        }
+
+        // Data is copied to where the new instance will read it
+        new StorageTierService().apply(toPath);
+        System.out.println("Copying the state of " + from + " to " + to + "...");
+        UpgradeService.Report report = upgradeService.copyState(fromPath, toPath);
+        System.out.println("✓ Copied data/, " + report.getSettings().size() + " setting(s) and "
+            + report.getCopiedPlugins().size() + " plugin(s)");
+        for (String plugin : report.getSkippedPlugins()) {
+            System.out.println("  Kept the bundled version instead of " + plugin);
+        }
+        // The external database is migrated in place, there is no copy of it
+        System.out.println("⚠ The external database will be migrated, " + from + " cannot use it afterwards");
+        System.out.println();
+
+        if (!processService.startInstance(toPath, to, true)) {
+            return false;
+        }
+        instanceService.recordRun(to);
+
+        System.out.println();
+        System.out.println("Migrating the database...");
+        int port = new SonarPropertiesService().getWebPort(toPath);
+        if (!upgradeService.migrate(port, message -> System.out.println("  " + message))) {
+            System.err.println("✗ Upgrade failed, see the logs of " + to);
+            System.err.println("The external database may be partially migrated, restore it from a backup");
+            if (!processService.stopAndWait(toPath, StoppedInstance.STOP_TIMEOUT_SECONDS)) {
+                System.err.println("Could not stop SonarQube " + to + ", stop it with: sqman stop");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compare the SonarQube versions of two instances, as recorded in their manifests.
+     */
+    private int compare(String from, String to) {
+        return new SonarQubeVersion(getVersion(from), SonarQubeVersion.Type.SQS)
+            .compareTo(new SonarQubeVersion(getVersion(to), SonarQubeVersion.Type.SQS));
+    }
+
+    private String getVersion(String id) {
+        InstanceManifest manifest = instanceService.getManifest(id);
+        return manifest != null && manifest.getVersion() != null ? manifest.getVersion() : id;
+    }
+}
@@ -0,0 +1,112 @@
+package com.sqman.commands;
+
+import com.sqman.service.ConfigService;
+import com.sqman.service.IdleWatchService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command to stop instances that have been idle for too long
+ */
+@Command(
+    name = "watch",
+    description = "Stop running instances that have been idle for too long",
+    mixinStandardHelpOptions = true
+)
+public class WatchCommand implements Callable<Integer> {
+
+    private static final String LOCK_FILE = "watch.lock";
+
+    @Option(
+        names = {"--timeout"},
+        description = "Idle minutes before an instance is stopped (default: idle.timeoutMinutes setting)"
+    )
+    private Long timeoutMinutes;
+
+    @Option(
+        names = {"--interval"},
+        description = "Seconds between two checks (default: 60)",
+        defaultValue = "60"
+    )
+    private long intervalSeconds;
+
+    @Option(
+        names = {"--once"},
+        description = "Check once and exit (for cron or systemd timers)"
+    )
+    private boolean once;
+
+    private final IdleWatchService idleWatchService;
+
+    public WatchCommand() {
+        this.idleWatchService = new IdleWatchService();
+    }
+
+    // Constructor for testing
+    public WatchCommand(IdleWatchService idleWatchService) {
+        this.idleWatchService = idleWatchService;
+    }
+
+    @Override
+    public Integer call() {
+        long timeout = timeoutMinutes != null ? timeoutMinutes : idleWatchService.getTimeoutMinutes();
+        if (timeout <= 0) {
+            System.err.println("Error: No idle timeout configured.");
+            System.err.println();
+            System.err.println("Set one in ~/.sqman/sqman.properties:");
+            System.err.println("  " + IdleWatchService.IDLE_TIMEOUT_MINUTES + "=120");
+            System.err.println("or pass --timeout <minutes>.");
+            return 1;
+        }
+
+        try {
+            if (once) {
+                check(timeout);
+                return 0;
+            }
+
+            // Only one watcher at a time, sqman run starts one for each instance it launches
+            Path lockFile = ConfigService.getSqmanHome().resolve(LOCK_FILE);
+            Files.createDirectories(lockFile.getParent());
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+
+                if (lock == null) {
+                    System.out.println("Idle watcher already running.");
+                    return 0;
+                }
+
+                System.out.println("Watching for instances idle for more than " + timeout + " minutes...");
+                while (idleWatchService.isAnyInstanceRunning()) {
+                    TimeUnit.SECONDS.sleep(intervalSeconds);
+                    check(timeout);
+                }
+                System.out.println("No instance running, idle watcher exiting.");
+            }
+            return 0;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error watching instances: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void check(long timeout) throws Exception {
+        List<String> stopped = idleWatchService.stopIdleInstances(timeout);
+        for (String version : stopped) {
+            System.out.println("✓ Stopped idle instance " + version + " (resume with: sqman run)");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sqman.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description of an instance exported with "sqman export", stored as the first entry of the archive.
+ */
+public class ExportManifest {
+
+    private int formatVersion;
+    private String version;
+    private String edition;
+    private long exportedAt;
+    private List<String> plugins = new ArrayList<>();
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getEdition() {
+        return edition;
+    }
+
+    public void setEdition(String edition) {
+        this.edition = edition;
+    }
+
+    public long getExportedAt() {
+        return exportedAt;
+    }
+
+    public void setExportedAt(long exportedAt) {
+        this.exportedAt = exportedAt;
+    }
+
+    public List<String> getPlugins() {
+        return plugins;
+    }
+
+    public void setPlugins(List<String> plugins) {
+        this.plugins = plugins;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sqman.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description of an installed instance, written to instance.json when it is downloaded.
+ */
+public class InstanceManifest {
+
+    private int formatVersion;
+    private String version;
+    private String edition;
+    // SQCB or SQS
+    private String type;
+    private String sourceUrl;
+    // SHA-256 and size of the downloaded ZIP
+    private String sha256;
+    private long downloadSize;
+    // Size of the extracted distribution
+    private long size;
+    private long installedAt;
+    // Plugin JARs of lib/extensions and extensions/plugins
+    private List<String> plugins = new ArrayList<>();
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getEdition() {
+        return edition;
+    }
+
+    public void setEdition(String edition) {
+        this.edition = edition;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public void setSourceUrl(String sourceUrl) {
+        this.sourceUrl = sourceUrl;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public long getDownloadSize() {
+        return downloadSize;
+    }
+
+    public void setDownloadSize(long downloadSize) {
+        this.downloadSize = downloadSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getInstalledAt() {
+        return installedAt;
+    }
+
+    public void setInstalledAt(long installedAt) {
+        this.installedAt = installedAt;
+    }
+
+    public List<String> getPlugins() {
+        return plugins;
+    }
+
+    public void setPlugins(List<String> plugins) {
+        this.plugins = plugins;
+    }
+}
@@ -0,0 +1,126 @@
+package com.sqman.model;
+
+import java.util.Map;
+
+/**
+ * Runtime state sqman keeps about an installed instance (stored as sqman-state.json
+ * in the instance directory). Fields are null when the feature is not in use.
+ */
+public class InstanceState {
+
+    private String ephemeralDir;
+    private String previousDataPath;
+    private String previousTempPath;
+    private String dataDir;
+    private String tempDir;
+    private String logsDir;
+    private Long idleStoppedAt;
+    private Map<String, String> originalHeapOpts;
+    private IsolationInfo isolation;
+    private String clonedFrom;
+    private Long lastRunAt;
+    private Long compactedSize;
+
+    public String getEphemeralDir() {
+        return ephemeralDir;
+    }
+
+    public void setEphemeralDir(String ephemeralDir) {
+        this.ephemeralDir = ephemeralDir;
+    }
+
+    public String getPreviousDataPath() {
+        return previousDataPath;
+    }
+
+    public void setPreviousDataPath(String previousDataPath) {
+        this.previousDataPath = previousDataPath;
+    }
+
+    public String getPreviousTempPath() {
+        return previousTempPath;
+    }
+
+    public void setPreviousTempPath(String previousTempPath) {
+        this.previousTempPath = previousTempPath;
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    public void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public String getLogsDir() {
+        return logsDir;
+    }
+
+    public void setLogsDir(String logsDir) {
+        this.logsDir = logsDir;
+    }
+
+    public Long getIdleStoppedAt() {
+        return idleStoppedAt;
+    }
+
+    public void setIdleStoppedAt(Long idleStoppedAt) {
+        this.idleStoppedAt = idleStoppedAt;
+    }
+
+    public Map<String, String> getOriginalHeapOpts() {
+        return originalHeapOpts;
+    }
+
+    public void setOriginalHeapOpts(Map<String, String> originalHeapOpts) {
+        this.originalHeapOpts = originalHeapOpts;
+    }
+
+    public IsolationInfo getIsolation() {
+        return isolation;
+    }
+
+    public void setIsolation(IsolationInfo isolation) {
+        this.isolation = isolation;
+    }
+
+    public String getClonedFrom() {
+        return clonedFrom;
+    }
+
+    public void setClonedFrom(String clonedFrom) {
+        this.clonedFrom = clonedFrom;
+    }
+
+    public Long getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public void setLastRunAt(Long lastRunAt) {
+        this.lastRunAt = lastRunAt;
+    }
+
+    public Long getCompactedSize() {
+        return compactedSize;
+    }
+
+    public void setCompactedSize(Long compactedSize) {
+        this.compactedSize = compactedSize;
+    }
+
+    /**
+     * Check if the instance currently runs with RAM-backed data and temp directories.
+     */
+    public boolean isEphemeral() {
+        return ephemeralDir != null;
+    }
+}
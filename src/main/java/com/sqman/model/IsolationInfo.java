@@ -0,0 +1,63 @@
+package com.sqman.model;
+
+/**
+ * CPU isolation of an instance started with "sqman run --isolate", with the host
+ * conditions at start so benchmark results can be compared.
+ */
+public class IsolationInfo {
+
+    private String webCpus;
+    private String ceCpus;
+    private String searchCpus;
+    private String governor;
+    private String loadAverage;
+    private long startedAt;
+
+    public String getWebCpus() {
+        return webCpus;
+    }
+
+    public void setWebCpus(String webCpus) {
+        this.webCpus = webCpus;
+    }
+
+    public String getCeCpus() {
+        return ceCpus;
+    }
+
+    public void setCeCpus(String ceCpus) {
+        this.ceCpus = ceCpus;
+    }
+
+    public String getSearchCpus() {
+        return searchCpus;
+    }
+
+    public void setSearchCpus(String searchCpus) {
+        this.searchCpus = searchCpus;
+    }
+
+    public String getGovernor() {
+        return governor;
+    }
+
+    public void setGovernor(String governor) {
+        this.governor = governor;
+    }
+
+    public String getLoadAverage() {
+        return loadAverage;
+    }
+
+    public void setLoadAverage(String loadAverage) {
+        this.loadAverage = loadAverage;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+}
@@ -0,0 +1,47 @@
+package com.sqman.model;
+
+/**
+ * Original version of a plugin replaced in an instance (stored in original-plugins.json
+ * in the instance directory). The JAR itself is kept in the shared plugin store.
+ */
+public class PluginBackup {
+
+    private String key;
+    // File name of the JAR in lib/extensions, restored under the same name
+    private String fileName;
+    // Hex SHA-256 of the JAR, name of its blob in the plugin store
+    private String sha256;
+    private long backedUpAt;
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public long getBackedUpAt() {
+        return backedUpAt;
+    }
+
+    public void setBackedUpAt(long backedUpAt) {
+        this.backedUpAt = backedUpAt;
+    }
+}
@@ -0,0 +1,91 @@
+package com.sqman.model;
+
+/**
+ * A pre-started instance of the warm pool.
+ */
+public class PoolSlot {
+
+    public enum Status {
+        STARTING,
+        READY,
+        LEASED,
+        RECYCLING
+    }
+
+    private String id;
+    private String version;
+    private String path;
+    private int webPort;
+    private Status status;
+    private String token;
+    private long readySince;
+    private long leasedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getWebPort() {
+        return webPort;
+    }
+
+    public void setWebPort(int webPort) {
+        this.webPort = webPort;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public long getReadySince() {
+        return readySince;
+    }
+
+    public void setReadySince(long readySince) {
+        this.readySince = readySince;
+    }
+
+    public long getLeasedAt() {
+        return leasedAt;
+    }
+
+    public void setLeasedAt(long leasedAt) {
+        this.leasedAt = leasedAt;
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + webPort;
+    }
+}
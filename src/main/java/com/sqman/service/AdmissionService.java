@@ -0,0 +1,420 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to check that an instance fits in memory before starting it.
+ *
+ * The footprint is estimated from the -Xmx of the web, compute engine and search JVMs
+ * (sonar.*.javaOpts) plus their non-heap overhead. When it does not fit, the start is
+ * refused, queued until memory frees up (first come, first served) or the heaps are shrunk.
+ *
+ * Admitted starts keep a reservation for a few minutes, the time for their JVMs to grow,
+ * so concurrent starts don't all see the same free memory.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   admission.policy               - refuse, queue or shrink (default: refuse)
+ *   admission.queueTimeoutMinutes  - Maximum time a queued start waits (default: 30)
+ */
+public class AdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionService.class);
+    public static final String ADMISSION_POLICY = "admission.policy";
+    public static final String ADMISSION_QUEUE_TIMEOUT = "admission.queueTimeoutMinutes";
+    private static final long DEFAULT_QUEUE_TIMEOUT_MINUTES = 30;
+    private static final long MB = 1024L * 1024;
+    private static final long DEFAULT_HEAP = 512 * MB; // SonarQube default for all three JVMs
+    private static final long MIN_HEAP = 256 * MB;
+    private static final long JVM_OVERHEAD = 256 * MB; // Metaspace, code cache, thread stacks, GC
+    private static final long MAIN_PROCESS = 128 * MB; // Launcher JVM supervising the others
+    private static final long RESERVATION_MILLIS = TimeUnit.MINUTES.toMillis(3);
+    private static final long POLL_INTERVAL_MILLIS = 5000;
+    private static final Pattern XMX = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+    private static final Pattern XMS = Pattern.compile("-Xms\\d+[kKmMgG]?");
+    // File locks are per JVM, threads of this process (e.g. pool fill) are serialized here
+    private static final Object PROCESS_LOCK = new Object();
+
+    public enum Policy {
+        REFUSE, QUEUE, SHRINK;
+
+        public static Policy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown low-memory policy: " + value
+                    + " (expected refuse, queue or shrink)");
+            }
+        }
+    }
+
+    public enum HeapJvm {
+        WEB("sonar.web.javaOpts"),
+        COMPUTE_ENGINE("sonar.ce.javaOpts"),
+        SEARCH("sonar.search.javaOpts");
+
+        private final String optsProperty;
+
+        HeapJvm(String optsProperty) {
+            this.optsProperty = optsProperty;
+        }
+
+        public String getOptsProperty() {
+            return optsProperty;
+        }
+    }
+
+    private final ConfigService configService;
+    private final MemoryService memoryService;
+    private final Path queueDir;
+    private final SonarPropertiesService propertiesService;
+    private final InstanceStateService stateService;
+
+    public AdmissionService() {
+        this(new ConfigService(), new MemoryService(), ConfigService.getSqmanHome().resolve("start-queue"));
+    }
+
+    // Constructor for testing
+    public AdmissionService(ConfigService configService, MemoryService memoryService, Path queueDir) {
+        this.configService = configService;
+        this.memoryService = memoryService;
+        this.queueDir = queueDir;
+        this.propertiesService = new SonarPropertiesService();
+        this.stateService = new InstanceStateService();
+    }
+
+    /**
+     * Get the policy from the admission.policy setting.
+     */
+    public Policy getDefaultPolicy() {
+        return Policy.parse(configService.get(ADMISSION_POLICY, "refuse"));
+    }
+
+    /**
+     * Make sure the instance fits in memory before it is started, applying the policy if not.
+     * Returns once the start is admitted; a reservation is then held for the instance.
+     *
+     * @param instancePath Instance directory
+     * @param label Name of the instance in messages and reservations
+     * @param policy What to do when the instance does not fit
+     * @throws IOException if the start is refused, or the queue timed out
+     */
+    public void admit(Path instancePath, String label, Policy policy) throws IOException, InterruptedException {
+        // Heaps shrunk by a previous start are restored whenever memory allows it
+        restoreHeaps(instancePath);
+        long required = estimateFootprint(instancePath);
+
+        if (policy == Policy.QUEUE) {
+            waitInQueue(instancePath, label, required);
+            return;
+        }
+
+        withLock(() -> {
+            long available = getUnreservedMemory();
+            if (available < 0 || required <= available) {
+                reserve(label, required);
+                return null;
+            }
+
+            if (policy == Policy.SHRINK && shrinkHeaps(instancePath, available)) {
+                System.out.println("⚠ Low memory: heaps reduced to fit in " + MemoryService.formatSize(available)
+                    + " (restored on the next start with enough memory)");
+                reserve(label, estimateFootprint(instancePath));
+                return null;
+            }
+
+            throw new IOException("Not enough memory to start " + label + ": "
+                + MemoryService.formatSize(available) + " available, about "
+                + MemoryService.formatSize(required) + " required"
+                + (policy == Policy.REFUSE ? " (use --on-low-memory queue or shrink)" : ""));
+        });
+    }
+
+    /**
+     * Drop the reservation of an instance whose start failed.
+     */
+    public void cancel(String label) throws IOException {
+        Files.deleteIfExists(queueDir.resolve(label + ".reserved"));
+    }
+
+    /**
+     * Estimate the memory used by a running instance from its configured heaps.
+     *
+     * @return Estimated resident memory in bytes
+     */
+    public long estimateFootprint(Path instancePath) throws IOException {
+        Map<String, String> properties = propertiesService.readProperties(instancePath);
+        long total = MAIN_PROCESS;
+
+        for (HeapJvm jvm : HeapJvm.values()) {
+            long heap = parseMaxHeap(properties.get(jvm.getOptsProperty()));
+            total += heap + JVM_OVERHEAD;
+            if (jvm == HeapJvm.SEARCH) {
+                // Elasticsearch direct buffers default to half the heap
+                total += heap / 2;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Extract -Xmx from JVM options.
+     *
+     * @return Maximum heap in bytes, SonarQube's default if not set
+     */
+    long parseMaxHeap(String javaOpts) {
+        if (javaOpts == null) {
+            return DEFAULT_HEAP;
+        }
+
+        long heap = DEFAULT_HEAP;
+        Matcher matcher = XMX.matcher(javaOpts);
+        while (matcher.find()) { // The last -Xmx wins, like in the JVM
+            long value = Long.parseLong(matcher.group(1));
+            switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+                case "k" -> heap = value * 1024;
+                case "m" -> heap = value * MB;
+                case "g" -> heap = value * 1024 * MB;
+                default -> heap = value;
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Scale the three heaps down so the instance fits in the available memory.
+     * The original options are kept in sqman-state.json to be restored later.
+     *
+     * @return false if the instance does not fit even with minimal heaps
+     */
+    boolean shrinkHeaps(Path instancePath, long available) throws IOException {
+        Map<String, String> properties = propertiesService.readProperties(instancePath);
+
+        Map<HeapJvm, Long> heaps = new LinkedHashMap<>();
+        long totalHeap = 0;
+        for (HeapJvm jvm : HeapJvm.values()) {
+            long heap = parseMaxHeap(properties.get(jvm.getOptsProperty()));
+            heaps.put(jvm, heap);
+            totalHeap += heap;
+        }
+
+        // Search needs 1.5x its heap (direct buffers), so scale on the weighted total
+        long fixed = MAIN_PROCESS + JVM_OVERHEAD * HeapJvm.values().length;
+        long weightedHeap = totalHeap + heaps.get(HeapJvm.SEARCH) / 2;
+        double factor = (double) (available - fixed) / weightedHeap;
+        if (factor <= 0) {
+            return false;
+        }
+
+        Map<String, String> originals = new LinkedHashMap<>();
+        Map<HeapJvm, Long> shrunk = new LinkedHashMap<>();
+        long weightedShrunk = 0;
+        for (Map.Entry<HeapJvm, Long> entry : heaps.entrySet()) {
+            long heap = Math.max(MIN_HEAP, (long) (entry.getValue() * factor) / MB * MB);
+            shrunk.put(entry.getKey(), heap);
+            weightedShrunk += entry.getKey() == HeapJvm.SEARCH ? heap + heap / 2 : heap;
+        }
+        if (fixed + weightedShrunk > available) {
+            return false;
+        }
+
+        for (Map.Entry<HeapJvm, Long> entry : shrunk.entrySet()) {
+            String property = entry.getKey().getOptsProperty();
+            String opts = properties.get(property);
+            originals.put(property, opts != null ? opts : "");
+            propertiesService.setProperty(instancePath, property,
+                withHeap(opts, entry.getValue(), entry.getKey() == HeapJvm.SEARCH));
+        }
+
+        InstanceState state = stateService.load(instancePath);
+        if (state.getOriginalHeapOpts() == null) {
+            state.setOriginalHeapOpts(originals);
+            stateService.save(instancePath, state);
+        }
+        return true;
+    }
+
+    /**
+     * Put back the JVM options changed by shrinkHeaps.
+     */
+    void restoreHeaps(Path instancePath) throws IOException {
+        InstanceState state = stateService.load(instancePath);
+        Map<String, String> originals = state.getOriginalHeapOpts();
+        if (originals == null) {
+            return;
+        }
+
+        for (Map.Entry<String, String> entry : originals.entrySet()) {
+            String value = entry.getValue().isEmpty() ? null : entry.getValue();
+            propertiesService.setProperty(instancePath, entry.getKey(), value);
+        }
+        state.setOriginalHeapOpts(null);
+        stateService.save(instancePath, state);
+    }
+
+    /**
+     * Replace -Xmx (and -Xms, which must not exceed it) in JVM options.
+     * Elasticsearch requires equal initial and maximum heaps.
+     */
+    private String withHeap(String opts, long heap, boolean fixedSize) {
+        String heapMb = (heap / MB) + "m";
+        List<String> kept = new ArrayList<>();
+        if (opts != null) {
+            for (String opt : opts.trim().split("\\s+")) {
+                if (!opt.isEmpty() && !XMX.matcher(opt).matches() && !XMS.matcher(opt).matches()) {
+                    kept.add(opt);
+                }
+            }
+        }
+        kept.add(0, "-Xmx" + heapMb);
+        kept.add(1, "-Xms" + (fixedSize ? heapMb : Math.min(128, heap / MB) + "m"));
+        return String.join(" ", kept);
+    }
+
+    /**
+     * Wait until this start is first in the queue and fits in memory.
+     */
+    private void waitInQueue(Path instancePath, String label, long required) throws IOException, InterruptedException {
+        Files.createDirectories(queueDir);
+        Path ticket = queueDir.resolve(String.format("%020d-%d-%s.ticket",
+            System.currentTimeMillis(), ProcessHandle.current().pid(), label));
+        Files.writeString(ticket, String.valueOf(required));
+
+        long timeoutMinutes = configService.getLong(ADMISSION_QUEUE_TIMEOUT, DEFAULT_QUEUE_TIMEOUT_MINUTES);
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        boolean announced = false;
+
+        try {
+            while (true) {
+                Boolean admitted = withLock(() -> {
+                    List<Path> tickets = listTickets();
+                    long available = getUnreservedMemory();
+                    if (!tickets.isEmpty() && tickets.get(0).equals(ticket)
+                        && (available < 0 || required <= available)) {
+                        reserve(label, required);
+                        return true;
+                    }
+                    return false;
+                });
+                if (admitted) {
+                    return;
+                }
+
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Timed out after " + timeoutMinutes + " minutes waiting for "
+                        + MemoryService.formatSize(required) + " of free memory to start " + label);
+                }
+                if (!announced) {
+                    System.out.println("Not enough free memory for " + label + " (about "
+                        + MemoryService.formatSize(required) + " needed), waiting in the start queue...");
+                    announced = true;
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+        } finally {
+            Files.deleteIfExists(ticket);
+        }
+    }
+
+    /**
+     * List queue tickets in arrival order, removing those of processes that are gone.
+     */
+    private List<Path> listTickets() throws IOException {
+        List<Path> tickets;
+        try (Stream<Path> stream = Files.list(queueDir)) {
+            tickets = stream
+                .filter(path -> path.getFileName().toString().endsWith(".ticket"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        List<Path> alive = new ArrayList<>();
+        for (Path ticket : tickets) {
+            String[] parts = ticket.getFileName().toString().split("-", 3);
+            boolean running = parts.length == 3 && ProcessHandle.of(Long.parseLong(parts[1]))
+                .map(ProcessHandle::isAlive)
+                .orElse(false);
+            if (running) {
+                alive.add(ticket);
+            } else {
+                logger.info("Removing stale start queue ticket {}", ticket.getFileName());
+                Files.deleteIfExists(ticket);
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Get the available memory minus what recently admitted starts will still use.
+     *
+     * @return Memory in bytes, or -1 if unknown
+     */
+    private long getUnreservedMemory() throws IOException {
+        long available = memoryService.getAvailableMemory();
+        if (available < 0 || !Files.isDirectory(queueDir)) {
+            return available;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Path> reservations;
+        try (Stream<Path> stream = Files.list(queueDir)) {
+            reservations = stream
+                .filter(path -> path.getFileName().toString().endsWith(".reserved"))
+                .collect(Collectors.toList());
+        }
+
+        for (Path reservation : reservations) {
+            String[] parts = Files.readString(reservation).trim().split(":");
+            long expiresAt = Long.parseLong(parts[1]);
+            if (expiresAt < now) {
+                Files.deleteIfExists(reservation);
+            } else {
+                available -= Long.parseLong(parts[0]);
+            }
+        }
+        return Math.max(0, available);
+    }
+
+    private void reserve(String label, long bytes) throws IOException {
+        Files.createDirectories(queueDir);
+        Files.writeString(queueDir.resolve(label + ".reserved"),
+            bytes + ":" + (System.currentTimeMillis() + RESERVATION_MILLIS));
+    }
+
+    /**
+     * Run an admission decision while holding the queue lock.
+     */
+    private <T> T withLock(LockedAction<T> action) throws IOException {
+        Files.createDirectories(queueDir);
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(queueDir.resolve("admission.lock"),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released with the channel
+                channel.lock();
+                return action.run();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,233 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to manage AppCDS (Application Class-Data Sharing) archives for the
+ * web, compute engine and search JVMs of a SonarQube instance.
+ *
+ * On the first start, each JVM records the classes it loads and dumps a dynamic
+ * archive when it exits. On later starts, the archive is mapped at startup so the
+ * classes don't need to be loaded and verified again.
+ */
+public class AppCdsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppCdsService.class);
+    private static final String CDS_DIR = "cds";
+    private static final String FINGERPRINT_FILE = "extensions.fingerprint";
+    private static final String SHARED_ARCHIVE_FLAG = "-XX:SharedArchiveFile=";
+    private static final String RECORD_ARCHIVE_FLAG = "-XX:ArchiveClassesAtExit=";
+    private static final int MIN_JAVA_VERSION = 13; // Dynamic archives need JDK 13+
+
+    public enum JvmProcess {
+        WEB("web", "sonar.web.javaAdditionalOpts"),
+        COMPUTE_ENGINE("ce", "sonar.ce.javaAdditionalOpts"),
+        SEARCH("search", "sonar.search.javaAdditionalOpts");
+
+        private final String archiveName;
+        private final String optsProperty;
+
+        JvmProcess(String archiveName, String optsProperty) {
+            this.archiveName = archiveName;
+            this.optsProperty = optsProperty;
+        }
+
+        public String getArchiveName() {
+            return archiveName;
+        }
+
+        public String getOptsProperty() {
+            return optsProperty;
+        }
+    }
+
+    private final SonarPropertiesService propertiesService;
+
+    public AppCdsService() {
+        this.propertiesService = new SonarPropertiesService();
+    }
+
+    /**
+     * Configure the instance to use AppCDS on its next start.
+     * Processes with a valid archive get -XX:SharedArchiveFile, the others record one
+     * with -XX:ArchiveClassesAtExit. Archives are discarded when lib/extensions changed.
+     *
+     * @return Processes that will record a new archive (empty if all archives are used)
+     */
+    public List<JvmProcess> configure(Path instancePath) throws IOException {
+        Path cdsDir = instancePath.resolve(CDS_DIR);
+        Files.createDirectories(cdsDir);
+
+        // Archives embed the plugin classes, so they are only valid for the same extensions
+        String fingerprint = computeExtensionsFingerprint(instancePath);
+        Path fingerprintFile = cdsDir.resolve(FINGERPRINT_FILE);
+        String storedFingerprint = Files.exists(fingerprintFile) ? Files.readString(fingerprintFile).trim() : null;
+
+        if (!fingerprint.equals(storedFingerprint)) {
+            if (storedFingerprint != null) {
+                System.out.println("AppCDS: plugins changed, discarding existing archives");
+            }
+            invalidateArchives(instancePath);
+            Files.writeString(fingerprintFile, fingerprint);
+        }
+
+        List<JvmProcess> recording = new ArrayList<>();
+        for (JvmProcess process : JvmProcess.values()) {
+            Path archive = getArchivePath(instancePath, process);
+            String flag;
+            if (Files.exists(archive)) {
+                flag = SHARED_ARCHIVE_FLAG + archive.toAbsolutePath();
+            } else {
+                flag = RECORD_ARCHIVE_FLAG + archive.toAbsolutePath();
+                recording.add(process);
+            }
+            updateOpts(instancePath, process, flag);
+        }
+        return recording;
+    }
+
+    /**
+     * Remove the AppCDS flags added by sqman from sonar.properties, keeping user options.
+     */
+    public void disable(Path instancePath) throws IOException {
+        if (!Files.exists(propertiesService.getPropertiesFile(instancePath))) {
+            return;
+        }
+        for (JvmProcess process : JvmProcess.values()) {
+            String opts = propertiesService.getProperty(instancePath, process.getOptsProperty());
+            if (opts != null && (opts.contains(SHARED_ARCHIVE_FLAG) || opts.contains(RECORD_ARCHIVE_FLAG))) {
+                updateOpts(instancePath, process, null);
+            }
+        }
+    }
+
+    /**
+     * Delete all archives of an instance so they get recorded again on the next start.
+     */
+    public void invalidateArchives(Path instancePath) throws IOException {
+        for (JvmProcess process : JvmProcess.values()) {
+            Files.deleteIfExists(getArchivePath(instancePath, process));
+        }
+    }
+
+    /**
+     * Get the archive location of a process inside the instance directory.
+     */
+    public Path getArchivePath(Path instancePath, JvmProcess process) {
+        return instancePath.resolve(CDS_DIR).resolve(process.getArchiveName() + ".jsa");
+    }
+
+    /**
+     * Check whether the Java runtime used by SonarQube supports dynamic archives.
+     * SonarQube uses SONAR_JAVA_PATH if set, otherwise the java found on the PATH.
+     */
+    public boolean isSupported() {
+        String javaPath = System.getenv("SONAR_JAVA_PATH");
+        if (javaPath == null || javaPath.isBlank()) {
+            javaPath = "java";
+        }
+
+        try {
+            Process process = new ProcessBuilder(javaPath, "-version")
+                .redirectErrorStream(true)
+                .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            process.waitFor();
+            return parseJavaMajorVersion(output) >= MIN_JAVA_VERSION;
+        } catch (IOException e) {
+            logger.warn("Could not determine Java version: {}", e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Extract the major version from "java -version" output.
+     * Examples: version "17.0.9" -> 17, version "1.8.0_392" -> 8
+     */
+    int parseJavaMajorVersion(String versionOutput) {
+        int start = versionOutput.indexOf('"');
+        int end = start >= 0 ? versionOutput.indexOf('"', start + 1) : -1;
+        if (start < 0 || end < 0) {
+            return 0;
+        }
+
+        String[] parts = versionOutput.substring(start + 1, end).split("[.\\-_+]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            return major == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : major;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replace the sqman-managed CDS flag in a process's additional options.
+     * A null flag only strips the managed flags.
+     */
+    private void updateOpts(Path instancePath, JvmProcess process, String flag) throws IOException {
+        String opts = propertiesService.getProperty(instancePath, process.getOptsProperty());
+
+        List<String> kept = new ArrayList<>();
+        if (opts != null) {
+            for (String opt : opts.trim().split("\\s+")) {
+                if (!opt.isEmpty() && !opt.startsWith(SHARED_ARCHIVE_FLAG) && !opt.startsWith(RECORD_ARCHIVE_FLAG)) {
+                    kept.add(opt);
+                }
+            }
+        }
+        if (flag != null) {
+            kept.add(flag);
+        }
+
+        String value = kept.isEmpty() ? null : String.join(" ", kept);
+        propertiesService.setProperty(instancePath, process.getOptsProperty(), value);
+    }
+
+    /**
+     * Compute a fingerprint of the installed plugins (name, size and modification time).
+     */
+    private String computeExtensionsFingerprint(Path instancePath) throws IOException {
+        Path extensionsDir = instancePath.resolve("lib/extensions");
+        String listing = "";
+
+        if (Files.isDirectory(extensionsDir)) {
+            try (Stream<Path> stream = Files.list(extensionsDir)) {
+                listing = stream
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .map(path -> {
+                        try {
+                            return path.getFileName() + ":" + Files.size(path) + ":"
+                                + Files.getLastModifiedTime(path).toMillis();
+                        } catch (IOException e) {
+                            return path.getFileName().toString();
+                        }
+                    })
+                    .collect(Collectors.joining("\n"));
+            }
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(listing.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.sqman.service;
+
+import com.sqman.SQManCLI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Service to run sqman commands in a detached background process, so the
+ * calling command can return immediately.
+ */
+public class BackgroundTaskService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundTaskService.class);
+
+    /**
+     * Spawn a detached sqman process running the given command.
+     *
+     * @param logFile File receiving the output of the background process
+     * @param args sqman command line (e.g. "pool", "recycle", "slot-1")
+     */
+    public void spawn(Path logFile, String... args) throws IOException {
+        start(logFile, new ArrayList<>(), args);
+    }
+
+    /**
+     * Spawn a detached sqman process with the lowest CPU and I/O priority, for housekeeping
+     * that must not slow down running instances. Runs at normal priority where nice is missing.
+     *
+     * @param logFile File receiving the output of the background process
+     * @param args sqman command line
+     */
+    public void spawnLowPriority(Path logFile, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        if (isExecutable("nice")) {
+            command.addAll(List.of(findExecutable("nice").toString(), "-n", "19"));
+        }
+        if (isExecutable("ionice")) {
+            // Idle class: only gets disk time when no other process needs it
+            command.addAll(List.of(findExecutable("ionice").toString(), "-c", "3"));
+        }
+        start(logFile, command, args);
+    }
+
+    private void start(Path logFile, List<String> command, String... args) throws IOException {
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SQManCLI.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        Files.createDirectories(logFile.getParent());
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()));
+        pb.redirectInput(ProcessBuilder.Redirect.from(new File(nullDevice())));
+
+        Process process = pb.start();
+        logger.info("Spawned background task (PID {}): {}", process.pid(), String.join(" ", args));
+    }
+
+    private boolean isExecutable(String name) {
+        return findExecutable(name) != null;
+    }
+
+    private Path findExecutable(String name) {
+        for (String dir : new String[] {"/usr/bin", "/bin"}) {
+            Path path = Paths.get(dir, name);
+            if (Files.isExecutable(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private String nullDevice() {
+        return System.getProperty("os.name").toLowerCase().contains("win") ? "NUL" : "/dev/null";
+    }
+}
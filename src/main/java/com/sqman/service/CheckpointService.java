@@ -0,0 +1,452 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to save and restore named checkpoints of an instance: its data directory,
+ * conf/, lib/extensions/ and token.
+ *
+ * Checkpoints are cloned with reflinks (cp --reflink=always) where the filesystem supports
+ * copy-on-write (btrfs, XFS, ...), which is probed once per filesystem. Elsewhere, files
+ * unchanged since the previous checkpoint are hardlinked to it, and a reset only copies back
+ * the files whose size or modification time changed, so most Elasticsearch segments are
+ * never copied again.
+ * Checkpoint files are never modified once written, which is what makes sharing them safe.
+ *
+ * Checkpoints live in the instance directory, so they survive the RAM-backed data directory of an
+ * ephemeral run. Trees on another filesystem (storage tier, tmpfs) are copied instead of cloned.
+ */
+public class CheckpointService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+    private static final String CHECKPOINTS = "checkpoints";
+    private static final String DATA = "data";
+    private static final String CONF = "conf";
+    private static final String EXTENSIONS = "extensions";
+    private static final String TOKEN = "token";
+    // Whether cp --reflink=always works, per filesystem
+    private static final Map<FileStore, Boolean> REFLINK_SUPPORT = new ConcurrentHashMap<>();
+
+    private final StorageTierService storageTierService;
+    private final FileTreeService fileTreeService;
+
+    public CheckpointService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public CheckpointService(ConfigService configService) {
+        this.storageTierService = new StorageTierService(configService);
+        this.fileTreeService = new FileTreeService();
+    }
+
+    /**
+     * Check that a checkpoint name can be used as a directory name.
+     */
+    public static boolean isValidName(String name) {
+        return NAME.matcher(name).matches();
+    }
+
+    /**
+     * Get the directory holding the checkpoints of an instance.
+     */
+    public Path getCheckpointsDir(Path instancePath) {
+        return instancePath.toAbsolutePath().resolve(CHECKPOINTS);
+    }
+
+    /**
+     * List the checkpoints of an instance, oldest first.
+     */
+    public List<String> list(Path instancePath) throws IOException {
+        Path checkpointsDir = getCheckpointsDir(instancePath);
+        if (!Files.isDirectory(checkpointsDir)) {
+            return List.of();
+        }
+        try (Stream<Path> stream = Files.list(checkpointsDir)) {
+            return stream
+                .filter(Files::isDirectory)
+                .filter(path -> isValidName(path.getFileName().toString()))
+                .sorted(Comparator.comparing(this::lastModified))
+                .map(path -> path.getFileName().toString())
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Save a checkpoint of a stopped instance, replacing any checkpoint with the same name.
+     */
+    public TreeStats create(Path instancePath, String name) throws IOException {
+        Path checkpointsDir = getCheckpointsDir(instancePath);
+        Path checkpoint = checkpointsDir.resolve(name);
+        Path previous = latestCheckpoint(instancePath);
+
+        // Built aside and renamed, so an interrupted checkpoint never replaces a good one
+        Path staging = checkpointsDir.resolve("." + name + ".tmp");
+        fileTreeService.deleteTree(staging);
+        Files.createDirectories(staging);
+
+        TreeStats stats = new TreeStats();
+        for (String tree : new String[] {DATA, CONF, EXTENSIONS}) {
+            Path source = getTree(instancePath, tree);
+            if (Files.isDirectory(source)) {
+                snapshotTree(source, staging.resolve(tree),
+                    previous != null ? previous.resolve(tree) : null, stats);
+            }
+        }
+        Path tokenFile = instancePath.resolve(TOKEN);
+        if (Files.exists(tokenFile)) {
+            Files.copy(tokenFile, staging.resolve(TOKEN), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+
+        fileTreeService.deleteTree(checkpoint);
+        Files.move(staging, checkpoint, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Checkpoint {} of {} saved: {}", name, instancePath.getFileName(), stats);
+        return stats;
+    }
+
+    /**
+     * Bring a stopped instance back to a checkpoint.
+     *
+     * @throws IOException if the checkpoint does not exist
+     */
+    public TreeStats restore(Path instancePath, String name) throws IOException {
+        Path checkpoint = getCheckpointsDir(instancePath).resolve(name);
+        if (!isValidName(name) || !Files.isDirectory(checkpoint)) {
+            throw new IOException("Checkpoint not found: " + name);
+        }
+
+        TreeStats stats = new TreeStats();
+        for (String tree : new String[] {DATA, CONF, EXTENSIONS}) {
+            Path saved = checkpoint.resolve(tree);
+            if (Files.isDirectory(saved)) {
+                restoreTree(saved, getTree(instancePath, tree), stats);
+            }
+        }
+
+        Path savedToken = checkpoint.resolve(TOKEN);
+        if (Files.exists(savedToken)) {
+            Files.copy(savedToken, instancePath.resolve(TOKEN),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        } else {
+            Files.deleteIfExists(instancePath.resolve(TOKEN));
+        }
+        logger.info("Instance {} reset to checkpoint {}: {}", instancePath.getFileName(), name, stats);
+        return stats;
+    }
+
+    /**
+     * Delete a checkpoint.
+     *
+     * @return true if it existed
+     */
+    public boolean delete(Path instancePath, String name) throws IOException {
+        Path checkpoint = getCheckpointsDir(instancePath).resolve(name);
+        if (!isValidName(name) || !Files.isDirectory(checkpoint)) {
+            return false;
+        }
+        fileTreeService.deleteTree(checkpoint);
+        return true;
+    }
+
+    /**
+     * Copy a tree into a checkpoint: one copy-on-write clone when possible, otherwise
+     * hardlinks to the previous checkpoint for unchanged files and copies for the rest.
+     */
+    private void snapshotTree(Path source, Path target, Path previous, TreeStats stats) throws IOException {
+        if (cloneTree(source, target)) {
+            stats.cloned = true;
+            return;
+        }
+
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String relative = source.relativize(file).toString();
+                Path copy = target.resolve(relative);
+                if (previous != null && linkUnchanged(previous.resolve(relative), attrs, copy)) {
+                    stats.filesShared++;
+                } else {
+                    Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+                    stats.filesCopied++;
+                    stats.bytesCopied += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Make a tree identical to its checkpoint. With copy-on-write the whole tree is cloned
+     * back; otherwise only changed files are copied and files created since are removed.
+     */
+    private void restoreTree(Path saved, Path target, TreeStats stats) throws IOException {
+        Path clone = target.resolveSibling("." + target.getFileName() + ".reset");
+        fileTreeService.deleteTree(clone);
+        if (cloneTree(saved, clone)) {
+            fileTreeService.deleteTree(target);
+            Files.move(clone, target, StandardCopyOption.ATOMIC_MOVE);
+            stats.cloned = true;
+            return;
+        }
+
+        Files.walkFileTree(saved, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path targetDir = target.resolve(saved.relativize(dir).toString());
+                if (!Files.isDirectory(targetDir)) {
+                    Files.deleteIfExists(targetDir);
+                    Files.createDirectories(targetDir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path current = target.resolve(saved.relativize(file).toString());
+                if (isUnchanged(current, attrs)) {
+                    stats.filesShared++;
+                } else {
+                    if (Files.isDirectory(current)) {
+                        fileTreeService.deleteTree(current);
+                    }
+                    // Never hardlink back: the instance would modify the checkpoint through the link
+                    Files.copy(file, current, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    stats.filesCopied++;
+                    stats.bytesCopied += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        removeExtraFiles(saved, target, stats);
+    }
+
+    /**
+     * Delete the files and directories of a tree that are not in its checkpoint.
+     */
+    private void removeExtraFiles(Path saved, Path target, TreeStats stats) throws IOException {
+        Files.walkFileTree(target, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(target) && !Files.isDirectory(saved.resolve(target.relativize(dir).toString()))) {
+                    fileTreeService.deleteTree(dir);
+                    stats.filesRemoved++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!Files.exists(saved.resolve(target.relativize(file).toString()))) {
+                    Files.delete(file);
+                    stats.filesRemoved++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Hardlink a file of the previous checkpoint if the current file has the same size and
+     * modification time (the same rule rsync uses to skip files).
+     */
+    private boolean linkUnchanged(Path previousFile, BasicFileAttributes current, Path link) {
+        try {
+            if (!Files.isRegularFile(previousFile)) {
+                return false;
+            }
+            BasicFileAttributes saved = Files.readAttributes(previousFile, BasicFileAttributes.class);
+            if (!sameContent(saved, current)) {
+                return false;
+            }
+            Files.createLink(link, previousFile);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Filesystem without hardlinks, copy instead
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(Path current, BasicFileAttributes saved) throws IOException {
+        if (!Files.isRegularFile(current)) {
+            return false;
+        }
+        return sameContent(Files.readAttributes(current, BasicFileAttributes.class), saved);
+    }
+
+    /**
+     * Same size and modification time. Times are compared in microseconds, the precision
+     * kept by Files.copy with COPY_ATTRIBUTES.
+     */
+    private boolean sameContent(BasicFileAttributes a, BasicFileAttributes b) {
+        return a.size() == b.size()
+            && a.lastModifiedTime().to(TimeUnit.MICROSECONDS) == b.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Clone a tree with copy-on-write extents (GNU cp on btrfs, XFS, bcachefs, ...).
+     *
+     * @return false if the platform or filesystem does not support reflinks
+     */
+    private boolean cloneTree(Path source, Path target) {
+        try {
+            Files.createDirectories(target.getParent());
+            // Reflinks never cross filesystems, and are only attempted where a probe succeeded
+            FileStore store = Files.getFileStore(target.getParent());
+            if (!store.equals(Files.getFileStore(source)) || !supportsReflink(store, target.getParent())) {
+                return false;
+            }
+            if (copyWithReflink(source, target)) {
+                return true;
+            }
+        } catch (IOException e) {
+            logger.debug("Could not clone {} with reflinks", source, e);
+        }
+
+        try {
+            fileTreeService.deleteTree(target);
+        } catch (IOException e) {
+            logger.warn("Could not remove partial clone {}", target, e);
+        }
+        return false;
+    }
+
+    /**
+     * Check once per filesystem whether reflinks work, by cloning a small file. A failed
+     * cp of a whole tree would walk it and leave partial output behind.
+     */
+    private boolean supportsReflink(FileStore store, Path directory) {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            return false;
+        }
+        return REFLINK_SUPPORT.computeIfAbsent(store, key -> {
+            Path probe = directory.resolve(".reflink-probe-" + ProcessHandle.current().pid());
+            Path clone = directory.resolve(probe.getFileName() + ".clone");
+            try {
+                Files.writeString(probe, "probe");
+                boolean supported = copyWithReflink(probe, clone);
+                logger.debug("Reflinks {} on {}", supported ? "supported" : "not supported", key);
+                return supported;
+            } catch (IOException e) {
+                logger.debug("cp not available for reflink copies", e);
+                return false;
+            } finally {
+                try {
+                    Files.deleteIfExists(probe);
+                    Files.deleteIfExists(clone);
+                } catch (IOException e) {
+                    logger.warn("Could not remove reflink probe {}", probe, e);
+                }
+            }
+        });
+    }
+
+    private boolean copyWithReflink(Path source, Path target) throws IOException {
+        try {
+            Process process = new ProcessBuilder("cp", "-a", "--reflink=always", source.toString(), target.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            return process.waitFor() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Path latestCheckpoint(Path instancePath) throws IOException {
+        List<String> checkpoints = list(instancePath);
+        return checkpoints.isEmpty()
+            ? null
+            : getCheckpointsDir(instancePath).resolve(checkpoints.get(checkpoints.size() - 1));
+    }
+
+    private Path getTree(Path instancePath, String tree) throws IOException {
+        switch (tree) {
+            case DATA:
+                return storageTierService.getDataDir(instancePath);
+            case EXTENSIONS:
+                return instancePath.resolve("lib").resolve(EXTENSIONS);
+            default:
+                return instancePath.resolve(tree);
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * What a checkpoint or reset had to do.
+     */
+    public static class TreeStats {
+        private boolean cloned;
+        private long filesCopied;
+        private long filesShared;
+        private long filesRemoved;
+        private long bytesCopied;
+
+        /**
+         * True if at least one tree was cloned with copy-on-write.
+         */
+        public boolean isCloned() {
+            return cloned;
+        }
+
+        public long getFilesCopied() {
+            return filesCopied;
+        }
+
+        /**
+         * Files hardlinked to the previous checkpoint, or left in place by a reset.
+         */
+        public long getFilesShared() {
+            return filesShared;
+        }
+
+        public long getFilesRemoved() {
+            return filesRemoved;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        @Override
+        public String toString() {
+            return (cloned ? "copy-on-write clone, " : "")
+                + filesCopied + " file(s) copied (" + MemoryService.formatSize(bytesCopied) + "), "
+                + filesShared + " unchanged, " + filesRemoved + " removed";
+        }
+    }
+}
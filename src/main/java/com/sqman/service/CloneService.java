@@ -0,0 +1,136 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceManifest;
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * Service to clone an installed instance into a new instance of the same version.
+ *
+ * Distribution files (lib/, elasticsearch/, web/, ...) are never modified by SonarQube, so the
+ * clone hardlinks them to the source. Only the paths an instance writes to get their own copy:
+ * conf/, bin/ (the wrapper writes its PID file there), extensions/, lib/extensions/, the data
+ * and logs directories and the token. A clone is an independent instance named
+ * sonarqube-[version]-[name], that can be run, checkpointed or deleted like any other.
+ */
+public class CloneService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloneService.class);
+    // Per-instance runtime files that a clone starts without
+    private static final Set<String> INSTANCE_LOCAL_FILES = Set.of(
+        "data", "logs", "temp", "cds", "checkpoints", "token.persistent", "sqman-state.json",
+        "sqman-startup.log");
+    private static final Set<String> MUTABLE_PATHS = Set.of("conf", "bin", "extensions", "token");
+
+    private final ConfigService configService;
+    private final StorageTierService storageTierService;
+    private final FileTreeService fileTreeService;
+    private final InstanceStateService stateService;
+    private final SonarPropertiesService propertiesService;
+
+    public CloneService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public CloneService(ConfigService configService) {
+        this.configService = configService;
+        this.storageTierService = new StorageTierService(configService);
+        this.fileTreeService = new FileTreeService();
+        this.stateService = new InstanceStateService();
+        this.propertiesService = new SonarPropertiesService();
+    }
+
+    /**
+     * Get the instance identifier of a clone, as used by the other commands.
+     */
+    public static String getCloneId(String version, String name) {
+        return version + "-" + name;
+    }
+
+    /**
+     * Check if a relative path of a distribution is written to by a running instance.
+     */
+    static boolean isMutable(Path relative) {
+        String first = relative.getName(0).toString();
+        if (MUTABLE_PATHS.contains(first)) {
+            return true;
+        }
+        return relative.getNameCount() > 1 && first.equals("lib")
+            && relative.getName(1).toString().equals("extensions");
+    }
+
+    /**
+     * Clone a stopped instance.
+     *
+     * @param sourceId Identifier of the source instance (its directory name without "sonarqube-")
+     * @param name Name of the clone
+     * @return Number of bytes copied (everything else is hardlinked)
+     * @throws IOException if the clone already exists or cannot be created
+     */
+    public long cloneInstance(String sourceId, String name) throws IOException {
+        Path distributionsDir = configService.getDistributionsDir();
+        Path source = distributionsDir.resolve("sonarqube-" + sourceId);
+        Path target = distributionsDir.resolve("sonarqube-" + getCloneId(sourceId, name));
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Instance not found: " + sourceId);
+        }
+        if (Files.exists(target)) {
+            throw new IOException("Instance already exists: " + target.getFileName());
+        }
+
+        // Built under a hidden name so a failed clone is never listed as an instance
+        Path staging = distributionsDir.resolve("." + target.getFileName() + ".tmp-" + ProcessHandle.current().pid());
+        fileTreeService.deleteTree(staging);
+        try {
+            long bytesCopied = fileTreeService.linkTree(source, staging,
+                relative -> !INSTANCE_LOCAL_FILES.contains(relative.getName(0).toString())
+                    && !relative.getFileName().toString().endsWith(".pid"),
+                CloneService::isMutable);
+
+            bytesCopied += copyDir(storageTierService.getDataDir(source), staging.resolve("data"));
+            bytesCopied += copyDir(storageTierService.getLogsDir(source), staging.resolve("logs"));
+            Files.createDirectories(staging.resolve("temp"));
+
+            // The source may use tiered storage or CDS archives bound to its own paths
+            propertiesService.removeProperty(staging, "sonar.path.data");
+            propertiesService.removeProperty(staging, "sonar.path.temp");
+            propertiesService.removeProperty(staging, "sonar.path.logs");
+            new AppCdsService().disable(staging);
+
+            // The manifest is hardlinked to the source: save() replaces it with the clone's own
+            InstanceManifestService manifestService = new InstanceManifestService();
+            InstanceManifest manifest = manifestService.load(staging);
+            if (manifest != null) {
+                manifest.setInstalledAt(System.currentTimeMillis());
+                manifestService.save(staging, manifest);
+            }
+
+            InstanceState state = new InstanceState();
+            state.setClonedFrom(sourceId);
+            stateService.save(staging, state);
+
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Cloned {} to {} ({} bytes copied)", source.getFileName(), target.getFileName(), bytesCopied);
+            return bytesCopied;
+        } catch (IOException | RuntimeException e) {
+            fileTreeService.deleteTree(staging);
+            throw e;
+        }
+    }
+
+    private long copyDir(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        if (!Files.isDirectory(source)) {
+            return 0;
+        }
+        return fileTreeService.linkTree(source, target, relative -> true, relative -> true);
+    }
+}
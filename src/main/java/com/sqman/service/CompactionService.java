@@ -0,0 +1,185 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to compact the embedded H2 database of a stopped instance.
+ *
+ * The H2 JAR bundled with the distribution (lib/jdbc/h2) opens the database file directly
+ * in a child JVM and runs SHUTDOWN COMPACT, which rewrites it without the free pages left by
+ * deleted analyses. Using the bundled JAR guarantees the file format matches what the
+ * instance reads.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   compact.onIdleStop     - Compact instances stopped by the idle watcher (default: false)
+ *   compact.minSizeMb      - Database size below which idle stops do not compact (default: 256)
+ *   compact.timeoutMinutes - Maximum duration of a compaction (default: 30)
+ */
+public class CompactionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactionService.class);
+    public static final String ON_IDLE_STOP = "compact.onIdleStop";
+    public static final String MIN_SIZE_MB = "compact.minSizeMb";
+    public static final String TIMEOUT_MINUTES = "compact.timeoutMinutes";
+    private static final long DEFAULT_MIN_SIZE_MB = 256;
+    private static final long DEFAULT_TIMEOUT_MINUTES = 30;
+    // An idle stop compacts again once the database grew by half since the last compaction
+    private static final double REGROWTH_FACTOR = 1.5;
+    private static final String DATABASE_NAME = "sonar";
+    private static final String DATABASE_FILE = DATABASE_NAME + ".mv.db";
+    private static final List<String[]> DEFAULT_CREDENTIALS = List.of(
+        new String[] {"sonar", "sonar"}, new String[] {"", ""});
+    // H2 error 28000
+    private static final String WRONG_CREDENTIALS = "28000";
+    private static final String LOG_FILE = "sqman-compact.log";
+
+    private final ConfigService configService;
+    private final StorageTierService storageTierService;
+    private final SonarPropertiesService propertiesService;
+    private final InstanceStateService stateService;
+
+    public CompactionService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public CompactionService(ConfigService configService) {
+        this.configService = configService;
+        this.storageTierService = new StorageTierService(configService);
+        this.propertiesService = new SonarPropertiesService();
+        this.stateService = new InstanceStateService();
+    }
+
+    /**
+     * Get the embedded database file of an instance.
+     *
+     * @throws IOException if the instance uses an external database or has no database yet
+     */
+    public Path getDatabaseFile(Path instancePath) throws IOException {
+        String jdbcUrl = propertiesService.getProperty(instancePath, "sonar.jdbc.url");
+        if (jdbcUrl != null && !jdbcUrl.startsWith("jdbc:h2:")) {
+            throw new IOException("The instance uses an external database (" + jdbcUrl + ")");
+        }
+        Path databaseFile = storageTierService.getDataDir(instancePath).resolve(DATABASE_FILE);
+        if (!Files.isRegularFile(databaseFile)) {
+            throw new IOException("No embedded database found: " + databaseFile);
+        }
+        return databaseFile;
+    }
+
+    /**
+     * Find the H2 JAR bundled with an instance.
+     */
+    Path findH2Jar(Path instancePath) throws IOException {
+        Path jdbcDir = instancePath.resolve("lib/jdbc/h2");
+        if (Files.isDirectory(jdbcDir)) {
+            try (Stream<Path> files = Files.list(jdbcDir)) {
+                List<Path> jars = files.filter(path -> path.getFileName().toString().endsWith(".jar"))
+                    .collect(Collectors.toList());
+                if (jars.size() == 1) {
+                    return jars.get(0);
+                }
+            }
+        }
+        throw new IOException("H2 JAR not found in " + jdbcDir);
+    }
+
+    /**
+     * Compact the database of a stopped instance.
+     *
+     * @return Size of the database file after compaction
+     */
+    public long compact(Path instancePath) throws IOException, InterruptedException {
+        Path databaseFile = getDatabaseFile(instancePath);
+        Path h2Jar = findH2Jar(instancePath);
+        long sizeBefore = Files.size(databaseFile);
+
+        String url = "jdbc:h2:file:" + databaseFile.getParent().toAbsolutePath().resolve(DATABASE_NAME)
+            + ";IFEXISTS=TRUE";
+        Path logFile = storageTierService.getLogsDir(instancePath).resolve(LOG_FILE);
+        Files.createDirectories(logFile.getParent());
+
+        // Credentials of the embedded database: the configured ones, or those SonarQube versions default to
+        Map<String, String> settings = propertiesService.readProperties(instancePath);
+        List<String[]> credentials = settings.containsKey("sonar.jdbc.username")
+            ? List.<String[]>of(new String[] {settings.get("sonar.jdbc.username"),
+                settings.getOrDefault("sonar.jdbc.password", "")})
+            : DEFAULT_CREDENTIALS;
+        String error = null;
+        for (String[] credential : credentials) {
+            error = runShutdownCompact(h2Jar, url, credential[0], credential[1], logFile);
+            if (error == null || !error.contains(WRONG_CREDENTIALS)) {
+                break;
+            }
+        }
+        if (error != null) {
+            throw new IOException("H2 failed to compact " + databaseFile + ": " + error);
+        }
+
+        long sizeAfter = Files.size(databaseFile);
+        InstanceState state = stateService.load(instancePath);
+        state.setCompactedSize(sizeAfter);
+        stateService.save(instancePath, state);
+        logger.info("Compacted {} from {} to {} bytes", databaseFile, sizeBefore, sizeAfter);
+        return sizeAfter;
+    }
+
+    /**
+     * Run SHUTDOWN COMPACT in a child JVM.
+     *
+     * @return null on success, the output of H2 otherwise
+     */
+    private String runShutdownCompact(Path h2Jar, String url, String user, String password, Path logFile)
+            throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", h2Jar.toString(), "org.h2.tools.Shell",
+            "-url", url, "-user", user, "-password", password, "-sql", "SHUTDOWN COMPACT")
+            .redirectErrorStream(true)
+            .redirectOutput(logFile.toFile())
+            .start();
+        process.getOutputStream().close();
+        long timeoutMinutes = configService.getLong(TIMEOUT_MINUTES, DEFAULT_TIMEOUT_MINUTES);
+        if (!process.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IOException("Compaction did not finish within " + timeoutMinutes + " minutes");
+        }
+        // The shell reports failed statements on its output without an exit code
+        String output = Files.readString(logFile).trim();
+        return process.exitValue() == 0 && !output.contains("Error:") ? null : output;
+    }
+
+    /**
+     * Check if an instance stopped by the idle watcher should be compacted: compaction on idle
+     * stop is enabled, the database is large enough and grew since its last compaction.
+     */
+    public boolean shouldCompactOnIdleStop(Path instancePath) throws IOException {
+        if (!Boolean.parseBoolean(configService.get(ON_IDLE_STOP, "false"))) {
+            return false;
+        }
+        Path databaseFile;
+        try {
+            databaseFile = getDatabaseFile(instancePath);
+        } catch (IOException e) {
+            return false;
+        }
+        long size = Files.size(databaseFile);
+        if (size < configService.getLong(MIN_SIZE_MB, DEFAULT_MIN_SIZE_MB) * 1024 * 1024) {
+            return false;
+        }
+        Long compactedSize = stateService.load(instancePath).getCompactedSize();
+        return compactedSize == null || size >= compactedSize * REGROWTH_FACTOR;
+    }
+}
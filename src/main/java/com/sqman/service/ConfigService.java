@@ -0,0 +1,135 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Service to read sqman's own settings from ~/.sqman/sqman.properties.
+ *
+ * Supported settings:
+ *   storage.distributions - Directory holding the sonarqube-* installations (default: ~/.sqman)
+ *   storage.hot           - Fast storage for each instance's data, temp and logs (default: inside the instance)
+ */
+public class ConfigService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigService.class);
+    private static final String SQMAN_HOME = System.getProperty("user.home") + "/.sqman";
+    private static final String CONFIG_FILE = "sqman.properties";
+
+    public static final String STORAGE_DISTRIBUTIONS = "storage.distributions";
+    public static final String STORAGE_HOT = "storage.hot";
+
+    private final Path configFile;
+    private Properties properties;
+
+    public ConfigService() {
+        this(Paths.get(SQMAN_HOME, CONFIG_FILE));
+    }
+
+    // Constructor for testing
+    public ConfigService(Path configFile) {
+        this.configFile = configFile;
+    }
+
+    /**
+     * Get a setting value.
+     *
+     * @return The value, or null if not set
+     */
+    public String get(String key) {
+        String value = load().getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Get a setting value with a default.
+     */
+    public String get(String key, String defaultValue) {
+        String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Get a numeric setting, falling back to the default if unset or invalid.
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid number for {}: {}", key, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a path setting. A leading ~ is expanded to the user home directory.
+     *
+     * @return The path, or null if not set
+     */
+    public Path getPath(String key) {
+        String value = get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value.equals("~") || value.startsWith("~/")) {
+            value = System.getProperty("user.home") + value.substring(1);
+        }
+        return Paths.get(value);
+    }
+
+    /**
+     * Get the directory holding the SonarQube distributions (bulk storage tier).
+     */
+    public Path getDistributionsDir() {
+        Path configured = getPath(STORAGE_DISTRIBUTIONS);
+        return configured != null ? configured : Paths.get(SQMAN_HOME);
+    }
+
+    /**
+     * Get the fast storage root for instance data, temp and logs.
+     *
+     * @return The hot storage root, or null if instances keep them in their own directory
+     */
+    public Path getHotStorageDir() {
+        return getPath(STORAGE_HOT);
+    }
+
+    /**
+     * Get the directory holding this configuration file (~/.sqman unless overridden in tests).
+     */
+    public Path getHomeDir() {
+        return configFile.toAbsolutePath().getParent();
+    }
+
+    /**
+     * Get the SQMan home directory (configuration and bookkeeping files).
+     */
+    public static Path getSqmanHome() {
+        return Paths.get(SQMAN_HOME);
+    }
+
+    private Properties load() {
+        if (properties == null) {
+            properties = new Properties();
+            if (Files.exists(configFile)) {
+                try (Reader reader = Files.newBufferedReader(configFile)) {
+                    properties.load(reader);
+                } catch (IOException e) {
+                    logger.warn("Could not read {}: {}", configFile, e.getMessage());
+                }
+            }
+        }
+        return properties;
+    }
+}
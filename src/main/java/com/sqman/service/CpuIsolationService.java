@@ -0,0 +1,257 @@
+package com.sqman.service;
+
+import com.sqman.model.IsolationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to pin the web, compute engine and search JVMs of an instance to their own CPUs
+ * (Linux only, through taskset), so benchmarks are not disturbed by other processes.
+ *
+ * The main process is pinned first to all isolated CPUs, so the JVMs it forks inherit the
+ * affinity from their first instruction, then each JVM is moved to its own CPU set as soon
+ * as it appears in the process tree.
+ */
+public class CpuIsolationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CpuIsolationService.class);
+    private static final Pattern CPU_LIST = Pattern.compile("\\d+(-\\d+)?(,\\d+(-\\d+)?)*");
+    private static final long DISCOVERY_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long POLL_INTERVAL_MILLIS = 250;
+    private static final int MIN_CPUS_FOR_AUTO = 4;
+
+    private static final Map<AppCdsService.JvmProcess, String> MAIN_CLASSES = Map.of(
+        AppCdsService.JvmProcess.WEB, "org.sonar.server.app.WebServer",
+        AppCdsService.JvmProcess.COMPUTE_ENGINE, "org.sonar.ce.app.CeServer",
+        AppCdsService.JvmProcess.SEARCH, "org.elasticsearch.bootstrap.Elasticsearch");
+
+    private final Path sysCpuDir;
+    private final Path loadavgFile;
+
+    public CpuIsolationService() {
+        this(Paths.get("/sys/devices/system/cpu"), Paths.get("/proc/loadavg"));
+    }
+
+    // Constructor for testing
+    public CpuIsolationService(Path sysCpuDir, Path loadavgFile) {
+        this.sysCpuDir = sysCpuDir;
+        this.loadavgFile = loadavgFile;
+    }
+
+    /**
+     * Check that CPU pinning is possible: Linux with taskset (util-linux) installed.
+     */
+    public boolean isSupported() {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder("taskset", "--version")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Build the CPU sets of the three JVMs.
+     * Either all sets are given, or none and the CPUs except CPU 0 are split in three.
+     *
+     * @param cpuCount Number of CPUs of the host, for the automatic split
+     * @throws IllegalArgumentException if the sets are invalid or incomplete
+     */
+    public Map<AppCdsService.JvmProcess, String> assignCpus(String webCpus, String ceCpus, String searchCpus,
+                                                            int cpuCount) {
+        Map<AppCdsService.JvmProcess, String> cpus = new EnumMap<>(AppCdsService.JvmProcess.class);
+
+        if (webCpus == null && ceCpus == null && searchCpus == null) {
+            if (cpuCount < MIN_CPUS_FOR_AUTO) {
+                throw new IllegalArgumentException("Automatic CPU assignment needs at least " + MIN_CPUS_FOR_AUTO
+                    + " CPUs, set --web-cpus, --ce-cpus and --search-cpus");
+            }
+            // CPU 0 keeps the OS, interrupts and sqman itself away from the JVMs
+            int available = cpuCount - 1;
+            int searchEnd = available / 3;
+            int webEnd = searchEnd + available / 3;
+            cpus.put(AppCdsService.JvmProcess.SEARCH, range(1, searchEnd));
+            cpus.put(AppCdsService.JvmProcess.WEB, range(searchEnd + 1, webEnd));
+            cpus.put(AppCdsService.JvmProcess.COMPUTE_ENGINE, range(webEnd + 1, available));
+            return cpus;
+        }
+
+        if (webCpus == null || ceCpus == null || searchCpus == null) {
+            throw new IllegalArgumentException("Set all of --web-cpus, --ce-cpus and --search-cpus, or none of them");
+        }
+        cpus.put(AppCdsService.JvmProcess.WEB, validate(webCpus));
+        cpus.put(AppCdsService.JvmProcess.COMPUTE_ENGINE, validate(ceCpus));
+        cpus.put(AppCdsService.JvmProcess.SEARCH, validate(searchCpus));
+        return cpus;
+    }
+
+    /**
+     * Pin the processes of a starting instance, waiting for the three JVMs to appear.
+     *
+     * @param mainPid PID of the main SonarQube process
+     * @param cpus CPU set of each JVM
+     * @return Isolation settings and host conditions to record with the instance
+     */
+    public IsolationInfo pin(long mainPid, Map<AppCdsService.JvmProcess, String> cpus)
+            throws IOException, InterruptedException {
+        IsolationInfo info = snapshot(cpus);
+
+        Optional<ProcessHandle> main = ProcessHandle.of(mainPid);
+        if (main.isEmpty()) {
+            throw new IOException("SonarQube process " + mainPid + " not found");
+        }
+
+        // Children inherit the affinity of the main process when they are forked
+        taskset(mainPid, union(cpus.values()));
+
+        Set<AppCdsService.JvmProcess> pinned = new LinkedHashSet<>();
+        long deadline = System.currentTimeMillis() + DISCOVERY_TIMEOUT_MILLIS;
+
+        while (pinned.size() < cpus.size() && main.get().isAlive() && System.currentTimeMillis() < deadline) {
+            List<ProcessHandle> descendants = main.get().descendants().collect(Collectors.toList());
+            for (ProcessHandle process : descendants) {
+                AppCdsService.JvmProcess jvm = classify(process.info().commandLine().orElse(""));
+                if (jvm != null && !pinned.contains(jvm)) {
+                    taskset(process.pid(), cpus.get(jvm));
+                    pinned.add(jvm);
+                    System.out.println("✓ " + jvm.getArchiveName() + " JVM (PID " + process.pid()
+                        + ") pinned to CPUs " + cpus.get(jvm));
+                }
+            }
+            if (pinned.size() < cpus.size()) {
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+            }
+        }
+
+        if (pinned.size() < cpus.size()) {
+            System.out.println("⚠ Not all JVMs were found, unpinned ones stay on CPUs " + union(cpus.values()));
+        }
+        return info;
+    }
+
+    /**
+     * Record the CPU sets with the frequency governor and load of the host.
+     */
+    public IsolationInfo snapshot(Map<AppCdsService.JvmProcess, String> cpus) {
+        IsolationInfo info = new IsolationInfo();
+        info.setWebCpus(cpus.get(AppCdsService.JvmProcess.WEB));
+        info.setCeCpus(cpus.get(AppCdsService.JvmProcess.COMPUTE_ENGINE));
+        info.setSearchCpus(cpus.get(AppCdsService.JvmProcess.SEARCH));
+        info.setGovernor(readGovernor());
+        info.setLoadAverage(readLoadAverage());
+        info.setStartedAt(System.currentTimeMillis());
+        return info;
+    }
+
+    /**
+     * Read the CPU frequency governors in use (e.g. "performance" or "powersave,performance").
+     *
+     * @return Distinct governors, or "unknown" if cpufreq is not available
+     */
+    public String readGovernor() {
+        if (!Files.isDirectory(sysCpuDir)) {
+            return "unknown";
+        }
+
+        Set<String> governors = new TreeSet<>();
+        try (Stream<Path> stream = Files.list(sysCpuDir)) {
+            List<Path> cpuDirs = stream
+                .filter(path -> path.getFileName().toString().matches("cpu\\d+"))
+                .collect(Collectors.toList());
+            for (Path cpuDir : cpuDirs) {
+                Path governorFile = cpuDir.resolve("cpufreq/scaling_governor");
+                if (Files.exists(governorFile)) {
+                    governors.add(Files.readString(governorFile).trim());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read CPU governors: {}", e.getMessage());
+        }
+        return governors.isEmpty() ? "unknown" : String.join(",", governors);
+    }
+
+    /**
+     * Read the 1, 5 and 15 minute load averages.
+     *
+     * @return e.g. "0.42 0.35 0.30", or "unknown"
+     */
+    public String readLoadAverage() {
+        try {
+            if (Files.exists(loadavgFile)) {
+                String[] fields = Files.readString(loadavgFile).trim().split("\\s+");
+                if (fields.length >= 3) {
+                    return fields[0] + " " + fields[1] + " " + fields[2];
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read load average: {}", e.getMessage());
+        }
+        return "unknown";
+    }
+
+    /**
+     * Identify a SonarQube JVM from its command line.
+     *
+     * @return The JVM, or null for other processes
+     */
+    AppCdsService.JvmProcess classify(String commandLine) {
+        for (Map.Entry<AppCdsService.JvmProcess, String> entry : MAIN_CLASSES.entrySet()) {
+            if (commandLine.contains(entry.getValue())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void taskset(long pid, String cpuList) throws IOException, InterruptedException {
+        // -a applies to all threads already created, new threads inherit from their creator
+        Process process = new ProcessBuilder("taskset", "-a", "-p", "-c", cpuList, String.valueOf(pid))
+            .redirectErrorStream(true)
+            .start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        if (process.waitFor() != 0) {
+            throw new IOException("taskset failed for PID " + pid + ": " + output);
+        }
+    }
+
+    private String validate(String cpuList) {
+        String trimmed = cpuList.replace(" ", "");
+        if (!CPU_LIST.matcher(trimmed).matches()) {
+            throw new IllegalArgumentException("Invalid CPU list: " + cpuList + " (expected e.g. 2-3 or 0,4,6-7)");
+        }
+        return trimmed;
+    }
+
+    private String range(int first, int last) {
+        return first == last ? String.valueOf(first) : first + "-" + last;
+    }
+
+    private String union(Iterable<String> cpuLists) {
+        return String.join(",", cpuLists);
+    }
+}
@@ -0,0 +1,592 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Service to measure the disk usage of instances and pick instances to evict when a quota is exceeded.
+ *
+ * Directories are walked in parallel. For each directory, the size of its own files and the
+ * names of its subdirectories are cached in du-cache.json, keyed by the directory modification
+ * time: an unchanged directory is not listed again. Files rewritten in place do not change the
+ * modification time of their directory, so conf/, data/, logs/ and temp/ are always walked.
+ *
+ * Files with several hardlinks (clones, pool slots, checkpoints, the plugin store) are counted
+ * once per instance. Those also linked from outside the instance are reported as shared: deleting
+ * the instance does not free them, so evictions are chosen on the unique size.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   disk.quotaGb   - Maximum size of all instances (default: 0, no quota)
+ *   disk.minFreeGb - Minimum free space to keep on the distributions filesystem (default: 0, none)
+ *   disk.evict     - ask: only suggest evictions, auto: evict (delete) automatically (default: ask)
+ */
+public class DiskUsageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskUsageService.class);
+    public static final String QUOTA_GB = "disk.quotaGb";
+    public static final String MIN_FREE_GB = "disk.minFreeGb";
+    public static final String EVICT_POLICY = "disk.evict";
+    public static final String POLICY_AUTO = "auto";
+    private static final String CACHE_FILE = "du-cache.json";
+    private static final Set<String> VOLATILE_DIRS = Set.of("conf", "data", "logs", "temp");
+    private static final boolean UNIX_ATTRIBUTES =
+        FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private final ConfigService configService;
+    private final StorageTierService storageTierService;
+    private final InstanceStateService stateService;
+    private final ObjectMapper objectMapper;
+    private final Path cacheFile;
+    private Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry> visited = new ConcurrentHashMap<>();
+
+    public DiskUsageService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public DiskUsageService(ConfigService configService) {
+        this.configService = configService;
+        this.storageTierService = new StorageTierService(configService);
+        this.stateService = new InstanceStateService();
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.cacheFile = configService.getHomeDir().resolve(CACHE_FILE);
+    }
+
+    /**
+     * Measure installed and hibernated instances.
+     *
+     * @param ids Instance identifiers (directory names without "sonarqube-")
+     * @return Usage of each instance, largest first
+     */
+    public List<InstanceUsage> scan(List<String> ids) throws IOException {
+        loadCache();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<InstanceUsage> usages = new ArrayList<>();
+            for (String id : ids) {
+                usages.add(scanInstance(id, pool));
+            }
+            usages.sort(Comparator.comparingLong(InstanceUsage::getTotal).reversed());
+            saveCache();
+            return usages;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Measure a directory that is not an instance (trash, templates, ...), without the cache.
+     */
+    public long scanDirectory(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            return pool.invoke(new DirectoryTask(directory, null, null)).getDistinctBytes();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Measure the trash directories, where deleted instances wait for the background purge.
+     */
+    public long getTrashSize() {
+        long size = 0;
+        for (Path trashDir : new TrashService(configService).getTrashDirs()) {
+            size += scanDirectory(trashDir);
+        }
+        return size;
+    }
+
+    /**
+     * Measure the golden templates.
+     */
+    public long getTemplatesSize() {
+        return scanDirectory(configService.getHomeDir().resolve("templates"));
+    }
+
+    /**
+     * Check if a quota or a minimum free space is configured.
+     */
+    public boolean isQuotaConfigured() {
+        return configService.getLong(QUOTA_GB, 0) > 0 || configService.getLong(MIN_FREE_GB, 0) > 0;
+    }
+
+    /**
+     * Compute how many bytes must be freed to satisfy the quota and the minimum free space.
+     *
+     * @param totalBytes Current size of all instances
+     * @return Bytes to free, 0 when the policy is satisfied or not configured
+     */
+    public long getBytesToFree(long totalBytes) throws IOException {
+        long needed = 0;
+        long quota = configService.getLong(QUOTA_GB, 0) * GB;
+        if (quota > 0 && totalBytes > quota) {
+            needed = totalBytes - quota;
+        }
+        long minFree = configService.getLong(MIN_FREE_GB, 0) * GB;
+        if (minFree > 0) {
+            Path distributionsDir = configService.getDistributionsDir();
+            long free = Files.getFileStore(Files.isDirectory(distributionsDir)
+                ? distributionsDir : distributionsDir.getParent()).getUsableSpace();
+            needed = Math.max(needed, minFree - free);
+        }
+        return Math.max(0, needed);
+    }
+
+    /**
+     * Check if instances are evicted without asking.
+     */
+    public boolean isAutoEvict() {
+        return POLICY_AUTO.equalsIgnoreCase(configService.get(EVICT_POLICY, "ask"));
+    }
+
+    /**
+     * Size of all instances, with the files they share counted once.
+     */
+    public long getTotal(List<InstanceUsage> usages) {
+        long total = 0;
+        Map<String, Long> sharedFiles = new HashMap<>();
+        for (InstanceUsage usage : usages) {
+            total += usage.getUnique();
+            sharedFiles.putAll(usage.sharedFiles);
+        }
+        return total + sharedFiles.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Pick the least recently run instances whose deletion frees the requested space.
+     *
+     * @param usages Measured instances
+     * @param bytesToFree Space to free
+     * @param excluded Instances that must be kept (running, in use)
+     * @return Instances to evict, least recently run first (all candidates if they do not free enough).
+     *         Shared files are not counted as freed, even when all the instances sharing them are evicted.
+     */
+    public List<InstanceUsage> selectEvictions(List<InstanceUsage> usages, long bytesToFree, Set<String> excluded) {
+        List<InstanceUsage> candidates = new ArrayList<>(usages);
+        candidates.removeIf(usage -> excluded.contains(usage.getId()));
+        candidates.sort(Comparator.comparingLong(InstanceUsage::getLastUsed));
+
+        List<InstanceUsage> evictions = new ArrayList<>();
+        long freed = 0;
+        for (InstanceUsage candidate : candidates) {
+            if (freed >= bytesToFree) {
+                break;
+            }
+            evictions.add(candidate);
+            freed += candidate.getUnique();
+        }
+        return evictions;
+    }
+
+    private InstanceUsage scanInstance(String id, ForkJoinPool pool) throws IOException {
+        Path instancePath = configService.getDistributionsDir().resolve("sonarqube-" + id);
+        Path archive = new HibernationService(configService).getArchivePath(id);
+
+        if (!Files.isDirectory(instancePath)) {
+            Map<String, Long> dirs = new HashMap<>();
+            long size = Files.isRegularFile(archive) ? Files.size(archive) : 0;
+            dirs.put(archive.getFileName().toString(), size);
+            return new InstanceUsage(id, true, Files.isRegularFile(archive)
+                ? Files.getLastModifiedTime(archive).toMillis() : 0, sortBySize(dirs), Map.of());
+        }
+
+        Map<String, TreeSize> trees = new TreeMap<>();
+        addChildren(instancePath, pool, trees);
+        // Data, temp, logs and checkpoints on the hot tier count for the instance
+        Path hotDir = storageTierService.getHotDir(instancePath);
+        if (hotDir != null && Files.isDirectory(hotDir)) {
+            addChildren(hotDir, pool, trees);
+        }
+
+        // A file linked from several directories counts for the first one, by name
+        Map<String, Long> dirs = new HashMap<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        Map<String, LinkedFile> linkedFiles = new HashMap<>();
+        for (Map.Entry<String, TreeSize> tree : trees.entrySet()) {
+            long size = tree.getValue().bytes;
+            for (LinkedFile file : tree.getValue().linked) {
+                if (occurrences.merge(file.getKey(), 1, Integer::sum) == 1) {
+                    size += file.getSize();
+                }
+                linkedFiles.merge(file.getKey(), file, (a, b) -> a.getLinks() >= b.getLinks() ? a : b);
+            }
+            dirs.put(tree.getKey(), size);
+        }
+
+        // Links the instance does not hold itself are elsewhere: deleting the instance does not free the file
+        Map<String, Long> sharedFiles = new HashMap<>();
+        for (LinkedFile file : linkedFiles.values()) {
+            if (file.getLinks() > occurrences.get(file.getKey())) {
+                sharedFiles.put(file.getKey(), file.getSize());
+            }
+        }
+
+        InstanceState state = stateService.load(instancePath);
+        long lastUsed = state.getLastRunAt() != null
+            ? state.getLastRunAt() : Files.getLastModifiedTime(instancePath).toMillis();
+        return new InstanceUsage(id, false, lastUsed, sortBySize(dirs), sharedFiles);
+    }
+
+    private void addChildren(Path directory, ForkJoinPool pool, Map<String, TreeSize> trees) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                TreeSize size = new TreeSize();
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    size.add(pool.invoke(new DirectoryTask(
+                        child, VOLATILE_DIRS.contains(name) ? null : cache, visited)));
+                } else {
+                    addFile(child, size, null);
+                }
+                trees.merge(name, size, TreeSize::add);
+            }
+        }
+    }
+
+    /**
+     * Add the size of a file, or of one of its links if it has several. Directories are added to
+     * the subdirectories instead, when those are requested.
+     */
+    private static void addFile(Path file, TreeSize size, List<String> subdirs) throws IOException {
+        if (!UNIX_ATTRIBUTES) {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isDirectory() && subdirs != null) {
+                subdirs.add(file.getFileName().toString());
+            } else {
+                size.bytes += attrs.size();
+            }
+            return;
+        }
+
+        Map<String, Object> attrs = Files.readAttributes(file, "unix:isDirectory,size,nlink,dev,ino",
+            LinkOption.NOFOLLOW_LINKS);
+        if ((Boolean) attrs.get("isDirectory") && subdirs != null) {
+            subdirs.add(file.getFileName().toString());
+            return;
+        }
+        long bytes = (Long) attrs.get("size");
+        int links = (Integer) attrs.get("nlink");
+        if (links > 1) {
+            size.linked.add(new LinkedFile(attrs.get("dev") + ":" + attrs.get("ino"), bytes, links));
+        } else {
+            size.bytes += bytes;
+        }
+    }
+
+    private Map<String, Long> sortBySize(Map<String, Long> dirs) {
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        dirs.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    private void loadCache() {
+        visited.clear();
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try {
+            cache = new ConcurrentHashMap<>(objectMapper.readValue(
+                cacheFile.toFile(), new TypeReference<Map<String, CacheEntry>>() {}));
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable disk usage cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Save the entries of the directories seen in this scan; directories that are gone are dropped.
+     */
+    private void saveCache() {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = cacheFile.resolveSibling(CACHE_FILE + ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), visited);
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the disk usage cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Size of a directory tree, with one task per subdirectory.
+     */
+    private static class DirectoryTask extends RecursiveTask<TreeSize> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Map<String, CacheEntry> cache;
+        private final Map<String, CacheEntry> visited;
+
+        /**
+         * @param cache Cached listings, or null to list the tree without the cache
+         * @param visited Where the listings of this scan are recorded for the next one
+         */
+        DirectoryTask(Path directory, Map<String, CacheEntry> cache, Map<String, CacheEntry> visited) {
+            this.directory = directory;
+            this.cache = cache;
+            this.visited = visited;
+        }
+
+        @Override
+        protected TreeSize compute() {
+            try {
+                long mtime = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS).toMillis();
+                String key = directory.toAbsolutePath().toString();
+                CacheEntry entry = cache != null ? cache.get(key) : null;
+                if (entry == null || entry.getMtime() != mtime) {
+                    entry = list(mtime);
+                }
+                if (cache != null) {
+                    visited.put(key, entry);
+                }
+
+                List<DirectoryTask> subtasks = new ArrayList<>();
+                for (String subdir : entry.getSubdirs()) {
+                    subtasks.add(new DirectoryTask(directory.resolve(subdir), cache, visited));
+                }
+                TreeSize size = new TreeSize();
+                size.bytes = entry.getBytes();
+                size.linked.addAll(entry.getLinked());
+                for (DirectoryTask subtask : invokeAll(subtasks)) {
+                    size.add(subtask.join());
+                }
+                return size;
+            } catch (NoSuchFileException e) {
+                // Deleted while walking
+                return new TreeSize();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private CacheEntry list(long mtime) throws IOException {
+            TreeSize size = new TreeSize();
+            List<String> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    try {
+                        addFile(child, size, subdirs);
+                    } catch (NoSuchFileException e) {
+                        // Deleted while listing
+                    }
+                }
+            }
+            CacheEntry entry = new CacheEntry();
+            entry.setMtime(mtime);
+            entry.setBytes(size.bytes);
+            entry.setLinked(size.linked);
+            entry.setSubdirs(subdirs);
+            return entry;
+        }
+    }
+
+    /**
+     * Size of a tree: its files with a single link, and the files with several links listed on their own.
+     */
+    private static class TreeSize {
+        private long bytes;
+        private final List<LinkedFile> linked = new ArrayList<>();
+
+        TreeSize add(TreeSize other) {
+            bytes += other.bytes;
+            linked.addAll(other.linked);
+            return this;
+        }
+
+        /**
+         * Size of the tree with each linked file counted once.
+         */
+        long getDistinctBytes() {
+            Map<String, Long> distinct = new HashMap<>();
+            for (LinkedFile file : linked) {
+                distinct.put(file.getKey(), file.getSize());
+            }
+            return bytes + distinct.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    /**
+     * Cached listing of one directory: size of its files and names of its subdirectories.
+     */
+    public static class CacheEntry {
+        private long mtime;
+        private long bytes;
+        private List<LinkedFile> linked = new ArrayList<>();
+        private List<String> subdirs = new ArrayList<>();
+
+        public long getMtime() {
+            return mtime;
+        }
+
+        public void setMtime(long mtime) {
+            this.mtime = mtime;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Files of the directory with several hardlinks, not counted in the bytes.
+         */
+        public List<LinkedFile> getLinked() {
+            return linked;
+        }
+
+        public void setLinked(List<LinkedFile> linked) {
+            this.linked = linked;
+        }
+
+        public List<String> getSubdirs() {
+            return subdirs;
+        }
+
+        public void setSubdirs(List<String> subdirs) {
+            this.subdirs = subdirs;
+        }
+    }
+
+    /**
+     * A file with several hardlinks, identified by its device and inode.
+     */
+    public static class LinkedFile {
+        private String key;
+        private long size;
+        private int links;
+
+        public LinkedFile() {
+        }
+
+        LinkedFile(String key, long size, int links) {
+            this.key = key;
+            this.size = size;
+            this.links = links;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        /**
+         * Number of hardlinks of the file when its directory was listed.
+         */
+        public int getLinks() {
+            return links;
+        }
+
+        public void setLinks(int links) {
+            this.links = links;
+        }
+    }
+
+    /**
+     * Disk usage of one instance.
+     */
+    public static class InstanceUsage {
+        private final String id;
+        private final boolean hibernated;
+        private final long lastUsed;
+        private final Map<String, Long> dirs;
+        private final Map<String, Long> sharedFiles;
+
+        InstanceUsage(String id, boolean hibernated, long lastUsed, Map<String, Long> dirs,
+                      Map<String, Long> sharedFiles) {
+            this.id = id;
+            this.hibernated = hibernated;
+            this.lastUsed = lastUsed;
+            this.dirs = dirs;
+            this.sharedFiles = sharedFiles;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isHibernated() {
+            return hibernated;
+        }
+
+        /**
+         * Last run of the instance, or its install (or hibernation) time if it never ran.
+         */
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Size of each top-level file and directory of the instance, largest first.
+         */
+        public Map<String, Long> getDirs() {
+            return dirs;
+        }
+
+        public long getTotal() {
+            return dirs.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Size of the files also linked from outside of the instance (another instance, the plugin store, ...).
+         */
+        public long getShared() {
+            return sharedFiles.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Size freed by deleting the instance.
+         */
+        public long getUnique() {
+            return getTotal() - getShared();
+        }
+    }
+}
@@ -11,6 +11,14 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -21,14 +29,22 @@ public class DownloadService {
 
     private static final Logger logger = LoggerFactory.getLogger(DownloadService.class);
     private static final int BUFFER_SIZE = 8192;
-    private static final String SQMAN_HOME = System.getProperty("user.home") + "/.sqman";
 
     private final OkHttpClient httpClient;
+    private final InstanceManifestService manifestService;
+    private final FileTreeService fileTreeService;
 
     public DownloadService() {
-        this.httpClient = new OkHttpClient.Builder()
+        this(new OkHttpClient.Builder()
             .followRedirects(true)
-            .build();
+            .build());
+    }
+
+    // Constructor for testing
+    public DownloadService(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.manifestService = new InstanceManifestService();
+        this.fileTreeService = new FileTreeService();
     }
 
     /**
@@ -36,14 +52,14 @@ public class DownloadService {
      *
      * @param version Version to download (e.g., "10.3.0.82913" or "26.2.0.119303")
      * @param edition Edition to download
-     * @param targetDirectory Target directory for installation (if null, uses ~/.sqman)
+     * @param targetDirectory Target directory for installation (if null, uses the configured distributions directory)
      * @return Path to the extracted installation
      */
     public Path downloadAndExtract(String version, Edition edition, String targetDirectory) throws IOException {
         // Determine installation directory
         Path installDir = targetDirectory != null
             ? Paths.get(targetDirectory)
-            : Paths.get(SQMAN_HOME);
+            : new ConfigService().getDistributionsDir();
 
         Files.createDirectories(installDir);
 
@@ -57,11 +73,24 @@ public class DownloadService {
 
         // Download file
         Path zipFile = installDir.resolve(fileName);
-        downloadFile(downloadUrl, zipFile);
+        String sha256 = downloadFile(downloadUrl, zipFile);
+        long downloadSize = Files.size(zipFile);
 
         // Extract and rename
         System.out.println("\nExtracting archive...");
-        Path extractedPath = extractZip(zipFile, installDir, version);
+        Path staging = createStagingDir(installDir, version);
+        Path extractedPath;
+        try {
+            String rootFolderName;
+            try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile.toFile()))) {
+                rootFolderName = extractEntries(zis, staging, null);
+            }
+            manifestService.create(staging.resolve(rootFolderName), version, edition, downloadUrl, sha256,
+                downloadSize);
+            extractedPath = moveIntoPlace(staging, rootFolderName, installDir, version);
+        } finally {
+            fileTreeService.deleteTree(staging);
+        }
 
         // Clean up ZIP file
         Files.deleteIfExists(zipFile);
@@ -145,8 +174,10 @@ public class DownloadService {
 
     /**
      * Download file with progress indication.
+     *
+     * @return Hex SHA-256 of the downloaded file
      */
-    private void downloadFile(String url, Path destination) throws IOException {
+    private String downloadFile(String url, Path destination) throws IOException {
         Request request = new Request.Builder()
             .url(url)
             .get()
@@ -158,8 +189,9 @@ public class DownloadService {
             }
 
             long contentLength = response.body().contentLength();
+            MessageDigest digest = newSha256();
 
-            try (InputStream input = response.body().byteStream();
+            try (InputStream input = new DigestInputStream(response.body().byteStream(), digest);
                  FileOutputStream output = new FileOutputStream(destination.toFile())) {
 
                 byte[] buffer = new byte[BUFFER_SIZE];
@@ -186,6 +218,7 @@ public class DownloadService {
                 }
                 System.out.println(); // New line after progress
             }
+            return HexFormat.of().formatHex(digest.digest());
         }
     }
 
@@ -209,52 +242,155 @@ public class DownloadService {
     }
 
     /**
-     * Extract ZIP file and rename to version identifier.
+     * Download and install a version, extracting the archive while it is being downloaded.
+     * No ZIP file is written to disk, so download and extraction overlap entirely.
+     *
+     * @param version Version to download
+     * @param edition Edition to download
+     * @param installDir Directory receiving the sonarqube-{version} folder
+     * @param onConfExtracted Called with the (staging) instance directory as soon as conf/sonar.properties
+     *                        is extracted, on another thread while the rest is still extracting (may be null)
+     * @return Path to the extracted installation
      */
-    private Path extractZip(Path zipFile, Path targetDir, String version) throws IOException {
-        String rootFolderName = null;
+    public Path downloadAndExtractStreaming(String version, Edition edition, Path installDir,
+                                           Consumer<Path> onConfExtracted) throws IOException {
+        Files.createDirectories(installDir);
 
-        // Extract ZIP
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile.toFile()))) {
-            ZipEntry entry;
-
-            while ((entry = zis.getNextEntry()) != null) {
-                // Get root folder name from first entry
-                if (rootFolderName == null) {
-                    String entryName = entry.getName();
-                    int firstSlash = entryName.indexOf('/');
-                    if (firstSlash > 0) {
-                        rootFolderName = entryName.substring(0, firstSlash);
-                    }
+        String fileName = buildFileName(version, edition);
+        String downloadUrl = edition.getBinariesUrl() + fileName;
+        logger.info("Streaming {} from {}", fileName, downloadUrl);
+        System.out.println("Downloading and extracting SonarQube " + edition.getDisplayName() + " " + version + "...");
+        System.out.println("URL: " + downloadUrl);
+
+        Request request = new Request.Builder()
+            .url(downloadUrl)
+            .get()
+            .build();
+
+        String rootFolderName;
+        MessageDigest digest = newSha256();
+        long downloadSize;
+        Path staging = createStagingDir(installDir, version);
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to download: HTTP " + response.code() + " - " + response.message());
+            }
+
+            long contentLength = response.body().contentLength();
+            ProgressInputStream progress = new ProgressInputStream(
+                new DigestInputStream(response.body().byteStream(), digest), contentLength);
+            try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(progress, BUFFER_SIZE * 8))) {
+                rootFolderName = extractEntries(zis, staging, onConfExtracted);
+                // The ZIP reader stops at the central directory, which must be hashed too
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (progress.read(buffer, 0, buffer.length) != -1) {
+                    // Drain
                 }
+                downloadSize = progress.totalBytesRead;
+            }
+            System.out.println(); // New line after progress
+
+            manifestService.create(staging.resolve(rootFolderName), version, edition, downloadUrl,
+                HexFormat.of().formatHex(digest.digest()), downloadSize);
+            Path extractedPath = moveIntoPlace(staging, rootFolderName, installDir, version);
+            logger.info("Installation complete: {}", extractedPath);
+            return extractedPath;
+        } finally {
+            fileTreeService.deleteTree(staging);
+        }
+    }
 
-                Path entryPath = targetDir.resolve(entry.getName());
+    /**
+     * Create the hidden directory an archive is extracted into. Only a complete extraction is
+     * moved to sonarqube-{version}, so a failed download never looks like an installed instance.
+     */
+    private Path createStagingDir(Path installDir, String version) throws IOException {
+        Path staging = installDir.resolve(".sonarqube-" + version + ".tmp-" + ProcessHandle.current().pid());
+        fileTreeService.deleteTree(staging);
+        return Files.createDirectories(staging);
+    }
 
-                if (entry.isDirectory()) {
-                    Files.createDirectories(entryPath);
-                } else {
-                    // Create parent directories if needed
-                    Files.createDirectories(entryPath.getParent());
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 
-                    // Extract file
-                    try (FileOutputStream fos = new FileOutputStream(entryPath.toFile())) {
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
-                        }
+    /**
+     * Extract all entries of a ZIP stream.
+     *
+     * @param onConfExtracted Optional callback run asynchronously once conf/sonar.properties is written;
+     *                        extraction waits for it before returning
+     * @return Name of the root folder of the archive
+     */
+    private String extractEntries(ZipInputStream zis, Path targetDir, Consumer<Path> onConfExtracted)
+            throws IOException {
+        String rootFolderName = null;
+        CompletableFuture<Void> confTask = null;
+        Path normalizedTarget = targetDir.toAbsolutePath().normalize();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            // Get root folder name from first entry
+            if (rootFolderName == null) {
+                String entryName = entry.getName();
+                int firstSlash = entryName.indexOf('/');
+                if (firstSlash > 0) {
+                    rootFolderName = entryName.substring(0, firstSlash);
+                }
+            }
+
+            Path entryPath = normalizedTarget.resolve(entry.getName()).normalize();
+            if (!entryPath.startsWith(normalizedTarget)) {
+                throw new IOException("Archive entry outside of target directory: " + entry.getName());
+            }
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(entryPath);
+            } else {
+                // Create parent directories if needed
+                Files.createDirectories(entryPath.getParent());
+
+                // Extract file
+                try (FileOutputStream fos = new FileOutputStream(entryPath.toFile())) {
+                    int len;
+                    while ((len = zis.read(buffer)) > 0) {
+                        fos.write(buffer, 0, len);
                     }
                 }
-                zis.closeEntry();
+
+                if (onConfExtracted != null && rootFolderName != null
+                    && entry.getName().equals(rootFolderName + "/conf/sonar.properties")) {
+                    Path instanceDir = normalizedTarget.resolve(rootFolderName);
+                    confTask = CompletableFuture.runAsync(() -> onConfExtracted.accept(instanceDir));
+                }
+            }
+            zis.closeEntry();
+        }
+
+        if (confTask != null) {
+            try {
+                confTask.join();
+            } catch (CompletionException e) {
+                throw new IOException("Failed to configure instance: " + e.getCause().getMessage(), e.getCause());
             }
         }
 
-        // Rename extracted folder to version identifier
         if (rootFolderName == null) {
             throw new IOException("Could not determine root folder from ZIP archive");
         }
+        return rootFolderName;
+    }
 
-        Path extractedFolder = targetDir.resolve(rootFolderName);
+    /**
+     * Move the extracted root folder out of the staging directory to sonarqube-{version}.
+     */
+    private Path moveIntoPlace(Path staging, String rootFolderName, Path targetDir, String version)
+            throws IOException {
+        Path extractedFolder = staging.resolve(rootFolderName);
         Path versionFolder = targetDir.resolve("sonarqube-" + version);
 
         // Check if extracted folder exists
@@ -262,20 +398,14 @@ public class DownloadService {
             throw new IOException("Extracted folder not found: " + extractedFolder);
         }
 
-        // If already extracted with the correct name, just return it
-        if (extractedFolder.equals(versionFolder)) {
-            System.out.println("Extracted to: " + versionFolder);
-            return versionFolder;
-        }
-
         // If target folder already exists, remove it first
         if (Files.exists(versionFolder)) {
             logger.warn("Version folder already exists, will be replaced: {}", versionFolder);
             deleteDirectory(versionFolder.toFile());
         }
 
-        // Rename to version folder
-        Files.move(extractedFolder, versionFolder);
+        // Rename to version folder, both are in the distributions directory
+        Files.move(extractedFolder, versionFolder, StandardCopyOption.ATOMIC_MOVE);
         System.out.println("Extracted to: " + versionFolder);
         return versionFolder;
     }
@@ -298,9 +428,53 @@ public class DownloadService {
     }
 
     /**
-     * Get the default SQMan home directory.
+     * Input stream printing download progress as it is consumed.
+     */
+    private class ProgressInputStream extends FilterInputStream {
+
+        private final long contentLength;
+        private long totalBytesRead;
+        private int lastProgress;
+
+        ProgressInputStream(InputStream in, long contentLength) {
+            super(in);
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int bytes) {
+            totalBytesRead += bytes;
+            if (contentLength > 0) {
+                int progress = (int) ((totalBytesRead * 100) / contentLength);
+                if (progress != lastProgress && progress % 5 == 0) {
+                    printProgress(progress, totalBytesRead, contentLength);
+                    lastProgress = progress;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the default installation directory (distributions storage tier).
      */
     public static String getSqmanHome() {
-        return SQMAN_HOME;
+        return new ConfigService().getDistributionsDir().toString();
     }
 }
\ No newline at end of file
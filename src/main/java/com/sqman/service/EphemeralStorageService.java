@@ -0,0 +1,139 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Service to run instances with their data and temp directories on a RAM-backed
+ * filesystem (tmpfs). Everything stored there is discarded when the instance stops.
+ */
+public class EphemeralStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EphemeralStorageService.class);
+    public static final String DEFAULT_TMPFS = "/dev/shm";
+    private static final String DATA_PATH_PROPERTY = "sonar.path.data";
+    private static final String TEMP_PATH_PROPERTY = "sonar.path.temp";
+    private static final String TOKEN_FILE = "token";
+    private static final String STASHED_TOKEN_FILE = "token.persistent";
+
+    private final SonarPropertiesService propertiesService;
+    private final InstanceStateService stateService;
+    private final MemoryService memoryService;
+    private final FileTreeService fileTreeService;
+
+    public EphemeralStorageService() {
+        this(new MemoryService());
+    }
+
+    // Constructor for testing
+    public EphemeralStorageService(MemoryService memoryService) {
+        this.propertiesService = new SonarPropertiesService();
+        this.stateService = new InstanceStateService();
+        this.memoryService = memoryService;
+        this.fileTreeService = new FileTreeService();
+    }
+
+    /**
+     * Point sonar.path.data and sonar.path.temp to a fresh directory on the tmpfs.
+     *
+     * @param instancePath Instance directory
+     * @param version Version identifier (used to name the run directory)
+     * @param tmpfsRoot tmpfs mount to use (null for /dev/shm)
+     * @param requiredBytes Memory that must be free before the run directory is created
+     * @return The per-run directory
+     * @throws IOException if the tmpfs is not usable or there is not enough free memory
+     */
+    public Path prepare(Path instancePath, String version, String tmpfsRoot, long requiredBytes) throws IOException {
+        Path root = Paths.get(tmpfsRoot != null ? tmpfsRoot : DEFAULT_TMPFS);
+        if (!Files.isDirectory(root) || !Files.isWritable(root)) {
+            throw new IOException("tmpfs directory not usable: " + root);
+        }
+
+        checkFreeMemory(root, requiredBytes);
+
+        Path runDir = root.resolve("sqman-" + version + "-" + System.currentTimeMillis());
+        Files.createDirectories(runDir.resolve("data"));
+        Files.createDirectories(runDir.resolve("temp"));
+
+        // Remember the current settings so they can be restored on cleanup
+        InstanceState state = stateService.load(instancePath);
+        state.setEphemeralDir(runDir.toString());
+        state.setPreviousDataPath(propertiesService.getProperty(instancePath, DATA_PATH_PROPERTY));
+        state.setPreviousTempPath(propertiesService.getProperty(instancePath, TEMP_PATH_PROPERTY));
+        stateService.save(instancePath, state);
+
+        propertiesService.setProperty(instancePath, DATA_PATH_PROPERTY, runDir.resolve("data").toString());
+        propertiesService.setProperty(instancePath, TEMP_PATH_PROPERTY, runDir.resolve("temp").toString());
+
+        // The fresh database needs its own setup, keep the token of the persistent database aside
+        Path tokenFile = instancePath.resolve(TOKEN_FILE);
+        if (Files.exists(tokenFile)) {
+            Files.move(tokenFile, instancePath.resolve(STASHED_TOKEN_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        logger.info("Ephemeral storage prepared: {}", runDir);
+        return runDir;
+    }
+
+    /**
+     * Discard the tmpfs directory of an ephemeral run and restore the persistent settings.
+     *
+     * @return true if an ephemeral run was cleaned up, false if the instance was not ephemeral
+     */
+    public boolean cleanup(Path instancePath) throws IOException {
+        InstanceState state = stateService.load(instancePath);
+        if (!state.isEphemeral()) {
+            return false;
+        }
+
+        propertiesService.setProperty(instancePath, DATA_PATH_PROPERTY, state.getPreviousDataPath());
+        propertiesService.setProperty(instancePath, TEMP_PATH_PROPERTY, state.getPreviousTempPath());
+
+        // Token of the discarded database is useless, bring back the persistent one
+        Files.deleteIfExists(instancePath.resolve(TOKEN_FILE));
+        Path stashedToken = instancePath.resolve(STASHED_TOKEN_FILE);
+        if (Files.exists(stashedToken)) {
+            Files.move(stashedToken, instancePath.resolve(TOKEN_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Path runDir = Paths.get(state.getEphemeralDir());
+        fileTreeService.deleteTree(runDir);
+
+        state.setEphemeralDir(null);
+        state.setPreviousDataPath(null);
+        state.setPreviousTempPath(null);
+        stateService.save(instancePath, state);
+
+        logger.info("Ephemeral storage discarded: {}", runDir);
+        return true;
+    }
+
+    /**
+     * Check that both the host and the tmpfs have room for the run.
+     * Pages written to tmpfs come out of RAM, so MemAvailable is the real limit.
+     */
+    private void checkFreeMemory(Path root, long requiredBytes) throws IOException {
+        long available = memoryService.getAvailableMemory();
+        if (available >= 0 && available < requiredBytes) {
+            throw new IOException("Not enough free memory for an ephemeral instance: "
+                + MemoryService.formatSize(available) + " available, "
+                + MemoryService.formatSize(requiredBytes) + " required");
+        }
+
+        FileStore store = Files.getFileStore(root);
+        long usable = store.getUsableSpace();
+        if (usable < requiredBytes) {
+            throw new IOException("Not enough space on " + root + ": "
+                + MemoryService.formatSize(usable) + " usable, "
+                + MemoryService.formatSize(requiredBytes) + " required");
+        }
+    }
+}
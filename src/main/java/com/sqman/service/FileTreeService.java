@@ -0,0 +1,150 @@
+package com.sqman.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Predicate;
+
+/**
+ * Service for operations on whole directory trees.
+ */
+public class FileTreeService {
+
+    /**
+     * Copy a directory tree, preserving file attributes. Existing files are replaced.
+     */
+    public void copyTree(Path source, Path target) throws IOException {
+        copyTree(source, target, relativePath -> true);
+    }
+
+    /**
+     * Copy the part of a directory tree accepted by the filter. The filter receives paths
+     * relative to the source; a rejected directory is skipped with its whole subtree.
+     */
+    public void copyTree(Path source, Path target, Predicate<Path> filter) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = source.relativize(dir);
+                if (!dir.equals(source) && !filter.test(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(relative.toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path relative = source.relativize(file);
+                if (filter.test(relative)) {
+                    Files.copy(file, target.resolve(relative.toString()),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Recreate the part of a directory tree accepted by the filter with hardlinks to the source
+     * files, except for the files accepted by the copy predicate, which get their own copy.
+     * Both predicates receive paths relative to the source. Files are copied instead of linked
+     * when the target is on another filesystem.
+     *
+     * @return Number of bytes copied
+     */
+    public long linkTree(Path source, Path target, Predicate<Path> filter, Predicate<Path> copy) throws IOException {
+        long[] bytesCopied = {0};
+        boolean[] linkSupported = {true};
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = source.relativize(dir);
+                if (!dir.equals(source) && !filter.test(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(relative.toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path relative = source.relativize(file);
+                if (!filter.test(relative)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                Path targetFile = target.resolve(relative.toString());
+                Files.deleteIfExists(targetFile);
+                if (linkSupported[0] && attrs.isRegularFile() && !copy.test(relative)) {
+                    try {
+                        Files.createLink(targetFile, file);
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // Cross-device or no hardlink support: copy the rest of the tree
+                        linkSupported[0] = false;
+                    }
+                }
+                Files.copy(file, targetFile, StandardCopyOption.COPY_ATTRIBUTES);
+                bytesCopied[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytesCopied[0];
+    }
+
+    /**
+     * Move a directory tree. Uses a rename when both paths are on the same filesystem,
+     * otherwise copies the tree and deletes the source.
+     */
+    public void moveTree(Path source, Path target) throws IOException {
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            copyTree(source, target);
+            deleteTree(source);
+        }
+    }
+
+    /**
+     * Delete a directory tree, children first. Does nothing if the path does not exist.
+     */
+    public void deleteTree(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Check if a directory is missing or has no entries.
+     */
+    public boolean isEmptyDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return true;
+        }
+        try (var entries = Files.list(directory)) {
+            return entries.findFirst().isEmpty();
+        }
+    }
+}
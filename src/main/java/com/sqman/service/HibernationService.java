@@ -0,0 +1,197 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to hibernate rarely used instances: the whole instance directory is packed into
+ * a compressed archive (sonarqube-[version].hibernated next to the instances) and deleted.
+ * A hibernated instance is still listed, and is rehydrated on its next use.
+ *
+ * Compression and decompression run on all cores with {@link ParallelGzipOutputStream}
+ * and {@link ParallelGzipInputStream}.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   hibernate.unusedDays - Days without a run before "sqman hibernate" packs an instance (default: 90)
+ */
+public class HibernationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HibernationService.class);
+    public static final String UNUSED_DAYS = "hibernate.unusedDays";
+    public static final String ARCHIVE_SUFFIX = ".hibernated";
+    private static final long DEFAULT_UNUSED_DAYS = 90;
+    private static final String DATA = "data";
+    private static final String LOGS = "logs";
+    // Runtime directories that are archived from their effective location, or not at all
+    private static final Set<String> RUNTIME_DIRS = Set.of(DATA, LOGS, "temp");
+    private static final int IO_BUFFER = 256 * 1024;
+    private static final int COMPRESSION_LEVEL = 6;
+
+    private final ConfigService configService;
+    private final StorageTierService storageTierService;
+    private final FileTreeService fileTreeService;
+    private final InstanceStateService stateService;
+    private final SonarPropertiesService propertiesService;
+    private final int threads;
+
+    public HibernationService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public HibernationService(ConfigService configService) {
+        this.configService = configService;
+        this.storageTierService = new StorageTierService(configService);
+        this.fileTreeService = new FileTreeService();
+        this.stateService = new InstanceStateService();
+        this.propertiesService = new SonarPropertiesService();
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Get the archive of a hibernated instance.
+     */
+    public Path getArchivePath(String version) {
+        return configService.getDistributionsDir().resolve("sonarqube-" + version + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * Check if an instance is hibernated.
+     */
+    public boolean isHibernated(String version) {
+        return Files.isRegularFile(getArchivePath(version))
+            && !Files.exists(configService.getDistributionsDir().resolve("sonarqube-" + version));
+    }
+
+    /**
+     * Pack a stopped instance into its archive and delete its directory.
+     *
+     * @return Size of the archive in bytes
+     */
+    public long hibernate(String version) throws IOException {
+        Path instancePath = configService.getDistributionsDir().resolve("sonarqube-" + version);
+        if (!Files.isDirectory(instancePath)) {
+            throw new IOException("Instance not found: " + version);
+        }
+        if (stateService.load(instancePath).isEphemeral()) {
+            new EphemeralStorageService().cleanup(instancePath);
+        }
+
+        Path archive = getArchivePath(version);
+        Path partial = archive.resolveSibling(archive.getFileName() + ".partial");
+        // Kept before the instance directory goes, so its plugin backups are never left unreferenced
+        new PluginBackupService().saveHibernatedIndex(instancePath, archive);
+        try (TarWriter tar = new TarWriter(new ParallelGzipOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(partial), IO_BUFFER), COMPRESSION_LEVEL, threads))) {
+            tar.addTree(instancePath, "", relative -> !RUNTIME_DIRS.contains(relative.getName(0).toString()));
+            // Data and logs may live on the hot storage tier, outside of the instance directory
+            tar.addTree(storageTierService.getDataDir(instancePath), DATA, relative -> true);
+            tar.addTree(storageTierService.getLogsDir(instancePath), LOGS, relative -> true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            Files.deleteIfExists(PluginBackupService.getHibernatedIndex(archive));
+            throw e;
+        }
+        Files.move(partial, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Renamed to a hidden name first so an interrupted delete leaves no half instance next to the archive
+        Path deleting = instancePath.resolveSibling(
+            "." + instancePath.getFileName() + ".deleting-" + ProcessHandle.current().pid());
+        Files.move(instancePath, deleting, StandardCopyOption.ATOMIC_MOVE);
+        storageTierService.release(deleting);
+        fileTreeService.deleteTree(deleting);
+        long size = Files.size(archive);
+        logger.info("Hibernated {} into {} ({} bytes)", version, archive, size);
+        return size;
+    }
+
+    /**
+     * Unpack a hibernated instance to its directory and delete its archive.
+     *
+     * @return true if the instance was hibernated, false if there was nothing to do
+     */
+    public boolean rehydrate(String version) throws IOException {
+        if (!isHibernated(version)) {
+            return false;
+        }
+        Path archive = getArchivePath(version);
+        Path instancePath = configService.getDistributionsDir().resolve("sonarqube-" + version);
+
+        // Extracted under a hidden name so an interrupted rehydration leaves the archive as the only copy
+        Path staging = instancePath.resolveSibling(
+            "." + instancePath.getFileName() + ".tmp-" + ProcessHandle.current().pid());
+        fileTreeService.deleteTree(staging);
+        try (TarReader tar = new TarReader(new ParallelGzipInputStream(
+                 new BufferedInputStream(Files.newInputStream(archive), IO_BUFFER), threads))) {
+            TarReader.Entry entry;
+            while ((entry = tar.next()) != null) {
+                tar.extractTo(staging, entry.getName());
+            }
+            Files.createDirectories(staging.resolve("temp"));
+
+            // Data and logs are back inside the instance, the storage tier is applied again on the next run
+            propertiesService.removeProperty(staging, "sonar.path.data");
+            propertiesService.removeProperty(staging, "sonar.path.temp");
+            propertiesService.removeProperty(staging, "sonar.path.logs");
+            InstanceState state = stateService.load(staging);
+            state.setDataDir(null);
+            state.setTempDir(null);
+            state.setLogsDir(null);
+            state.setLastRunAt(System.currentTimeMillis());
+            stateService.save(staging, state);
+
+            Files.move(staging, instancePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            fileTreeService.deleteTree(staging);
+            throw e;
+        }
+
+        Files.delete(archive);
+        Files.deleteIfExists(PluginBackupService.getHibernatedIndex(archive));
+        logger.info("Rehydrated {} from {}", version, archive);
+        return true;
+    }
+
+    /**
+     * Get the configured number of days without a run before an instance is hibernated.
+     */
+    public long getUnusedDays() {
+        return configService.getLong(UNUSED_DAYS, DEFAULT_UNUSED_DAYS);
+    }
+
+    /**
+     * Find the instances not run for the given number of days. Instances never run since
+     * sqman records runs are dated by the modification time of their directory.
+     *
+     * @param versions Installed, not hibernated versions to check
+     * @return The versions not used in that period
+     */
+    public List<String> findUnused(List<String> versions, long unusedDays) throws IOException {
+        long threshold = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(unusedDays);
+        List<String> unused = new ArrayList<>();
+        for (String version : versions) {
+            Path instancePath = configService.getDistributionsDir().resolve("sonarqube-" + version);
+            if (!Files.isDirectory(instancePath)) {
+                continue;
+            }
+            Long lastRunAt = stateService.load(instancePath).getLastRunAt();
+            long lastUsed = lastRunAt != null ? lastRunAt : Files.getLastModifiedTime(instancePath).toMillis();
+            if (lastUsed < threshold) {
+                unused.add(version);
+            }
+        }
+        return unused;
+    }
+}
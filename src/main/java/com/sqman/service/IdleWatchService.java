@@ -0,0 +1,162 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to stop instances nobody has used for a while.
+ *
+ * Activity is read from the modification time of the web access log (every HTTP request,
+ * including scanner uploads) and the compute engine log (background tasks). An instance
+ * that was just started counts as active from its start time.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   idle.timeoutMinutes - Stop instances idle for longer than this (default: 0, disabled)
+ *
+ * Stopped instances are compacted as well when compact.onIdleStop is set, see {@link CompactionService}.
+ */
+public class IdleWatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdleWatchService.class);
+    public static final String IDLE_TIMEOUT_MINUTES = "idle.timeoutMinutes";
+    private static final String[] ACTIVITY_LOGS = {"access.log", "ce.log"};
+    private static final long STOP_TIMEOUT_SECONDS = 120;
+
+    private final ConfigService configService;
+    private final ProcessService processService;
+    private final InstanceService instanceService;
+    private final InstanceStateService stateService;
+    private final StorageTierService storageTierService;
+    private final CompactionService compactionService;
+
+    public IdleWatchService() {
+        this(new ConfigService(), new ProcessService());
+    }
+
+    // Constructor for testing
+    public IdleWatchService(ConfigService configService, ProcessService processService) {
+        this.configService = configService;
+        this.processService = processService;
+        this.instanceService = new InstanceService(configService);
+        this.stateService = new InstanceStateService();
+        this.storageTierService = new StorageTierService(configService);
+        this.compactionService = new CompactionService(configService);
+    }
+
+    /**
+     * Get the configured idle timeout in minutes (0 when idle shutdown is disabled).
+     */
+    public long getTimeoutMinutes() {
+        return configService.getLong(IDLE_TIMEOUT_MINUTES, 0);
+    }
+
+    /**
+     * Get the time of the last activity of an instance.
+     *
+     * @return Epoch millis of the most recent access/CE log write or start, 0 if unknown
+     */
+    public long getLastActivity(Path instancePath) throws IOException {
+        long lastActivity = 0;
+
+        Path pidFile = processService.getPidFile(instancePath);
+        if (Files.exists(pidFile)) {
+            lastActivity = Files.getLastModifiedTime(pidFile).toMillis();
+        }
+
+        Path logsDir = storageTierService.getLogsDir(instancePath);
+        for (String log : ACTIVITY_LOGS) {
+            Path logFile = logsDir.resolve(log);
+            if (Files.exists(logFile)) {
+                lastActivity = Math.max(lastActivity, Files.getLastModifiedTime(logFile).toMillis());
+            }
+        }
+        return lastActivity;
+    }
+
+    /**
+     * Stop every running instance idle for longer than the timeout.
+     * Stopped instances are flagged so the next "sqman run" without a version resumes them.
+     *
+     * @param timeoutMinutes Idle time after which an instance is stopped
+     * @return Versions of the instances that were stopped
+     */
+    public List<String> stopIdleInstances(long timeoutMinutes) throws IOException, InterruptedException {
+        List<String> stopped = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (String dirName : instanceService.listInstalled()) {
+            String version = dirName.replace("sonarqube-", "");
+            Path instancePath = instanceService.getInstancePath(version);
+
+            if (!processService.isInstanceRunning(instancePath)) {
+                continue;
+            }
+
+            long idleMillis = now - getLastActivity(instancePath);
+            if (idleMillis < TimeUnit.MINUTES.toMillis(timeoutMinutes)) {
+                continue;
+            }
+
+            System.out.println("SonarQube " + version + " idle for "
+                + TimeUnit.MILLISECONDS.toMinutes(idleMillis) + " minutes, stopping it...");
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "idle stop");
+            try (lock) {
+                // Compaction needs all JVMs gone, not only the stop requested
+                boolean compact = compactionService.shouldCompactOnIdleStop(instancePath);
+                boolean stoppedInstance = compact
+                    ? processService.stopAndWait(instancePath, STOP_TIMEOUT_SECONDS)
+                    : processService.stopInstance(instancePath, false);
+                if (!stoppedInstance) {
+                    logger.warn("Could not stop idle instance {}", version);
+                    continue;
+                }
+
+                // RAM-backed data cannot survive the stop, give the memory back as well
+                instanceService.cleanupEphemeralStorage(version);
+
+                InstanceState state = stateService.load(instancePath);
+                state.setIdleStoppedAt(now);
+                stateService.save(instancePath, state);
+                stopped.add(version);
+
+                if (compact) {
+                    compactDatabase(version, instancePath);
+                }
+            }
+        }
+        return stopped;
+    }
+
+    private void compactDatabase(String version, Path instancePath) throws InterruptedException {
+        try {
+            System.out.println("Compacting the database of " + version + "...");
+            long size = compactionService.compact(instancePath);
+            System.out.println("✓ Database of " + version + " compacted to " + MemoryService.formatSize(size));
+        } catch (IOException e) {
+            // The instance is stopped either way, the next idle stop tries again
+            logger.warn("Could not compact the database of {}: {}", version, e.getMessage());
+        }
+    }
+
+    /**
+     * Check if any installed instance is running.
+     */
+    public boolean isAnyInstanceRunning() {
+        for (String dirName : instanceService.listInstalled()) {
+            Path instancePath = instanceService.getInstancePath(dirName.replace("sonarqube-", ""));
+            if (processService.isInstanceRunning(instancePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,265 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sqman.model.Edition;
+import com.sqman.model.ExportManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service to export an instance to a single portable archive and import it back.
+ *
+ * The archive is a tar.gz holding a manifest (version, edition, plugins), conf/, extensions/,
+ * lib/extensions/, the data directory and the token. The distribution itself is not included:
+ * import downloads it when the version is not installed. Files are streamed from disk through
+ * a parallel block compressor straight into the archive, without a temporary copy.
+ *
+ * Settings bound to the exporting machine (sonar.path.* directories, AppCDS archives) are left
+ * out of the archive. An import keeps the directories of the local instance and its storage tier.
+ */
+public class InstanceArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceArchiveService.class);
+    public static final String MANIFEST = "sqman-export.json";
+    static final int FORMAT_VERSION = 1;
+    private static final String DATA = "data";
+    private static final String TOKEN = "token";
+    private static final String SETTINGS = "conf/sonar.properties";
+    private static final String PATH_SETTINGS = "sonar.path.";
+    private static final String[] TREES = {"conf", "extensions", "lib/extensions"};
+    private static final int IO_BUFFER = 256 * 1024;
+
+    private final ConfigService configService;
+    private final DownloadService downloadService;
+    private final StorageTierService storageTierService;
+    private final SonarPropertiesService propertiesService;
+    private final FileTreeService fileTreeService;
+    private final ObjectMapper objectMapper;
+    private final int threads;
+
+    public InstanceArchiveService() {
+        this(new ConfigService(), new DownloadService());
+    }
+
+    // Constructor for testing
+    public InstanceArchiveService(ConfigService configService, DownloadService downloadService) {
+        this.configService = configService;
+        this.downloadService = downloadService;
+        this.storageTierService = new StorageTierService(configService);
+        this.propertiesService = new SonarPropertiesService();
+        this.fileTreeService = new FileTreeService();
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Export a stopped instance.
+     *
+     * @param instancePath Instance directory
+     * @param version Version of the instance
+     * @param edition Edition to download when the archive is imported where the version is not installed
+     * @param archive Archive to write (replaced if it exists)
+     * @param level Compression level, 1 (fastest) to 9 (smallest)
+     * @return The manifest written into the archive
+     */
+    public ExportManifest export(Path instancePath, String version, Edition edition, Path archive, int level)
+            throws IOException {
+        ExportManifest manifest = new ExportManifest();
+        manifest.setFormatVersion(FORMAT_VERSION);
+        manifest.setVersion(version);
+        manifest.setEdition(edition.getName());
+        manifest.setExportedAt(System.currentTimeMillis());
+        manifest.setPlugins(new InstanceManifestService().listPlugins(instancePath));
+
+        Path partial = archive.resolveSibling(archive.getFileName() + ".partial");
+        try (TarWriter tar = new TarWriter(new ParallelGzipOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(partial), IO_BUFFER), level, threads))) {
+            tar.addBytes(MANIFEST, objectMapper.writeValueAsBytes(manifest), manifest.getExportedAt());
+            for (String tree : TREES) {
+                tar.addTree(instancePath.resolve(tree), tree,
+                    relative -> !Path.of(tree).resolve(relative).equals(Path.of(SETTINGS)));
+            }
+            addPortableSettings(tar, instancePath, archive);
+            tar.addTree(storageTierService.getDataDir(instancePath), DATA, relative -> true);
+            Path tokenFile = instancePath.resolve(TOKEN);
+            if (Files.exists(tokenFile)) {
+                tar.addFile(TOKEN, tokenFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        Files.move(partial, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Exported {} to {}", instancePath.getFileName(), archive);
+        return manifest;
+    }
+
+    /**
+     * Read the manifest of an archive without extracting it.
+     */
+    public ExportManifest readManifest(Path archive) throws IOException {
+        try (TarReader tar = openArchive(archive)) {
+            TarReader.Entry entry = tar.next();
+            if (entry == null || !MANIFEST.equals(entry.getName())) {
+                throw new IOException("Not a sqman export: " + archive);
+            }
+            ExportManifest manifest = objectMapper.readValue(tar.readContent(), ExportManifest.class);
+            if (manifest.getFormatVersion() > FORMAT_VERSION) {
+                throw new IOException("Archive format " + manifest.getFormatVersion()
+                    + " is newer than this sqman supports, please upgrade sqman");
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Import an archive. The distribution is downloaded first if its version is not installed.
+     * The instance must not be running.
+     *
+     * @param replace Replace the state of an installed instance of the same version
+     * @return Directory of the imported instance
+     * @throws IOException if the version is installed and replace is false
+     */
+    public Path importArchive(Path archive, boolean replace) throws IOException {
+        ExportManifest manifest = readManifest(archive);
+        String version = manifest.getVersion();
+        Path instancePath = configService.getDistributionsDir().resolve("sonarqube-" + version);
+
+        if (!Files.exists(instancePath)) {
+            downloadService.downloadAndExtractStreaming(
+                version, Edition.fromString(manifest.getEdition()), configService.getDistributionsDir(), null);
+        } else if (!replace) {
+            throw new IOException("SonarQube " + version + " is already installed, use --force to replace its state");
+        }
+
+        // Read the whole archive before touching the instance: a corrupt or rejected archive leaves it as it was
+        Path dataDir = storageTierService.getDataDir(instancePath);
+        String suffix = ".import.tmp-" + ProcessHandle.current().pid();
+        Path stagingDir = instancePath.resolve(suffix);
+        Path stagingDataDir = dataDir.resolveSibling("." + dataDir.getFileName() + suffix);
+        Map<String, String> localPaths = readPathSettings(instancePath);
+        try {
+            Files.createDirectories(stagingDir);
+            Files.createDirectories(stagingDataDir);
+            try (TarReader tar = openArchive(archive)) {
+                TarReader.Entry entry;
+                while ((entry = tar.next()) != null) {
+                    if (MANIFEST.equals(entry.getName())) {
+                        continue;
+                    }
+                    extractEntry(tar, entry, stagingDir, stagingDataDir);
+                }
+            }
+
+            // The archive is the complete state: plugins and data it does not contain must go
+            fileTreeService.deleteTree(dataDir);
+            fileTreeService.deleteTree(instancePath.resolve("extensions"));
+            fileTreeService.deleteTree(instancePath.resolve("lib/extensions"));
+            Files.deleteIfExists(instancePath.resolve(TOKEN));
+            Files.move(stagingDataDir, dataDir, StandardCopyOption.ATOMIC_MOVE);
+            mergeInto(stagingDir, instancePath);
+        } finally {
+            fileTreeService.deleteTree(stagingDataDir);
+            fileTreeService.deleteTree(stagingDir);
+        }
+
+        // The imported data went to the directories of the local instance: point the settings back to them
+        removePathSettings(instancePath);
+        for (Map.Entry<String, String> setting : localPaths.entrySet()) {
+            propertiesService.setProperty(instancePath, setting.getKey(), setting.getValue());
+        }
+        storageTierService.apply(instancePath);
+
+        new InstanceManifestService().updatePlugins(instancePath);
+        logger.info("Imported {} into {}", archive, instancePath);
+        return instancePath;
+    }
+
+    /**
+     * Add sonar.properties without the settings bound to this machine. They are removed from a
+     * copy in a scratch directory next to the archive.
+     */
+    private void addPortableSettings(TarWriter tar, Path instancePath, Path archive) throws IOException {
+        Path settings = instancePath.resolve(SETTINGS);
+        if (!Files.exists(settings)) {
+            return;
+        }
+        Path scratch = archive.resolveSibling("." + archive.getFileName() + ".tmp-" + ProcessHandle.current().pid());
+        try {
+            Files.createDirectories(scratch.resolve(SETTINGS).getParent());
+            Files.copy(settings, scratch.resolve(SETTINGS), StandardCopyOption.REPLACE_EXISTING);
+            removePathSettings(scratch);
+            new AppCdsService().disable(scratch);
+            tar.addFile(SETTINGS, scratch.resolve(SETTINGS));
+        } finally {
+            fileTreeService.deleteTree(scratch);
+        }
+    }
+
+    private Map<String, String> readPathSettings(Path instancePath) throws IOException {
+        Map<String, String> paths = new LinkedHashMap<>();
+        for (Map.Entry<String, String> setting : propertiesService.readProperties(instancePath).entrySet()) {
+            if (setting.getKey().startsWith(PATH_SETTINGS)) {
+                paths.put(setting.getKey(), setting.getValue());
+            }
+        }
+        return paths;
+    }
+
+    private void removePathSettings(Path instancePath) throws IOException {
+        for (String key : readPathSettings(instancePath).keySet()) {
+            propertiesService.removeProperty(instancePath, key);
+        }
+    }
+
+    private TarReader openArchive(Path archive) throws IOException {
+        return new TarReader(new ParallelGzipInputStream(
+            new BufferedInputStream(Files.newInputStream(archive), IO_BUFFER), threads));
+    }
+
+    /**
+     * Move the content of a staging directory into the instance, replacing files that exist in both.
+     */
+    private void mergeInto(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(source)) {
+            for (Path child : children) {
+                Path destination = target.resolve(child.getFileName().toString());
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS) && Files.isDirectory(destination)) {
+                    mergeInto(child, destination);
+                } else {
+                    Files.move(child, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write one entry into the staged instance. Data entries go to the staged data directory.
+     */
+    private void extractEntry(TarReader tar, TarReader.Entry entry, Path instancePath, Path dataDir)
+            throws IOException {
+        String name = entry.getName();
+        if (name.equals(DATA) || name.startsWith(DATA + "/")) {
+            tar.extractTo(dataDir, name.substring(DATA.length()));
+        } else {
+            tar.extractTo(instancePath, name);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqman.model.Edition;
+import com.sqman.model.InstanceManifest;
+import com.sqman.model.SonarQubeVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to write and read instance.json, the manifest of an installed instance.
+ *
+ * The manifest is written once the distribution is extracted and records what the directory
+ * name does not: edition, build type, source URL, SHA-256 of the download, installed size,
+ * install time and plugin inventory. Listing instances reads these small files instead of
+ * walking the instance trees.
+ */
+public class InstanceManifestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceManifestService.class);
+    public static final String MANIFEST_FILE = "instance.json";
+    private static final int FORMAT_VERSION = 1;
+
+    private final ObjectMapper objectMapper;
+
+    public InstanceManifestService() {
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * Write the manifest of a freshly extracted distribution.
+     *
+     * @param sha256 Hex SHA-256 of the downloaded ZIP
+     * @param downloadSize Size of the downloaded ZIP in bytes
+     * @return The written manifest
+     */
+    public InstanceManifest create(Path instancePath, String version, Edition edition, String sourceUrl,
+                                   String sha256, long downloadSize) throws IOException {
+        InstanceManifest manifest = new InstanceManifest();
+        manifest.setFormatVersion(FORMAT_VERSION);
+        manifest.setVersion(version);
+        manifest.setEdition(edition.getName());
+        manifest.setType((edition == Edition.COMMUNITY ? SonarQubeVersion.Type.SQCB : SonarQubeVersion.Type.SQS)
+            .getCode());
+        manifest.setSourceUrl(sourceUrl);
+        manifest.setSha256(sha256);
+        manifest.setDownloadSize(downloadSize);
+        manifest.setSize(measure(instancePath));
+        manifest.setInstalledAt(System.currentTimeMillis());
+        manifest.setPlugins(listPlugins(instancePath));
+        save(instancePath, manifest);
+        logger.info("Wrote {} for {}", MANIFEST_FILE, instancePath);
+        return manifest;
+    }
+
+    /**
+     * Load the manifest of an instance.
+     *
+     * @return The manifest, or null if the instance has none or it cannot be read
+     */
+    public InstanceManifest load(Path instancePath) {
+        Path manifestFile = instancePath.resolve(MANIFEST_FILE);
+        if (!Files.isRegularFile(manifestFile)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(manifestFile.toFile(), InstanceManifest.class);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable manifest {}: {}", manifestFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save the manifest of an instance. The file is replaced atomically, which also detaches
+     * it from the source of a clone (clones hardlink their distribution files).
+     */
+    public void save(Path instancePath, InstanceManifest manifest) throws IOException {
+        Path manifestFile = instancePath.resolve(MANIFEST_FILE);
+        Path tempFile = instancePath.resolve(MANIFEST_FILE + ".tmp");
+        objectMapper.writeValue(tempFile.toFile(), manifest);
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Record the current plugin JARs of an instance in its manifest, if it has one.
+     */
+    public void updatePlugins(Path instancePath) throws IOException {
+        InstanceManifest manifest = load(instancePath);
+        if (manifest != null) {
+            manifest.setPlugins(listPlugins(instancePath));
+            save(instancePath, manifest);
+        }
+    }
+
+    /**
+     * List the plugin JARs of an instance: bundled (lib/extensions) and installed (extensions/plugins).
+     */
+    public List<String> listPlugins(Path instancePath) throws IOException {
+        Path extensionsDir = instancePath.resolve("lib/extensions");
+        Path pluginsDir = instancePath.resolve("extensions/plugins");
+        try (Stream<Path> bundled = Files.isDirectory(extensionsDir) ? Files.list(extensionsDir) : Stream.empty();
+             Stream<Path> installed = Files.isDirectory(pluginsDir) ? Files.list(pluginsDir) : Stream.empty()) {
+            return Stream.concat(bundled, installed)
+                .map(path -> path.getFileName().toString())
+                .filter(fileName -> fileName.endsWith(".jar"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private long measure(Path directory) throws IOException {
+        AtomicLong size = new AtomicLong();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.forEach(path -> {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attrs.isRegularFile()) {
+                        size.addAndGet(attrs.size());
+                    }
+                } catch (IOException e) {
+                    logger.debug("Could not measure {}: {}", path, e.getMessage());
+                }
+            });
+        }
+        return size.get();
+    }
+}
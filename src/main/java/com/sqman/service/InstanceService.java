@@ -1,12 +1,16 @@
 package com.sqman.service;
 
+import com.sqman.model.InstanceManifest;
+import com.sqman.model.InstanceState;
+import com.sqman.model.IsolationInfo;
+import com.sqman.model.PluginBackup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -19,7 +23,16 @@ import java.util.stream.Stream;
 public class InstanceService {
 
     private static final Logger logger = LoggerFactory.getLogger(InstanceService.class);
-    private static final String SQMAN_HOME = System.getProperty("user.home") + "/.sqman";
+
+    private final ConfigService configService;
+
+    public InstanceService() {
+        this(new ConfigService());
+    }
+
+    public InstanceService(ConfigService configService) {
+        this.configService = configService;
+    }
 
     /**
      * List all installed SonarQube instances.
@@ -27,17 +40,23 @@ public class InstanceService {
      * @return List of instance directory names
      */
     public List<String> listInstalled() {
-        Path sqmanDir = Paths.get(SQMAN_HOME);
+        Path sqmanDir = configService.getDistributionsDir();
 
         if (!Files.exists(sqmanDir)) {
             return Collections.emptyList();
         }
 
+        // Hibernated instances are listed under their instance name
         try (Stream<Path> paths = Files.list(sqmanDir)) {
             return paths
-                .filter(Files::isDirectory)
-                .filter(path -> path.getFileName().toString().startsWith("sonarqube-"))
+                .filter(path -> Files.isDirectory(path)
+                    || path.getFileName().toString().endsWith(HibernationService.ARCHIVE_SUFFIX))
                 .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith("sonarqube-"))
+                .map(name -> name.endsWith(HibernationService.ARCHIVE_SUFFIX)
+                    ? name.substring(0, name.length() - HibernationService.ARCHIVE_SUFFIX.length())
+                    : name)
+                .distinct()
                 .sorted()
                 .collect(Collectors.toList());
         } catch (IOException e) {
@@ -65,8 +84,28 @@ public class InstanceService {
      * @return true if installed, false otherwise
      */
     public boolean isInstalled(String version) {
-        Path instancePath = Paths.get(SQMAN_HOME, "sonarqube-" + version);
-        return Files.exists(instancePath) && Files.isDirectory(instancePath);
+        Path instancePath = getInstancePath(version);
+        return (Files.exists(instancePath) && Files.isDirectory(instancePath)) || isHibernated(version);
+    }
+
+    /**
+     * Check if an instance is hibernated (packed into an archive until its next use).
+     *
+     * @param version Version identifier
+     * @return true if hibernated
+     */
+    public boolean isHibernated(String version) {
+        return new HibernationService(configService).isHibernated(version);
+    }
+
+    /**
+     * Unpack a hibernated instance. Must be called with the instance lock held.
+     *
+     * @param version Version identifier
+     * @return true if the instance was hibernated, false if there was nothing to do
+     */
+    public boolean rehydrate(String version) throws IOException {
+        return new HibernationService(configService).rehydrate(version);
     }
 
     /**
@@ -76,7 +115,49 @@ public class InstanceService {
      * @return Path to instance directory
      */
     public Path getInstancePath(String version) {
-        return Paths.get(SQMAN_HOME, "sonarqube-" + version);
+        return configService.getDistributionsDir().resolve("sonarqube-" + version);
+    }
+
+    /**
+     * Get the manifest of an instance. Instances installed before manifests were written get
+     * one from what is known without walking their tree, saved for the next call.
+     *
+     * @param version Version identifier
+     * @return The manifest, or null if the instance is hibernated or not installed
+     */
+    public InstanceManifest getManifest(String version) {
+        Path instancePath = getInstancePath(version);
+        InstanceManifestService manifestService = new InstanceManifestService();
+        InstanceManifest manifest = manifestService.load(instancePath);
+        if (manifest != null || !Files.isDirectory(instancePath)) {
+            return manifest;
+        }
+
+        try {
+            manifest = new InstanceManifest();
+            manifest.setVersion(version);
+            manifest.setInstalledAt(Files.readAttributes(instancePath, BasicFileAttributes.class)
+                .creationTime().toMillis());
+            manifest.setPlugins(manifestService.listPlugins(instancePath));
+            manifestService.save(instancePath, manifest);
+            return manifest;
+        } catch (IOException e) {
+            logger.warn("Could not write the manifest of {}: {}", version, e.getMessage());
+            return manifest;
+        }
+    }
+
+    /**
+     * Record the current plugins of an instance in its manifest.
+     *
+     * @param version Version identifier
+     */
+    public void updateManifestPlugins(String version) {
+        try {
+            new InstanceManifestService().updatePlugins(getInstancePath(version));
+        } catch (IOException e) {
+            logger.warn("Could not update the manifest of {}: {}", version, e.getMessage());
+        }
     }
 
     /**
@@ -88,14 +169,41 @@ public class InstanceService {
     public boolean deleteInstance(String version) {
         Path instancePath = getInstancePath(version);
 
+        if (isHibernated(version)) {
+            try {
+                Path archive = new HibernationService(configService).getArchivePath(version);
+                PluginBackupService backupService = new PluginBackupService();
+                List<PluginBackup> backups = backupService.listHibernated(archive);
+                Files.delete(archive);
+                Files.deleteIfExists(PluginBackupService.getHibernatedIndex(archive));
+                logger.info("Deleted hibernated instance: {}", version);
+                releasePluginBackups(backupService, instancePath, backups);
+                return true;
+            } catch (IOException e) {
+                logger.error("Error deleting instance: {}", version, e);
+                return false;
+            }
+        }
+
         if (!Files.exists(instancePath)) {
             logger.warn("Instance not found: {}", version);
             return false;
         }
 
+        // Renamed into the trash at once, the files are deleted by a background process
         try {
-            deleteDirectory(instancePath);
+            cleanupEphemeralStorage(version);
+            PluginBackupService backupService = new PluginBackupService();
+            List<PluginBackup> backups = backupService.list(instancePath);
+            TrashService trashService = new TrashService(configService);
+            Path hotDir = new StorageTierService(configService).getHotDir(instancePath);
+            if (hotDir != null && Files.isDirectory(hotDir)) {
+                trashService.moveToTrash(hotDir);
+            }
+            trashService.moveToTrash(instancePath);
+            trashService.purgeInBackground();
             logger.info("Deleted instance: {}", version);
+            releasePluginBackups(backupService, instancePath, backups);
             return true;
         } catch (IOException e) {
             logger.error("Error deleting instance: {}", version, e);
@@ -104,26 +212,114 @@ public class InstanceService {
     }
 
     /**
-     * Recursively delete a directory and all its contents.
+     * Delete the plugin store blobs only a deleted instance referred to. The instance is deleted anyway
+     * if this fails, its blobs are then left in the store.
+     */
+    private void releasePluginBackups(PluginBackupService backupService, Path instancePath,
+                                      List<PluginBackup> backups) {
+        try {
+            backupService.removeAll(instancePath, backups);
+        } catch (IOException e) {
+            logger.warn("Could not prune the plugin backups of {}: {}", instancePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Discard the RAM-backed storage of an ephemeral run, if the instance has one.
+     * Must only be called when the instance is stopped.
+     *
+     * @param version Version identifier
+     * @return true if ephemeral storage was discarded, false if there was none
+     */
+    public boolean cleanupEphemeralStorage(String version) throws IOException {
+        return new EphemeralStorageService().cleanup(getInstancePath(version));
+    }
+
+    /**
+     * Seed a fresh instance from the golden template of its version.
+     *
+     * @param version Version identifier
+     * @return true if the instance was seeded and its setup can be skipped
+     */
+    public boolean seedFromTemplate(String version) throws IOException {
+        return new TemplateService(configService).seed(getInstancePath(version), version);
+    }
+
+    /**
+     * Lock an instance against concurrent sqman processes.
+     *
+     * @param version Version identifier
+     * @param mode Shared for read-only operations, exclusive for changes
+     * @param operation Operation name reported to processes waiting for the lock
+     * @return The lock, to be closed when the operation is done
+     * @throws IOException if the lock is still held by another process after lock.timeoutSeconds
+     */
+    public LockService.InstanceLock lockInstance(String version, LockService.Mode mode, String operation)
+            throws IOException, InterruptedException {
+        return new LockService(configService).lock("sonarqube-" + version, mode, operation);
+    }
+
+    /**
+     * Find the instance most recently stopped by the idle watcher.
      *
-     * @param directory Path to directory to delete
-     * @throws IOException if deletion fails
+     * @return Version of the instance, or null if none was stopped for inactivity
+     */
+    public String getIdleStoppedInstance() {
+        InstanceStateService stateService = new InstanceStateService();
+        String latestVersion = null;
+        long latestStop = 0;
+
+        for (String dirName : listInstalled()) {
+            String version = dirName.replace("sonarqube-", "");
+            try {
+                Long stoppedAt = stateService.load(getInstancePath(version)).getIdleStoppedAt();
+                if (stoppedAt != null && stoppedAt > latestStop) {
+                    latestStop = stoppedAt;
+                    latestVersion = version;
+                }
+            } catch (IOException e) {
+                logger.warn("Could not read state of {}", version, e);
+            }
+        }
+        return latestVersion;
+    }
+
+    /**
+     * Forget that an instance was stopped by the idle watcher (called when it starts again).
      */
-    private void deleteDirectory(Path directory) throws IOException {
-        if (!Files.exists(directory)) {
-            return;
+    public void clearIdleStopped(String version) throws IOException {
+        Path instancePath = getInstancePath(version);
+        InstanceStateService stateService = new InstanceStateService();
+        InstanceState state = stateService.load(instancePath);
+        if (state.getIdleStoppedAt() != null) {
+            state.setIdleStoppedAt(null);
+            stateService.save(instancePath, state);
         }
+    }
 
-        try (Stream<Path> paths = Files.walk(directory)) {
-            paths.sorted((p1, p2) -> -p1.compareTo(p2)) // Reverse order to delete children first
-                .forEach(path -> {
-                    try {
-                        Files.delete(path);
-                    } catch (IOException e) {
-                        logger.error("Failed to delete: {}", path, e);
-                        throw new RuntimeException("Failed to delete: " + path, e);
-                    }
-                });
+    /**
+     * Record that an instance was started, for hibernation of unused instances.
+     */
+    public void recordRun(String version) throws IOException {
+        Path instancePath = getInstancePath(version);
+        InstanceStateService stateService = new InstanceStateService();
+        InstanceState state = stateService.load(instancePath);
+        state.setLastRunAt(System.currentTimeMillis());
+        stateService.save(instancePath, state);
+    }
+
+    /**
+     * Record the CPU isolation of an instance, or clear it when it starts without isolation.
+     *
+     * @param isolation Isolation settings, or null
+     */
+    public void setIsolation(String version, IsolationInfo isolation) throws IOException {
+        Path instancePath = getInstancePath(version);
+        InstanceStateService stateService = new InstanceStateService();
+        InstanceState state = stateService.load(instancePath);
+        if (isolation != null || state.getIsolation() != null) {
+            state.setIsolation(isolation);
+            stateService.save(instancePath, state);
         }
     }
 
@@ -160,9 +356,9 @@ public class InstanceService {
     }
 
     /**
-     * Get SQMan home directory.
+     * Get the directory holding the installed instances.
      */
     public static String getSqmanHome() {
-        return SQMAN_HOME;
+        return new ConfigService().getDistributionsDir().toString();
     }
 }
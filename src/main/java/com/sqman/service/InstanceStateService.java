@@ -0,0 +1,53 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sqman.model.InstanceState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Service to load and save the sqman state file of an instance.
+ */
+public class InstanceStateService {
+
+    private static final String STATE_FILE = "sqman-state.json";
+
+    private final ObjectMapper objectMapper;
+
+    public InstanceStateService() {
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * Load the state of an instance.
+     *
+     * @return The stored state, or an empty state if none was saved yet
+     */
+    public InstanceState load(Path instancePath) throws IOException {
+        Path stateFile = instancePath.resolve(STATE_FILE);
+        if (!Files.exists(stateFile)) {
+            return new InstanceState();
+        }
+        return objectMapper.readValue(stateFile.toFile(), InstanceState.class);
+    }
+
+    /**
+     * Save the state of an instance. The file is replaced atomically so a concurrent
+     * reader never sees a partially written state.
+     */
+    public void save(Path instancePath, InstanceState state) throws IOException {
+        Path stateFile = instancePath.resolve(STATE_FILE);
+        Path tempFile = instancePath.resolve(STATE_FILE + ".tmp");
+        objectMapper.writeValue(tempFile.toFile(), state);
+        Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,248 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceManifest;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Service to probe the state of many instances at once.
+ *
+ * Each instance is probed on its own thread: the PID file is read and checked with
+ * {@link ProcessHandle} (no ps process is forked), then /api/system/status is queried on the
+ * web port of live instances. All probes share one deadline; an instance whose probe is not
+ * done by then is reported as unknown. Edition and size come from instance.json.
+ */
+public class InstanceStatusService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceStatusService.class);
+    public static final long DEFAULT_DEADLINE_MILLIS = 800;
+    private static final long HTTP_TIMEOUT_MILLIS = 500;
+    private static final int MAX_THREADS = 32;
+
+    public static final String STOPPED = "stopped";
+    public static final String HIBERNATED = "hibernated";
+    public static final String UNREACHABLE = "no http";
+    public static final String UNKNOWN = "unknown";
+
+    private final InstanceService instanceService;
+    private final ProcessService processService;
+    private final SonarPropertiesService propertiesService;
+    private final OkHttpClient httpClient;
+
+    public InstanceStatusService() {
+        this(new InstanceService());
+    }
+
+    // Constructor for testing
+    public InstanceStatusService(InstanceService instanceService) {
+        this.instanceService = instanceService;
+        this.processService = new ProcessService();
+        this.propertiesService = new SonarPropertiesService();
+        this.httpClient = new OkHttpClient.Builder()
+            .connectTimeout(HTTP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .readTimeout(HTTP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .callTimeout(HTTP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * Probe instances concurrently.
+     *
+     * @param ids Instance identifiers (directory names without "sonarqube-")
+     * @param deadlineMillis Time after which the remaining probes are abandoned
+     * @return Status of each instance, in the order of ids
+     */
+    public List<InstanceStatus> probeAll(List<String> ids, long deadlineMillis) throws InterruptedException {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Callable<InstanceStatus>> probes = new ArrayList<>();
+        for (String id : ids) {
+            probes.add(() -> probe(id));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(ids.size(), MAX_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "sqman-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<InstanceStatus>> futures = executor.invokeAll(probes, deadlineMillis, TimeUnit.MILLISECONDS);
+            List<InstanceStatus> statuses = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                statuses.add(result(ids.get(i), futures.get(i)));
+            }
+            return statuses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private InstanceStatus result(String id, Future<InstanceStatus> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            logger.debug("Probe of {} exceeded the deadline", id);
+        } catch (ExecutionException e) {
+            logger.debug("Probe of {} failed: {}", id, e.getCause().getMessage());
+        }
+        InstanceStatus status = new InstanceStatus(id);
+        status.state = UNKNOWN;
+        return status;
+    }
+
+    /**
+     * Probe one instance.
+     */
+    InstanceStatus probe(String id) {
+        InstanceStatus status = new InstanceStatus(id);
+        if (instanceService.isHibernated(id)) {
+            status.state = HIBERNATED;
+            return status;
+        }
+
+        Path instancePath = instanceService.getInstancePath(id);
+        InstanceManifest manifest = instanceService.getManifest(id);
+        if (manifest != null) {
+            status.edition = manifest.getEdition();
+            status.diskBytes = manifest.getSize();
+        }
+
+        long pid = processService.getPid(instancePath);
+        Optional<ProcessHandle> process = pid > 0 ? ProcessHandle.of(pid) : Optional.empty();
+        if (process.isEmpty() || !process.get().isAlive()) {
+            status.state = STOPPED;
+            return status;
+        }
+
+        status.pid = pid;
+        status.port = propertiesService.getWebPort(instancePath);
+        status.startedAt = process.get().info().startInstant().orElse(null);
+        status.rssBytes = readTreeRss(process.get());
+        String webStatus = fetchStatus(status.port);
+        status.state = webStatus != null ? webStatus.toLowerCase() : UNREACHABLE;
+        return status;
+    }
+
+    private String fetchStatus(int port) {
+        Request request = new Request.Builder()
+            .url("http://localhost:" + port + "/api/system/status")
+            .get()
+            .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.isSuccessful() && response.body() != null) {
+                return SonarQubeSetupService.extractJsonString(response.body().string(), "status");
+            }
+        } catch (IOException e) {
+            logger.debug("Port {} not reachable: {}", port, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Resident memory of a process and its descendants (web, compute engine, search), from
+     * /proc. Returns -1 where /proc is not available.
+     */
+    private long readTreeRss(ProcessHandle process) {
+        if (!Files.isDirectory(Paths.get("/proc/self"))) {
+            return -1;
+        }
+        try (Stream<ProcessHandle> descendants = process.descendants()) {
+            return Stream.concat(Stream.of(process), descendants)
+                .mapToLong(handle -> readRss(handle.pid()))
+                .sum();
+        }
+    }
+
+    private long readRss(long pid) {
+        try (Stream<String> lines = Files.lines(Paths.get("/proc", String.valueOf(pid), "status"))) {
+            return lines.filter(line -> line.startsWith("VmRSS:"))
+                .findFirst()
+                .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024)
+                .orElse(0L);
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * State of one instance.
+     */
+    public static class InstanceStatus {
+        private final String id;
+        private String state;
+        private String edition;
+        private long pid = -1;
+        private int port = -1;
+        private Instant startedAt;
+        private long rssBytes = -1;
+        private long diskBytes;
+
+        InstanceStatus(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * stopped, hibernated, the status reported by SonarQube (up, starting, db_migration_needed, ...),
+         * "no http" when the process is alive but does not answer, or unknown past the deadline.
+         */
+        public String getState() {
+            return state;
+        }
+
+        public boolean isRunning() {
+            return pid > 0;
+        }
+
+        public String getEdition() {
+            return edition;
+        }
+
+        public long getPid() {
+            return pid;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public long getRssBytes() {
+            return rssBytes;
+        }
+
+        /**
+         * Installed size recorded in instance.json (0 if unknown).
+         */
+        public long getDiskBytes() {
+            return diskBytes;
+        }
+    }
+}
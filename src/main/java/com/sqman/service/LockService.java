@@ -0,0 +1,270 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to lock instances across sqman processes.
+ *
+ * Each instance has its own lock file in ~/.sqman/locks, so operations on different
+ * instances never wait for each other. Operations that only read an instance take a
+ * shared lock, operations that change it (start, stop, delete, plugins) an exclusive one.
+ * Holders register themselves next to the lock file so a timed out wait can tell who
+ * is holding the instance.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   lock.timeoutSeconds - Maximum wait for a lock (default: 300)
+ */
+public class LockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LockService.class);
+    public static final String LOCK_TIMEOUT_SECONDS = "lock.timeoutSeconds";
+    private static final long DEFAULT_TIMEOUT_SECONDS = 300;
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+
+    // File locks belong to the whole JVM: locks already held by this process are tracked per file and thread
+    private static final Map<Path, HeldLock> HELD_LOCKS = new HashMap<>();
+
+    public enum Mode {
+        SHARED, EXCLUSIVE
+    }
+
+    private final Path locksDir;
+    private final long timeoutMillis;
+
+    public LockService() {
+        this(new ConfigService());
+    }
+
+    public LockService(ConfigService configService) {
+        this(configService.getHomeDir().resolve("locks"),
+            TimeUnit.SECONDS.toMillis(configService.getLong(LOCK_TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS)));
+    }
+
+    // Constructor for testing
+    public LockService(Path locksDir, long timeoutMillis) {
+        this.locksDir = locksDir;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Lock an instance, waiting until the lock is available.
+     *
+     * @param instanceName Instance directory name (e.g. sonarqube-10.3.0.82913)
+     * @param mode Shared for read-only operations, exclusive otherwise
+     * @param operation Description of the operation, reported to waiting processes
+     * @return The lock, to be closed when the operation is done
+     * @throws IOException if the lock could not be acquired before the timeout
+     */
+    public InstanceLock lock(String instanceName, Mode mode, String operation)
+            throws IOException, InterruptedException {
+        Files.createDirectories(locksDir);
+        Path lockFile = locksDir.resolve(instanceName + ".lock");
+
+        Thread current = Thread.currentThread();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean announced = false;
+
+        while (true) {
+            synchronized (HELD_LOCKS) {
+                HeldLock held = HELD_LOCKS.get(lockFile);
+                if (held == null) {
+                    InstanceLock lock = tryLock(lockFile, mode, operation, current);
+                    if (lock != null) {
+                        return lock;
+                    }
+                } else if (held.canEnter(current, mode)) {
+                    // Nested lock of this thread, or shared lock of this process (e.g. pool slots of one fill)
+                    if (mode == Mode.EXCLUSIVE && held.mode == Mode.SHARED) {
+                        throw new IOException("Cannot upgrade shared lock on " + instanceName + " to exclusive");
+                    }
+                    held.owners.merge(current, 1, Integer::sum);
+                    return new InstanceLock(this, lockFile, current);
+                }
+                // Otherwise held by another thread of this process, waited for like another process
+            }
+
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Timed out after " + TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)
+                    + "s waiting for " + instanceName + ", locked by: " + describeHolders(lockFile));
+            }
+            if (!announced) {
+                System.out.println("Waiting for " + instanceName + " (locked by: " + describeHolders(lockFile) + ")...");
+                announced = true;
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * List the live processes currently holding the lock of an instance.
+     *
+     * @return One description per holder, e.g. "PID 1234 (run, exclusive, since 10:02:03)"
+     */
+    public List<String> getHolders(String instanceName) throws IOException {
+        return readHolders(locksDir.resolve(instanceName + ".lock"));
+    }
+
+    /**
+     * Try to lock the file of an instance no thread of this process holds. Must be called holding
+     * HELD_LOCKS: closing any channel of the file drops all the locks of the process on it (POSIX),
+     * so channels are only opened and closed while the process holds no lock on the file.
+     */
+    private InstanceLock tryLock(Path lockFile, Mode mode, String operation, Thread owner) throws IOException {
+        FileChannel channel = FileChannel.open(lockFile,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock fileLock = channel.tryLock(0, Long.MAX_VALUE, mode == Mode.SHARED);
+            if (fileLock != null) {
+                Path holderFile = registerHolder(lockFile, mode, operation);
+                HELD_LOCKS.put(lockFile, new HeldLock(channel, fileLock, mode, holderFile, owner));
+                return new InstanceLock(this, lockFile, owner);
+            }
+        } catch (OverlappingFileLockException e) {
+            // Locked through a channel of this process outside of the lock service, retry
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    void release(Path lockFile, Thread owner) throws IOException {
+        synchronized (HELD_LOCKS) {
+            HeldLock held = HELD_LOCKS.get(lockFile);
+            if (held == null) {
+                return;
+            }
+            held.owners.computeIfPresent(owner, (thread, depth) -> depth > 1 ? depth - 1 : null);
+            if (!held.owners.isEmpty()) {
+                return;
+            }
+            HELD_LOCKS.remove(lockFile);
+
+            Files.deleteIfExists(held.holderFile);
+            held.fileLock.release();
+            held.channel.close();
+        }
+    }
+
+    private Path registerHolder(Path lockFile, Mode mode, String operation) throws IOException {
+        Path holdersDir = getHoldersDir(lockFile);
+        Files.createDirectories(holdersDir);
+        long pid = ProcessHandle.current().pid();
+        Path holderFile = holdersDir.resolve(pid + "-" + System.nanoTime());
+        Files.writeString(holderFile, pid + "\n" + mode.name().toLowerCase() + "\n"
+            + System.currentTimeMillis() + "\n" + operation);
+        return holderFile;
+    }
+
+    private String describeHolders(Path lockFile) throws IOException {
+        List<String> holders = readHolders(lockFile);
+        return holders.isEmpty() ? "unknown process" : String.join(", ", holders);
+    }
+
+    /**
+     * Read the holder files of a lock, removing those left by processes that are gone.
+     */
+    private List<String> readHolders(Path lockFile) throws IOException {
+        Path holdersDir = getHoldersDir(lockFile);
+        List<String> holders = new ArrayList<>();
+        if (!Files.isDirectory(holdersDir)) {
+            return holders;
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(holdersDir)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            try {
+                String[] lines = Files.readString(file).split("\n", 4);
+                long pid = Long.parseLong(lines[0].trim());
+                if (!ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                String since = TIME_FORMAT.format(Instant.ofEpochMilli(Long.parseLong(lines[2].trim())));
+                holders.add("PID " + pid + " (" + lines[3].trim() + ", " + lines[1].trim() + ", since " + since + ")");
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Ignoring unreadable lock holder file {}", file, e);
+            }
+        }
+        return holders;
+    }
+
+    private Path getHoldersDir(Path lockFile) {
+        return lockFile.resolveSibling(lockFile.getFileName() + ".holders");
+    }
+
+    private static class HeldLock {
+        private final FileChannel channel;
+        private final FileLock fileLock;
+        private final Mode mode;
+        private final Path holderFile;
+        // Threads of this process holding the lock, with their nesting depth
+        private final Map<Thread, Integer> owners = new HashMap<>();
+
+        HeldLock(FileChannel channel, FileLock fileLock, Mode mode, Path holderFile, Thread owner) {
+            this.channel = channel;
+            this.fileLock = fileLock;
+            this.mode = mode;
+            this.holderFile = holderFile;
+            owners.put(owner, 1);
+        }
+
+        /**
+         * An exclusive lock only admits its own thread, a shared one any thread asking for a shared lock.
+         */
+        boolean canEnter(Thread thread, Mode requested) {
+            return owners.containsKey(thread) || (mode == Mode.SHARED && requested == Mode.SHARED);
+        }
+    }
+
+    /**
+     * Lock held on an instance. Closing it releases the lock.
+     */
+    public static class InstanceLock implements AutoCloseable {
+
+        private final LockService lockService;
+        private final Path lockFile;
+        private final Thread owner;
+        private boolean closed;
+
+        InstanceLock(LockService lockService, Path lockFile, Thread owner) {
+            this.lockService = lockService;
+            this.lockFile = lockFile;
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                lockService.release(lockFile, owner);
+            }
+        }
+    }
+}
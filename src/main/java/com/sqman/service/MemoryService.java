@@ -0,0 +1,248 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service to inspect the memory available on the host.
+ * Inside a container or a systemd slice, the cgroup memory limits are taken into account: the
+ * cgroup of the process is read from /proc/self/cgroup and the tightest limit of it and its
+ * ancestors applies.
+ */
+public class MemoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryService.class);
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    private static final Path SELF_CGROUP = Paths.get("/proc/self/cgroup");
+    // Key of the cgroup v2 entry in /proc/self/cgroup, which has no controller list
+    private static final String UNIFIED = "";
+    // cgroup v1 reports "no limit" as a huge page-aligned value instead of "max"
+    private static final long CGROUP_V1_UNLIMITED = 1L << 62;
+
+    private final Path meminfoFile;
+    private final Path cgroupRoot;
+    private final Path selfCgroupFile;
+
+    public MemoryService() {
+        this(MEMINFO, CGROUP_ROOT, SELF_CGROUP);
+    }
+
+    // Constructor for testing
+    public MemoryService(Path meminfoFile, Path cgroupRoot) {
+        this(meminfoFile, cgroupRoot, SELF_CGROUP);
+    }
+
+    // Constructor for testing
+    public MemoryService(Path meminfoFile, Path cgroupRoot, Path selfCgroupFile) {
+        this.meminfoFile = meminfoFile;
+        this.cgroupRoot = cgroupRoot;
+        this.selfCgroupFile = selfCgroupFile;
+    }
+
+    /**
+     * Get the memory available for new processes without swapping.
+     * This is MemAvailable, capped by the room left under the cgroup limit if there is one.
+     *
+     * @return Available memory in bytes, or -1 if it cannot be determined (e.g. not Linux)
+     */
+    public long getAvailableMemory() {
+        long hostAvailable = getHostAvailableMemory();
+        long cgroupAvailable = getCgroupAvailableMemory();
+
+        if (hostAvailable < 0) {
+            return cgroupAvailable;
+        }
+        if (cgroupAvailable < 0) {
+            return hostAvailable;
+        }
+        return Math.min(hostAvailable, cgroupAvailable);
+    }
+
+    /**
+     * Get MemAvailable from /proc/meminfo.
+     *
+     * @return Available memory in bytes, or -1 if unknown
+     */
+    public long getHostAvailableMemory() {
+        if (!Files.exists(meminfoFile)) {
+            return -1;
+        }
+
+        try {
+            return parseMeminfo(Files.readAllLines(meminfoFile), "MemAvailable");
+        } catch (IOException e) {
+            logger.warn("Could not read {}: {}", meminfoFile, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Get the memory left under the cgroup limits (limit - usage + reclaimable page cache).
+     * Supports cgroup v2 (memory.max) and v1 (memory/memory.limit_in_bytes). The cgroup of the
+     * process and each of its ancestors may have a limit, the one leaving the least memory applies.
+     *
+     * @return Available memory in bytes, or -1 if there is no cgroup limit
+     */
+    public long getCgroupAvailableMemory() {
+        try {
+            Map<String, String> cgroups = readSelfCgroups();
+            long available = -1;
+            for (Path dir : getHierarchy(cgroupRoot, cgroups.get(UNIFIED))) {
+                available = tightest(available, computeCgroupAvailable(
+                    readCgroupValue(dir.resolve("memory.max")),
+                    readCgroupValue(dir.resolve("memory.current")),
+                    readStat(dir.resolve("memory.stat"), "inactive_file")));
+            }
+            for (Path dir : getHierarchy(cgroupRoot.resolve("memory"), cgroups.get("memory"))) {
+                available = tightest(available, computeCgroupAvailable(
+                    readCgroupValue(dir.resolve("memory.limit_in_bytes")),
+                    readCgroupValue(dir.resolve("memory.usage_in_bytes")),
+                    readStat(dir.resolve("memory.stat"), "total_inactive_file")));
+            }
+            return available;
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not read cgroup memory limits: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Read the cgroup paths of this process, by controller ("" for cgroup v2).
+     */
+    private Map<String, String> readSelfCgroups() throws IOException {
+        Map<String, String> cgroups = new HashMap<>();
+        if (!Files.exists(selfCgroupFile)) {
+            return cgroups;
+        }
+        // hierarchy-id:controller,controller:/path
+        for (String line : Files.readAllLines(selfCgroupFile)) {
+            String[] parts = line.split(":", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            for (String controller : parts[1].split(",")) {
+                cgroups.put(controller, parts[2]);
+            }
+        }
+        return cgroups;
+    }
+
+    /**
+     * List the existing directories from a cgroup up to the root of its hierarchy. Inside a
+     * container, the path of the host may not be mounted: only the root is found then.
+     *
+     * @param cgroupPath Path of the cgroup from /proc/self/cgroup, or null if unknown
+     */
+    private List<Path> getHierarchy(Path root, String cgroupPath) {
+        List<Path> hierarchy = new ArrayList<>();
+        Path dir = root;
+        if (cgroupPath != null) {
+            Path candidate = root.resolve(cgroupPath.replaceFirst("^/+", "")).normalize();
+            if (candidate.startsWith(root)) {
+                dir = candidate;
+            }
+        }
+        for (; dir.startsWith(root); dir = dir.getParent()) {
+            if (Files.isDirectory(dir)) {
+                hierarchy.add(dir);
+            }
+            if (dir.equals(root)) {
+                break;
+            }
+        }
+        return hierarchy;
+    }
+
+    private static long tightest(long available, long candidate) {
+        if (candidate < 0) {
+            return available;
+        }
+        return available < 0 ? candidate : Math.min(available, candidate);
+    }
+
+    private long computeCgroupAvailable(long limit, long usage, long inactiveFile) {
+        if (limit < 0 || limit >= CGROUP_V1_UNLIMITED) {
+            return -1;
+        }
+        // Inactive page cache is reclaimed before the cgroup hits its limit
+        long used = Math.max(0, usage - Math.max(0, inactiveFile));
+        return Math.max(0, limit - used);
+    }
+
+    /**
+     * Read a single-value cgroup file ("max" means unlimited).
+     *
+     * @return The value, or -1 if unlimited or missing
+     */
+    private long readCgroupValue(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        String value = Files.readString(file).trim();
+        return "max".equals(value) ? -1 : Long.parseLong(value);
+    }
+
+    /**
+     * Read a "key value" entry of a memory.stat file.
+     *
+     * @return The value, or 0 if missing
+     */
+    private long readStat(Path statFile, String key) throws IOException {
+        if (!Files.exists(statFile)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(statFile)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2 && parts[0].equals(key)) {
+                return Long.parseLong(parts[1]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Extract a field from /proc/meminfo content (values are in kB).
+     *
+     * @return Value in bytes, or -1 if the field is missing
+     */
+    long parseMeminfo(List<String> lines, String field) {
+        for (String line : lines) {
+            if (line.startsWith(field + ":")) {
+                String[] parts = line.substring(field.length() + 1).trim().split("\\s+");
+                try {
+                    return Long.parseLong(parts[0]) * 1024;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Format a byte count as a human readable size (e.g. "1.5 GB").
+     */
+    public static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+}
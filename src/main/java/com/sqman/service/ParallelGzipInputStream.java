@@ -0,0 +1,185 @@
+package com.sqman.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Gzip input stream that decompresses the members written by {@link ParallelGzipOutputStream}
+ * on all cores, reading ahead of the consumer. Files compressed by other tools (no member
+ * size in the header) are decompressed sequentially with {@link GZIPInputStream}.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private InputStream sequential;
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean endOfInput;
+
+    public ParallelGzipInputStream(InputStream in, int threads) {
+        this.in = new DataInputStream(in);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sqman-gunzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = threads * 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (sequential != null) {
+            return sequential.read(b, off, len);
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return sequential != null ? sequential.read(b, off, len) : -1;
+            }
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        if (sequential != null) {
+            sequential.close();
+        }
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (!endOfInput && sequential == null && pending.size() < maxInFlight) {
+            readMember();
+        }
+        if (pending.isEmpty()) {
+            return false;
+        }
+        try {
+            current = pending.poll().get();
+            position = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Corrupt archive: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Read the next member and queue its decompression.
+     */
+    private void readMember() throws IOException {
+        byte[] header = new byte[ParallelGzipOutputStream.HEADER_SIZE];
+        int read = in.readNBytes(header, 0, header.length);
+        if (read == 0) {
+            endOfInput = true;
+            return;
+        }
+
+        if (read < header.length || !hasMemberSize(header)) {
+            if (!pending.isEmpty() || current.length > 0) {
+                throw new IOException("Corrupt archive: unexpected gzip member header");
+            }
+            // Not written by sqman: no way to split it, decompress it in one go
+            sequential = new GZIPInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(header, 0, read), in), 64 * 1024);
+            endOfInput = true;
+            return;
+        }
+
+        int memberSize = (header[16] & 0xff) | (header[17] & 0xff) << 8
+            | (header[18] & 0xff) << 16 | (header[19] & 0xff) << 24;
+        if (memberSize < header.length + 8 || memberSize > ParallelGzipOutputStream.MAX_MEMBER_SIZE) {
+            throw new IOException("Corrupt archive: invalid block size " + memberSize);
+        }
+        byte[] body = new byte[memberSize - header.length];
+        try {
+            in.readFully(body);
+        } catch (EOFException e) {
+            throw new IOException("Corrupt archive: truncated block", e);
+        }
+        pending.add(executor.submit(() -> inflate(body)));
+    }
+
+    private boolean hasMemberSize(byte[] header) {
+        return header[0] == 0x1f && header[1] == (byte) 0x8b && header[2] == 8 && header[3] == 4
+            && header[10] == 8 && header[11] == 0
+            && header[12] == ParallelGzipOutputStream.SUBFIELD_ID1
+            && header[13] == ParallelGzipOutputStream.SUBFIELD_ID2
+            && header[14] == 4 && header[15] == 0;
+    }
+
+    /**
+     * Decompress the deflate data of a member and check it against the CRC and size of its trailer.
+     */
+    private static byte[] inflate(byte[] body) throws IOException {
+        int trailer = body.length - 8;
+        int expectedCrc = readIntLE(body, trailer);
+        int size = readIntLE(body, trailer + 4);
+        if (size < 0 || size > ParallelGzipOutputStream.BLOCK_SIZE) {
+            throw new IOException("invalid block length " + size);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(body, 0, trailer);
+            byte[] data = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int count = inflater.inflate(data, length, size - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            if (length != size || (int) crc.getValue() != expectedCrc) {
+                throw new IOException("block checksum mismatch");
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int readIntLE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8
+            | (buffer[offset + 2] & 0xff) << 16 | (buffer[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,178 @@
+package com.sqman.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses fixed-size blocks on all cores, like pigz.
+ *
+ * Each block is written as a complete gzip member, so the result is a regular .gz file
+ * (concatenated members are valid gzip). Every member header carries an extra field with
+ * the compressed size of the member, which lets {@link ParallelGzipInputStream} split the
+ * file into blocks and decompress them in parallel as well.
+ * Blocks are written in order and at most two per thread are in memory at any time.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = 1024 * 1024;
+    static final byte SUBFIELD_ID1 = 'S';
+    static final byte SUBFIELD_ID2 = 'Q';
+    static final int HEADER_SIZE = 10 + 2 + 8;
+    private static final int TRAILER_SIZE = 8;
+    // Deflate expands incompressible data by a few bytes per 64 KB, far below this margin
+    static final int MAX_MEMBER_SIZE = HEADER_SIZE + BLOCK_SIZE + BLOCK_SIZE / 1000 + 64 + TRAILER_SIZE;
+
+    private final OutputStream out;
+    private final int level;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private boolean wroteMember;
+    private boolean closed;
+
+    /**
+     * @param out Destination of the compressed stream
+     * @param level Deflate level, 1 (fastest) to 9 (smallest)
+     * @param threads Compression threads
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads) {
+        this.out = out;
+        this.level = level;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sqman-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = threads * 2;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == BLOCK_SIZE) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, chunk);
+            blockLength += chunk;
+            off += chunk;
+            len -= chunk;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // An empty stream still needs one member to be a valid gzip file
+            if (blockLength > 0 || !wroteMember) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeNextMember();
+            }
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = blockLength == BLOCK_SIZE ? block : Arrays.copyOf(block, blockLength);
+        pending.add(executor.submit(() -> compress(data, level)));
+        wroteMember = true;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+
+        while (pending.size() >= maxInFlight) {
+            writeNextMember();
+        }
+    }
+
+    private void writeNextMember() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    /**
+     * Compress one block into a complete gzip member.
+     */
+    static byte[] compress(byte[] data, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] member = new byte[HEADER_SIZE + data.length + data.length / 1000 + 64 + TRAILER_SIZE];
+            int length = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (length == member.length - TRAILER_SIZE) {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                length += deflater.deflate(member, length, member.length - TRAILER_SIZE - length);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            int memberSize = length + TRAILER_SIZE;
+            writeHeader(member, memberSize);
+            writeIntLE(member, length, (int) crc.getValue());
+            writeIntLE(member, length + 4, data.length);
+            return Arrays.copyOf(member, memberSize);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeHeader(byte[] member, int memberSize) {
+        member[0] = 0x1f;
+        member[1] = (byte) 0x8b;
+        member[2] = 8;          // deflate
+        member[3] = 4;          // FEXTRA
+        // 4-7: mtime 0, 8: extra flags, 9: OS unknown
+        member[9] = (byte) 255;
+        member[10] = 8;         // XLEN
+        member[11] = 0;
+        member[12] = SUBFIELD_ID1;
+        member[13] = SUBFIELD_ID2;
+        member[14] = 4;         // subfield length
+        member[15] = 0;
+        writeIntLE(member, 16, memberSize);
+    }
+
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,330 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqman.model.PluginBackup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to keep the original versions of the plugins replaced in instances.
+ *
+ * JARs are stored once in a content-addressed store next to the instances
+ * (.plugin-store/&lt;sha256&gt;.jar in the distributions directory), so the bundled plugins
+ * of every instance of a version share one blob. Blobs are hardlinked from and back into
+ * lib/extensions: backup and restore copy no data. Each instance maps plugin keys to blobs
+ * in original-plugins.json. The timestamped copies of the former original-plugins/ directory
+ * are moved into the store the first time an instance's backups are read.
+ * A hibernated instance keeps a copy of its index next to its archive, so its blobs are kept too.
+ */
+public class PluginBackupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginBackupService.class);
+    public static final String INDEX_FILE = "original-plugins.json";
+    public static final String STORE_DIR = ".plugin-store";
+    private static final String LEGACY_BACKUP_DIR = "original-plugins";
+    private static final String LEGACY_BACKUP_SUFFIX = "-backup-\\d{8}-\\d{6}\\.jar$";
+    // File locks are per JVM, threads of this process (e.g. plugin rollout) are serialized here
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Function<Path, String> pluginKeys;
+    private final ObjectMapper objectMapper;
+
+    public PluginBackupService() {
+        this(PluginService::readKey);
+    }
+
+    /**
+     * @param pluginKeys Reads the plugin key of a JAR, to move the former backups into the store
+     */
+    public PluginBackupService(Function<Path, String> pluginKeys) {
+        this.pluginKeys = pluginKeys;
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * List the backed-up plugins of an instance, sorted by plugin key.
+     */
+    public List<PluginBackup> list(Path instancePath) throws IOException {
+        return new ArrayList<>(load(instancePath).values());
+    }
+
+    /**
+     * Back up installed plugin JARs of an instance. Must be called with the instance lock held.
+     *
+     * @param jars Installed JARs by plugin key
+     */
+    public void backup(Path instancePath, Map<String, Path> jars) throws IOException {
+        if (jars.isEmpty()) {
+            return;
+        }
+        Map<String, PluginBackup> index = load(instancePath);
+        // Saved under the store lock: a prune in between would delete the blobs not indexed yet
+        withStoreLock(getStore(instancePath), () -> {
+            for (Map.Entry<String, Path> jar : jars.entrySet()) {
+                index.put(jar.getKey(), store(instancePath, jar.getKey(), jar.getValue(),
+                    jar.getValue().getFileName().toString(), System.currentTimeMillis()));
+            }
+            save(instancePath, index);
+            return null;
+        });
+    }
+
+    /**
+     * Link a backed-up plugin back into an instance and forget the backup.
+     * Must be called with the instance lock held.
+     *
+     * @param target Path of the restored JAR
+     */
+    public void restore(Path instancePath, PluginBackup backup, Path target) throws IOException {
+        Path blob = getStore(instancePath).resolve(backup.getSha256() + ".jar");
+        if (!Files.isRegularFile(blob)) {
+            throw new IOException("The backup of " + backup.getKey() + " is missing from the plugin store " + blob);
+        }
+        Path staged = target.resolveSibling(target.getFileName() + ".tmp");
+        link(blob, staged);
+        Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        remove(instancePath, List.of(backup.getKey()));
+    }
+
+    /**
+     * Forget backups of an instance and delete their blobs once no instance refers to them.
+     */
+    public void remove(Path instancePath, Collection<String> keys) throws IOException {
+        Map<String, PluginBackup> index = load(instancePath);
+        List<String> hashes = new ArrayList<>();
+        for (String key : keys) {
+            PluginBackup removed = index.remove(key);
+            if (removed != null) {
+                hashes.add(removed.getSha256());
+            }
+        }
+        save(instancePath, index);
+        prune(instancePath, hashes);
+    }
+
+    /**
+     * Copy the backup index of an instance being hibernated next to its archive.
+     * Must be called before the instance directory is deleted.
+     */
+    public void saveHibernatedIndex(Path instancePath, Path archive) throws IOException {
+        Path indexFile = instancePath.resolve(INDEX_FILE);
+        Path hibernatedIndex = getHibernatedIndex(archive);
+        if (!Files.isRegularFile(indexFile)) {
+            Files.deleteIfExists(hibernatedIndex);
+            return;
+        }
+        Path tempFile = hibernatedIndex.resolveSibling(hibernatedIndex.getFileName() + ".tmp");
+        Files.copy(indexFile, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempFile, hibernatedIndex, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * List the backups of a hibernated instance from the index kept next to its archive.
+     */
+    public List<PluginBackup> listHibernated(Path archive) throws IOException {
+        return readIndex(getHibernatedIndex(archive));
+    }
+
+    /**
+     * Get the copy of the backup index kept next to the archive of a hibernated instance.
+     */
+    public static Path getHibernatedIndex(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + "." + INDEX_FILE);
+    }
+
+    /**
+     * Forget all backups of an instance being deleted and delete the blobs no other instance refers to.
+     * Called once the instance is out of the distributions directory (e.g. moved to the trash).
+     *
+     * @param instancePath Where the instance was
+     * @param index The backup index of the instance, read before it was moved
+     */
+    public void removeAll(Path instancePath, List<PluginBackup> index) throws IOException {
+        prune(instancePath, index.stream().map(PluginBackup::getSha256).collect(Collectors.toList()));
+    }
+
+    private Map<String, PluginBackup> load(Path instancePath) throws IOException {
+        Map<String, PluginBackup> index = new LinkedHashMap<>();
+        for (PluginBackup backup : readIndex(instancePath.resolve(INDEX_FILE))) {
+            index.put(backup.getKey(), backup);
+        }
+        if (Files.isDirectory(instancePath.resolve(LEGACY_BACKUP_DIR))) {
+            migrate(instancePath, index);
+        }
+        return index;
+    }
+
+    private List<PluginBackup> readIndex(Path indexFile) throws IOException {
+        if (!Files.isRegularFile(indexFile)) {
+            return List.of();
+        }
+        return objectMapper.readValue(indexFile.toFile(), new TypeReference<List<PluginBackup>>() { });
+    }
+
+    private void save(Path instancePath, Map<String, PluginBackup> index) throws IOException {
+        Path indexFile = instancePath.resolve(INDEX_FILE);
+        if (index.isEmpty()) {
+            Files.deleteIfExists(indexFile);
+            return;
+        }
+        List<PluginBackup> backups = new ArrayList<>(index.values());
+        backups.sort(Comparator.comparing(PluginBackup::getKey));
+        Path tempFile = instancePath.resolve(INDEX_FILE + ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(tempFile.toFile(), backups);
+        // Replaced atomically, which also detaches it from the source of a clone
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Move the timestamped copies of original-plugins/ into the store.
+     */
+    private void migrate(Path instancePath, Map<String, PluginBackup> index) throws IOException {
+        Path legacyDir = instancePath.resolve(LEGACY_BACKUP_DIR);
+        List<Path> jars;
+        try (Stream<Path> files = Files.list(legacyDir)) {
+            jars = files.filter(Files::isRegularFile)
+                .filter(path -> path.getFileName().toString().endsWith(".jar"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        withStoreLock(getStore(instancePath), () -> {
+            for (Path jar : jars) {
+                String key = pluginKeys.apply(jar);
+                if (!index.containsKey(key)) {
+                    String fileName = jar.getFileName().toString().replaceFirst(LEGACY_BACKUP_SUFFIX, ".jar");
+                    index.put(key, store(instancePath, key, jar, fileName, Files.getLastModifiedTime(jar).toMillis()));
+                }
+            }
+            save(instancePath, index);
+            return null;
+        });
+        new FileTreeService().deleteTree(legacyDir);
+        logger.info("Moved the plugin backups of {} into the plugin store", instancePath);
+    }
+
+    /**
+     * Add a JAR to the store. Must be called with the store lock held, until the backup is saved in an index.
+     */
+    private PluginBackup store(Path instancePath, String key, Path jar, String fileName, long backedUpAt)
+            throws IOException {
+        String sha256 = hash(jar);
+        Path store = getStore(instancePath);
+        Path blob = store.resolve(sha256 + ".jar");
+        if (!Files.exists(blob)) {
+            Path staged = store.resolve(sha256 + ".tmp");
+            link(jar, staged);
+            Files.move(staged, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        PluginBackup backup = new PluginBackup();
+        backup.setKey(key);
+        backup.setFileName(fileName);
+        backup.setSha256(sha256);
+        backup.setBackedUpAt(backedUpAt);
+        return backup;
+    }
+
+    /**
+     * Delete blobs no instance refers to anymore.
+     */
+    private void prune(Path instancePath, List<String> hashes) throws IOException {
+        if (hashes.isEmpty()) {
+            return;
+        }
+        Path distributionsDir = instancePath.toAbsolutePath().getParent();
+        Path store = getStore(instancePath);
+        withStoreLock(store, () -> {
+            List<String> unused = new ArrayList<>(hashes);
+            try (Stream<Path> entries = Files.list(distributionsDir)) {
+                for (Path entry : (Iterable<Path>) entries::iterator) {
+                    String name = entry.getFileName().toString();
+                    if (!name.startsWith("sonarqube-")) {
+                        continue;
+                    }
+                    // Installed instances, and hibernated ones through the index kept next to their archive
+                    Path indexFile = name.endsWith(HibernationService.ARCHIVE_SUFFIX)
+                        ? getHibernatedIndex(entry)
+                        : entry.resolve(INDEX_FILE);
+                    for (PluginBackup backup : readIndex(indexFile)) {
+                        unused.remove(backup.getSha256());
+                    }
+                }
+            }
+            for (String sha256 : unused) {
+                Files.deleteIfExists(store.resolve(sha256 + ".jar"));
+            }
+            return null;
+        });
+    }
+
+    private Path getStore(Path instancePath) {
+        // Next to the instances, so blobs can be hardlinked
+        return instancePath.toAbsolutePath().getParent().resolve(STORE_DIR);
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Cross-device or no hardlink support
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static String hash(Path jar) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream input = Files.newInputStream(jar)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = input.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private <T> T withStoreLock(Path store, StoreAction<T> action) throws IOException {
+        Files.createDirectories(store);
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(store.resolve(".lock"),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released with the channel
+                channel.lock();
+                return action.run();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StoreAction<T> {
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,279 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to install the same plugin JARs into many instances at once.
+ *
+ * The JARs are copied once into the distributions directory, then hardlinked into every
+ * instance by {@link PluginService}, one thread per instance. Instances can then be started
+ * to check that they come UP with the new plugins: instances that share a port are checked
+ * one after another, the others in parallel as memory allows.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   plugin.verifyTimeoutMinutes - Maximum time for an instance to come UP (default: 10)
+ */
+public class PluginRolloutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginRolloutService.class);
+    public static final String VERIFY_TIMEOUT_MINUTES = "plugin.verifyTimeoutMinutes";
+    private static final long DEFAULT_VERIFY_TIMEOUT_MINUTES = 10;
+    private static final int MAX_THREADS = 8;
+    private static final long STOP_TIMEOUT_SECONDS = 120;
+    private static final String SHARED_DIR_PREFIX = ".sqman-rollout-";
+    private static final int DEFAULT_SEARCH_PORT = 9001;
+    private static final int DEFAULT_DATABASE_PORT = 9092;
+
+    private final ConfigService configService;
+    private final InstanceService instanceService;
+    private final PluginService pluginService;
+    private final ProcessService processService;
+    private final SonarPropertiesService propertiesService;
+
+    public PluginRolloutService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public PluginRolloutService(ConfigService configService) {
+        this(configService, new InstanceService(configService), new ProcessService());
+    }
+
+    // Constructor for testing
+    public PluginRolloutService(ConfigService configService, InstanceService instanceService,
+                                ProcessService processService) {
+        this.configService = configService;
+        this.instanceService = instanceService;
+        this.pluginService = new PluginService();
+        this.processService = processService;
+        this.propertiesService = new SonarPropertiesService();
+    }
+
+    /**
+     * Install plugin JARs into several instances in parallel.
+     *
+     * @param versions Installed instances, hibernated ones are rehydrated
+     * @return One result per instance, in the given order
+     */
+    public List<Result> rollout(List<String> versions, List<Path> jars) throws IOException, InterruptedException {
+        // One copy for all instances: the build output may be rewritten while they use it
+        Path distributionsDir = configService.getDistributionsDir();
+        Files.createDirectories(distributionsDir);
+        Path shared = Files.createTempDirectory(distributionsDir, SHARED_DIR_PREFIX);
+        try {
+            List<Path> sharedJars = new ArrayList<>();
+            for (Path jar : jars) {
+                Path sharedJar = shared.resolve(jar.getFileName().toString());
+                if (sharedJars.contains(sharedJar)) {
+                    throw new IOException("Two JARs are named " + jar.getFileName());
+                }
+                Files.copy(jar, sharedJar);
+                sharedJars.add(sharedJar);
+            }
+
+            List<Callable<Result>> tasks = new ArrayList<>();
+            for (String version : versions) {
+                tasks.add(() -> install(version, sharedJars));
+            }
+            return runAll(versions, tasks);
+        } finally {
+            // The instances keep their links, only the shared names go
+            new FileTreeService().deleteTree(shared);
+        }
+    }
+
+    private Result install(String version, List<Path> jars) throws IOException, InterruptedException {
+        Result result = new Result(version);
+        LockService.InstanceLock lock =
+            instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "install plugin");
+        try (lock) {
+            instanceService.rehydrate(version);
+            result.changes = pluginService.install(instanceService.getInstancePath(version), jars, true);
+            instanceService.updateManifestPlugins(version);
+        }
+        return result;
+    }
+
+    /**
+     * Start instances to check that they come UP, restarting those already running.
+     * Instances that were stopped are stopped again once checked.
+     *
+     * @param results Results of {@link #rollout}, updated with the outcome of the check
+     */
+    public void verify(List<Result> results) throws InterruptedException {
+        List<Result> installed = new ArrayList<>();
+        for (Result result : results) {
+            if (result.error == null) {
+                installed.add(result);
+            }
+        }
+
+        // Instances sharing a port cannot run at the same time
+        List<List<Result>> groups = new ArrayList<>();
+        List<Set<Integer>> groupPorts = new ArrayList<>();
+        for (Result result : installed) {
+            Set<Integer> ports = getPorts(instanceService.getInstancePath(result.version));
+            int group = 0;
+            while (group < groups.size() && groupPorts.get(group).stream().noneMatch(ports::contains)) {
+                group++;
+            }
+            if (group == groups.size()) {
+                groups.add(new ArrayList<>());
+                groupPorts.add(new HashSet<>());
+            }
+            groups.get(group).add(result);
+            groupPorts.get(group).addAll(ports);
+        }
+
+        List<String> labels = new ArrayList<>();
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (List<Result> group : groups) {
+            labels.add(group.get(0).version);
+            tasks.add(() -> {
+                for (Result result : group) {
+                    check(result);
+                }
+                return null;
+            });
+        }
+        runAll(labels, tasks);
+    }
+
+    private void check(Result result) throws InterruptedException {
+        String version = result.version;
+        Path instancePath = instanceService.getInstancePath(version);
+        long start = System.currentTimeMillis();
+        try {
+            // Keep other sqman processes from starting, stopping or changing the instance while it is checked
+            LockService.InstanceLock lock =
+                instanceService.lockInstance(version, LockService.Mode.EXCLUSIVE, "verify plugins");
+            try (lock) {
+                boolean wasRunning = processService.isInstanceRunning(instancePath);
+                if (wasRunning && !processService.stopAndWait(instancePath, STOP_TIMEOUT_SECONDS)) {
+                    throw new IOException("Could not stop " + version);
+                }
+                AdmissionService admissionService = new AdmissionService();
+                admissionService.admit(instancePath, version, AdmissionService.Policy.QUEUE);
+                if (!processService.startInstance(instancePath, version, true)) {
+                    admissionService.cancel(version);
+                    throw new IOException("Could not start " + version);
+                }
+                instanceService.recordRun(version);
+
+                SonarQubeSetupService setupService =
+                    new SonarQubeSetupService("http://localhost:" + propertiesService.getWebPort(instancePath));
+                result.up = setupService.waitForStatusUp(TimeUnit.MINUTES.toMillis(
+                    configService.getLong(VERIFY_TIMEOUT_MINUTES, DEFAULT_VERIFY_TIMEOUT_MINUTES)));
+                result.startMillis = System.currentTimeMillis() - start;
+                if (!wasRunning) {
+                    processService.stopAndWait(instancePath, STOP_TIMEOUT_SECONDS);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not check {}: {}", version, e.getMessage());
+            result.up = false;
+            result.error = e.getMessage();
+        }
+    }
+
+    private Set<Integer> getPorts(Path instancePath) {
+        Set<Integer> ports = new HashSet<>();
+        ports.add(propertiesService.getWebPort(instancePath));
+        ports.add(getPort(instancePath, "sonar.search.port", DEFAULT_SEARCH_PORT));
+        ports.add(getPort(instancePath, "sonar.embeddedDatabase.port", DEFAULT_DATABASE_PORT));
+        return ports;
+    }
+
+    private int getPort(Path instancePath, String key, int defaultPort) {
+        try {
+            String port = propertiesService.getProperty(instancePath, key);
+            return port != null ? Integer.parseInt(port) : defaultPort;
+        } catch (IOException | NumberFormatException e) {
+            return defaultPort;
+        }
+    }
+
+    /**
+     * Run one task per instance and collect their results. A failed task yields a result with
+     * the error instead of failing the others.
+     */
+    private List<Result> runAll(List<String> versions, List<Callable<Result>> tasks) throws InterruptedException {
+        List<Result> results = new ArrayList<>();
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), MAX_THREADS));
+        try {
+            List<Future<Result>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.error("Plugin rollout failed for {}", versions.get(i), e.getCause());
+                    Result failed = new Result(versions.get(i));
+                    failed.error = e.getCause().getMessage();
+                    results.add(failed);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Outcome of a rollout for one instance.
+     */
+    public static class Result {
+        private final String version;
+        private List<PluginService.Change> changes = new ArrayList<>();
+        private String error;
+        private Boolean up;
+        private long startMillis;
+
+        Result(String version) {
+            this.version = version;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public List<PluginService.Change> getChanges() {
+            return changes;
+        }
+
+        /**
+         * Why the plugins could not be installed or the instance checked, null if it succeeded.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Whether the instance came UP, null if it was not checked.
+         */
+        public Boolean getUp() {
+            return up;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+    }
+}
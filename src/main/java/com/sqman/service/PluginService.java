@@ -0,0 +1,278 @@
+package com.sqman.service;
+
+import com.sqman.model.PluginBackup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service to identify and install the plugins of an instance.
+ *
+ * A plugin is identified by the Plugin-Key attribute of its JAR manifest, so renamed JARs or
+ * SNAPSHOT builds still replace the installed version of the same plugin. Only the manifest
+ * entry is inflated: the JAR is opened through its central directory. JARs without a
+ * Plugin-Key fall back to their file name without version.
+ */
+public class PluginService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginService.class);
+    public static final String EXTENSIONS_DIR = "lib/extensions";
+    private static final String PLUGIN_KEY = "Plugin-Key";
+    private static final String STAGING_DIR = ".sqman-plugins";
+    private static final String BACKUP_SUFFIX = "-backup-\\d{8}-\\d{6}\\.jar$";
+
+    private final FileTreeService fileTreeService;
+    private final PluginBackupService backupService;
+
+    public PluginService() {
+        this.fileTreeService = new FileTreeService();
+        this.backupService = new PluginBackupService(PluginService::readKey);
+    }
+
+    public PluginBackupService getBackupService() {
+        return backupService;
+    }
+
+    /**
+     * Get the key identifying a plugin JAR.
+     */
+    public String getPluginKey(Path jar) {
+        return readKey(jar);
+    }
+
+    /**
+     * Get the key identifying a plugin JAR, for services that do not hold a PluginService.
+     */
+    static String readKey(Path jar) {
+        try {
+            String key = readManifestKey(jar);
+            if (key != null) {
+                return key;
+            }
+        } catch (IOException e) {
+            logger.debug("Could not read the manifest of {}: {}", jar, e.getMessage());
+        }
+        return getPluginName(jar.getFileName().toString().replaceFirst(BACKUP_SUFFIX, ".jar"));
+    }
+
+    /**
+     * Read the Plugin-Key of a JAR.
+     *
+     * @return The key, or null if the JAR is not a SonarQube plugin
+     * @throws IOException if the JAR cannot be read, e.g. while it is still being written
+     */
+    public String readPluginKey(Path jar) throws IOException {
+        return readManifestKey(jar);
+    }
+
+    private static String readManifestKey(Path jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile(), false)) {
+            Manifest manifest = jarFile.getManifest();
+            String key = manifest != null ? manifest.getMainAttributes().getValue(PLUGIN_KEY) : null;
+            return key != null && !key.isBlank() ? key.trim() : null;
+        }
+    }
+
+    /**
+     * Name of a plugin JAR without its version (sonar-java-plugin-7.30.1.34514.jar: sonar-java-plugin).
+     */
+    static String getPluginName(String fileName) {
+        return fileName.replaceFirst("\\.jar$", "")
+            .replaceFirst("-[0-9].*$", "")
+            .replaceFirst("-SNAPSHOT$", "");
+    }
+
+    /**
+     * Get the plugin JARs of a directory by plugin key.
+     */
+    public Map<String, Path> scan(Path directory) throws IOException {
+        Map<String, Path> plugins = new LinkedHashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return plugins;
+        }
+        for (Path jar : listJars(directory)) {
+            plugins.putIfAbsent(getPluginKey(jar), jar);
+        }
+        return plugins;
+    }
+
+    /**
+     * List the JARs of a directory, sorted by name.
+     */
+    public List<Path> listJars(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                .filter(path -> path.getFileName().toString().endsWith(".jar"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Install plugin JARs into an instance, replacing the installed versions of the same plugins.
+     *
+     * The original version of a replaced plugin is backed up the first time it is replaced,
+     * see {@link PluginBackupService}.
+     * All JARs are copied next to the instance before anything is replaced, then swapped in
+     * with renames: on failure the instance keeps its previous plugins.
+     *
+     * @return One change per installed JAR, in the order of the given JARs
+     */
+    public List<Change> install(Path instancePath, List<Path> jars) throws IOException {
+        return install(instancePath, jars, false);
+    }
+
+    /**
+     * Install plugin JARs into an instance, see {@link #install(Path, List)}.
+     *
+     * @param link Hardlink the JARs instead of copying them, for JARs nothing writes to
+     *             anymore. They are copied when the filesystem does not support it.
+     */
+    public List<Change> install(Path instancePath, List<Path> jars, boolean link) throws IOException {
+        Path extensionsDir = instancePath.resolve(EXTENSIONS_DIR);
+        if (!Files.isDirectory(extensionsDir)) {
+            throw new IOException("Extensions directory not found: " + extensionsDir);
+        }
+
+        Map<String, Path> newPlugins = new LinkedHashMap<>();
+        for (Path jar : jars) {
+            Path previous = newPlugins.put(getPluginKey(jar), jar);
+            if (previous != null) {
+                throw new IOException(previous.getFileName() + " and " + jar.getFileName()
+                    + " are the same plugin (" + getPluginKey(jar) + ")");
+            }
+        }
+        Map<String, Path> installed = scan(extensionsDir);
+        Set<String> backedUp = new HashSet<>();
+        for (PluginBackup backup : backupService.list(instancePath)) {
+            backedUp.add(backup.getKey());
+        }
+
+        Path staging = instancePath.resolve(STAGING_DIR);
+        fileTreeService.deleteTree(staging);
+        Path stagedNew = Files.createDirectories(staging.resolve("new"));
+        Path stagedOld = Files.createDirectories(staging.resolve("old"));
+        List<Change> changes = new ArrayList<>();
+        Map<String, Path> toBackUp = new LinkedHashMap<>();
+        boolean backupsRecorded = false;
+        List<Change> applied = new ArrayList<>();
+        try {
+            // Slow part first: nothing in the instance changes until all JARs are copied
+            for (Map.Entry<String, Path> plugin : newPlugins.entrySet()) {
+                Path jar = plugin.getValue();
+                stage(jar, stagedNew.resolve(jar.getFileName()), link);
+
+                Path existing = installed.get(plugin.getKey());
+                if (existing != null && !backedUp.contains(plugin.getKey())) {
+                    toBackUp.put(plugin.getKey(), existing);
+                }
+                changes.add(new Change(plugin.getKey(), jar.getFileName().toString(),
+                    existing != null ? existing.getFileName().toString() : null,
+                    toBackUp.containsKey(plugin.getKey())));
+            }
+            backupService.backup(instancePath, toBackUp);
+            backupsRecorded = true;
+
+            for (Change change : changes) {
+                if (change.replaced != null) {
+                    Files.move(extensionsDir.resolve(change.replaced), stagedOld.resolve(change.replaced));
+                }
+                applied.add(change);
+                Files.move(stagedNew.resolve(change.fileName), extensionsDir.resolve(change.fileName),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            rollback(extensionsDir, stagedOld, applied);
+            if (backupsRecorded) {
+                backupService.remove(instancePath, toBackUp.keySet());
+            }
+            fileTreeService.deleteTree(staging);
+            throw e;
+        }
+        fileTreeService.deleteTree(staging);
+        logger.info("Installed {} plugin(s) into {}", changes.size(), instancePath);
+        return changes;
+    }
+
+    private void stage(Path jar, Path staged, boolean link) throws IOException {
+        if (link) {
+            try {
+                Files.createLink(staged, jar);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Cross-device or no hardlink support
+                logger.debug("Could not link {}: {}", jar, e.getMessage());
+            }
+        }
+        Files.copy(jar, staged, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void rollback(Path extensionsDir, Path stagedOld, List<Change> applied) {
+        for (Change change : applied) {
+            try {
+                if (change.replaced == null || !change.replaced.equals(change.fileName)) {
+                    Files.deleteIfExists(extensionsDir.resolve(change.fileName));
+                }
+                if (change.replaced != null && Files.exists(stagedOld.resolve(change.replaced))) {
+                    Files.move(stagedOld.resolve(change.replaced), extensionsDir.resolve(change.replaced),
+                        StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                logger.warn("Could not restore {} in {}: {}", change.replaced, extensionsDir, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A plugin installed by {@link #install}.
+     */
+    public static class Change {
+        private final String key;
+        private final String fileName;
+        private final String replaced;
+        private final boolean backedUp;
+
+        Change(String key, String fileName, String replaced, boolean backedUp) {
+            this.key = key;
+            this.fileName = fileName;
+            this.replaced = replaced;
+            this.backedUp = backedUp;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * File name of the replaced version, null for a new plugin.
+         */
+        public String getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * Whether the replaced version was backed up as the original plugin.
+         */
+        public boolean isBackedUp() {
+            return backedUp;
+        }
+    }
+}
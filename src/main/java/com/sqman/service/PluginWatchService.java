@@ -0,0 +1,217 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to detect new plugin builds in a build output directory.
+ *
+ * The directory is watched with a {@link WatchService}. A JAR is picked up once no write was
+ * seen for the debounce delay and its central directory can be read, so a JAR still being
+ * written is never installed. JARs without a Plugin-Key (sources, javadoc, shaded originals)
+ * are ignored. The directory may be deleted and created again by a clean build.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   plugin.watchDebounceMillis - Quiet time after the last write to a JAR (default: 300)
+ */
+public class PluginWatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PluginWatchService.class);
+    public static final String DEBOUNCE_MILLIS = "plugin.watchDebounceMillis";
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+    // How often a missing build directory is looked for
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    private final ConfigService configService;
+    private final PluginService pluginService;
+
+    public PluginWatchService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public PluginWatchService(ConfigService configService) {
+        this.configService = configService;
+        this.pluginService = new PluginService();
+    }
+
+    /**
+     * Start watching a build output directory.
+     */
+    public Watcher watch(Path directory) throws IOException {
+        return new Watcher(directory, configService.getLong(DEBOUNCE_MILLIS, DEFAULT_DEBOUNCE_MILLIS));
+    }
+
+    /**
+     * Watch on a build output directory, returning the plugin JARs of each build.
+     */
+    public class Watcher implements Closeable {
+        private final Path directory;
+        private final long debounceMillis;
+        private final WatchService watchService;
+        private WatchKey key;
+        // Last write seen on each JAR not picked up yet
+        private final Map<Path, Long> pending = new LinkedHashMap<>();
+        private long firstWriteMillis;
+
+        Watcher(Path directory, long debounceMillis) throws IOException {
+            this.directory = directory;
+            this.debounceMillis = debounceMillis;
+            this.watchService = FileSystems.getDefault().newWatchService();
+            register(false);
+        }
+
+        /**
+         * Wait for the next build.
+         *
+         * @return The complete plugin JARs written since the previous build
+         */
+        public Build next() throws IOException, InterruptedException {
+            while (true) {
+                if (key == null && !register(true)) {
+                    TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+                    continue;
+                }
+
+                WatchKey signalled = watchService.poll(
+                    pending.isEmpty() ? POLL_INTERVAL_MILLIS : debounceMillis, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (signalled != null) {
+                    for (WatchEvent<?> event : signalled.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost: every JAR of the directory may have changed
+                            for (Path jar : pluginService.listJars(directory)) {
+                                written(jar, now);
+                            }
+                        } else if (event.context().toString().endsWith(".jar")) {
+                            written(directory.resolve((Path) event.context()), now);
+                        }
+                    }
+                    if (!signalled.reset()) {
+                        // Deleted by a clean build, registered again once it is back
+                        key = null;
+                    }
+                }
+
+                Build build = collect(now);
+                if (build != null) {
+                    return build;
+                }
+            }
+        }
+
+        private void written(Path jar, long now) {
+            if (pending.isEmpty()) {
+                firstWriteMillis = now;
+            }
+            pending.put(jar, now);
+        }
+
+        /**
+         * Pick up the JARs once all of them are quiet and readable.
+         */
+        private Build collect(long now) {
+            if (pending.isEmpty() || pending.values().stream().anyMatch(last -> now - last < debounceMillis)) {
+                return null;
+            }
+            List<Path> jars = new ArrayList<>();
+            boolean complete = true;
+            for (Path jar : new ArrayList<>(pending.keySet())) {
+                if (!Files.isRegularFile(jar)) {
+                    pending.remove(jar);
+                    continue;
+                }
+                try {
+                    if (pluginService.readPluginKey(jar) != null) {
+                        jars.add(jar);
+                    }
+                } catch (IOException e) {
+                    // No central directory yet: still being written
+                    logger.debug("{} is not complete yet: {}", jar, e.getMessage());
+                    pending.put(jar, now);
+                    complete = false;
+                }
+            }
+            if (!complete) {
+                return null;
+            }
+            pending.clear();
+            if (jars.isEmpty()) {
+                return null;
+            }
+            return new Build(jars, firstWriteMillis, now);
+        }
+
+        /**
+         * @param recreated Whether the directory came back after a clean build: the JARs
+         *                  written before it was registered again are part of the build
+         */
+        private boolean register(boolean recreated) throws IOException {
+            if (!Files.isDirectory(directory)) {
+                return false;
+            }
+            key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            if (recreated) {
+                long now = System.currentTimeMillis();
+                for (Path jar : pluginService.listJars(directory)) {
+                    written(jar, now);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Plugin JARs produced by one build.
+     */
+    public static class Build {
+        private final List<Path> jars;
+        private final long firstWriteMillis;
+        private final long readyMillis;
+
+        Build(List<Path> jars, long firstWriteMillis, long readyMillis) {
+            this.jars = jars;
+            this.firstWriteMillis = firstWriteMillis;
+            this.readyMillis = readyMillis;
+        }
+
+        public List<Path> getJars() {
+            return jars;
+        }
+
+        /**
+         * When the first JAR of the build was written.
+         */
+        public long getFirstWriteMillis() {
+            return firstWriteMillis;
+        }
+
+        /**
+         * When all JARs of the build were complete.
+         */
+        public long getReadyMillis() {
+            return readyMillis;
+        }
+    }
+}
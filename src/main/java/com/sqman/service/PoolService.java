@@ -0,0 +1,445 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sqman.model.PoolSlot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Service to manage a pool of pre-started SonarQube instances for CI.
+ *
+ * Each slot is a clone of an installed distribution running on its own ports.
+ * The pool state is kept in pool.json and every update is done under a file lock,
+ * so concurrent sqman processes can acquire and release slots safely.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   pool.size              - Idle slots to keep ready per version (default: 2)
+ *   pool.quota.[version]   - Maximum slots (idle and leased) for a version (default: unlimited)
+ *   pool.maxIdleMinutes    - Idle slots older than this are stopped (default: 60, 0 to disable)
+ *   pool.basePort          - First web port used by the pool (default: 9100)
+ */
+public class PoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolService.class);
+    public static final String POOL_SIZE = "pool.size";
+    public static final String POOL_QUOTA_PREFIX = "pool.quota.";
+    public static final String POOL_MAX_IDLE_MINUTES = "pool.maxIdleMinutes";
+    public static final String POOL_BASE_PORT = "pool.basePort";
+    private static final long DEFAULT_POOL_SIZE = 2;
+    private static final long DEFAULT_MAX_IDLE_MINUTES = 60;
+    private static final long DEFAULT_BASE_PORT = 9100;
+    private static final int PORTS_PER_SLOT = 10;
+    private static final String STATE_FILE = "pool.json";
+    private static final String LOCK_FILE = "pool.lock";
+    // File locks are per JVM, threads of this process (parallel fill) are serialized here
+    private static final Object PROCESS_LOCK = new Object();
+    private static final Set<String> INSTANCE_LOCAL_FILES = Set.of(
+        "data", "logs", "temp", "cds", "checkpoints", "token", "token.persistent", "sqman-state.json",
+        "sqman-startup.log");
+
+    private final ConfigService configService;
+    private final ProcessService processService;
+    private final Path poolRoot;
+    private final ObjectMapper objectMapper;
+    private final FileTreeService fileTreeService;
+    private final SonarPropertiesService propertiesService;
+
+    public PoolService() {
+        this(new ConfigService(), new ProcessService());
+    }
+
+    public PoolService(ConfigService configService, ProcessService processService) {
+        this(configService, processService, configService.getDistributionsDir().resolve("pool"));
+    }
+
+    // Constructor for testing
+    public PoolService(ConfigService configService, ProcessService processService, Path poolRoot) {
+        this.configService = configService;
+        this.processService = processService;
+        this.poolRoot = poolRoot;
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+        this.fileTreeService = new FileTreeService();
+        this.propertiesService = new SonarPropertiesService();
+    }
+
+    /**
+     * Get the pool directory.
+     */
+    public Path getPoolRoot() {
+        return poolRoot;
+    }
+
+    /**
+     * List all slots of the pool.
+     */
+    public List<PoolSlot> listSlots() throws IOException {
+        return updateSlots(slots -> new ArrayList<>(slots));
+    }
+
+    /**
+     * Start new slots until the configured number of idle slots is available for a version.
+     * Blocks until the new slots are ready (started and set up).
+     *
+     * @param version Installed version to pool
+     * @return Slots that became ready
+     */
+    public List<PoolSlot> fill(String version) throws IOException, InterruptedException {
+        Path source = configService.getDistributionsDir().resolve("sonarqube-" + version);
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Version not installed: " + version);
+        }
+
+        reapIdle();
+
+        long poolSize = configService.getLong(POOL_SIZE, DEFAULT_POOL_SIZE);
+        long quota = configService.getLong(POOL_QUOTA_PREFIX + version, Long.MAX_VALUE);
+
+        List<PoolSlot> created = updateSlots(slots -> {
+            long total = slots.stream().filter(slot -> version.equals(slot.getVersion())).count();
+            long idle = slots.stream()
+                .filter(slot -> version.equals(slot.getVersion()) && slot.getStatus() != PoolSlot.Status.LEASED)
+                .count();
+            long toCreate = Math.min(poolSize - idle, quota - total);
+
+            List<PoolSlot> newSlots = new ArrayList<>();
+            for (int i = 0; i < toCreate; i++) {
+                PoolSlot slot = newSlot(slots, version);
+                slots.add(slot);
+                newSlots.add(slot);
+            }
+            return newSlots;
+        });
+
+        if (created.isEmpty()) {
+            return created;
+        }
+
+        System.out.println("Starting " + created.size() + " pool slot(s) for " + version + "...");
+        ExecutorService executor = Executors.newFixedThreadPool(created.size());
+        List<Future<PoolSlot>> results = new ArrayList<>();
+        for (PoolSlot slot : created) {
+            results.add(executor.submit(() -> {
+                prepareSlotDirectory(source, slot);
+                return startSlot(slot);
+            }));
+        }
+        executor.shutdown();
+
+        List<PoolSlot> ready = new ArrayList<>();
+        for (int i = 0; i < created.size(); i++) {
+            try {
+                ready.add(results.get(i).get());
+            } catch (Exception e) {
+                logger.error("Failed to start pool slot {}", created.get(i).getId(), e);
+                System.err.println("✗ Failed to start " + created.get(i).getId() + ": " + e.getMessage());
+                discard(created.get(i));
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Lease an idle slot of a version. Only the pool state is updated, so this is instantaneous.
+     *
+     * @param version Version or version prefix
+     * @return The leased slot, or null if no idle slot is ready
+     */
+    public PoolSlot acquire(String version) throws IOException {
+        return updateSlots(slots -> {
+            PoolSlot candidate = slots.stream()
+                .filter(slot -> slot.getStatus() == PoolSlot.Status.READY)
+                // Prefix on version components, so 10.3 does not pick a 10.30 slot
+                .filter(slot -> slot.getVersion().equals(version) || slot.getVersion().startsWith(version + "."))
+                .min((s1, s2) -> Boolean.compare(!s1.getVersion().equals(version), !s2.getVersion().equals(version)))
+                .orElse(null);
+
+            if (candidate != null) {
+                candidate.setStatus(PoolSlot.Status.LEASED);
+                candidate.setLeasedAt(System.currentTimeMillis());
+            }
+            return candidate;
+        });
+    }
+
+    /**
+     * Give a leased slot back to the pool. The slot must then be recycled.
+     *
+     * @return The released slot, or null if the slot is unknown or not leased
+     */
+    public PoolSlot release(String slotId) throws IOException {
+        return updateSlots(slots -> {
+            PoolSlot slot = findSlot(slots, slotId);
+            if (slot == null || slot.getStatus() != PoolSlot.Status.LEASED) {
+                return null;
+            }
+            slot.setStatus(PoolSlot.Status.RECYCLING);
+            return slot;
+        });
+    }
+
+    /**
+     * Reset a released slot to a clean state and make it available again.
+     * Stops the slot, wipes its data and starts it again with a fresh setup.
+     */
+    public PoolSlot recycle(String slotId) throws IOException, InterruptedException {
+        PoolSlot slot = updateSlots(slots -> findSlot(slots, slotId));
+        if (slot == null) {
+            throw new IOException("Unknown pool slot: " + slotId);
+        }
+
+        try {
+            Path slotPath = Paths.get(slot.getPath());
+            stopSlot(slotPath);
+            resetSlotData(slotPath);
+            return startSlot(slot);
+        } catch (IOException | InterruptedException e) {
+            discard(slot);
+            throw e;
+        }
+    }
+
+    /**
+     * Stop and remove idle slots that have been ready for longer than pool.maxIdleMinutes.
+     *
+     * @return Number of slots removed
+     */
+    public int reapIdle() throws IOException, InterruptedException {
+        long maxIdleMinutes = configService.getLong(POOL_MAX_IDLE_MINUTES, DEFAULT_MAX_IDLE_MINUTES);
+        if (maxIdleMinutes <= 0) {
+            return 0;
+        }
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(maxIdleMinutes);
+        List<PoolSlot> idle = removeSlots(slot ->
+            slot.getStatus() == PoolSlot.Status.READY && slot.getReadySince() < cutoff);
+
+        for (PoolSlot slot : idle) {
+            System.out.println("Stopping idle pool slot " + slot.getId() + " (" + slot.getVersion() + ")");
+            stopAndDelete(slot);
+        }
+        return idle.size();
+    }
+
+    /**
+     * Stop and remove all slots that are not leased.
+     *
+     * @param version Only drain slots of this version (null for all versions)
+     * @return Number of slots removed
+     */
+    public int drain(String version) throws IOException, InterruptedException {
+        List<PoolSlot> drained = removeSlots(slot ->
+            slot.getStatus() != PoolSlot.Status.LEASED && (version == null || version.equals(slot.getVersion())));
+
+        for (PoolSlot slot : drained) {
+            System.out.println("Stopping pool slot " + slot.getId() + " (" + slot.getVersion() + ")");
+            stopAndDelete(slot);
+        }
+        return drained.size();
+    }
+
+    /**
+     * Create a slot record with the lowest free slot number and its port range.
+     */
+    private PoolSlot newSlot(List<PoolSlot> slots, String version) {
+        Set<String> usedIds = slots.stream().map(PoolSlot::getId).collect(Collectors.toCollection(HashSet::new));
+        int number = 1;
+        while (usedIds.contains("slot-" + number)) {
+            number++;
+        }
+
+        long basePort = configService.getLong(POOL_BASE_PORT, DEFAULT_BASE_PORT);
+        PoolSlot slot = new PoolSlot();
+        slot.setId("slot-" + number);
+        slot.setVersion(version);
+        slot.setPath(poolRoot.resolve(slot.getId()).toString());
+        slot.setWebPort((int) (basePort + (long) (number - 1) * PORTS_PER_SLOT));
+        slot.setStatus(PoolSlot.Status.STARTING);
+        return slot;
+    }
+
+    /**
+     * Create the slot directory from the installed distribution and give it its own ports.
+     */
+    private void prepareSlotDirectory(Path source, PoolSlot slot) throws IOException {
+        Path slotPath = Paths.get(slot.getPath());
+        fileTreeService.deleteTree(slotPath);
+
+        // Cloning only reads the source, other readers may clone it at the same time.
+        // Distribution files are hardlinked, only the paths an instance writes to are copied.
+        LockService.InstanceLock lock;
+        try {
+            lock = new LockService(configService)
+                .lock(source.getFileName().toString(), LockService.Mode.SHARED, "pool fill");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + source.getFileName(), e);
+        }
+        try (lock) {
+            fileTreeService.linkTree(source, slotPath,
+                relative -> !INSTANCE_LOCAL_FILES.contains(relative.getName(0).toString())
+                    && !relative.getFileName().toString().endsWith(".pid"),
+                CloneService::isMutable);
+        }
+        configureSlot(slotPath, slot.getWebPort());
+    }
+
+    /**
+     * Point a slot to its own ports and drop instance-specific settings copied from the source.
+     */
+    void configureSlot(Path slotPath, int webPort) throws IOException {
+        propertiesService.setProperty(slotPath, "sonar.web.port", String.valueOf(webPort));
+        propertiesService.setProperty(slotPath, "sonar.search.port", String.valueOf(webPort + 1));
+        propertiesService.setProperty(slotPath, "sonar.embeddedDatabase.port", String.valueOf(webPort + 2));
+        propertiesService.removeProperty(slotPath, "sonar.path.data");
+        propertiesService.removeProperty(slotPath, "sonar.path.temp");
+        propertiesService.removeProperty(slotPath, "sonar.path.logs");
+        new AppCdsService().disable(slotPath);
+    }
+
+    /**
+     * Start a slot, wait until it is UP, run the automatic setup and mark it READY.
+     * Slots are seeded from the golden template of their version when there is one.
+     */
+    private PoolSlot startSlot(PoolSlot slot) throws IOException, InterruptedException {
+        Path slotPath = Paths.get(slot.getPath());
+        TemplateService templateService = new TemplateService(configService);
+        templateService.seed(slotPath, slot.getVersion());
+
+        // Slots start one after another as memory allows
+        AdmissionService admissionService = new AdmissionService();
+        admissionService.admit(slotPath, slot.getId(), AdmissionService.Policy.QUEUE);
+        if (!processService.startInstance(slotPath, slot.getId(), true)) {
+            admissionService.cancel(slot.getId());
+            throw new IOException("Could not start " + slot.getId());
+        }
+
+        SonarQubeSetupService setupService = new SonarQubeSetupService(slot.getUrl());
+        if (!setupService.waitForSonarQubeReady()) {
+            throw new IOException(slot.getId() + " did not become ready");
+        }
+
+        String token;
+        if (setupService.isSetupNeeded(slotPath)) {
+            token = setupService.performAutomaticSetup(slotPath);
+            // The first slot of a version provides the template that seeds the next ones
+            if (!templateService.hasTemplate(slot.getVersion())
+                    && (!templateService.captureAfterSetup(slotPath, slot.getVersion(), slot.getId(), processService)
+                        || !setupService.waitForSonarQubeReady())) {
+                throw new IOException(slot.getId() + " did not become ready after saving the template");
+            }
+        } else {
+            token = Files.readString(slotPath.resolve("token")).trim();
+        }
+
+        return updateSlots(slots -> {
+            PoolSlot stored = findSlot(slots, slot.getId());
+            if (stored == null) {
+                return slot;
+            }
+            stored.setStatus(PoolSlot.Status.READY);
+            stored.setToken(token);
+            stored.setReadySince(System.currentTimeMillis());
+            stored.setLeasedAt(0);
+            return stored;
+        });
+    }
+
+    /**
+     * Wipe everything a lease may have changed: database, indexes, logs and token.
+     * The next start seeds the slot from the template again.
+     */
+    private void resetSlotData(Path slotPath) throws IOException {
+        fileTreeService.deleteTree(slotPath.resolve("data"));
+        fileTreeService.deleteTree(slotPath.resolve("temp"));
+        fileTreeService.deleteTree(slotPath.resolve("logs"));
+        Files.deleteIfExists(slotPath.resolve("token"));
+    }
+
+    private void stopSlot(Path slotPath) throws IOException, InterruptedException {
+        if (processService.isInstanceRunning(slotPath) && !processService.stopInstance(slotPath, false)) {
+            processService.stopInstance(slotPath, true);
+        }
+    }
+
+    /**
+     * Remove a slot from the pool and delete it.
+     */
+    private void discard(PoolSlot slot) {
+        try {
+            removeSlots(stored -> stored.getId().equals(slot.getId()));
+            stopAndDelete(slot);
+        } catch (Exception e) {
+            logger.error("Failed to discard pool slot {}", slot.getId(), e);
+        }
+    }
+
+    private void stopAndDelete(PoolSlot slot) throws IOException, InterruptedException {
+        Path slotPath = Paths.get(slot.getPath());
+        if (Files.exists(slotPath)) {
+            stopSlot(slotPath);
+            fileTreeService.deleteTree(slotPath);
+        }
+    }
+
+    private List<PoolSlot> removeSlots(Predicate<PoolSlot> filter) throws IOException {
+        return updateSlots(slots -> {
+            List<PoolSlot> removed = slots.stream().filter(filter).collect(Collectors.toList());
+            slots.removeAll(removed);
+            return removed;
+        });
+    }
+
+    private PoolSlot findSlot(List<PoolSlot> slots, String slotId) {
+        return slots.stream().filter(slot -> slot.getId().equals(slotId)).findFirst().orElse(null);
+    }
+
+    /**
+     * Read, update and write the pool state while holding the pool lock.
+     */
+    private <T> T updateSlots(Function<List<PoolSlot>, T> update) throws IOException {
+        Files.createDirectories(poolRoot);
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(poolRoot.resolve(LOCK_FILE),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released with the channel
+                channel.lock();
+
+                Path stateFile = poolRoot.resolve(STATE_FILE);
+                List<PoolSlot> slots = Files.exists(stateFile)
+                    ? objectMapper.readValue(stateFile.toFile(), new TypeReference<List<PoolSlot>>() { })
+                    : new ArrayList<>();
+
+                T result = update.apply(slots);
+
+                Path tempFile = poolRoot.resolve(STATE_FILE + ".tmp");
+                objectMapper.writeValue(tempFile.toFile(), slots);
+                Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return result;
+            }
+        }
+    }
+}
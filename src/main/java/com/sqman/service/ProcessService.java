@@ -6,8 +6,11 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service to manage SonarQube processes (start/stop).
@@ -15,7 +18,6 @@ import java.util.concurrent.TimeUnit;
 public class ProcessService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProcessService.class);
-    private static final String SQMAN_HOME = System.getProperty("user.home") + "/.sqman";
     private static final String SONARQUBE_PID_FILE = "SonarQube.pid";
 
     public enum Platform {
@@ -63,8 +65,20 @@ public class ProcessService {
      * @return true if started successfully
      */
     public boolean startInstance(String version, int port, boolean detached) throws IOException, InterruptedException {
-        Path instancePath = Paths.get(SQMAN_HOME, "sonarqube-" + version);
+        Path instancePath = new ConfigService().getDistributionsDir().resolve("sonarqube-" + version);
+        return startInstance(instancePath, version, detached);
+    }
 
+    /**
+     * Start the SonarQube instance installed in the given directory.
+     * The web port is taken from the instance's sonar.properties (9000 by default).
+     *
+     * @param instancePath Instance directory
+     * @param label Name shown in messages (usually the version)
+     * @param detached Run in background mode
+     * @return true if started successfully
+     */
+    public boolean startInstance(Path instancePath, String label, boolean detached) throws IOException, InterruptedException {
         if (!Files.exists(instancePath)) {
             throw new IOException("Instance not found: " + instancePath);
         }
@@ -84,7 +98,7 @@ public class ProcessService {
             throw new IOException("Startup script not found: " + scriptPath);
         }
 
-        System.out.println("Starting SonarQube " + version + "...");
+        System.out.println("Starting SonarQube " + label + "...");
         System.out.println("Platform: " + platform.name());
         System.out.println("Script: " + scriptPath);
         System.out.println();
@@ -136,7 +150,8 @@ public class ProcessService {
                     System.out.println("✓ Check logs: " + logFile);
                     System.out.println();
                     System.out.println("SonarQube is starting up...");
-                    System.out.println("Web UI will be available at: http://localhost:9000");
+                    System.out.println("Web UI will be available at: http://localhost:"
+                        + new SonarPropertiesService().getWebPort(instancePath));
                     return true;
                 }
             }
@@ -165,8 +180,18 @@ public class ProcessService {
      * @return true if stopped successfully
      */
     public boolean stopInstance(String version, boolean forceKill) throws IOException, InterruptedException {
-        Path instancePath = Paths.get(SQMAN_HOME, "sonarqube-" + version);
+        Path instancePath = new ConfigService().getDistributionsDir().resolve("sonarqube-" + version);
+        return stopInstance(instancePath, forceKill);
+    }
 
+    /**
+     * Stop the SonarQube instance installed in the given directory.
+     *
+     * @param instancePath Instance directory
+     * @param forceKill If true, force kill the process
+     * @return true if stopped successfully
+     */
+    public boolean stopInstance(Path instancePath, boolean forceKill) throws IOException, InterruptedException {
         if (!Files.exists(instancePath)) {
             throw new IOException("Instance not found: " + instancePath);
         }
@@ -211,6 +236,65 @@ public class ProcessService {
         }
     }
 
+    /**
+     * Stop an instance gracefully and wait until all its JVMs have exited, so its data
+     * files (H2 database, Elasticsearch indexes) are consistent and can be copied.
+     *
+     * @param instancePath Instance directory
+     * @param timeoutSeconds Maximum wait for the processes to exit
+     * @return true if the instance is stopped
+     */
+    public boolean stopAndWait(Path instancePath, long timeoutSeconds) throws IOException, InterruptedException {
+        List<ProcessHandle> processes = new ArrayList<>();
+        ProcessHandle.of(getPid(instancePath)).ifPresent(main -> {
+            processes.add(main);
+            main.descendants().forEach(processes::add);
+        });
+
+        if (!stopInstance(instancePath, false)) {
+            return false;
+        }
+
+        // The kill fallback returns as soon as the signal is sent
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        for (ProcessHandle process : processes) {
+            try {
+                process.onExit().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Process {} did not exit after stop", process.pid());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the PID file written by the wrapper (bin/{platform}/SonarQube.pid).
+     */
+    public Path getPidFile(Path instancePath) {
+        return instancePath.resolve("bin")
+            .resolve(detectPlatform().getBinDir())
+            .resolve(SONARQUBE_PID_FILE);
+    }
+
+    /**
+     * Get the PID of the main SonarQube process of a running instance.
+     *
+     * @return The PID, or -1 if the instance has no readable PID file
+     */
+    public long getPid(Path instancePath) {
+        Path pidFile = getPidFile(instancePath);
+        if (!Files.exists(pidFile)) {
+            return -1;
+        }
+        String pidStr = readPidFile(pidFile);
+        try {
+            return pidStr != null ? Long.parseLong(pidStr.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Check if an instance is currently running.
      */
@@ -0,0 +1,127 @@
+package com.sqman.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service to read and update settings in an instance's conf/sonar.properties.
+ * Updates are applied line by line so comments and unrelated settings are preserved.
+ */
+public class SonarPropertiesService {
+
+    private static final String PROPERTIES_FILE = "conf/sonar.properties";
+    private static final int DEFAULT_WEB_PORT = 9000;
+
+    /**
+     * Get the path to the sonar.properties file of an instance.
+     */
+    public Path getPropertiesFile(Path instancePath) {
+        return instancePath.resolve(PROPERTIES_FILE);
+    }
+
+    /**
+     * Read all active (uncommented) settings of an instance.
+     *
+     * @return Settings in file order, empty if the file does not exist
+     */
+    public Map<String, String> readProperties(Path instancePath) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        Path propertiesFile = getPropertiesFile(instancePath);
+
+        if (!Files.exists(propertiesFile)) {
+            return properties;
+        }
+
+        for (String line : Files.readAllLines(propertiesFile)) {
+            String key = extractKey(line);
+            if (key != null) {
+                properties.put(key, line.substring(line.indexOf('=') + 1).trim());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Get the value of an active setting.
+     *
+     * @return The value, or null if the setting is not set
+     */
+    public String getProperty(Path instancePath, String key) throws IOException {
+        return readProperties(instancePath).get(key);
+    }
+
+    /**
+     * Get the web port of an instance (sonar.web.port, 9000 by default).
+     */
+    public int getWebPort(Path instancePath) {
+        try {
+            String port = getProperty(instancePath, "sonar.web.port");
+            return port != null ? Integer.parseInt(port) : DEFAULT_WEB_PORT;
+        } catch (IOException | NumberFormatException e) {
+            return DEFAULT_WEB_PORT;
+        }
+    }
+
+    /**
+     * Set a setting, replacing the active line if present or appending it otherwise.
+     * A null value removes the setting.
+     */
+    public void setProperty(Path instancePath, String key, String value) throws IOException {
+        Path propertiesFile = getPropertiesFile(instancePath);
+        List<String> lines = Files.exists(propertiesFile)
+            ? Files.readAllLines(propertiesFile)
+            : new ArrayList<>();
+
+        List<String> updated = new ArrayList<>();
+        boolean replaced = false;
+
+        for (String line : lines) {
+            if (key.equals(extractKey(line))) {
+                // Replace the first occurrence, drop duplicates
+                if (!replaced && value != null) {
+                    updated.add(key + "=" + value);
+                }
+                replaced = true;
+            } else {
+                updated.add(line);
+            }
+        }
+
+        if (!replaced && value != null) {
+            updated.add(key + "=" + value);
+        }
+
+        Files.createDirectories(propertiesFile.getParent());
+        Files.write(propertiesFile, updated);
+    }
+
+    /**
+     * Remove an active setting, falling back to the SonarQube default.
+     */
+    public void removeProperty(Path instancePath, String key) throws IOException {
+        if (Files.exists(getPropertiesFile(instancePath))) {
+            setProperty(instancePath, key, null);
+        }
+    }
+
+    /**
+     * Extract the key of an active "key=value" line, or null for comments and blank lines.
+     */
+    private String extractKey(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("!")) {
+            return null;
+        }
+
+        int separator = trimmed.indexOf('=');
+        if (separator <= 0) {
+            return null;
+        }
+        return trimmed.substring(0, separator).trim();
+    }
+}
@@ -22,6 +22,8 @@ public class SonarQubeSetupService {
     private static final String TOKEN_NAME = "sqman-global-analysis-token";
     private static final int MAX_WAIT_SECONDS = 300; // 5 minutes max wait
     private static final int POLL_INTERVAL_SECONDS = 2;
+    private static final long RESTART_POLL_INTERVAL_MILLIS = 500;
+    private static final long FAST_POLL_INTERVAL_MILLIS = 250;
 
     private final OkHttpClient httpClient;
     private final String baseUrl;
@@ -94,6 +96,108 @@ public class SonarQubeSetupService {
         return false;
     }
 
+    /**
+     * Wait quietly for SonarQube to report UP, polling more often than waitForSonarQubeReady
+     * so scripted runs don't lose up to a poll interval.
+     *
+     * @return true if UP before the timeout
+     */
+    public boolean waitForStatusUp(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if ("UP".equals(fetchStatus())) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(FAST_POLL_INTERVAL_MILLIS);
+        }
+        return false;
+    }
+
+    /**
+     * Restart SonarQube in place through /api/system/restart and wait until it is UP again.
+     * This keeps the main process alive and avoids a full cold start of the instance.
+     *
+     * @return true if the restart was accepted and the instance came back UP, false otherwise
+     */
+    public boolean restartInPlace(Path instancePath) throws InterruptedException {
+        // Before automatic setup the admin still uses the default password
+        String password = isSetupNeeded(instancePath) ? DEFAULT_ADMIN_PASSWORD : NEW_ADMIN_PASSWORD;
+        String credential = Credentials.basic(DEFAULT_ADMIN_USERNAME, password);
+
+        Request request = new Request.Builder()
+            .url(baseUrl + "/api/system/restart")
+            .post(RequestBody.create(new byte[0]))
+            .header("Authorization", credential)
+            .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                logger.warn("Restart request rejected. Status: {}", response.code());
+                return false;
+            }
+        } catch (IOException e) {
+            logger.warn("Restart request failed: {}", e.getMessage());
+            return false;
+        }
+
+        return waitForRestart();
+    }
+
+    /**
+     * Wait for the instance to leave the UP state (RESTARTING, STARTING or unreachable)
+     * and then to report UP again.
+     */
+    private boolean waitForRestart() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MAX_WAIT_SECONDS);
+        long lastProgress = System.currentTimeMillis();
+        boolean restartObserved = false;
+
+        while (System.currentTimeMillis() < deadline) {
+            String status = fetchStatus();
+
+            if (!"UP".equals(status)) {
+                if (!restartObserved) {
+                    System.out.println("  Status: " + (status != null ? status : "RESTARTING"));
+                }
+                restartObserved = true;
+            } else if (restartObserved) {
+                System.out.println("  Status: UP");
+                return true;
+            }
+
+            if (System.currentTimeMillis() - lastProgress >= TimeUnit.SECONDS.toMillis(10)) {
+                System.out.println("  Still waiting... (status: " + (status != null ? status : "unreachable") + ")");
+                lastProgress = System.currentTimeMillis();
+            }
+
+            TimeUnit.MILLISECONDS.sleep(RESTART_POLL_INTERVAL_MILLIS);
+        }
+
+        System.err.println("✗ Timeout waiting for SonarQube to restart");
+        return false;
+    }
+
+    /**
+     * Read the current status reported by /api/system/status.
+     *
+     * @return status (e.g. "UP", "STARTING", "RESTARTING") or null if SonarQube is unreachable
+     */
+    public String fetchStatus() {
+        Request request = new Request.Builder()
+            .url(baseUrl + "/api/system/status")
+            .get()
+            .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.isSuccessful() && response.body() != null) {
+                return extractJsonString(response.body().string(), "status");
+            }
+        } catch (IOException e) {
+            logger.debug("SonarQube not reachable: {}", e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Perform automatic setup: change password and generate token
      */
@@ -224,18 +328,25 @@ public class SonarQubeSetupService {
      * Simple JSON token extraction (avoid adding Jackson dependency just for this)
      */
     private String extractTokenFromJson(String json) {
-        // Look for "token":"..." pattern
-        int tokenStart = json.indexOf("\"token\":\"");
-        if (tokenStart == -1) {
+        return extractJsonString(json, "token");
+    }
+
+    /**
+     * Extract a string field value by looking for the "field":"..." pattern
+     */
+    static String extractJsonString(String json, String field) {
+        String marker = "\"" + field + "\":\"";
+        int valueStart = json.indexOf(marker);
+        if (valueStart == -1) {
             return null;
         }
-        tokenStart += 9; // Length of "token":"
+        valueStart += marker.length();
 
-        int tokenEnd = json.indexOf("\"", tokenStart);
-        if (tokenEnd == -1) {
+        int valueEnd = json.indexOf("\"", valueStart);
+        if (valueEnd == -1) {
             return null;
         }
 
-        return json.substring(tokenStart, tokenEnd);
+        return json.substring(valueStart, valueEnd);
     }
 }
@@ -0,0 +1,161 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service to place the write-heavy directories of an instance (data, temp and logs)
+ * on a fast storage tier, while the distribution itself stays on bulk storage.
+ * The locations are wired through the sonar.path.* settings and tracked in the instance state.
+ */
+public class StorageTierService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageTierService.class);
+    private static final String DATA = "data";
+    private static final String TEMP = "temp";
+    private static final String LOGS = "logs";
+
+    private final ConfigService configService;
+    private final SonarPropertiesService propertiesService;
+    private final InstanceStateService stateService;
+    private final FileTreeService fileTreeService;
+
+    public StorageTierService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public StorageTierService(ConfigService configService) {
+        this.configService = configService;
+        this.propertiesService = new SonarPropertiesService();
+        this.stateService = new InstanceStateService();
+        this.fileTreeService = new FileTreeService();
+    }
+
+    /**
+     * Move the data, temp and logs directories of an instance to the hot tier, if one is configured.
+     * Existing data and logs are migrated the first time. Must only be called when the instance is stopped.
+     *
+     * @return true if the instance uses the hot tier
+     */
+    public boolean apply(Path instancePath) throws IOException {
+        Path hotRoot = configService.getHotStorageDir();
+        if (hotRoot == null) {
+            return false;
+        }
+
+        Path hotDir = hotRoot.resolve(instancePath.getFileName().toString());
+        Path dataDir = placeOnHotTier(instancePath, hotDir, DATA, true);
+        Path tempDir = placeOnHotTier(instancePath, hotDir, TEMP, false);
+        Path logsDir = placeOnHotTier(instancePath, hotDir, LOGS, true);
+
+        InstanceState state = stateService.load(instancePath);
+        state.setDataDir(dataDir.toString());
+        state.setTempDir(tempDir.toString());
+        state.setLogsDir(logsDir.toString());
+        stateService.save(instancePath, state);
+        return true;
+    }
+
+    /**
+     * Delete the hot tier directories of an instance that live outside the instance directory.
+     */
+    public void release(Path instancePath) throws IOException {
+        Path hotDir = null;
+        for (Path path : getOutsideDirs(instancePath)) {
+            fileTreeService.deleteTree(path);
+            hotDir = path.getParent();
+        }
+
+        if (hotDir != null && fileTreeService.isEmptyDirectory(hotDir)) {
+            Files.deleteIfExists(hotDir);
+        }
+    }
+
+    /**
+     * Get the hot tier directory holding the data, temp and logs directories of an instance.
+     *
+     * @return The directory, or null if the instance does not use the hot tier
+     */
+    public Path getHotDir(Path instancePath) throws IOException {
+        List<Path> outsideDirs = getOutsideDirs(instancePath);
+        return outsideDirs.isEmpty() ? null : outsideDirs.get(0).getParent();
+    }
+
+    /**
+     * Get the data, temp and logs directories of an instance that live outside the instance directory.
+     */
+    private List<Path> getOutsideDirs(Path instancePath) throws IOException {
+        InstanceState state = stateService.load(instancePath);
+        List<Path> outsideDirs = new ArrayList<>();
+        for (String dir : new String[] {state.getDataDir(), state.getTempDir(), state.getLogsDir()}) {
+            if (dir == null) {
+                continue;
+            }
+            Path path = Paths.get(dir);
+            if (!path.toAbsolutePath().startsWith(instancePath.toAbsolutePath())) {
+                outsideDirs.add(path);
+            }
+        }
+        return outsideDirs;
+    }
+
+    /**
+     * Get the effective data directory of an instance.
+     */
+    public Path getDataDir(Path instancePath) throws IOException {
+        return resolveDir(instancePath, DATA);
+    }
+
+    /**
+     * Get the effective temp directory of an instance.
+     */
+    public Path getTempDir(Path instancePath) throws IOException {
+        return resolveDir(instancePath, TEMP);
+    }
+
+    /**
+     * Get the effective logs directory of an instance.
+     */
+    public Path getLogsDir(Path instancePath) throws IOException {
+        return resolveDir(instancePath, LOGS);
+    }
+
+    private Path placeOnHotTier(Path instancePath, Path hotDir, String name, boolean migrate) throws IOException {
+        Path target = hotDir.resolve(name);
+        Path current = resolveDir(instancePath, name);
+
+        if (!current.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())) {
+            if (migrate && !fileTreeService.isEmptyDirectory(current) && fileTreeService.isEmptyDirectory(target)) {
+                System.out.println("Moving " + name + "/ to fast storage: " + target);
+                Files.deleteIfExists(target);
+                fileTreeService.moveTree(current, target);
+            }
+            propertiesService.setProperty(instancePath, "sonar.path." + name, target.toString());
+            logger.info("{} of {} placed on hot tier: {}", name, instancePath.getFileName(), target);
+        }
+
+        Files.createDirectories(target);
+        return target;
+    }
+
+    /**
+     * Resolve a sonar.path.* setting. Relative paths are relative to the instance directory.
+     */
+    private Path resolveDir(Path instancePath, String name) throws IOException {
+        String value = propertiesService.getProperty(instancePath, "sonar.path." + name);
+        if (value == null) {
+            return instancePath.resolve(name);
+        }
+        Path path = Paths.get(value);
+        return path.isAbsolute() ? path : instancePath.resolve(path);
+    }
+}
@@ -0,0 +1,267 @@
+package com.sqman.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Minimal streaming tar reader for the archives written by {@link TarWriter}
+ * (ustar regular files and directories, GNU long names and base-256 sizes).
+ */
+public class TarReader implements AutoCloseable {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[64 * 1024];
+    private Entry current;
+    private long remaining;
+
+    public TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Move to the next file or directory entry, skipping what is left of the current one.
+     *
+     * @return The entry, or null at the end of the archive
+     */
+    public Entry next() throws IOException {
+        skipRemaining();
+
+        String longName = null;
+        while (true) {
+            byte[] header = new byte[TarWriter.BLOCK];
+            if (in.readNBytes(header, 0, header.length) < header.length || isZeroBlock(header)) {
+                current = null;
+                return null;
+            }
+            verifyChecksum(header);
+
+            long size = parseSize(header);
+            byte type = header[156];
+            if (type == TarWriter.TYPE_LONG_NAME) {
+                byte[] name = readFully(size);
+                skipPadding(size);
+                longName = new String(name, StandardCharsets.UTF_8).replace("\0", "");
+                continue;
+            }
+
+            String name = longName != null ? longName : parseString(header, 0, 100);
+            String prefix = parseString(header, 345, 155);
+            if (longName == null && !prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+
+            boolean directory = type == TarWriter.TYPE_DIRECTORY || name.endsWith("/");
+            if (!directory && type != TarWriter.TYPE_FILE && type != 0) {
+                // Links, devices, ...: not produced by sqman, skip them
+                skip(size);
+                skipPadding(size);
+                longName = null;
+                continue;
+            }
+
+            long mtime = parseOctal(header, 136, 12) * 1000;
+            int mode = (int) parseOctal(header, 100, 8);
+            current = new Entry(name, directory, directory ? 0 : size, mode, mtime);
+            remaining = current.size;
+            return current;
+        }
+    }
+
+    /**
+     * Copy the content of the current entry.
+     */
+    public void copyTo(OutputStream out) throws IOException {
+        while (remaining > 0) {
+            int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count < 0) {
+                throw new EOFException("Truncated archive");
+            }
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+        skipPadding(current.size);
+        current = null;
+    }
+
+    /**
+     * Read the content of the current entry into memory.
+     */
+    public byte[] readContent() throws IOException {
+        byte[] content = readFully(remaining);
+        remaining = 0;
+        skipPadding(current.size);
+        current = null;
+        return content;
+    }
+
+    /**
+     * Write the current entry under a directory, with its modification time and executable bit.
+     *
+     * @param baseDir Directory the entry is extracted into
+     * @param relativeName Path of the entry relative to baseDir
+     * @return The extracted file or directory
+     * @throws IOException if the entry would be written outside of baseDir
+     */
+    public Path extractTo(Path baseDir, String relativeName) throws IOException {
+        Path base = baseDir.toAbsolutePath().normalize();
+        Path target = base.resolve(relativeName.replaceFirst("^/+", "")).normalize();
+        if (!target.startsWith(base)) {
+            throw new IOException("Archive entry outside of the target directory: " + current.getName());
+        }
+
+        Entry entry = current;
+        if (entry.isDirectory()) {
+            Files.createDirectories(target);
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = Files.newOutputStream(target)) {
+            copyTo(out);
+        }
+        Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getLastModified()));
+        if (entry.isExecutable()) {
+            target.toFile().setExecutable(true);
+        }
+        return target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipRemaining() throws IOException {
+        if (current != null) {
+            skip(remaining);
+            skipPadding(current.size);
+            remaining = 0;
+            current = null;
+        }
+    }
+
+    private byte[] readFully(long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry too large to read into memory");
+        }
+        byte[] data = in.readNBytes((int) size);
+        if (data.length < size) {
+            throw new EOFException("Truncated archive");
+        }
+        return data;
+    }
+
+    private void skip(long size) throws IOException {
+        long left = size;
+        while (left > 0) {
+            int count = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (count < 0) {
+                throw new EOFException("Truncated archive");
+            }
+            left -= count;
+        }
+    }
+
+    private void skipPadding(long size) throws IOException {
+        int remainder = (int) (size % TarWriter.BLOCK);
+        if (remainder > 0) {
+            skip(TarWriter.BLOCK - remainder);
+        }
+    }
+
+    private boolean isZeroBlock(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void verifyChecksum(byte[] header) throws IOException {
+        long expected = parseOctal(header, 148, 8);
+        long actual = 0;
+        for (int i = 0; i < header.length; i++) {
+            actual += (i >= 148 && i < 156) ? ' ' : header[i] & 0xff;
+        }
+        if (expected != actual) {
+            throw new IOException("Corrupt archive: bad tar header checksum");
+        }
+    }
+
+    private long parseSize(byte[] header) {
+        if ((header[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        return parseOctal(header, 124, 12);
+    }
+
+    private long parseOctal(byte[] header, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') {
+                value = value * 8 + (b - '0');
+            } else if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private String parseString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * File or directory stored in the archive.
+     */
+    public static class Entry {
+        private final String name;
+        private final boolean directory;
+        private final long size;
+        private final int mode;
+        private final long lastModified;
+
+        Entry(String name, boolean directory, long size, int mode, long lastModified) {
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.mode = mode;
+            this.lastModified = lastModified;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isExecutable() {
+            return (mode & 0100) != 0;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
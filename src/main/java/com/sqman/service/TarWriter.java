@@ -0,0 +1,188 @@
+package com.sqman.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Minimal streaming tar writer (ustar, with GNU long names and base-256 sizes),
+ * readable by any tar implementation and by {@link TarReader}.
+ */
+public class TarWriter implements AutoCloseable {
+
+    static final int BLOCK = 512;
+    static final byte TYPE_FILE = '0';
+    static final byte TYPE_DIRECTORY = '5';
+    static final byte TYPE_LONG_NAME = 'L';
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    public TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Add a directory entry.
+     */
+    public void addDirectory(String name, long mtimeMillis) throws IOException {
+        writeHeader(name.endsWith("/") ? name : name + "/", 0, 0755, mtimeMillis, TYPE_DIRECTORY);
+    }
+
+    /**
+     * Add a file, streaming its content from disk.
+     */
+    public void addFile(String name, Path file) throws IOException {
+        long size = Files.size(file);
+        int mode = Files.isExecutable(file) ? 0755 : 0644;
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+            mode = permissions.contains(PosixFilePermission.OWNER_EXECUTE) ? 0755 : 0644;
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX filesystem, keep the executable check
+        }
+        writeHeader(name, size, mode, Files.getLastModifiedTime(file).toMillis(), TYPE_FILE);
+
+        long remaining = size;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (remaining > 0) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("File changed while archiving: " + file);
+                }
+                out.write(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+        pad(size);
+    }
+
+    /**
+     * Add a directory tree under a prefix (empty to add it at the root of the archive).
+     * The filter receives paths relative to the root; a rejected directory is skipped with
+     * its whole subtree. Only regular files and directories are archived.
+     */
+    public void addTree(Path root, String prefix, Predicate<Path> filter) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = root.relativize(dir);
+                if (dir.equals(root)) {
+                    if (!prefix.isEmpty()) {
+                        addDirectory(prefix, attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                if (!filter.test(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                addDirectory(entryName(prefix, relative), attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path relative = root.relativize(file);
+                if (attrs.isRegularFile() && filter.test(relative)) {
+                    addFile(entryName(prefix, relative), file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Add a file from memory.
+     */
+    public void addBytes(String name, byte[] content, long mtimeMillis) throws IOException {
+        writeHeader(name, content.length, 0644, mtimeMillis, TYPE_FILE);
+        out.write(content);
+        pad(content.length);
+    }
+
+    /**
+     * Write the end-of-archive marker and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(new byte[BLOCK * 2]);
+        out.close();
+    }
+
+    private String entryName(String prefix, Path relative) {
+        String name = relative.toString().replace('\\', '/');
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private void writeHeader(String name, long size, int mode, long mtimeMillis, byte type) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            // GNU long name: the real name is stored in a pseudo-entry before the header
+            writeHeader("././@LongLink", nameBytes.length + 1, 0644, 0, TYPE_LONG_NAME);
+            out.write(nameBytes);
+            out.write(0);
+            pad(nameBytes.length + 1);
+        }
+
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        writeOctal(header, 100, 8, mode);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        if (size > MAX_OCTAL_SIZE) {
+            // GNU base-256 encoding for files of 8 GB and more
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        } else {
+            writeOctal(header, 124, 12, size);
+        }
+        writeOctal(header, 136, 12, mtimeMillis / 1000);
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // Checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        writeOctal(header, 148, 7, checksum);
+        out.write(header);
+    }
+
+    private void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = index < 0 ? (byte) '0' : (byte) octal.charAt(index);
+        }
+        header[offset + digits] = 0;
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK);
+        if (remainder > 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Service to keep a golden template per version: the data directory (H2 database and
+ * Elasticsearch indexes) and the analysis token of an instance right after its automatic setup.
+ * Fresh instances of the same version are seeded from it and skip database creation,
+ * index creation and the setup steps.
+ *
+ * Templates are stored in ~/.sqman/templates/[version] and never modified once published.
+ */
+public class TemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateService.class);
+    private static final String DATA = "data";
+    private static final String TOKEN = "token";
+    private static final String H2_DATABASE = "sonar.mv.db";
+    private static final long STOP_TIMEOUT_SECONDS = 120;
+
+    private final Path templatesDir;
+    private final StorageTierService storageTierService;
+    private final FileTreeService fileTreeService;
+
+    public TemplateService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public TemplateService(ConfigService configService) {
+        this.templatesDir = configService.getHomeDir().resolve("templates");
+        this.storageTierService = new StorageTierService(configService);
+        this.fileTreeService = new FileTreeService();
+    }
+
+    /**
+     * Get the template directory of a version.
+     */
+    public Path getTemplateDir(String version) {
+        return templatesDir.resolve(version);
+    }
+
+    /**
+     * Check if a template has been captured for a version.
+     */
+    public boolean hasTemplate(String version) {
+        Path templateDir = getTemplateDir(version);
+        return Files.isDirectory(templateDir.resolve(DATA)) && Files.exists(templateDir.resolve(TOKEN));
+    }
+
+    /**
+     * Seed a fresh instance with the template of its version.
+     * Instances that already have a database or a token are left untouched.
+     * Must only be called when the instance is stopped, after its data directory is placed.
+     *
+     * @return true if the instance was seeded and does not need the automatic setup
+     */
+    public boolean seed(Path instancePath, String version) throws IOException {
+        if (!hasTemplate(version) || Files.exists(instancePath.resolve(TOKEN))) {
+            return false;
+        }
+
+        Path dataDir = storageTierService.getDataDir(instancePath);
+        if (Files.exists(dataDir.resolve(H2_DATABASE))) {
+            return false;
+        }
+
+        Path templateDir = getTemplateDir(version);
+        fileTreeService.copyTree(templateDir.resolve(DATA), dataDir);
+        Files.copy(templateDir.resolve(TOKEN), instancePath.resolve(TOKEN), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Seeded {} from template {}", instancePath.getFileName(), templateDir);
+        return true;
+    }
+
+    /**
+     * Capture the template of a version from an instance that just completed its setup.
+     * H2 and Elasticsearch files are only consistent once the instance is stopped, so the
+     * instance is stopped gracefully, copied and started again. This happens once per version.
+     *
+     * @param instancePath Instance directory (running)
+     * @param version Version the template is captured for
+     * @param label Name shown when the instance is started again
+     * @return true if the instance is running again
+     */
+    public boolean captureAfterSetup(Path instancePath, String version, String label, ProcessService processService)
+            throws IOException, InterruptedException {
+        if (hasTemplate(version)) {
+            return true;
+        }
+
+        System.out.println();
+        System.out.println("Saving golden template of " + version + " (one-time restart)...");
+        if (!processService.stopAndWait(instancePath, STOP_TIMEOUT_SECONDS)) {
+            throw new IOException("Could not stop " + label + " to capture its template");
+        }
+
+        try {
+            capture(instancePath, version);
+        } catch (IOException e) {
+            System.err.println("⚠ Warning: Could not save the golden template: " + e.getMessage());
+        }
+        return processService.startInstance(instancePath, label, true);
+    }
+
+    /**
+     * Copy the data directory and token of a stopped instance as the template of a version.
+     *
+     * @return true if the template was published, false if one already existed
+     */
+    public boolean capture(Path instancePath, String version) throws IOException {
+        Path tokenFile = instancePath.resolve(TOKEN);
+        if (hasTemplate(version)) {
+            return false;
+        }
+        if (!Files.exists(tokenFile)) {
+            throw new IOException("No token in " + instancePath + ", the instance is not set up");
+        }
+
+        // Build the template next to its final place, then publish it with a rename
+        Path templateDir = getTemplateDir(version);
+        Path stagingDir = templatesDir.resolve(version + ".tmp-" + ProcessHandle.current().pid());
+        fileTreeService.deleteTree(stagingDir);
+        try {
+            fileTreeService.copyTree(storageTierService.getDataDir(instancePath), stagingDir.resolve(DATA));
+            Files.copy(tokenFile, stagingDir.resolve(TOKEN));
+            Files.move(stagingDir, templateDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            fileTreeService.deleteTree(stagingDir);
+            if (hasTemplate(version)) {
+                // Another process published the template first
+                return false;
+            }
+            throw e;
+        }
+
+        System.out.println("✓ Golden template of " + version + " saved to " + templateDir);
+        return true;
+    }
+}
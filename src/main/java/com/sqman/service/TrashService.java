@@ -0,0 +1,223 @@
+package com.sqman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Service to delete large directory trees without blocking the caller.
+ *
+ * A tree is first renamed into a .trash directory next to it (same filesystem, so the rename
+ * is atomic and instant), then deleted by a detached low-priority sqman process. The purge
+ * deletes the subtrees in parallel, children first, and only removes a trash entry once it is
+ * empty: an interrupted purge is resumed by the next one. A lock file keeps purges from
+ * running twice on the same trash directory.
+ */
+public class TrashService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrashService.class);
+    public static final String TRASH_DIR = ".trash";
+    private static final String PURGE_LOCK = ".purge.lock";
+
+    private final ConfigService configService;
+    private final FileTreeService fileTreeService;
+    private final int threads;
+
+    public TrashService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public TrashService(ConfigService configService) {
+        this.configService = configService;
+        this.fileTreeService = new FileTreeService();
+        this.threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get the trash directories sqman may have used: next to the distributions and on the hot tier.
+     */
+    public List<Path> getTrashDirs() {
+        List<Path> trashDirs = new ArrayList<>();
+        trashDirs.add(configService.getDistributionsDir().resolve(TRASH_DIR));
+        Path hotRoot = configService.getHotStorageDir();
+        if (hotRoot != null) {
+            trashDirs.add(hotRoot.resolve(TRASH_DIR));
+        }
+        return trashDirs;
+    }
+
+    /**
+     * Move a directory into the trash directory of its parent. Falls back to deleting it
+     * in place if it cannot be renamed.
+     *
+     * @return true if the directory went to the trash, false if it was deleted in place
+     */
+    public boolean moveToTrash(Path directory) throws IOException {
+        Path trashDir = directory.toAbsolutePath().getParent().resolve(TRASH_DIR);
+        Files.createDirectories(trashDir);
+        Path target = trashDir.resolve(directory.getFileName() + "-" + System.nanoTime());
+        try {
+            Files.move(directory, target, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Moved {} to {}", directory, target);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Could not move {} to the trash, deleting it in place: {}", directory, e.getMessage());
+            fileTreeService.deleteTree(directory);
+            return false;
+        }
+    }
+
+    /**
+     * Empty the trash in a detached low-priority sqman process.
+     */
+    public void purgeInBackground() throws IOException {
+        new BackgroundTaskService().spawnLowPriority(
+            ConfigService.getSqmanHome().resolve("trash.log"), "purge-trash");
+    }
+
+    /**
+     * Empty all trash directories. Entries added while purging are deleted too.
+     *
+     * @return Number of trash entries deleted, or -1 if another process is already purging
+     */
+    public int purge() throws IOException, InterruptedException {
+        int deleted = 0;
+        for (Path trashDir : getTrashDirs()) {
+            if (!Files.isDirectory(trashDir)) {
+                continue;
+            }
+            int count = purge(trashDir);
+            if (count < 0) {
+                return -1;
+            }
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    /**
+     * Empty one trash directory.
+     *
+     * @return Number of trash entries deleted, or -1 if another process is already purging it
+     */
+    int purge(Path trashDir) throws IOException, InterruptedException {
+        int deleted = -1;
+        // An entry moved in after the last listing, but before the lock was released, found the purge running
+        do {
+            int count = purgeLocked(trashDir);
+            if (count < 0) {
+                return deleted; // The other purge deletes the rest
+            }
+            deleted = Math.max(deleted, 0) + count;
+        } while (!listEntries(trashDir).isEmpty());
+        return deleted;
+    }
+
+    private int purgeLocked(Path trashDir) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(trashDir.resolve(PURGE_LOCK),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                logger.info("{} is already being purged", trashDir);
+                return -1;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                int deleted = 0;
+                List<Path> entries;
+                while (!(entries = listEntries(trashDir)).isEmpty()) {
+                    for (Path entry : entries) {
+                        deleteParallel(entry, executor);
+                        deleted++;
+                    }
+                }
+                logger.info("Purged {} entries from {}", deleted, trashDir);
+                return deleted;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private List<Path> listEntries(Path trashDir) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(trashDir,
+                 path -> !path.getFileName().toString().equals(PURGE_LOCK))) {
+            stream.forEach(entries::add);
+        }
+        return entries;
+    }
+
+    /**
+     * Delete a tree: each of its subdirectories is deleted by a pool thread with a post-order
+     * walk, then the top of the tree is removed once empty.
+     */
+    private void deleteParallel(Path entry, ExecutorService executor) throws IOException, InterruptedException {
+        if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(entry);
+            return;
+        }
+
+        List<Future<?>> tasks = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(entry)) {
+            for (Path child : children) {
+                for (Path subtree : expand(child)) {
+                    tasks.add(executor.submit(() -> {
+                        fileTreeService.deleteTree(subtree);
+                        return null;
+                    }));
+                }
+            }
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Could not delete " + entry + ": " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        // Second pass for what the first level split left behind (the directories themselves)
+        fileTreeService.deleteTree(entry);
+    }
+
+    /**
+     * Split a directory into its children so that wide trees (lib/, data/es8/...) spread
+     * over the pool. Files and symbolic links are returned as they are.
+     */
+    private List<Path> expand(Path path) throws IOException {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            return List.of(path);
+        }
+        List<Path> subtrees = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+            children.forEach(subtrees::add);
+        }
+        return subtrees;
+    }
+}
@@ -0,0 +1,265 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Service to move the state of an instance to a newer installed version.
+ *
+ * The data directory (without the Elasticsearch indexes, which the new version rebuilds),
+ * the settings of conf/sonar.properties, the token and the plugins the new version does not
+ * bundle are copied into the new instance. Once it is started, the database migration is
+ * triggered with /api/system/migrate_db and followed with /api/system/db_migration_status.
+ * SonarQube does not migrate its embedded H2 database, only instances on an external database
+ * can be upgraded.
+ *
+ * Settings (in ~/.sqman/sqman.properties):
+ *   upgrade.timeoutMinutes - Maximum time to start and migrate the new instance (default: 60)
+ */
+public class UpgradeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpgradeService.class);
+    public static final String TIMEOUT_MINUTES = "upgrade.timeoutMinutes";
+    private static final long DEFAULT_TIMEOUT_MINUTES = 60;
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    // Elasticsearch indexes are tied to the Elasticsearch version of the distribution
+    private static final String SEARCH_INDEX_PREFIX = "es";
+    private static final String TOKEN = "token";
+    private static final String JDBC_URL = "sonar.jdbc.url";
+
+    private final ConfigService configService;
+    private final StorageTierService storageTierService;
+    private final FileTreeService fileTreeService;
+    private final PluginService pluginService;
+    private final SonarPropertiesService propertiesService;
+    private final ObjectMapper objectMapper;
+    private final OkHttpClient httpClient;
+
+    public UpgradeService() {
+        this(new ConfigService());
+    }
+
+    // Constructor for testing
+    public UpgradeService(ConfigService configService) {
+        this.configService = configService;
+        this.storageTierService = new StorageTierService(configService);
+        this.fileTreeService = new FileTreeService();
+        this.pluginService = new PluginService();
+        this.propertiesService = new SonarPropertiesService();
+        this.objectMapper = new ObjectMapper();
+        this.httpClient = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Check if SonarQube can migrate the database of an instance: it must be an external database,
+     * SonarQube answers NOT_SUPPORTED for the embedded H2 database.
+     */
+    public boolean isMigratable(Path instancePath) throws IOException {
+        String url = propertiesService.readProperties(instancePath).get(JDBC_URL);
+        return url != null && !url.isBlank() && !url.trim().startsWith("jdbc:h2:");
+    }
+
+    /**
+     * Check if the target instance already has a database that the upgrade would replace.
+     */
+    public boolean hasData(Path instancePath) throws IOException {
+        Path dataDir = storageTierService.getDataDir(instancePath);
+        if (!Files.isDirectory(dataDir)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.list(dataDir)) {
+            return files.anyMatch(path -> !path.getFileName().toString().startsWith(SEARCH_INDEX_PREFIX));
+        }
+    }
+
+    /**
+     * Copy the state of a stopped instance into a stopped instance of a newer version.
+     *
+     * @return What was copied and what was left out
+     */
+    public Report copyState(Path source, Path target) throws IOException {
+        Report report = new Report();
+
+        Path targetData = storageTierService.getDataDir(target);
+        fileTreeService.deleteTree(targetData);
+        Files.createDirectories(targetData);
+        Path sourceData = storageTierService.getDataDir(source);
+        if (Files.isDirectory(sourceData)) {
+            fileTreeService.copyTree(sourceData, targetData,
+                relative -> !relative.getName(0).toString().startsWith(SEARCH_INDEX_PREFIX));
+        }
+
+        copySettings(source, target, report);
+        copyPlugins(source.resolve("lib/extensions"), target.resolve("lib/extensions"), target, report);
+        copyPlugins(source.resolve("extensions/plugins"), target.resolve("extensions/plugins"), target, report);
+
+        // The admin password and the token live in the database, the token file goes with it
+        if (Files.exists(source.resolve(TOKEN))) {
+            Files.copy(source.resolve(TOKEN), target.resolve(TOKEN), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Copied the state of {} to {}", source, target);
+        return report;
+    }
+
+    /**
+     * Copy the active settings, except those bound to the source instance: its paths
+     * (data, temp, logs, CDS archives) or the directories of its storage tier.
+     */
+    private void copySettings(Path source, Path target, Report report) throws IOException {
+        Set<String> sourcePaths = Set.of(source.toAbsolutePath().toString(),
+            storageTierService.getDataDir(source).toAbsolutePath().toString());
+        for (Map.Entry<String, String> setting : propertiesService.readProperties(source).entrySet()) {
+            String key = setting.getKey();
+            String value = setting.getValue();
+            if (key.startsWith("sonar.path.") || sourcePaths.stream().anyMatch(value::contains)) {
+                continue;
+            }
+            propertiesService.setProperty(target, key, value);
+            report.settings.add(key);
+        }
+    }
+
+    /**
+     * Copy the plugins the target does not have in any version. Plugins the target bundles
+     * are left to their newer bundled version.
+     */
+    private void copyPlugins(Path sourceDir, Path targetDir, Path target, Report report) throws IOException {
+        if (!Files.isDirectory(sourceDir)) {
+            return;
+        }
+        Set<String> bundled = new HashSet<>(pluginService.scan(target.resolve("lib/extensions")).keySet());
+        bundled.addAll(pluginService.scan(target.resolve("extensions/plugins")).keySet());
+        for (Path jar : pluginService.listJars(sourceDir)) {
+            String fileName = jar.getFileName().toString();
+            if (bundled.contains(pluginService.getPluginKey(jar))) {
+                if (!Files.exists(target.resolve("lib/extensions").resolve(fileName))) {
+                    report.skippedPlugins.add(fileName);
+                }
+                continue;
+            }
+            Files.createDirectories(targetDir);
+            Files.copy(jar, targetDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            report.copiedPlugins.add(fileName);
+        }
+    }
+
+    /**
+     * Wait for a freshly started instance, migrate its database if needed and wait until it is up.
+     *
+     * @param port Web port of the instance
+     * @param progress Receives the status changes and migration messages
+     * @return true if the instance is up on the new version
+     */
+    public boolean migrate(int port, Consumer<String> progress) throws InterruptedException {
+        String baseUrl = "http://localhost:" + port;
+        long deadline = System.currentTimeMillis()
+            + TimeUnit.MINUTES.toMillis(configService.getLong(TIMEOUT_MINUTES, DEFAULT_TIMEOUT_MINUTES));
+        String lastMessage = null;
+        boolean migrationStarted = false;
+
+        while (System.currentTimeMillis() < deadline) {
+            JsonNode status = get(baseUrl + "/api/system/status");
+            String state = status != null ? status.path("status").asText() : "UNREACHABLE";
+
+            if ("UP".equals(state)) {
+                return true;
+            }
+            if ("DOWN".equals(state)) {
+                progress.accept("SonarQube is down, see its logs");
+                return false;
+            }
+            if ("DB_MIGRATION_NEEDED".equals(state) && !migrationStarted) {
+                JsonNode started = post(baseUrl + "/api/system/migrate_db");
+                if (started != null && "NOT_SUPPORTED".equals(started.path("state").asText())) {
+                    progress.accept("SonarQube cannot migrate this database: " + started.path("message").asText());
+                    return false;
+                }
+                migrationStarted = true;
+            }
+
+            String message = state;
+            if (migrationStarted || "DB_MIGRATION_RUNNING".equals(state)) {
+                JsonNode migration = get(baseUrl + "/api/system/db_migration_status");
+                if (migration != null) {
+                    if ("MIGRATION_FAILED".equals(migration.path("state").asText())) {
+                        progress.accept("Migration failed: " + migration.path("message").asText());
+                        return false;
+                    }
+                    message = migration.path("message").asText(state);
+                }
+            }
+            if (!message.equals(lastMessage)) {
+                progress.accept(message);
+                lastMessage = message;
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+        progress.accept("Timeout waiting for the migration");
+        return false;
+    }
+
+    private JsonNode get(String url) {
+        return call(new Request.Builder().url(url).get().build());
+    }
+
+    private JsonNode post(String url) {
+        return call(new Request.Builder().url(url).post(RequestBody.create(new byte[0])).build());
+    }
+
+    private JsonNode call(Request request) {
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.body() != null) {
+                return objectMapper.readTree(response.body().string());
+            }
+        } catch (IOException e) {
+            logger.debug("{} not reachable: {}", request.url(), e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * What an upgrade copied to the new instance.
+     */
+    public static class Report {
+        private final List<String> settings = new ArrayList<>();
+        private final List<String> copiedPlugins = new ArrayList<>();
+        private final List<String> skippedPlugins = new ArrayList<>();
+
+        public List<String> getSettings() {
+            return settings;
+        }
+
+        public List<String> getCopiedPlugins() {
+            return copiedPlugins;
+        }
+
+        /**
+         * Plugins of the old instance replaced by the version bundled with the new one.
+         */
+        public List<String> getSkippedPlugins() {
+            return skippedPlugins;
+        }
+    }
+}
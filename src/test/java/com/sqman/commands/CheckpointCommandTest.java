@@ -0,0 +1,62 @@
+package com.sqman.commands;
+
+import com.sqman.service.CheckpointService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.ProcessService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CheckpointCommandTest {
+
+    @Mock
+    private ProcessService processService;
+
+    @Mock
+    private InstanceService instanceService;
+
+    @Mock
+    private CheckpointService checkpointService;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testListTakesTheVersionAsOnlyArgument() throws Exception {
+        when(instanceService.isInstalled("10.7")).thenReturn(false);
+        when(instanceService.getInstalledByVersion("10.7")).thenReturn(List.of("sonarqube-10.7.0.96327"));
+        when(instanceService.getInstancePath("10.7.0.96327")).thenReturn(tempDir);
+        when(checkpointService.list(tempDir)).thenReturn(List.of("baseline"));
+
+        CheckpointCommand cmd = new CheckpointCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("--list", "10.7");
+
+        assertEquals(0, exitCode);
+        verify(instanceService, never()).getRunningInstance();
+        verify(checkpointService, never()).create(any(), any());
+    }
+
+    @Test
+    void testListWithoutVersionUsesRunningInstance() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
+        when(checkpointService.list(tempDir)).thenReturn(List.of());
+
+        CheckpointCommand cmd = new CheckpointCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("--list");
+
+        assertEquals(0, exitCode);
+        verify(checkpointService).list(tempDir);
+    }
+}
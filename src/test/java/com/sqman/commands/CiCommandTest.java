@@ -0,0 +1,82 @@
+package com.sqman.commands;
+
+import com.sqman.model.Edition;
+import com.sqman.service.DownloadService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
+import com.sqman.service.ProcessService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import picocli.CommandLine;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CiCommandTest {
+
+    @Mock
+    private DownloadService downloadService;
+
+    @Mock
+    private ProcessService processService;
+
+    @Mock
+    private InstanceService instanceService;
+
+    @Test
+    void testInstanceAlreadyRunning() {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+
+        CiCommand cmd = new CiCommand(downloadService, processService, instanceService);
+        int exitCode = new CommandLine(cmd).execute("10.7.0.96327", "--", "true");
+
+        assertEquals(1, exitCode);
+        verifyNoInteractions(downloadService, processService);
+    }
+
+    @Test
+    void testInstanceStartedWhileWaitingForLock() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn(null, "10.3.0.82913");
+
+        CiCommand cmd = new CiCommand(downloadService, processService, instanceService);
+        int exitCode = new CommandLine(cmd).execute("10.7.0.96327", "--", "true");
+
+        assertEquals(1, exitCode);
+        verify(instanceService).lockInstance(eq("10.7.0.96327"), eq(LockService.Mode.EXCLUSIVE), anyString());
+        verify(instanceService, never()).isInstalled(anyString());
+        verifyNoInteractions(downloadService, processService);
+    }
+
+    @Test
+    void testDownloadFailureSkipsStartAndDelete() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn(null);
+        when(instanceService.isInstalled("10.7.0.96327")).thenReturn(false);
+        when(downloadService.downloadAndExtractStreaming(eq("10.7.0.96327"), eq(Edition.COMMUNITY), any(), any()))
+            .thenThrow(new IOException("Failed to download: HTTP 404 - Not Found"));
+
+        CiCommand cmd = new CiCommand(downloadService, processService, instanceService);
+        int exitCode = new CommandLine(cmd).execute("10.7.0.96327", "--", "true");
+
+        assertEquals(1, exitCode);
+        verifyNoInteractions(processService);
+        // A failed download leaves no directory behind (see DownloadServiceTest), nothing to delete
+        verify(instanceService, never()).deleteInstance(anyString());
+    }
+
+    @Test
+    void testCommandIsRequired() {
+        CiCommand cmd = new CiCommand(downloadService, processService, instanceService);
+        int exitCode = new CommandLine(cmd).execute("10.7.0.96327");
+
+        assertNotEquals(0, exitCode);
+        verifyNoInteractions(downloadService, processService, instanceService);
+    }
+}
@@ -118,7 +118,7 @@ class InstallPluginCommandTest {
             assertEquals(0, exitCode);
             assertTrue(Files.exists(extensionsDir.resolve("sonar-java-plugin-9.0.0.jar")));
             assertFalse(Files.exists(existingPlugin));
-            assertTrue(Files.exists(instanceDir.resolve("original-plugins")));
+            assertTrue(Files.exists(instanceDir.resolve("original-plugins.json")));
         } finally {
             System.setIn(originalIn);
         }
@@ -168,4 +168,30 @@ class InstallPluginCommandTest {
             System.setIn(originalIn);
         }
     }
+
+    @Test
+    void testInstallDirectoryIntoGivenInstance(@TempDir Path tempDir) throws IOException {
+        Path build = Files.createDirectories(tempDir.resolve("build"));
+        Files.writeString(build.resolve("sonar-java-plugin-9.0.0.jar"), "new java");
+        Files.writeString(build.resolve("sonar-php-plugin-3.0.0.jar"), "new php");
+        Files.writeString(build.resolve("README.md"), "not a plugin");
+
+        Path instanceDir = tempDir.resolve("instance");
+        Path extensionsDir = instanceDir.resolve("lib/extensions");
+        Files.createDirectories(extensionsDir);
+        Files.writeString(extensionsDir.resolve("sonar-java-plugin-8.22.0.41895.jar"), "old java");
+
+        when(instanceService.isInstalled("10.3.0.82913")).thenReturn(true);
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(instanceDir);
+
+        InstallPluginCommand cmd = new InstallPluginCommand(instanceService);
+        int exitCode = new CommandLine(cmd).execute("-i", "10.3.0.82913", build.toString());
+
+        assertEquals(0, exitCode);
+        assertTrue(Files.exists(extensionsDir.resolve("sonar-java-plugin-9.0.0.jar")));
+        assertTrue(Files.exists(extensionsDir.resolve("sonar-php-plugin-3.0.0.jar")));
+        assertFalse(Files.exists(extensionsDir.resolve("sonar-java-plugin-8.22.0.41895.jar")));
+        assertFalse(Files.exists(extensionsDir.resolve("README.md")));
+        verify(instanceService, never()).listInstalled();
+    }
 }
@@ -1,12 +1,14 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.InstanceStatusService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import picocli.CommandLine;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 
@@ -19,11 +21,14 @@ class ListCommandTest {
     @Mock
     private InstanceService instanceService;
 
+    @Mock
+    private InstanceStatusService statusService;
+
     @Test
     void testNoInstances() {
         when(instanceService.listInstalled()).thenReturn(Collections.emptyList());
 
-        ListCommand cmd = new ListCommand(instanceService);
+        ListCommand cmd = new ListCommand(instanceService, statusService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(0, exitCode);
@@ -34,20 +39,28 @@ class ListCommandTest {
         when(instanceService.listInstalled()).thenReturn(
             List.of("sonarqube-10.3.0.82913", "sonarqube-10.4.0.100000"));
 
-        ListCommand cmd = new ListCommand(instanceService);
+        ListCommand cmd = new ListCommand(instanceService, statusService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(0, exitCode);
     }
 
     @Test
-    void testWithRunningFlag() {
+    void testWithRunningFlag() throws InterruptedException {
         when(instanceService.listInstalled()).thenReturn(
             List.of("sonarqube-10.3.0.82913"));
+        when(statusService.probeAll(eq(List.of("10.3.0.82913")), anyLong())).thenReturn(List.of());
 
-        ListCommand cmd = new ListCommand(instanceService);
+        ListCommand cmd = new ListCommand(instanceService, statusService);
         int exitCode = new CommandLine(cmd).execute("--running");
 
         assertEquals(0, exitCode);
     }
+
+    @Test
+    void testFormatUptime() {
+        assertEquals("3m12s", ListCommand.formatUptime(Duration.ofSeconds(192)));
+        assertEquals("2h5m", ListCommand.formatUptime(Duration.ofMinutes(125)));
+        assertEquals("1d3h", ListCommand.formatUptime(Duration.ofHours(27)));
+    }
 }
@@ -0,0 +1,96 @@
+package com.sqman.commands;
+
+import com.sqman.service.CheckpointService;
+import com.sqman.service.InstanceService;
+import com.sqman.service.ProcessService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResetCommandTest {
+
+    @Mock
+    private ProcessService processService;
+
+    @Mock
+    private InstanceService instanceService;
+
+    @Mock
+    private CheckpointService checkpointService;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNoVersionNoRunningInstance() {
+        when(instanceService.getRunningInstance()).thenReturn(null);
+
+        ResetCommand cmd = new ResetCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("baseline");
+
+        assertEquals(1, exitCode);
+        verifyNoInteractions(processService, checkpointService);
+    }
+
+    @Test
+    void testUnknownCheckpoint() throws Exception {
+        when(instanceService.isInstalled("10.3.0.82913")).thenReturn(true);
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
+        when(checkpointService.list(tempDir)).thenReturn(List.of("other"));
+
+        ResetCommand cmd = new ResetCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("baseline", "10.3.0.82913");
+
+        assertEquals(1, exitCode);
+        verify(checkpointService, never()).restore(any(), any());
+    }
+
+    @Test
+    void testResetRunningInstanceRestartsIt() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
+        when(instanceService.isInstanceRunning("10.3.0.82913")).thenReturn(true);
+        when(checkpointService.list(tempDir)).thenReturn(List.of("baseline"));
+        when(processService.stopAndWait(eq(tempDir), anyLong())).thenReturn(true);
+        when(checkpointService.restore(tempDir, "baseline")).thenReturn(new CheckpointService.TreeStats());
+        when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
+
+        ResetCommand cmd = new ResetCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("baseline");
+
+        assertEquals(0, exitCode);
+        InOrder order = inOrder(processService, checkpointService);
+        order.verify(processService).stopAndWait(eq(tempDir), anyLong());
+        order.verify(checkpointService).restore(tempDir, "baseline");
+        order.verify(processService).startInstance("10.3.0.82913", 0, true);
+    }
+
+    @Test
+    void testFailedResetStillRestartsInstance() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
+        when(instanceService.isInstanceRunning("10.3.0.82913")).thenReturn(true);
+        when(checkpointService.list(tempDir)).thenReturn(List.of("baseline"));
+        when(processService.stopAndWait(eq(tempDir), anyLong())).thenReturn(true);
+        when(checkpointService.restore(tempDir, "baseline")).thenThrow(new IOException("disk full"));
+        when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
+
+        ResetCommand cmd = new ResetCommand(processService, instanceService, checkpointService);
+        int exitCode = new CommandLine(cmd).execute("baseline");
+
+        assertEquals(1, exitCode);
+        verify(processService).startInstance("10.3.0.82913", 0, true);
+    }
+}
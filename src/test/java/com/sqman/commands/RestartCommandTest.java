@@ -2,6 +2,7 @@ package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
 import com.sqman.service.ProcessService;
+import com.sqman.service.SonarQubeSetupService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -20,24 +21,54 @@ class RestartCommandTest {
     @Mock
     private InstanceService instanceService;
 
+    @Mock
+    private SonarQubeSetupService setupService;
+
     @Test
     void testNoRunningInstance() {
         when(instanceService.getRunningInstance()).thenReturn(null);
 
-        RestartCommand cmd = new RestartCommand(processService, instanceService);
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(1, exitCode);
         verifyNoInteractions(processService);
     }
 
+    @Test
+    void testFastRestartSuccess() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(setupService.restartInPlace(any())).thenReturn(true);
+
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
+        int exitCode = new CommandLine(cmd).execute();
+
+        assertEquals(0, exitCode);
+        verifyNoInteractions(processService);
+    }
+
+    @Test
+    void testFullRestartSkipsFastRestart() throws Exception {
+        when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(processService.stopInstance("10.3.0.82913", false)).thenReturn(true);
+        when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
+
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
+        int exitCode = new CommandLine(cmd).execute("--full");
+
+        assertEquals(0, exitCode);
+        verifyNoInteractions(setupService);
+        verify(processService).startInstance("10.3.0.82913", 0, true);
+    }
+
     @Test
     void testRestartSuccess() throws Exception {
         when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(setupService.restartInPlace(any())).thenReturn(false);
         when(processService.stopInstance("10.3.0.82913", false)).thenReturn(true);
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
 
-        RestartCommand cmd = new RestartCommand(processService, instanceService);
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(0, exitCode);
@@ -48,9 +79,10 @@ class RestartCommandTest {
     @Test
     void testStopFails() throws Exception {
         when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(setupService.restartInPlace(any())).thenReturn(false);
         when(processService.stopInstance("10.3.0.82913", false)).thenReturn(false);
 
-        RestartCommand cmd = new RestartCommand(processService, instanceService);
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(1, exitCode);
@@ -61,10 +93,11 @@ class RestartCommandTest {
     @Test
     void testStartFails() throws Exception {
         when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(setupService.restartInPlace(any())).thenReturn(false);
         when(processService.stopInstance("10.3.0.82913", false)).thenReturn(true);
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(false);
 
-        RestartCommand cmd = new RestartCommand(processService, instanceService);
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(1, exitCode);
@@ -73,10 +106,11 @@ class RestartCommandTest {
     @Test
     void testStopThrowsException() throws Exception {
         when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
+        when(setupService.restartInPlace(any())).thenReturn(false);
         when(processService.stopInstance("10.3.0.82913", false))
             .thenThrow(new java.io.IOException("stop failed"));
 
-        RestartCommand cmd = new RestartCommand(processService, instanceService);
+        RestartCommand cmd = new RestartCommand(processService, instanceService, setupService);
         int exitCode = new CommandLine(cmd).execute();
 
         assertEquals(1, exitCode);
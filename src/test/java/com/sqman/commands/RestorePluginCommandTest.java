@@ -1,6 +1,9 @@
 package com.sqman.commands;
 
+import com.sqman.model.PluginBackup;
 import com.sqman.service.InstanceService;
+import com.sqman.service.PluginBackupService;
+import com.sqman.service.PluginService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
@@ -16,6 +19,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -97,17 +101,21 @@ class RestorePluginCommandTest {
         // Test the restorePlugin method directly via reflection to bypass interactive prompts
         RestorePluginCommand cmd = new RestorePluginCommand(instanceService);
         Method restorePlugin = RestorePluginCommand.class.getDeclaredMethod(
-            "restorePlugin", Path.class, Path.class, String.class);
+            "restorePlugin", Path.class, PluginBackup.class, String.class);
         restorePlugin.setAccessible(true);
-        int result = (int) restorePlugin.invoke(cmd, instanceDir, backupPlugin, "10.3.0.82913");
+        int result = (int) restorePlugin.invoke(cmd, instanceDir, listBackup(instanceDir), "10.3.0.82913");
 
         assertEquals(0, result);
         // Original plugin restored
-        assertTrue(Files.exists(extensionsDir.resolve("sonar-java-plugin-8.22.0.41895.jar")));
+        assertEquals("original version", Files.readString(extensionsDir.resolve("sonar-java-plugin-8.22.0.41895.jar")));
         // Current plugin removed
         assertFalse(Files.exists(currentPlugin));
-        // Backup file deleted
+        // Older backup moved into the plugin store, then forgot once restored
         assertFalse(Files.exists(backupPlugin));
+        assertFalse(Files.exists(instanceDir.resolve(PluginBackupService.INDEX_FILE)));
+        try (Stream<Path> blobs = Files.list(tempDir.resolve(PluginBackupService.STORE_DIR))) {
+            assertTrue(blobs.noneMatch(blob -> blob.getFileName().toString().endsWith(".jar")));
+        }
     }
 
     @Test
@@ -126,9 +134,9 @@ class RestorePluginCommandTest {
 
         RestorePluginCommand cmd = new RestorePluginCommand(instanceService);
         Method restorePlugin = RestorePluginCommand.class.getDeclaredMethod(
-            "restorePlugin", Path.class, Path.class, String.class);
+            "restorePlugin", Path.class, PluginBackup.class, String.class);
         restorePlugin.setAccessible(true);
-        int result = (int) restorePlugin.invoke(cmd, instanceDir, backupPlugin, "10.3.0.82913");
+        int result = (int) restorePlugin.invoke(cmd, instanceDir, listBackup(instanceDir), "10.3.0.82913");
 
         assertEquals(0, result);
         // Plugin restored
@@ -149,13 +157,19 @@ class RestorePluginCommandTest {
 
         RestorePluginCommand cmd = new RestorePluginCommand(instanceService);
         Method restorePlugin = RestorePluginCommand.class.getDeclaredMethod(
-            "restorePlugin", Path.class, Path.class, String.class);
+            "restorePlugin", Path.class, PluginBackup.class, String.class);
         restorePlugin.setAccessible(true);
-        int result = (int) restorePlugin.invoke(cmd, instanceDir, backupPlugin, "10.3.0.82913");
+        int result = (int) restorePlugin.invoke(cmd, instanceDir, listBackup(instanceDir), "10.3.0.82913");
 
         assertEquals(1, result);
     }
 
+    private static PluginBackup listBackup(Path instanceDir) throws IOException {
+        List<PluginBackup> backups = new PluginService().getBackupService().list(instanceDir);
+        assertEquals(1, backups.size());
+        return backups.get(0);
+    }
+
     @Test
     void testUserCancelsInstanceSelection() {
         when(instanceService.listInstalled()).thenReturn(List.of("sonarqube-10.3.0.82913"));
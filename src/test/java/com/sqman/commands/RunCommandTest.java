@@ -1,5 +1,6 @@
 package com.sqman.commands;
 
+import com.sqman.service.AdmissionService;
 import com.sqman.service.InstanceService;
 import com.sqman.service.ProcessService;
 import org.junit.jupiter.api.Test;
@@ -26,6 +27,9 @@ class RunCommandTest {
     @Mock
     private InstanceService instanceService;
 
+    @Mock
+    private AdmissionService admissionService;
+
     @TempDir
     Path tempDir;
 
@@ -33,7 +37,7 @@ class RunCommandTest {
     void testAlreadyRunning() {
         when(instanceService.getRunningInstance()).thenReturn("10.3.0.82913");
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("10.4.0.100000");
 
         assertEquals(1, exitCode);
@@ -46,7 +50,7 @@ class RunCommandTest {
         when(instanceService.isInstalled("99.99.99")).thenReturn(false);
         when(instanceService.getInstalledByVersion("99.99.99")).thenReturn(List.of());
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("99.99.99");
 
         assertEquals(1, exitCode);
@@ -63,20 +67,38 @@ class RunCommandTest {
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
         when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("10.3.0.82913");
 
         assertEquals(0, exitCode);
         verify(processService).startInstance("10.3.0.82913", 0, true);
     }
 
+    @Test
+    void testResumeIdleStoppedInstance() throws Exception {
+        Files.writeString(tempDir.resolve("token"), "squ_test_token");
+
+        when(instanceService.getRunningInstance()).thenReturn(null);
+        when(instanceService.getIdleStoppedInstance()).thenReturn("10.3.0.82913");
+        when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
+
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
+        int exitCode = new CommandLine(cmd).execute();
+
+        assertEquals(0, exitCode);
+        verify(instanceService, never()).listInstalled();
+        verify(instanceService).clearIdleStopped("10.3.0.82913");
+    }
+
     @Test
     void testStartFails() throws Exception {
         when(instanceService.getRunningInstance()).thenReturn(null);
         when(instanceService.isInstalled("10.3.0.82913")).thenReturn(true);
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(false);
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("10.3.0.82913");
 
         assertEquals(1, exitCode);
@@ -91,7 +113,7 @@ class RunCommandTest {
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
         when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("1");
 
         assertEquals(0, exitCode);
@@ -108,7 +130,7 @@ class RunCommandTest {
         when(processService.startInstance("10.3.0.82913", 0, true)).thenReturn(true);
         when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("10.3");
 
         assertEquals(0, exitCode);
@@ -120,8 +142,9 @@ class RunCommandTest {
         when(instanceService.isInstalled("10.3.0.82913")).thenReturn(true);
         when(processService.startInstance("10.3.0.82913", 0, true))
             .thenThrow(new IOException("start failed"));
+        when(instanceService.getInstancePath("10.3.0.82913")).thenReturn(tempDir);
 
-        RunCommand cmd = new RunCommand(processService, instanceService);
+        RunCommand cmd = new RunCommand(processService, instanceService, admissionService);
         int exitCode = new CommandLine(cmd).execute("10.3.0.82913");
 
         assertEquals(1, exitCode);
@@ -1,9 +1,11 @@
 package com.sqman.commands;
 
 import com.sqman.service.InstanceService;
+import com.sqman.service.LockService;
 import com.sqman.service.ProcessService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import picocli.CommandLine;
@@ -11,6 +13,7 @@ import picocli.CommandLine;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -82,7 +85,7 @@ class StopCommandTest {
     }
 
     @Test
-    void testVersionNotRunning() {
+    void testVersionNotRunning() throws Exception {
         when(instanceService.isInstalled("10.3.0.82913")).thenReturn(true);
         when(instanceService.isInstanceRunning("10.3.0.82913")).thenReturn(false);
 
@@ -91,6 +94,10 @@ class StopCommandTest {
 
         assertEquals(1, exitCode);
         verifyNoInteractions(processService);
+        // Ephemeral data of a dead run is discarded under the instance lock
+        InOrder order = inOrder(instanceService);
+        order.verify(instanceService).lockInstance(eq("10.3.0.82913"), eq(LockService.Mode.EXCLUSIVE), anyString());
+        order.verify(instanceService).cleanupEphemeralStorage("10.3.0.82913");
     }
 
     @Test
@@ -0,0 +1,108 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionServiceTest {
+
+    private static final long MB = 1024L * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = tempDir.resolve("sonarqube-10.3.0.82913");
+        Files.createDirectories(instance.resolve("conf"));
+        Files.writeString(instance.resolve("conf/sonar.properties"),
+            "sonar.web.javaOpts=-Xmx1g -Xms128m -XX:+HeapDumpOnOutOfMemoryError\n"
+                + "sonar.search.javaOpts=-Xmx1024m -Xms1024m\n");
+    }
+
+    @Test
+    void testParseMaxHeap() {
+        AdmissionService service = serviceWithAvailable(-1);
+
+        assertEquals(512 * MB, service.parseMaxHeap(null));
+        assertEquals(2048 * MB, service.parseMaxHeap("-Xms512m -Xmx2g"));
+        assertEquals(768 * MB, service.parseMaxHeap("-Xmx1g -Xmx768m"));
+    }
+
+    @Test
+    void testEstimateFootprint() throws IOException {
+        // main 128 + web (1024 + 256) + ce default (512 + 256) + search (1024 + 512 direct + 256)
+        assertEquals(3968 * MB, serviceWithAvailable(-1).estimateFootprint(instance));
+    }
+
+    @Test
+    void testAdmitWhenMemoryIsAvailable() throws Exception {
+        AdmissionService service = serviceWithAvailable(8192 * MB);
+
+        service.admit(instance, "10.3.0.82913", AdmissionService.Policy.REFUSE);
+
+        assertTrue(Files.exists(tempDir.resolve("queue/10.3.0.82913.reserved")));
+    }
+
+    @Test
+    void testReservationsCountAgainstAvailableMemory() throws Exception {
+        AdmissionService service = serviceWithAvailable(6000 * MB);
+        service.admit(instance, "first", AdmissionService.Policy.REFUSE);
+
+        IOException e = assertThrows(IOException.class,
+            () -> service.admit(instance, "second", AdmissionService.Policy.REFUSE));
+        assertTrue(e.getMessage().contains("Not enough memory"));
+
+        service.cancel("first");
+        service.admit(instance, "second", AdmissionService.Policy.REFUSE);
+    }
+
+    @Test
+    void testShrinkAndRestoreHeaps() throws Exception {
+        AdmissionService service = serviceWithAvailable(2500 * MB);
+        SonarPropertiesService properties = new SonarPropertiesService();
+
+        service.admit(instance, "10.3.0.82913", AdmissionService.Policy.SHRINK);
+
+        assertTrue(service.estimateFootprint(instance) <= 2500 * MB);
+        String webOpts = properties.getProperty(instance, "sonar.web.javaOpts");
+        assertTrue(webOpts.contains("-XX:+HeapDumpOnOutOfMemoryError"));
+        String searchOpts = properties.getProperty(instance, "sonar.search.javaOpts");
+        String searchHeap = searchOpts.split(" ")[0].substring("-Xmx".length());
+        assertTrue(searchOpts.contains("-Xms" + searchHeap));
+
+        service.cancel("10.3.0.82913");
+        serviceWithAvailable(8192 * MB).admit(instance, "10.3.0.82913", AdmissionService.Policy.REFUSE);
+
+        assertEquals("-Xmx1g -Xms128m -XX:+HeapDumpOnOutOfMemoryError",
+            properties.getProperty(instance, "sonar.web.javaOpts"));
+        assertNull(properties.getProperty(instance, "sonar.ce.javaOpts"));
+    }
+
+    @Test
+    void testShrinkRefusedBelowMinimalHeaps() {
+        AdmissionService service = serviceWithAvailable(1024 * MB);
+
+        assertThrows(IOException.class,
+            () -> service.admit(instance, "10.3.0.82913", AdmissionService.Policy.SHRINK));
+    }
+
+    private AdmissionService serviceWithAvailable(long bytes) {
+        MemoryService memoryService = new MemoryService(tempDir.resolve("none"), tempDir.resolve("none")) {
+            @Override
+            public long getAvailableMemory() {
+                return bytes;
+            }
+        };
+        return new AdmissionService(new ConfigService(tempDir.resolve("sqman.properties")),
+            memoryService, tempDir.resolve("queue"));
+    }
+}
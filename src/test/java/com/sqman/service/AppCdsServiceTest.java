@@ -0,0 +1,96 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppCdsServiceTest {
+
+    @Test
+    void testFirstStartRecordsArchives(@TempDir Path tempDir) throws IOException {
+        createInstance(tempDir);
+        AppCdsService service = new AppCdsService();
+
+        List<AppCdsService.JvmProcess> recording = service.configure(tempDir);
+
+        assertEquals(3, recording.size());
+        String webOpts = readProperty(tempDir, "sonar.web.javaAdditionalOpts");
+        assertTrue(webOpts.startsWith("-Dfoo=bar -XX:ArchiveClassesAtExit="));
+        assertTrue(readProperty(tempDir, "sonar.search.javaAdditionalOpts").contains("search.jsa"));
+    }
+
+    @Test
+    void testLaterStartUsesArchives(@TempDir Path tempDir) throws IOException {
+        createInstance(tempDir);
+        AppCdsService service = new AppCdsService();
+        service.configure(tempDir);
+        for (AppCdsService.JvmProcess process : AppCdsService.JvmProcess.values()) {
+            Files.writeString(service.getArchivePath(tempDir, process), "archive");
+        }
+
+        List<AppCdsService.JvmProcess> recording = service.configure(tempDir);
+
+        assertTrue(recording.isEmpty());
+        String ceOpts = readProperty(tempDir, "sonar.ce.javaAdditionalOpts");
+        assertTrue(ceOpts.startsWith("-XX:SharedArchiveFile="));
+        assertFalse(ceOpts.contains("ArchiveClassesAtExit"));
+    }
+
+    @Test
+    void testPluginChangeInvalidatesArchives(@TempDir Path tempDir) throws IOException {
+        createInstance(tempDir);
+        AppCdsService service = new AppCdsService();
+        service.configure(tempDir);
+        Path webArchive = service.getArchivePath(tempDir, AppCdsService.JvmProcess.WEB);
+        Files.writeString(webArchive, "archive");
+
+        Files.writeString(tempDir.resolve("lib/extensions/new-plugin-1.0.jar"), "jar");
+        List<AppCdsService.JvmProcess> recording = service.configure(tempDir);
+
+        assertFalse(Files.exists(webArchive));
+        assertEquals(3, recording.size());
+    }
+
+    @Test
+    void testDisableKeepsUserOptions(@TempDir Path tempDir) throws IOException {
+        createInstance(tempDir);
+        AppCdsService service = new AppCdsService();
+        service.configure(tempDir);
+
+        service.disable(tempDir);
+
+        assertEquals("-Dfoo=bar", readProperty(tempDir, "sonar.web.javaAdditionalOpts"));
+        assertNull(readProperty(tempDir, "sonar.ce.javaAdditionalOpts"));
+    }
+
+    @Test
+    void testDisableWithoutPropertiesFile(@TempDir Path tempDir) {
+        assertDoesNotThrow(() -> new AppCdsService().disable(tempDir));
+    }
+
+    @Test
+    void testParseJavaMajorVersion() {
+        AppCdsService service = new AppCdsService();
+        assertEquals(17, service.parseJavaMajorVersion("openjdk version \"17.0.9\" 2023-10-17"));
+        assertEquals(8, service.parseJavaMajorVersion("java version \"1.8.0_392\""));
+        assertEquals(21, service.parseJavaMajorVersion("openjdk version \"21\" 2023-09-19"));
+        assertEquals(0, service.parseJavaMajorVersion("garbage"));
+    }
+
+    private void createInstance(Path instancePath) throws IOException {
+        Files.createDirectories(instancePath.resolve("conf"));
+        Files.createDirectories(instancePath.resolve("lib/extensions"));
+        Files.writeString(instancePath.resolve("conf/sonar.properties"),
+            "# Web settings\nsonar.web.javaAdditionalOpts=-Dfoo=bar\n");
+    }
+
+    private String readProperty(Path instancePath, String key) throws IOException {
+        return new SonarPropertiesService().getProperty(instancePath, key);
+    }
+}
@@ -0,0 +1,106 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private CheckpointService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = tempDir.resolve("dist/sonarqube-10.3.0.82913");
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("lib/extensions"));
+        Files.createDirectories(instance.resolve("data/es8/segments"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "sonar.web.port=9000\n");
+        Files.writeString(instance.resolve("lib/extensions/plugin-a.jar"), "plugin a");
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "baseline database");
+        Files.writeString(instance.resolve("data/es8/segments/_0.cfs"), "segment 0");
+        Files.writeString(instance.resolve("token"), "squ_baseline");
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        service = new CheckpointService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testResetRestoresCheckpointedState() throws IOException {
+        service.create(instance, "baseline");
+
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "database after analysis");
+        Files.writeString(instance.resolve("data/es8/segments/_1.cfs"), "segment 1");
+        Files.writeString(instance.resolve("lib/extensions/plugin-b.jar"), "plugin b");
+        Files.writeString(instance.resolve("token"), "squ_other");
+
+        CheckpointService.TreeStats stats = service.restore(instance, "baseline");
+
+        assertEquals("baseline database", Files.readString(instance.resolve("data/sonar.mv.db")));
+        assertEquals("segment 0", Files.readString(instance.resolve("data/es8/segments/_0.cfs")));
+        assertFalse(Files.exists(instance.resolve("data/es8/segments/_1.cfs")));
+        assertFalse(Files.exists(instance.resolve("lib/extensions/plugin-b.jar")));
+        assertEquals("squ_baseline", Files.readString(instance.resolve("token")));
+        if (!stats.isCloned()) {
+            // Only the database changed, unchanged segments and config stay in place
+            assertEquals(1, stats.getFilesCopied());
+            assertEquals(2, stats.getFilesRemoved());
+        }
+    }
+
+    @Test
+    void testInstanceChangesDoNotAlterCheckpoint() throws IOException {
+        service.create(instance, "first");
+        service.create(instance, "second");
+
+        service.restore(instance, "second");
+        Files.writeString(instance.resolve("data/es8/segments/_0.cfs"), "modified in place");
+        service.restore(instance, "first");
+
+        assertEquals("segment 0", Files.readString(instance.resolve("data/es8/segments/_0.cfs")));
+        assertEquals(List.of("first", "second"), service.list(instance).stream().sorted().toList());
+    }
+
+    @Test
+    void testCheckpointsStayInInstanceWhenDataIsElsewhere() throws IOException {
+        // Data directory of an ephemeral run, discarded with the tmpfs
+        Path ramData = Files.createDirectories(tempDir.resolve("shm/sqman-10.3.0.82913-1/data"));
+        Files.writeString(ramData.resolve("sonar.mv.db"), "ephemeral database");
+        Files.writeString(instance.resolve("conf/sonar.properties"), "sonar.path.data=" + ramData + "\n");
+
+        service.create(instance, "seeded");
+
+        assertEquals(instance.toAbsolutePath().resolve("checkpoints"), service.getCheckpointsDir(instance));
+        assertEquals("ephemeral database",
+            Files.readString(instance.resolve("checkpoints/seeded/data/sonar.mv.db")));
+        assertFalse(Files.exists(ramData.getParent().resolve("checkpoints")));
+    }
+
+    @Test
+    void testDeleteAndUnknownCheckpoint() throws IOException {
+        service.create(instance, "baseline");
+
+        assertTrue(service.delete(instance, "baseline"));
+        assertFalse(service.delete(instance, "baseline"));
+        assertThrows(IOException.class, () -> service.restore(instance, "baseline"));
+        assertThrows(IOException.class, () -> service.restore(instance, "../data"));
+    }
+
+    @Test
+    void testCheckpointNames() {
+        assertTrue(CheckpointService.isValidName("before-upgrade_1.0"));
+        assertFalse(CheckpointService.isValidName("../data"));
+        assertFalse(CheckpointService.isValidName(".hidden"));
+    }
+}
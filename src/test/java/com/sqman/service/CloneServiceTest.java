@@ -0,0 +1,79 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneServiceTest {
+
+    private static final String VERSION = "10.3.0.82913";
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private CloneService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + VERSION));
+        Files.createDirectories(source.resolve("conf"));
+        Files.createDirectories(source.resolve("lib/extensions"));
+        Files.createDirectories(source.resolve("bin/linux-x86-64"));
+        Path hotData = Files.createDirectories(tempDir.resolve("hot/data"));
+        Files.createDirectories(source.resolve("temp"));
+        Files.writeString(source.resolve("conf/sonar.properties"), "sonar.path.data=" + hotData + "\n");
+        Files.writeString(source.resolve("lib/sonar-application.jar"), "application");
+        Files.writeString(source.resolve("lib/extensions/sonar-java-plugin.jar"), "java");
+        Files.writeString(source.resolve("bin/linux-x86-64/sonar.sh"), "#!/bin/sh");
+        Files.writeString(source.resolve("bin/linux-x86-64/SonarQube.pid"), "1234");
+        Files.writeString(hotData.resolve("sonar.mv.db"), "database");
+        Files.writeString(source.resolve("temp/sharedmemory"), "");
+        Files.writeString(source.resolve("token"), "squ_source");
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        service = new CloneService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testCloneLinksDistributionAndCopiesMutablePaths() throws IOException {
+        service.cloneInstance(VERSION, "featureA");
+
+        Path clone = tempDir.resolve("dist/sonarqube-" + VERSION + "-featureA");
+        assertTrue(Files.isSameFile(source.resolve("lib/sonar-application.jar"),
+            clone.resolve("lib/sonar-application.jar")));
+        assertFalse(Files.isSameFile(source.resolve("lib/extensions/sonar-java-plugin.jar"),
+            clone.resolve("lib/extensions/sonar-java-plugin.jar")));
+        // The data directory of the source is copied from fast storage into the clone
+        assertEquals("database", Files.readString(clone.resolve("data/sonar.mv.db")));
+        assertEquals("squ_source", Files.readString(clone.resolve("token")));
+
+        // Runtime files of the source are not inherited
+        assertFalse(Files.exists(clone.resolve("bin/linux-x86-64/SonarQube.pid")));
+        assertFalse(Files.exists(clone.resolve("temp/sharedmemory")));
+        assertFalse(Files.readString(clone.resolve("conf/sonar.properties")).contains("sonar.path.data"));
+        assertEquals(VERSION, new InstanceStateService().load(clone).getClonedFrom());
+
+        // Writing to the clone leaves the source untouched
+        Files.writeString(clone.resolve("lib/extensions/sonar-java-plugin.jar"), "patched");
+        assertEquals("java", Files.readString(source.resolve("lib/extensions/sonar-java-plugin.jar")));
+    }
+
+    @Test
+    void testCloneRefusesExistingInstance() throws IOException {
+        service.cloneInstance(VERSION, "featureA");
+
+        assertThrows(IOException.class, () -> service.cloneInstance(VERSION, "featureA"));
+        assertThrows(IOException.class, () -> service.cloneInstance("9.9.0.1", "featureA"));
+        try (var entries = Files.list(tempDir.resolve("dist"))) {
+            assertEquals(2, entries.count());
+        }
+    }
+}
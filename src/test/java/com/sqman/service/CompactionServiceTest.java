@@ -0,0 +1,79 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private Path configFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-10.3.0.82913"));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("data"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "");
+        configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+    }
+
+    @Test
+    void testGetDatabaseFileRejectsExternalAndMissingDatabase() throws IOException {
+        CompactionService service = new CompactionService(new ConfigService(configFile));
+
+        IOException missing = assertThrows(IOException.class, () -> service.getDatabaseFile(instance));
+        assertTrue(missing.getMessage().contains("No embedded database"));
+        assertThrows(IOException.class, () -> service.findH2Jar(instance));
+
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "database");
+        assertEquals(instance.resolve("data/sonar.mv.db"), service.getDatabaseFile(instance));
+
+        Files.writeString(instance.resolve("conf/sonar.properties"),
+            "sonar.jdbc.url=jdbc:postgresql://localhost/sonar\n");
+        IOException external = assertThrows(IOException.class, () -> service.getDatabaseFile(instance));
+        assertTrue(external.getMessage().contains("external database"));
+    }
+
+    @Test
+    void testShouldCompactOnIdleStop() throws IOException {
+        createDatabase(2);
+        assertFalse(new CompactionService(new ConfigService(configFile)).shouldCompactOnIdleStop(instance),
+            "disabled by default");
+
+        Files.writeString(configFile, "compact.onIdleStop=true\ncompact.minSizeMb=4\n", StandardOpenOption.APPEND);
+        CompactionService service = new CompactionService(new ConfigService(configFile));
+        assertFalse(service.shouldCompactOnIdleStop(instance), "below the minimum size");
+
+        createDatabase(6);
+        assertTrue(service.shouldCompactOnIdleStop(instance), "never compacted");
+
+        InstanceStateService stateService = new InstanceStateService();
+        InstanceState state = stateService.load(instance);
+        state.setCompactedSize(5L * 1024 * 1024);
+        stateService.save(instance, state);
+        assertFalse(service.shouldCompactOnIdleStop(instance), "did not grow since the last compaction");
+
+        createDatabase(8);
+        assertTrue(service.shouldCompactOnIdleStop(instance), "grew by half since the last compaction");
+    }
+
+    private void createDatabase(int sizeMb) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(instance.resolve("data/sonar.mv.db").toFile(), "rw")) {
+            file.setLength(sizeMb * 1024L * 1024);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigServiceTest {
+
+    @Test
+    void testDefaultsWithoutConfigFile(@TempDir Path tempDir) {
+        ConfigService service = new ConfigService(tempDir.resolve("sqman.properties"));
+
+        assertEquals(ConfigService.getSqmanHome(), service.getDistributionsDir());
+        assertNull(service.getHotStorageDir());
+        assertEquals(5, service.getLong("missing", 5));
+    }
+
+    @Test
+    void testReadsStorageTiers(@TempDir Path tempDir) throws IOException {
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=/bulk/sqman\nstorage.hot=~/nvme\n");
+        ConfigService service = new ConfigService(configFile);
+
+        assertEquals(Paths.get("/bulk/sqman"), service.getDistributionsDir());
+        assertEquals(Paths.get(System.getProperty("user.home"), "nvme"), service.getHotStorageDir());
+    }
+
+    @Test
+    void testInvalidNumberFallsBackToDefault(@TempDir Path tempDir) throws IOException {
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "pool.size=many\n");
+
+        assertEquals(2, new ConfigService(configFile).getLong("pool.size", 2));
+    }
+}
@@ -0,0 +1,67 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CpuIsolationServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testAutomaticSplitKeepsCpuZeroFree() {
+        CpuIsolationService service = new CpuIsolationService(tempDir, tempDir.resolve("loadavg"));
+
+        Map<AppCdsService.JvmProcess, String> cpus = service.assignCpus(null, null, null, 8);
+
+        assertEquals("1-2", cpus.get(AppCdsService.JvmProcess.SEARCH));
+        assertEquals("3-4", cpus.get(AppCdsService.JvmProcess.WEB));
+        assertEquals("5-7", cpus.get(AppCdsService.JvmProcess.COMPUTE_ENGINE));
+        assertThrows(IllegalArgumentException.class, () -> service.assignCpus(null, null, null, 2));
+    }
+
+    @Test
+    void testExplicitCpuListsAreValidated() {
+        CpuIsolationService service = new CpuIsolationService(tempDir, tempDir.resolve("loadavg"));
+
+        Map<AppCdsService.JvmProcess, String> cpus = service.assignCpus("2-3", "4, 6", "7", 8);
+        assertEquals("4,6", cpus.get(AppCdsService.JvmProcess.COMPUTE_ENGINE));
+
+        assertThrows(IllegalArgumentException.class, () -> service.assignCpus("2-3", null, "7", 8));
+        assertThrows(IllegalArgumentException.class, () -> service.assignCpus("2-", "4", "7", 8));
+    }
+
+    @Test
+    void testClassifiesSonarQubeJvms() {
+        CpuIsolationService service = new CpuIsolationService(tempDir, tempDir.resolve("loadavg"));
+
+        assertEquals(AppCdsService.JvmProcess.WEB,
+            service.classify("java -Xmx512m -cp lib/sonar-application.jar org.sonar.server.app.WebServer /tmp/sq-process"));
+        assertEquals(AppCdsService.JvmProcess.SEARCH,
+            service.classify("java -Xms512m org.elasticsearch.bootstrap.Elasticsearch"));
+        assertNull(service.classify("java -jar lib/sonar-application-10.3.0.jar"));
+    }
+
+    @Test
+    void testReadsGovernorAndLoadAverage() throws IOException {
+        Files.createDirectories(tempDir.resolve("cpu0/cpufreq"));
+        Files.createDirectories(tempDir.resolve("cpu1/cpufreq"));
+        Files.writeString(tempDir.resolve("cpu0/cpufreq/scaling_governor"), "performance\n");
+        Files.writeString(tempDir.resolve("cpu1/cpufreq/scaling_governor"), "powersave\n");
+        Path loadavg = tempDir.resolve("loadavg");
+        Files.writeString(loadavg, "0.42 0.35 0.30 1/123 4567\n");
+
+        CpuIsolationService service = new CpuIsolationService(tempDir, loadavg);
+
+        assertEquals("performance,powersave", service.readGovernor());
+        assertEquals("0.42 0.35 0.30", service.readLoadAverage());
+        assertEquals("unknown", new CpuIsolationService(tempDir.resolve("none"), tempDir.resolve("none")).readGovernor());
+    }
+}
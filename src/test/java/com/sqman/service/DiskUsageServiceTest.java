@@ -0,0 +1,143 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskUsageServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path distributions;
+    private DiskUsageService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        distributions = Files.createDirectories(tempDir.resolve("dist"));
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + distributions + "\n");
+        service = new DiskUsageService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testScanMeasuresEachDirectory() throws IOException {
+        Path instance = createInstance("10.3.0.82913");
+        Files.write(instance.resolve("lib/sonar-application.jar"), new byte[1000]);
+        Files.write(instance.resolve("data/sonar.mv.db"), new byte[300]);
+        Files.write(instance.resolve("sonar.txt"), new byte[10]);
+
+        List<DiskUsageService.InstanceUsage> usages = service.scan(List.of("10.3.0.82913"));
+
+        assertEquals(1, usages.size());
+        DiskUsageService.InstanceUsage usage = usages.get(0);
+        assertFalse(usage.isHibernated());
+        assertEquals(1310, usage.getTotal());
+        assertEquals(1000L, usage.getDirs().get("lib"));
+        assertEquals(300L, usage.getDirs().get("data"));
+        // Largest first
+        assertEquals("lib", usage.getDirs().keySet().iterator().next());
+        assertTrue(Files.exists(tempDir.resolve("du-cache.json")));
+    }
+
+    @Test
+    void testCacheReusedForUnchangedDirectoriesButNotForData() throws IOException {
+        Path instance = createInstance("10.3.0.82913");
+        Path jar = instance.resolve("lib/sonar-application.jar");
+        Path db = instance.resolve("data/sonar.mv.db");
+        Path properties = Files.createDirectories(instance.resolve("conf")).resolve("sonar.properties");
+        Files.write(jar, new byte[1000]);
+        Files.write(db, new byte[300]);
+        Files.write(properties, new byte[20]);
+        service.scan(List.of("10.3.0.82913"));
+
+        // Rewritten in place: the directory modification times do not change
+        FileTime libTime = Files.getLastModifiedTime(instance.resolve("lib"));
+        FileTime dataTime = Files.getLastModifiedTime(instance.resolve("data"));
+        FileTime confTime = Files.getLastModifiedTime(instance.resolve("conf"));
+        Files.write(jar, new byte[2000]);
+        Files.write(db, new byte[600]);
+        Files.write(properties, new byte[40]);
+        Files.setLastModifiedTime(instance.resolve("lib"), libTime);
+        Files.setLastModifiedTime(instance.resolve("data"), dataTime);
+        Files.setLastModifiedTime(instance.resolve("conf"), confTime);
+
+        DiskUsageService.InstanceUsage usage = service.scan(List.of("10.3.0.82913")).get(0);
+        assertEquals(1000L, usage.getDirs().get("lib"), "lib listing should come from the cache");
+        assertEquals(600L, usage.getDirs().get("data"), "data should always be walked");
+        assertEquals(40L, usage.getDirs().get("conf"), "conf should always be walked");
+
+        // A new file changes the directory modification time and invalidates its entry
+        Files.write(instance.resolve("lib/new.jar"), new byte[50]);
+        Files.setLastModifiedTime(instance.resolve("lib"), FileTime.fromMillis(libTime.toMillis() + 5000));
+        usage = new DiskUsageService(new ConfigService(tempDir.resolve("sqman.properties")))
+            .scan(List.of("10.3.0.82913")).get(0);
+        assertEquals(2050L, usage.getDirs().get("lib"));
+    }
+
+    @Test
+    void testHardlinkedFilesCountedOnceAndSharedFilesNotFreed() throws IOException {
+        Path source = createInstance("10.3.0.82913");
+        Path clone = createInstance("10.3.0.82913-clone");
+        Files.write(source.resolve("lib/sonar-application.jar"), new byte[1000]);
+        Files.createLink(clone.resolve("lib/sonar-application.jar"), source.resolve("lib/sonar-application.jar"));
+        Files.write(clone.resolve("data/sonar.mv.db"), new byte[300]);
+        // A checkpoint links the data files of its own instance
+        Files.createDirectories(clone.resolve("checkpoints/base"));
+        Files.createLink(clone.resolve("checkpoints/base/sonar.mv.db"), clone.resolve("data/sonar.mv.db"));
+
+        List<DiskUsageService.InstanceUsage> usages = service.scan(List.of("10.3.0.82913", "10.3.0.82913-clone"));
+
+        DiskUsageService.InstanceUsage cloneUsage = usages.get(0);
+        assertEquals("10.3.0.82913-clone", cloneUsage.getId());
+        assertEquals(1300, cloneUsage.getTotal());
+        assertEquals(300L, cloneUsage.getDirs().get("checkpoints"), "counted for the first directory by name");
+        assertEquals(0L, cloneUsage.getDirs().get("data"));
+        assertEquals(1000, cloneUsage.getShared());
+        assertEquals(300, cloneUsage.getUnique());
+        assertEquals(1000, usages.get(1).getShared());
+        assertEquals(1300, service.getTotal(usages));
+
+        // Deleting the clone alone frees its own data only
+        List<DiskUsageService.InstanceUsage> evictions = service.selectEvictions(usages, 301, Set.of());
+        assertEquals(2, evictions.size());
+    }
+
+    @Test
+    void testSelectEvictionsLeastRecentlyRunFirst() throws IOException {
+        createInstance("old", 1_000L, 400);
+        createInstance("recent", 3_000L, 400);
+        createInstance("running", 500L, 400);
+        createInstance("middle", 2_000L, 400);
+        List<DiskUsageService.InstanceUsage> usages = service.scan(List.of("old", "recent", "running", "middle"));
+
+        List<DiskUsageService.InstanceUsage> evictions = service.selectEvictions(usages, 500, Set.of("running"));
+
+        assertEquals(List.of("old", "middle"), evictions.stream().map(DiskUsageService.InstanceUsage::getId).toList());
+    }
+
+    private Path createInstance(String id) throws IOException {
+        Path instance = Files.createDirectories(distributions.resolve("sonarqube-" + id));
+        Files.createDirectories(instance.resolve("lib"));
+        Files.createDirectories(instance.resolve("data"));
+        return instance;
+    }
+
+    private void createInstance(String id, long lastRunAt, int size) throws IOException {
+        Path instance = createInstance(id);
+        Files.write(instance.resolve("lib/sonar-application.jar"), new byte[size]);
+        InstanceState state = new InstanceState();
+        state.setLastRunAt(lastRunAt);
+        new InstanceStateService().save(instance, state);
+    }
+}
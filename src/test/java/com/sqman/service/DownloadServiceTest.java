@@ -0,0 +1,89 @@
+package com.sqman.service;
+
+import com.sqman.model.Edition;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadServiceTest {
+
+    private static final String VERSION = "10.7.0.96327";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamingInstallMovesCompleteInstanceIntoPlace() throws IOException {
+        DownloadService service = new DownloadService(serving(createDistribution()));
+
+        Path installed = service.downloadAndExtractStreaming(VERSION, Edition.COMMUNITY, tempDir, null);
+
+        assertEquals(tempDir.resolve("sonarqube-" + VERSION), installed);
+        assertTrue(Files.exists(installed.resolve("conf/sonar.properties")));
+        assertTrue(Files.exists(installed.resolve(InstanceManifestService.MANIFEST_FILE)));
+        assertEquals(List.of("sonarqube-" + VERSION), listNames(tempDir));
+    }
+
+    @Test
+    void testTruncatedDownloadLeavesNothingBehind() throws IOException {
+        byte[] distribution = createDistribution();
+        DownloadService service = new DownloadService(
+            serving(Arrays.copyOf(distribution, distribution.length / 2)));
+
+        assertThrows(IOException.class,
+            () -> service.downloadAndExtractStreaming(VERSION, Edition.COMMUNITY, tempDir, null));
+
+        // Neither a partial sonarqube-<version> that would pass for installed, nor the staging directory
+        assertEquals(List.of(), listNames(tempDir));
+    }
+
+    private static OkHttpClient serving(byte[] body) {
+        return new OkHttpClient.Builder()
+            .addInterceptor(chain -> new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, MediaType.get("application/zip")))
+                .build())
+            .build();
+    }
+
+    private static byte[] createDistribution() throws IOException {
+        // Incompressible content, so half of the archive ends inside the JAR
+        byte[] jar = new byte[256 * 1024];
+        new Random(42).nextBytes(jar);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("sonarqube-" + VERSION + "/conf/sonar.properties"));
+            zip.write("#sonar.web.port=9000\n".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("sonarqube-" + VERSION + "/lib/sonar-application.jar"));
+            zip.write(jar);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> listNames(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
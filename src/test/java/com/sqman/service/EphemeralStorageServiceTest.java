@@ -0,0 +1,88 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EphemeralStorageServiceTest {
+
+    @TempDir
+    Path instanceDir;
+
+    @TempDir
+    Path tmpfsDir;
+
+    @Test
+    void testPrepareRedirectsDataAndTemp() throws IOException {
+        createInstance("sonar.path.data=/persistent/data\n");
+        Files.writeString(instanceDir.resolve("token"), "squ_persistent");
+        EphemeralStorageService service = new EphemeralStorageService(new MemoryService(tmpfsDir.resolve("none"), tmpfsDir.resolve("none")));
+
+        Path runDir = service.prepare(instanceDir, "10.3.0.82913", tmpfsDir.toString(), 1024);
+
+        assertTrue(Files.isDirectory(runDir.resolve("data")));
+        SonarPropertiesService properties = new SonarPropertiesService();
+        assertEquals(runDir.resolve("data").toString(), properties.getProperty(instanceDir, "sonar.path.data"));
+        assertEquals(runDir.resolve("temp").toString(), properties.getProperty(instanceDir, "sonar.path.temp"));
+        assertFalse(Files.exists(instanceDir.resolve("token")));
+        assertTrue(new InstanceStateService().load(instanceDir).isEphemeral());
+    }
+
+    @Test
+    void testCleanupRestoresPersistentSettings() throws IOException {
+        createInstance("sonar.path.data=/persistent/data\n");
+        Files.writeString(instanceDir.resolve("token"), "squ_persistent");
+        EphemeralStorageService service = new EphemeralStorageService(new MemoryService(tmpfsDir.resolve("none"), tmpfsDir.resolve("none")));
+        Path runDir = service.prepare(instanceDir, "10.3.0.82913", tmpfsDir.toString(), 1024);
+        Files.writeString(runDir.resolve("data/sonar.mv.db"), "db");
+        Files.writeString(instanceDir.resolve("token"), "squ_ephemeral");
+
+        assertTrue(service.cleanup(instanceDir));
+
+        assertFalse(Files.exists(runDir));
+        SonarPropertiesService properties = new SonarPropertiesService();
+        assertEquals("/persistent/data", properties.getProperty(instanceDir, "sonar.path.data"));
+        assertNull(properties.getProperty(instanceDir, "sonar.path.temp"));
+        assertEquals("squ_persistent", Files.readString(instanceDir.resolve("token")));
+        InstanceState state = new InstanceStateService().load(instanceDir);
+        assertFalse(state.isEphemeral());
+    }
+
+    @Test
+    void testCleanupWhenNotEphemeral() throws IOException {
+        createInstance("");
+        assertFalse(new EphemeralStorageService().cleanup(instanceDir));
+    }
+
+    @Test
+    void testPrepareFailsWithoutEnoughMemory() throws IOException {
+        createInstance("");
+        Path meminfo = tmpfsDir.resolve("meminfo");
+        Files.writeString(meminfo, "MemTotal:       16000000 kB\nMemAvailable:     102400 kB\n");
+        EphemeralStorageService service = new EphemeralStorageService(new MemoryService(meminfo, tmpfsDir.resolve("none")));
+
+        IOException e = assertThrows(IOException.class, () ->
+            service.prepare(instanceDir, "10.3.0.82913", tmpfsDir.toString(), 1024L * 1024 * 1024));
+        assertTrue(e.getMessage().contains("Not enough free memory"));
+    }
+
+    @Test
+    void testPrepareFailsWithMissingTmpfs() throws IOException {
+        createInstance("");
+        EphemeralStorageService service = new EphemeralStorageService();
+
+        assertThrows(IOException.class, () ->
+            service.prepare(instanceDir, "10.3.0.82913", tmpfsDir.resolve("missing").toString(), 1024));
+    }
+
+    private void createInstance(String properties) throws IOException {
+        Files.createDirectories(instanceDir.resolve("conf"));
+        Files.writeString(instanceDir.resolve("conf/sonar.properties"), properties);
+    }
+}
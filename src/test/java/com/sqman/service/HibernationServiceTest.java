@@ -0,0 +1,93 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HibernationServiceTest {
+
+    private static final String VERSION = "10.3.0.82913";
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private ConfigService configService;
+    private HibernationService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + VERSION));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("lib"));
+        Files.createDirectories(instance.resolve("bin/linux-x86-64"));
+        Files.createDirectories(instance.resolve("temp"));
+        Files.writeString(instance.resolve("lib/sonar-application.jar"), "application");
+        Files.writeString(instance.resolve("bin/linux-x86-64/sonar.sh"), "#!/bin/sh");
+        instance.resolve("bin/linux-x86-64/sonar.sh").toFile().setExecutable(true);
+        Files.writeString(instance.resolve("temp/sharedmemory"), "");
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        configService = new ConfigService(configFile);
+        service = new HibernationService(configService);
+    }
+
+    @Test
+    void testHibernateThenRehydrate() throws IOException {
+        // Data on the hot storage tier, outside of the instance directory
+        Path hotData = Files.createDirectories(tempDir.resolve("hot/data"));
+        Files.writeString(hotData.resolve("sonar.mv.db"), "database");
+        Files.writeString(instance.resolve("conf/sonar.properties"), "sonar.path.data=" + hotData + "\n");
+        InstanceState state = new InstanceState();
+        state.setDataDir(hotData.toString());
+        new InstanceStateService().save(instance, state);
+
+        service.hibernate(VERSION);
+
+        assertFalse(Files.exists(instance));
+        assertFalse(Files.exists(hotData));
+        try (var entries = Files.list(tempDir.resolve("dist"))) {
+            assertEquals(List.of(service.getArchivePath(VERSION).getFileName().toString()),
+                entries.map(path -> path.getFileName().toString()).toList());
+        }
+        assertTrue(service.isHibernated(VERSION));
+        InstanceService instanceService = new InstanceService(configService);
+        assertEquals(List.of("sonarqube-" + VERSION), instanceService.listInstalled());
+        assertTrue(instanceService.isInstalled(VERSION));
+
+        assertTrue(service.rehydrate(VERSION));
+
+        assertFalse(service.isHibernated(VERSION));
+        assertFalse(Files.exists(service.getArchivePath(VERSION)));
+        assertEquals("application", Files.readString(instance.resolve("lib/sonar-application.jar")));
+        assertTrue(Files.isExecutable(instance.resolve("bin/linux-x86-64/sonar.sh")));
+        assertEquals("database", Files.readString(instance.resolve("data/sonar.mv.db")));
+        assertFalse(Files.exists(instance.resolve("temp/sharedmemory")));
+        assertFalse(Files.readString(instance.resolve("conf/sonar.properties")).contains("sonar.path.data"));
+        assertNull(new InstanceStateService().load(instance).getDataDir());
+        assertFalse(service.rehydrate(VERSION));
+    }
+
+    @Test
+    void testFindUnusedByLastRun() throws IOException {
+        Path old = Files.createDirectories(tempDir.resolve("dist/sonarqube-9.9.0.65466"));
+        Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(200)));
+        InstanceState state = new InstanceState();
+        state.setLastRunAt(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100));
+        new InstanceStateService().save(instance, state);
+
+        assertEquals(List.of(VERSION, "9.9.0.65466"), service.findUnused(List.of(VERSION, "9.9.0.65466"), 90));
+        assertEquals(List.of("9.9.0.65466"), service.findUnused(List.of(VERSION, "9.9.0.65466"), 150));
+    }
+}
@@ -0,0 +1,87 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdleWatchServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ProcessService processService;
+
+    private Path instance;
+    private IdleWatchService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path distributions = tempDir.resolve("dist");
+        instance = distributions.resolve("sonarqube-10.3.0.82913");
+        Files.createDirectories(instance.resolve("logs"));
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + distributions + "\nidle.timeoutMinutes=30\n");
+        service = new IdleWatchService(new ConfigService(configFile), processService);
+        when(processService.getPidFile(instance)).thenReturn(instance.resolve("SonarQube.pid"));
+    }
+
+    @Test
+    void testLastActivityUsesMostRecentLog() throws IOException {
+        touch(instance.resolve("logs/access.log"), 90);
+        touch(instance.resolve("logs/ce.log"), 10);
+        touch(instance.resolve("logs/web.log"), 0);
+
+        long expected = Files.getLastModifiedTime(instance.resolve("logs/ce.log")).toMillis();
+        assertEquals(expected, service.getLastActivity(instance));
+        assertEquals(30, service.getTimeoutMinutes());
+    }
+
+    @Test
+    void testIdleInstanceIsStoppedAndFlagged() throws Exception {
+        touch(instance.resolve("SonarQube.pid"), 120);
+        touch(instance.resolve("logs/access.log"), 45);
+        when(processService.isInstanceRunning(instance)).thenReturn(true);
+        when(processService.stopInstance(instance, false)).thenReturn(true);
+
+        List<String> stopped = service.stopIdleInstances(30);
+
+        assertEquals(List.of("10.3.0.82913"), stopped);
+        assertNotNull(new InstanceStateService().load(instance).getIdleStoppedAt());
+        assertEquals("10.3.0.82913", new InstanceService(new ConfigService(tempDir.resolve("sqman.properties")))
+            .getIdleStoppedInstance());
+    }
+
+    @Test
+    void testActiveInstanceKeepsRunning() throws Exception {
+        touch(instance.resolve("SonarQube.pid"), 120);
+        touch(instance.resolve("logs/access.log"), 5);
+        when(processService.isInstanceRunning(instance)).thenReturn(true);
+
+        assertTrue(service.stopIdleInstances(30).isEmpty());
+        verify(processService, never()).stopInstance(any(Path.class), anyBoolean());
+    }
+
+    private void touch(Path file, long minutesAgo) throws IOException {
+        Files.writeString(file, "x");
+        long time = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutesAgo);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+    }
+}
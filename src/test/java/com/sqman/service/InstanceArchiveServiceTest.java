@@ -0,0 +1,231 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqman.model.Edition;
+import com.sqman.model.ExportManifest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InstanceArchiveServiceTest {
+
+    private static final String VERSION = "10.3.0.82913";
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private DownloadService downloadService;
+    private InstanceArchiveService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + VERSION));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("extensions/plugins"));
+        Files.createDirectories(instance.resolve("lib/extensions"));
+        Files.createDirectories(instance.resolve("data/es8/nodes/0"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "sonar.web.port=9000\n");
+        Files.writeString(instance.resolve("extensions/plugins/sonar-foo-plugin-1.0.jar"), "foo");
+        Files.writeString(instance.resolve("lib/extensions/sonar-java-plugin-7.0.jar"), "java");
+        Files.writeString(instance.resolve("data/es8/nodes/0/node.lock"), "");
+        Files.writeString(instance.resolve("token"), "squ_export");
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        downloadService = mock(DownloadService.class);
+        service = new InstanceArchiveService(new ConfigService(configFile), downloadService);
+    }
+
+    @Test
+    void testExportThenReplaceInstalledInstance() throws Exception {
+        byte[] database = new byte[3 * ParallelGzipOutputStream.BLOCK_SIZE + 12345];
+        new Random(42).nextBytes(database);
+        Files.write(instance.resolve("data/sonar.mv.db"), database);
+        Path deepDir = Files.createDirectories(instance.resolve("data/" + "nested/".repeat(20)));
+        Files.writeString(deepDir.resolve("file.txt"), "deep");
+
+        Path archive = tempDir.resolve("export.tar.gz");
+        ExportManifest manifest = service.export(instance, VERSION, Edition.DEVELOPER, archive, 1);
+        assertEquals(List.of("sonar-foo-plugin-1.0.jar", "sonar-java-plugin-7.0.jar"), manifest.getPlugins());
+        assertFalse(Files.exists(tempDir.resolve("export.tar.gz.partial")));
+        assertEquals("developer", service.readManifest(archive).getEdition());
+
+        // Diverge from the exported state
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "changed");
+        Files.writeString(instance.resolve("extensions/plugins/sonar-bar-plugin-2.0.jar"), "bar");
+        Files.delete(instance.resolve("token"));
+
+        assertThrows(IOException.class, () -> service.importArchive(archive, false));
+        assertEquals(instance, service.importArchive(archive, true));
+
+        assertArrayEquals(database, Files.readAllBytes(instance.resolve("data/sonar.mv.db")));
+        assertEquals("deep", Files.readString(deepDir.resolve("file.txt")));
+        assertTrue(Files.exists(instance.resolve("extensions/plugins/sonar-foo-plugin-1.0.jar")));
+        assertFalse(Files.exists(instance.resolve("extensions/plugins/sonar-bar-plugin-2.0.jar")));
+        assertEquals("squ_export", Files.readString(instance.resolve("token")));
+        verifyNoInteractions(downloadService);
+    }
+
+    @Test
+    void testImportDownloadsMissingVersion() throws Exception {
+        Path archive = tempDir.resolve("export.tar.gz");
+        service.export(instance, VERSION, Edition.COMMUNITY, archive, 6);
+
+        FileTreeService fileTreeService = new FileTreeService();
+        fileTreeService.deleteTree(instance);
+        when(downloadService.downloadAndExtractStreaming(eq(VERSION), eq(Edition.COMMUNITY), any(), isNull()))
+            .thenAnswer(invocation -> {
+                Files.createDirectories(instance.resolve("conf"));
+                return instance;
+            });
+
+        service.importArchive(archive, false);
+
+        assertEquals("sonar.web.port=9000\n", Files.readString(instance.resolve("conf/sonar.properties")));
+        assertTrue(Files.exists(instance.resolve("data/es8/nodes/0/node.lock")));
+        assertEquals("java", Files.readString(instance.resolve("lib/extensions/sonar-java-plugin-7.0.jar")));
+    }
+
+    @Test
+    void testHotDataDirIsExportedAndImportedOntoLocalTier() throws Exception {
+        Path configFile = tempDir.resolve("exporter.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n"
+            + ConfigService.STORAGE_HOT + "=" + tempDir.resolve("hot") + "\n");
+        ConfigService exporterConfig = new ConfigService(configFile);
+        assertTrue(new StorageTierService(exporterConfig).apply(instance));
+        new SonarPropertiesService().setProperty(instance, "sonar.web.javaAdditionalOpts",
+            "-Xss2m -XX:SharedArchiveFile=" + instance.resolve("cds/web.jsa"));
+        Path archive = tempDir.resolve("export.tar.gz");
+        new InstanceArchiveService(exporterConfig, downloadService)
+            .export(instance, VERSION, Edition.COMMUNITY, archive, 1);
+
+        // Import on a machine whose hot tier lives elsewhere
+        FileTreeService fileTreeService = new FileTreeService();
+        fileTreeService.deleteTree(instance);
+        fileTreeService.deleteTree(tempDir.resolve("hot"));
+        when(downloadService.downloadAndExtractStreaming(eq(VERSION), eq(Edition.COMMUNITY), any(), isNull()))
+            .thenAnswer(invocation -> Files.createDirectories(instance.resolve("conf")).getParent());
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n"
+            + ConfigService.STORAGE_HOT + "=" + tempDir.resolve("hot2") + "\n");
+        new InstanceArchiveService(new ConfigService(configFile), downloadService).importArchive(archive, false);
+
+        Path hotData = tempDir.resolve("hot2/sonarqube-" + VERSION + "/data");
+        assertTrue(Files.exists(hotData.resolve("es8/nodes/0/node.lock")));
+        assertFalse(Files.exists(instance.resolve("data/es8")));
+        String settings = Files.readString(instance.resolve("conf/sonar.properties"));
+        assertTrue(settings.contains("sonar.path.data=" + hotData));
+        assertTrue(settings.contains("-Xss2m"));
+        assertFalse(settings.contains("SharedArchiveFile"));
+        assertFalse(settings.contains(tempDir.resolve("hot/").toString() + "/"));
+    }
+
+    @Test
+    void testReadsArchivesCompressedByOtherTools() throws IOException {
+        byte[] data = new byte[ParallelGzipOutputStream.BLOCK_SIZE * 2 + 7];
+        new Random(7).nextBytes(data);
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGzipOutputStream(parallel, 1, 4)) {
+            out.write(data);
+        }
+        // Independent members are a valid gzip stream for any reader
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(parallel.toByteArray()))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+
+        ByteArrayOutputStream standard = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(standard)) {
+            out.write(data);
+        }
+        try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(standard.toByteArray()), 4)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testRejectsOversizedBlocks() {
+        byte[] member = ParallelGzipOutputStream.compress(new byte[1000], 1);
+        byte[] hugeMember = member.clone();
+        writeIntLE(hugeMember, 16, Integer.MAX_VALUE - 16);
+        byte[] hugeBlock = member.clone();
+        writeIntLE(hugeBlock, member.length - 4, Integer.MAX_VALUE);
+
+        for (byte[] corrupt : List.of(hugeMember, hugeBlock)) {
+            IOException e = assertThrows(IOException.class, () -> {
+                try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(corrupt), 2)) {
+                    in.readAllBytes();
+                }
+            });
+            assertTrue(e.getMessage().startsWith("Corrupt archive"), e.getMessage());
+        }
+    }
+
+    @Test
+    void testRejectsEntriesOutsideOfInstance() throws IOException {
+        Path archive = tempDir.resolve("evil.tar.gz");
+        ExportManifest manifest = new ExportManifest();
+        manifest.setVersion(VERSION);
+        manifest.setEdition("community");
+        try (TarWriter tar = new TarWriter(new ParallelGzipOutputStream(Files.newOutputStream(archive), 1, 2))) {
+            tar.addBytes(InstanceArchiveService.MANIFEST,
+                new ObjectMapper().writeValueAsBytes(manifest), 0);
+            tar.addBytes("data/../../../escaped.txt", "evil".getBytes(), 0);
+        }
+
+        assertThrows(IOException.class, () -> service.importArchive(archive, true));
+        assertFalse(Files.exists(tempDir.resolve("escaped.txt")));
+        assertFalse(Files.exists(tempDir.resolve("dist/escaped.txt")));
+        assertInstanceUntouched();
+    }
+
+    @Test
+    void testTruncatedArchiveLeavesInstalledInstanceUntouched() throws IOException {
+        byte[] database = new byte[4 * ParallelGzipOutputStream.BLOCK_SIZE];
+        new Random(1).nextBytes(database);
+        Files.write(instance.resolve("data/sonar.mv.db"), database);
+        Path archive = tempDir.resolve("export.tar.gz");
+        service.export(instance, VERSION, Edition.COMMUNITY, archive, 1);
+        byte[] content = Files.readAllBytes(archive);
+        Files.write(archive, Arrays.copyOf(content, content.length - 1000));
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "current");
+
+        assertThrows(IOException.class, () -> service.importArchive(archive, true));
+
+        assertEquals("current", Files.readString(instance.resolve("data/sonar.mv.db")));
+        assertInstanceUntouched();
+    }
+
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void assertInstanceUntouched() throws IOException {
+        assertEquals("foo", Files.readString(instance.resolve("extensions/plugins/sonar-foo-plugin-1.0.jar")));
+        assertEquals("java", Files.readString(instance.resolve("lib/extensions/sonar-java-plugin-7.0.jar")));
+        assertTrue(Files.exists(instance.resolve("data/es8/nodes/0/node.lock")));
+        assertEquals("squ_export", Files.readString(instance.resolve("token")));
+        try (var entries = Files.list(instance)) {
+            assertTrue(entries.noneMatch(path -> path.getFileName().toString().startsWith(".")));
+        }
+    }
+}
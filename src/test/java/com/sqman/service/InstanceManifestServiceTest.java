@@ -0,0 +1,84 @@
+package com.sqman.service;
+
+import com.sqman.model.Edition;
+import com.sqman.model.InstanceManifest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceManifestServiceTest {
+
+    private static final String VERSION = "10.3.0.82913";
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private InstanceManifestService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + VERSION));
+        Files.createDirectories(instance.resolve("lib/extensions"));
+        Files.createDirectories(instance.resolve("extensions/plugins"));
+        Files.write(instance.resolve("lib/extensions/sonar-java-plugin-7.0.jar"), new byte[100]);
+        Files.write(instance.resolve("extensions/plugins/custom-plugin-1.0.jar"), new byte[50]);
+        Files.writeString(instance.resolve("extensions/plugins/README.txt"), "1234567890");
+        service = new InstanceManifestService();
+    }
+
+    @Test
+    void testCreateThenLoad() throws IOException {
+        service.create(instance, VERSION, Edition.DEVELOPER,
+            "https://example.com/sonarqube-developer-10.3.0.82913.zip", "abc123", 4242);
+
+        InstanceManifest manifest = service.load(instance);
+
+        assertNotNull(manifest);
+        assertEquals(VERSION, manifest.getVersion());
+        assertEquals("developer", manifest.getEdition());
+        assertEquals("SQS", manifest.getType());
+        assertEquals("abc123", manifest.getSha256());
+        assertEquals(4242, manifest.getDownloadSize());
+        assertEquals(160, manifest.getSize());
+        assertTrue(manifest.getInstalledAt() > 0);
+        assertEquals(List.of("custom-plugin-1.0.jar", "sonar-java-plugin-7.0.jar"), manifest.getPlugins());
+    }
+
+    @Test
+    void testUpdatePluginsAndUnreadableManifest() throws IOException {
+        service.create(instance, VERSION, Edition.COMMUNITY, "https://example.com/x.zip", "abc123", 1);
+        Files.delete(instance.resolve("extensions/plugins/custom-plugin-1.0.jar"));
+
+        service.updatePlugins(instance);
+
+        assertEquals(List.of("sonar-java-plugin-7.0.jar"), service.load(instance).getPlugins());
+        assertEquals("SQCB", service.load(instance).getType());
+
+        Files.writeString(instance.resolve(InstanceManifestService.MANIFEST_FILE), "{ not json");
+        assertNull(service.load(instance));
+    }
+
+    @Test
+    void testInstanceServiceBackfillsMissingManifest() throws IOException {
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        InstanceService instanceService = new InstanceService(new ConfigService(configFile));
+
+        InstanceManifest manifest = instanceService.getManifest(VERSION);
+
+        assertNotNull(manifest);
+        assertEquals(VERSION, manifest.getVersion());
+        assertNull(manifest.getEdition());
+        assertEquals(2, manifest.getPlugins().size());
+        assertTrue(Files.exists(instance.resolve(InstanceManifestService.MANIFEST_FILE)));
+        assertNull(instanceService.getManifest("9.9.0.65466"));
+    }
+}
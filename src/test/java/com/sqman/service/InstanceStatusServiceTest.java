@@ -0,0 +1,61 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceStatusServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path distributions;
+    private InstanceStatusService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        distributions = Files.createDirectories(tempDir.resolve("dist"));
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + distributions + "\n");
+        service = new InstanceStatusService(new InstanceService(new ConfigService(configFile)));
+    }
+
+    @Test
+    void testProbeAllReportsLiveAndStoppedInstances() throws Exception {
+        // The test JVM stands in for a running SonarQube, on a port nothing listens to
+        createInstance("10.3.0.82913", ProcessHandle.current().pid(), 1);
+        createInstance("10.4.0.100000", Long.MAX_VALUE, 9000);
+        Files.createDirectories(distributions.resolve("sonarqube-9.9.0.65466"));
+
+        List<InstanceStatusService.InstanceStatus> statuses = service.probeAll(
+            List.of("10.3.0.82913", "10.4.0.100000", "9.9.0.65466"), 5000);
+
+        assertEquals(3, statuses.size());
+        InstanceStatusService.InstanceStatus running = statuses.get(0);
+        assertTrue(running.isRunning());
+        assertEquals(ProcessHandle.current().pid(), running.getPid());
+        assertEquals(1, running.getPort());
+        assertEquals(InstanceStatusService.UNREACHABLE, running.getState());
+        assertNotNull(running.getStartedAt());
+
+        assertEquals(InstanceStatusService.STOPPED, statuses.get(1).getState());
+        assertFalse(statuses.get(1).isRunning());
+        assertEquals(InstanceStatusService.STOPPED, statuses.get(2).getState());
+    }
+
+    private void createInstance(String id, long pid, int port) throws IOException {
+        Path instance = distributions.resolve("sonarqube-" + id);
+        Path pidFile = new ProcessService().getPidFile(instance);
+        Files.createDirectories(pidFile.getParent());
+        Files.writeString(pidFile, String.valueOf(pid));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "sonar.web.port=" + port + "\n");
+    }
+}
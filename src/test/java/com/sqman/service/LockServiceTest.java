@@ -0,0 +1,114 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testHolderIsRegisteredWhileLocked() throws Exception {
+        LockService lockService = new LockService(tempDir, 1000);
+
+        try (LockService.InstanceLock lock =
+                 lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "run")) {
+            List<String> holders = lockService.getHolders("sonarqube-10.3");
+            assertEquals(1, holders.size());
+            assertTrue(holders.get(0).contains("PID " + ProcessHandle.current().pid()));
+            assertTrue(holders.get(0).contains("run, exclusive"));
+        }
+
+        assertTrue(lockService.getHolders("sonarqube-10.3").isEmpty());
+    }
+
+    @Test
+    void testDifferentInstancesDoNotBlock() throws Exception {
+        LockService lockService = new LockService(tempDir, 100);
+
+        try (LockService.InstanceLock first =
+                 lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "run");
+             LockService.InstanceLock second =
+                 lockService.lock("sonarqube-10.7", LockService.Mode.EXCLUSIVE, "delete")) {
+            assertEquals(1, lockService.getHolders("sonarqube-10.7").size());
+        }
+    }
+
+    @Test
+    void testSharedLockCannotBeUpgraded() throws Exception {
+        LockService lockService = new LockService(tempDir, 100);
+
+        try (LockService.InstanceLock shared =
+                 lockService.lock("sonarqube-10.3", LockService.Mode.SHARED, "pool fill");
+             LockService.InstanceLock nested =
+                 lockService.lock("sonarqube-10.3", LockService.Mode.SHARED, "pool fill")) {
+            assertThrows(IOException.class,
+                () -> lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "delete"));
+        }
+    }
+
+    @Test
+    void testTimeoutReportsHolder() throws Exception {
+        LockService lockService = new LockService(tempDir, 300);
+        Path holders = Files.createDirectories(tempDir.resolve("sonarqube-10.3.lock.holders"));
+        Files.writeString(holders.resolve("holder"), ProcessHandle.current().pid() + "\nexclusive\n"
+            + System.currentTimeMillis() + "\nrestart");
+        Files.writeString(holders.resolve("stale"), "999999999\nexclusive\n0\nrun");
+
+        // Lock held outside of the lock service, like another process would
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("sonarqube-10.3.lock"),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock held = channel.lock()) {
+
+            IOException e = assertThrows(IOException.class,
+                () -> lockService.lock("sonarqube-10.3", LockService.Mode.SHARED, "list"));
+
+            assertTrue(e.getMessage().contains("restart, exclusive"));
+            assertFalse(Files.exists(holders.resolve("stale")));
+        }
+    }
+
+    @Test
+    void testExclusiveLockIsNotEnteredByOtherThreads() throws Exception {
+        LockService lockService = new LockService(tempDir, 300);
+
+        try (LockService.InstanceLock lock =
+                 lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "run")) {
+            CompletableFuture<LockService.InstanceLock> other = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "delete");
+                } catch (IOException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            });
+
+            ExecutionException e = assertThrows(ExecutionException.class, other::get);
+            assertTrue(e.getCause().getMessage().contains("Timed out"));
+        }
+
+        // Released by its owner, so other threads get it
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> {
+            try (LockService.InstanceLock lock =
+                     lockService.lock("sonarqube-10.3", LockService.Mode.EXCLUSIVE, "delete")) {
+                assertEquals(1, lockService.getHolders("sonarqube-10.3").size());
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+        other.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCgroupV2LimitCapsHostMemory() throws IOException {
+        Path meminfo = tempDir.resolve("meminfo");
+        Files.writeString(meminfo, "MemTotal: 33554432 kB\nMemAvailable: 16777216 kB\n");
+        Path cgroup = Files.createDirectories(tempDir.resolve("cgroup"));
+        Files.writeString(cgroup.resolve("memory.max"), "4294967296\n");
+        Files.writeString(cgroup.resolve("memory.current"), "3221225472\n");
+        Files.writeString(cgroup.resolve("memory.stat"), "anon 1073741824\ninactive_file 1073741824\n");
+
+        MemoryService service = new MemoryService(meminfo, cgroup);
+
+        // 4 GB limit - (3 GB used - 1 GB reclaimable cache)
+        assertEquals(2147483648L, service.getAvailableMemory());
+    }
+
+    @Test
+    void testNestedCgroupLimitsOfTheProcessApply() throws IOException {
+        Path meminfo = tempDir.resolve("meminfo");
+        Files.writeString(meminfo, "MemAvailable: 16777216 kB\n");
+        // The root of a cgroup v2 host has no limit, the slice and the scope of the process have
+        Path cgroup = Files.createDirectories(tempDir.resolve("cgroup"));
+        Files.writeString(cgroup.resolve("cgroup.controllers"), "memory\n");
+        Path slice = Files.createDirectories(cgroup.resolve("build.slice"));
+        Files.writeString(slice.resolve("memory.max"), "4294967296\n");
+        Files.writeString(slice.resolve("memory.current"), "3221225472\n");
+        Path scope = Files.createDirectories(slice.resolve("sqman.scope"));
+        Files.writeString(scope.resolve("memory.max"), "max\n");
+        Files.writeString(scope.resolve("memory.current"), "1073741824\n");
+        Path selfCgroup = tempDir.resolve("self-cgroup");
+        Files.writeString(selfCgroup, "0::/build.slice/sqman.scope\n");
+
+        MemoryService service = new MemoryService(meminfo, cgroup, selfCgroup);
+
+        // The slice limit applies: 4 GB - 3 GB used by the whole slice
+        assertEquals(1073741824L, service.getCgroupAvailableMemory());
+        assertEquals(1073741824L, service.getAvailableMemory());
+    }
+
+    @Test
+    void testUnlimitedCgroupUsesHostMemory() throws IOException {
+        Path meminfo = tempDir.resolve("meminfo");
+        Files.writeString(meminfo, "MemAvailable: 1048576 kB\n");
+        Path cgroup = Files.createDirectories(tempDir.resolve("cgroup/memory"));
+        Files.writeString(cgroup.resolve("memory.limit_in_bytes"), "9223372036854771712\n");
+        Files.writeString(cgroup.resolve("memory.usage_in_bytes"), "1000\n");
+
+        MemoryService service = new MemoryService(meminfo, tempDir.resolve("cgroup"));
+
+        assertEquals(-1, service.getCgroupAvailableMemory());
+        assertEquals(1073741824L, service.getAvailableMemory());
+    }
+}
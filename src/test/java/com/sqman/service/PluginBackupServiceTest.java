@@ -0,0 +1,134 @@
+package com.sqman.service;
+
+import com.sqman.model.PluginBackup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginBackupServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path store;
+    private final PluginBackupService service = new PluginBackupService();
+
+    @BeforeEach
+    void setUp() {
+        store = tempDir.resolve(PluginBackupService.STORE_DIR);
+    }
+
+    @Test
+    void testInstancesShareOneBlobUntilTheLastRestore() throws IOException {
+        Path first = createBundledPlugin("sonarqube-10.3.0.82913");
+        Path second = createBundledPlugin("sonarqube-10.3.0.82914");
+
+        service.backup(tempDir.resolve("sonarqube-10.3.0.82913"), Map.of("java", first));
+        service.backup(tempDir.resolve("sonarqube-10.3.0.82914"), Map.of("java", second));
+        Files.delete(first);
+        Files.delete(second);
+
+        assertEquals(List.of("java"), service.list(tempDir.resolve("sonarqube-10.3.0.82913")).stream()
+            .map(PluginBackup::getKey).toList());
+        assertEquals(1, countBlobs());
+
+        PluginBackup backup = service.list(tempDir.resolve("sonarqube-10.3.0.82913")).get(0);
+        assertEquals("sonar-java-plugin-7.30.jar", backup.getFileName());
+        service.restore(tempDir.resolve("sonarqube-10.3.0.82913"), backup, first);
+        assertEquals("bundled java", Files.readString(first));
+        assertTrue(service.list(tempDir.resolve("sonarqube-10.3.0.82913")).isEmpty());
+        // Still backed up by the other instance
+        assertEquals(1, countBlobs());
+
+        service.restore(tempDir.resolve("sonarqube-10.3.0.82914"),
+            service.list(tempDir.resolve("sonarqube-10.3.0.82914")).get(0), second);
+        assertEquals("bundled java", Files.readString(second));
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    void testDeletedInstancesReleaseTheirBlobs() throws IOException {
+        Path first = createBundledPlugin("sonarqube-10.3.0.82913");
+        Path second = createBundledPlugin("sonarqube-10.3.0.82914");
+        Path firstInstance = tempDir.resolve("sonarqube-10.3.0.82913");
+        Path secondInstance = tempDir.resolve("sonarqube-10.3.0.82914");
+        service.backup(firstInstance, Map.of("java", first));
+        service.backup(secondInstance, Map.of("java", second));
+
+        List<PluginBackup> firstBackups = service.list(firstInstance);
+        new FileTreeService().deleteTree(firstInstance);
+        service.removeAll(firstInstance, firstBackups);
+        // Still backed up by the other instance
+        assertEquals(1, countBlobs());
+
+        List<PluginBackup> secondBackups = service.list(secondInstance);
+        new FileTreeService().deleteTree(secondInstance);
+        service.removeAll(secondInstance, secondBackups);
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    void testHibernatedInstancesKeepTheirBlobs() throws IOException {
+        Path first = createBundledPlugin("sonarqube-10.3.0.82913");
+        Path second = createBundledPlugin("sonarqube-10.3.0.82914");
+        Path firstInstance = tempDir.resolve("sonarqube-10.3.0.82913");
+        Path secondInstance = tempDir.resolve("sonarqube-10.3.0.82914");
+        service.backup(firstInstance, Map.of("java", first));
+        service.backup(secondInstance, Map.of("java", second));
+
+        // Hibernate the first instance
+        Path archive = Files.writeString(tempDir.resolve("sonarqube-10.3.0.82913" + HibernationService.ARCHIVE_SUFFIX),
+            "archive");
+        service.saveHibernatedIndex(firstInstance, archive);
+        new FileTreeService().deleteTree(firstInstance);
+
+        service.restore(secondInstance, service.list(secondInstance).get(0), second);
+        // Still backed up by the hibernated instance
+        assertEquals(1, countBlobs());
+
+        List<PluginBackup> hibernatedBackups = service.listHibernated(archive);
+        assertEquals(1, hibernatedBackups.size());
+        Files.delete(archive);
+        Files.delete(PluginBackupService.getHibernatedIndex(archive));
+        service.removeAll(firstInstance, hibernatedBackups);
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    void testMigratesLegacyBackupDirectory() throws IOException {
+        Path instance = tempDir.resolve("sonarqube-10.3.0.82913");
+        Path legacyDir = Files.createDirectories(instance.resolve("original-plugins"));
+        Files.writeString(legacyDir.resolve("sonar-java-plugin-7.30-backup-20260219-153045.jar"), "bundled java");
+
+        List<PluginBackup> backups = service.list(instance);
+
+        assertEquals(1, backups.size());
+        assertEquals("sonar-java-plugin", backups.get(0).getKey());
+        assertEquals("sonar-java-plugin-7.30.jar", backups.get(0).getFileName());
+        assertFalse(Files.exists(legacyDir));
+        assertTrue(Files.exists(instance.resolve(PluginBackupService.INDEX_FILE)));
+        assertEquals(1, countBlobs());
+    }
+
+    private Path createBundledPlugin(String instanceName) throws IOException {
+        Path extensions = Files.createDirectories(tempDir.resolve(instanceName).resolve(PluginService.EXTENSIONS_DIR));
+        Path jar = extensions.resolve("sonar-java-plugin-7.30.jar");
+        Files.writeString(jar, "bundled java");
+        return jar;
+    }
+
+    private long countBlobs() throws IOException {
+        try (Stream<Path> blobs = Files.list(store)) {
+            return blobs.filter(blob -> blob.getFileName().toString().endsWith(".jar")).count();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginRolloutServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path distributions;
+    private PluginRolloutService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        distributions = Files.createDirectories(tempDir.resolve("dist"));
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + distributions + "\n");
+        service = new PluginRolloutService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testRolloutLinksOneCopyIntoEveryInstance() throws Exception {
+        createInstance("10.3.0.82913");
+        createInstance("10.7.0.96327");
+        Path jar = tempDir.resolve("sonar-java-plugin-9.0.0.jar");
+        Files.writeString(jar, "new java");
+
+        List<PluginRolloutService.Result> results =
+            service.rollout(List.of("10.3.0.82913", "10.7.0.96327"), List.of(jar));
+
+        assertEquals(2, results.size());
+        Path first = distributions.resolve("sonarqube-10.3.0.82913/lib/extensions/sonar-java-plugin-9.0.0.jar");
+        Path second = distributions.resolve("sonarqube-10.7.0.96327/lib/extensions/sonar-java-plugin-9.0.0.jar");
+        for (PluginRolloutService.Result result : results) {
+            assertNull(result.getError());
+            assertEquals("sonar-java-plugin-8.22.jar", result.getChanges().get(0).getReplaced());
+            assertNull(result.getUp());
+        }
+        assertEquals("new java", Files.readString(first));
+        assertEquals(Files.getAttribute(first, "unix:ino"), Files.getAttribute(second, "unix:ino"),
+            "the instances share one copy of the JAR");
+        try (Stream<Path> files = Files.list(distributions)) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().startsWith(".sqman-rollout-")));
+        }
+    }
+
+    @Test
+    void testFailedInstanceDoesNotStopTheOthers() throws Exception {
+        createInstance("10.3.0.82913");
+        Files.createDirectories(distributions.resolve("sonarqube-10.7.0.96327"));
+        Path jar = tempDir.resolve("sonar-php-plugin-3.0.0.jar");
+        Files.writeString(jar, "php");
+
+        List<PluginRolloutService.Result> results =
+            service.rollout(List.of("10.3.0.82913", "10.7.0.96327"), List.of(jar));
+
+        assertNull(results.get(0).getError());
+        assertNull(results.get(0).getChanges().get(0).getReplaced());
+        assertTrue(Files.exists(distributions.resolve("sonarqube-10.3.0.82913/lib/extensions/sonar-php-plugin-3.0.0.jar")));
+        assertTrue(results.get(1).getError().contains("Extensions directory not found"));
+    }
+
+    private void createInstance(String version) throws IOException {
+        Path extensions = Files.createDirectories(distributions.resolve("sonarqube-" + version + "/lib/extensions"));
+        Files.writeString(extensions.resolve("sonar-java-plugin-8.22.jar"), "bundled java");
+    }
+}
@@ -0,0 +1,95 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private Path extensions;
+    private final PluginService service = new PluginService();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = tempDir.resolve("sonarqube-10.3.0.82913");
+        extensions = Files.createDirectories(instance.resolve("lib/extensions"));
+    }
+
+    @Test
+    void testGetPluginKey() throws IOException {
+        Path jar = createPlugin(tempDir.resolve("renamed.jar"), "java");
+        Path noManifest = tempDir.resolve("custom-plugin-1.0-SNAPSHOT.jar");
+        Files.writeString(noManifest, "not a zip");
+
+        assertEquals("java", service.getPluginKey(jar));
+        assertEquals("custom-plugin", service.getPluginKey(noManifest));
+        assertEquals("custom-plugin",
+            service.getPluginKey(tempDir.resolve("custom-plugin-backup-20260219-153045.jar")));
+    }
+
+    @Test
+    void testInstallReplacesPluginsWithTheSameKey() throws IOException {
+        Path bundledJava = createPlugin(extensions.resolve("sonar-java-plugin-7.30.jar"), "java");
+        createPlugin(extensions.resolve("sonar-python-plugin-4.5.jar"), "python");
+        Path build = Files.createDirectories(tempDir.resolve("build"));
+        createPlugin(build.resolve("java-frontend.jar"), "java");
+        createPlugin(build.resolve("sonar-php-plugin-3.0.jar"), "php");
+
+        List<PluginService.Change> changes = service.install(instance, service.listJars(build));
+
+        assertEquals(2, changes.size());
+        assertEquals("sonar-java-plugin-7.30.jar", changes.get(0).getReplaced());
+        assertTrue(changes.get(0).isBackedUp());
+        assertNull(changes.get(1).getReplaced());
+        assertFalse(Files.exists(bundledJava));
+        assertEquals(List.of("java-frontend.jar", "sonar-php-plugin-3.0.jar", "sonar-python-plugin-4.5.jar"),
+            service.listJars(extensions).stream().map(path -> path.getFileName().toString()).toList());
+        assertFalse(Files.exists(instance.resolve(".sqman-plugins")));
+
+        // The original is only backed up the first time
+        createPlugin(build.resolve("java-frontend.jar"), "java");
+        List<PluginService.Change> again = service.install(instance, List.of(build.resolve("java-frontend.jar")));
+        assertFalse(again.get(0).isBackedUp());
+        assertEquals(1, service.getBackupService().list(instance).size());
+    }
+
+    @Test
+    void testInstallRejectsTwoVersionsOfAPluginWithoutChanges() throws IOException {
+        Path bundled = createPlugin(extensions.resolve("sonar-java-plugin-7.30.jar"), "java");
+        Path first = createPlugin(tempDir.resolve("java-a.jar"), "java");
+        Path second = createPlugin(tempDir.resolve("java-b.jar"), "java");
+
+        IOException e = assertThrows(IOException.class, () -> service.install(instance, List.of(first, second)));
+
+        assertTrue(e.getMessage().contains("same plugin"));
+        assertTrue(Files.exists(bundled));
+        assertEquals(1, service.listJars(extensions).size());
+        assertTrue(service.getBackupService().list(instance).isEmpty());
+    }
+
+    private static Path createPlugin(Path jar, String key) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Plugin-Key", key);
+        try (OutputStream output = Files.newOutputStream(jar);
+             JarOutputStream jarOutput = new JarOutputStream(output, manifest)) {
+            jarOutput.flush();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,95 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginWatchServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path target;
+    private PluginWatchService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        target = Files.createDirectories(tempDir.resolve("target"));
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "plugin.watchDebounceMillis=100\n");
+        service = new PluginWatchService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testWaitsForCompletePluginJar() throws Exception {
+        AtomicLong completed = new AtomicLong();
+        try (PluginWatchService.Watcher watcher = service.watch(target)) {
+            CompletableFuture<Void> build = CompletableFuture.runAsync(() -> {
+                try {
+                    // A JAR without its central directory yet, completed after the debounce delay
+                    Files.writeString(target.resolve("sonar-java-plugin-9.0.jar"), "PK partial");
+                    Thread.sleep(400);
+                    createJar(target.resolve("sonar-java-plugin-9.0.jar"), "java");
+                    completed.set(System.currentTimeMillis());
+                    createJar(target.resolve("sonar-java-plugin-9.0-sources.jar"), null);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            PluginWatchService.Build result = assertTimeoutPreemptively(Duration.ofSeconds(10), watcher::next);
+
+            build.get();
+            assertEquals(List.of(target.resolve("sonar-java-plugin-9.0.jar")), result.getJars());
+            // The watcher may see the partial write late, only the end is certain
+            assertTrue(result.getReadyMillis() >= completed.get());
+        }
+    }
+
+    @Test
+    void testFollowsDirectoryRecreatedByCleanBuild() throws Exception {
+        try (PluginWatchService.Watcher watcher = service.watch(target)) {
+            CompletableFuture<Void> build = CompletableFuture.runAsync(() -> {
+                try {
+                    Files.delete(target);
+                    Thread.sleep(200);
+                    Files.createDirectories(target);
+                    createJar(target.resolve("sonar-php-plugin-3.0.jar"), "php");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            PluginWatchService.Build result = assertTimeoutPreemptively(Duration.ofSeconds(10), watcher::next);
+
+            build.get();
+            assertEquals(List.of(target.resolve("sonar-php-plugin-3.0.jar")), result.getJars());
+        }
+    }
+
+    private static void createJar(Path jar, String pluginKey) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (pluginKey != null) {
+            manifest.getMainAttributes().putValue("Plugin-Key", pluginKey);
+        }
+        try (OutputStream output = Files.newOutputStream(jar);
+             JarOutputStream jarOutput = new JarOutputStream(output, manifest)) {
+            jarOutput.flush();
+        }
+    }
+}
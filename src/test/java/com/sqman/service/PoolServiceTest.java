@@ -0,0 +1,146 @@
+package com.sqman.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqman.model.PoolSlot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class PoolServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ProcessService processService;
+
+    private Path poolRoot;
+    private PoolService poolService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        poolRoot = tempDir.resolve("pool");
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        poolService = new PoolService(new ConfigService(configFile), processService, poolRoot);
+    }
+
+    @Test
+    void testAcquirePrefersExactVersion() throws IOException {
+        writeSlots(
+            slot("slot-1", "10.3.0.1", PoolSlot.Status.READY, 1),
+            slot("slot-2", "10.3", PoolSlot.Status.READY, 1));
+
+        PoolSlot slot = poolService.acquire("10.3");
+
+        assertEquals("slot-2", slot.getId());
+        assertEquals(PoolSlot.Status.LEASED, poolService.listSlots().get(1).getStatus());
+    }
+
+    @Test
+    void testAcquireMatchesWholeVersionComponents() throws IOException {
+        writeSlots(
+            slot("slot-1", "10.30.0.1", PoolSlot.Status.READY, 1),
+            slot("slot-2", "10.3.0.1", PoolSlot.Status.READY, 1));
+
+        assertEquals("slot-2", poolService.acquire("10.3").getId());
+        assertNull(poolService.acquire("10.3"));
+    }
+
+    @Test
+    void testAcquireWithoutReadySlot() throws IOException {
+        writeSlots(slot("slot-1", "10.3", PoolSlot.Status.STARTING, 0));
+
+        assertNull(poolService.acquire("10.3"));
+        assertNull(poolService.acquire("9.9"));
+    }
+
+    @Test
+    void testReleaseOnlyLeasedSlots() throws IOException {
+        writeSlots(
+            slot("slot-1", "10.3", PoolSlot.Status.LEASED, 1),
+            slot("slot-2", "10.3", PoolSlot.Status.READY, 1));
+
+        assertNotNull(poolService.release("slot-1"));
+        assertNull(poolService.release("slot-2"));
+        assertNull(poolService.release("slot-9"));
+        assertEquals(PoolSlot.Status.RECYCLING, poolService.listSlots().get(0).getStatus());
+    }
+
+    @Test
+    void testReapIdleRemovesOldReadySlots() throws Exception {
+        long old = System.currentTimeMillis() - 2 * 60 * 60 * 1000L;
+        writeSlots(
+            slot("slot-1", "10.3", PoolSlot.Status.READY, old),
+            slot("slot-2", "10.3", PoolSlot.Status.READY, System.currentTimeMillis()),
+            slot("slot-3", "10.3", PoolSlot.Status.LEASED, old));
+
+        assertEquals(1, poolService.reapIdle());
+
+        List<PoolSlot> slots = poolService.listSlots();
+        assertEquals(2, slots.size());
+        assertEquals("slot-2", slots.get(0).getId());
+    }
+
+    @Test
+    void testDrainKeepsLeasedSlots() throws Exception {
+        writeSlots(
+            slot("slot-1", "10.3", PoolSlot.Status.READY, 1),
+            slot("slot-2", "10.3", PoolSlot.Status.LEASED, 1),
+            slot("slot-3", "9.9", PoolSlot.Status.READY, 1));
+
+        assertEquals(1, poolService.drain("10.3"));
+        assertEquals(2, poolService.listSlots().size());
+        assertEquals(1, poolService.drain(null));
+        assertEquals("slot-2", poolService.listSlots().get(0).getId());
+    }
+
+    @Test
+    void testFillRequiresInstalledVersion() {
+        IOException e = assertThrows(IOException.class, () -> poolService.fill("10.3"));
+        assertTrue(e.getMessage().contains("not installed"));
+    }
+
+    @Test
+    void testConfigureSlotUsesOwnPorts() throws IOException {
+        Path slotPath = tempDir.resolve("slot");
+        Files.createDirectories(slotPath.resolve("conf"));
+        Files.writeString(slotPath.resolve("conf/sonar.properties"),
+            "sonar.web.port=9000\nsonar.path.data=/elsewhere/data\n");
+
+        poolService.configureSlot(slotPath, 9110);
+
+        SonarPropertiesService properties = new SonarPropertiesService();
+        assertEquals(9110, properties.getWebPort(slotPath));
+        assertEquals("9111", properties.getProperty(slotPath, "sonar.search.port"));
+        assertEquals("9112", properties.getProperty(slotPath, "sonar.embeddedDatabase.port"));
+        assertNull(properties.getProperty(slotPath, "sonar.path.data"));
+    }
+
+    private PoolSlot slot(String id, String version, PoolSlot.Status status, long readySince) {
+        PoolSlot slot = new PoolSlot();
+        slot.setId(id);
+        slot.setVersion(version);
+        slot.setPath(poolRoot.resolve(id).toString());
+        slot.setWebPort(9100);
+        slot.setStatus(status);
+        slot.setReadySince(readySince);
+        return slot;
+    }
+
+    private void writeSlots(PoolSlot... slots) throws IOException {
+        Files.createDirectories(poolRoot);
+        new ObjectMapper().writeValue(poolRoot.resolve("pool.json").toFile(), List.of(slots));
+    }
+}
@@ -68,6 +68,24 @@ class ProcessServiceTest {
         assertFalse(service.isInstanceRunning(tempDir));
     }
 
+    @Test
+    void testStalePidLeavesEphemeralDataToLockedCommands(@TempDir Path tempDir, @TempDir Path tmpfsDir) throws IOException {
+        ProcessService service = new ProcessService();
+        Files.createDirectories(tempDir.resolve("conf"));
+        Files.writeString(tempDir.resolve("conf/sonar.properties"), "");
+        Path runDir = new EphemeralStorageService(new MemoryService(tmpfsDir.resolve("none"), tmpfsDir.resolve("none")))
+            .prepare(tempDir, "10.3.0.82913", tmpfsDir.toString(), 1024);
+        Path pidDir = Files.createDirectories(tempDir.resolve("bin").resolve(service.detectPlatform().getBinDir()));
+        // The instance was killed, its wrapper did not remove the PID file
+        Files.writeString(pidDir.resolve("SonarQube.pid"), "999999999");
+
+        assertFalse(service.isInstanceRunning(tempDir));
+
+        // A query without the instance lock must not race with a run that is starting
+        assertTrue(Files.exists(runDir));
+        assertTrue(new InstanceStateService().load(tempDir).isEphemeral());
+    }
+
     @Test
     void testStartInstanceNotFound() {
         ProcessService service = new ProcessService();
@@ -0,0 +1,72 @@
+package com.sqman.service;
+
+import com.sqman.model.InstanceState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageTierServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNoHotTierConfigured() throws IOException {
+        Path instance = createInstance();
+        StorageTierService service = new StorageTierService(new ConfigService(tempDir.resolve("none.properties")));
+
+        assertFalse(service.apply(instance));
+        assertEquals(instance.resolve("data"), service.getDataDir(instance));
+    }
+
+    @Test
+    void testApplyMovesDataToHotTier() throws IOException {
+        Path instance = createInstance();
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "db");
+        Path hotRoot = tempDir.resolve("nvme");
+        StorageTierService service = new StorageTierService(configWithHotTier(hotRoot));
+
+        assertTrue(service.apply(instance));
+
+        Path hotData = hotRoot.resolve("sonarqube-10.3.0.82913/data");
+        assertEquals("db", Files.readString(hotData.resolve("sonar.mv.db")));
+        assertFalse(Files.exists(instance.resolve("data")));
+        assertEquals(hotData, service.getDataDir(instance));
+        assertEquals(hotRoot.resolve("sonarqube-10.3.0.82913/logs"), service.getLogsDir(instance));
+
+        InstanceState state = new InstanceStateService().load(instance);
+        assertEquals(hotData.toString(), state.getDataDir());
+    }
+
+    @Test
+    void testReleaseDeletesHotDirectories() throws IOException {
+        Path instance = createInstance();
+        Path hotRoot = tempDir.resolve("nvme");
+        StorageTierService service = new StorageTierService(configWithHotTier(hotRoot));
+        service.apply(instance);
+
+        service.release(instance);
+
+        assertFalse(Files.exists(hotRoot.resolve("sonarqube-10.3.0.82913")));
+        assertTrue(Files.exists(hotRoot));
+    }
+
+    private Path createInstance() throws IOException {
+        Path instance = tempDir.resolve("dist/sonarqube-10.3.0.82913");
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("data"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "# settings\n");
+        return instance;
+    }
+
+    private ConfigService configWithHotTier(Path hotRoot) throws IOException {
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.hot=" + hotRoot + "\n");
+        return new ConfigService(configFile);
+    }
+}
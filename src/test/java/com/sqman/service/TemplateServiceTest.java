@@ -0,0 +1,80 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateServiceTest {
+
+    private static final String VERSION = "10.3.0.82913";
+
+    @TempDir
+    Path tempDir;
+
+    private Path instance;
+    private TemplateService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + VERSION));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.writeString(instance.resolve("conf/sonar.properties"), "");
+
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        service = new TemplateService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testCaptureThenSeedFreshInstance() throws IOException {
+        Files.createDirectories(instance.resolve("data/es8"));
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "database");
+        Files.writeString(instance.resolve("data/es8/node.lock"), "");
+        Files.writeString(instance.resolve("token"), "squ_template");
+
+        assertTrue(service.capture(instance, VERSION));
+        assertTrue(service.hasTemplate(VERSION));
+        assertFalse(service.capture(instance, VERSION));
+
+        Path fresh = Files.createDirectories(tempDir.resolve("fresh"));
+        Files.createDirectories(fresh.resolve("conf"));
+        Files.writeString(fresh.resolve("conf/sonar.properties"), "");
+
+        assertTrue(service.seed(fresh, VERSION));
+        assertEquals("database", Files.readString(fresh.resolve("data/sonar.mv.db")));
+        assertTrue(Files.exists(fresh.resolve("data/es8/node.lock")));
+        assertEquals("squ_template", Files.readString(fresh.resolve("token")));
+    }
+
+    @Test
+    void testSeedLeavesExistingDatabaseAlone() throws IOException {
+        Files.createDirectories(instance.resolve("data"));
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "template");
+        Files.writeString(instance.resolve("token"), "squ_template");
+        service.capture(instance, VERSION);
+
+        Files.deleteIfExists(instance.resolve("token"));
+        Files.writeString(instance.resolve("data/sonar.mv.db"), "own data");
+
+        assertFalse(service.seed(instance, VERSION));
+        assertEquals("own data", Files.readString(instance.resolve("data/sonar.mv.db")));
+    }
+
+    @Test
+    void testSeedWithoutTemplate() throws IOException {
+        assertFalse(service.seed(instance, VERSION));
+        assertFalse(Files.exists(instance.resolve("token")));
+    }
+
+    @Test
+    void testCaptureRequiresSetUpInstance() {
+        assertThrows(IOException.class, () -> service.capture(instance, VERSION));
+        assertFalse(service.hasTemplate(VERSION));
+    }
+}
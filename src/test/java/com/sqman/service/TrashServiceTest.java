@@ -0,0 +1,86 @@
+package com.sqman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrashServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path distributions;
+    private TrashService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        distributions = Files.createDirectories(tempDir.resolve("dist"));
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + distributions + "\n");
+        service = new TrashService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testMoveToTrashThenPurge() throws Exception {
+        Path instance = createTree(distributions.resolve("sonarqube-10.3.0.82913"));
+
+        assertTrue(service.moveToTrash(instance));
+        assertFalse(Files.exists(instance));
+        Path trashDir = distributions.resolve(TrashService.TRASH_DIR);
+        try (var entries = Files.list(trashDir)) {
+            assertEquals(1, entries.count());
+        }
+
+        assertEquals(1, service.purge());
+        try (var entries = Files.list(trashDir)) {
+            assertTrue(entries.allMatch(path -> path.getFileName().toString().startsWith(".")));
+        }
+    }
+
+    @Test
+    void testPurgeResumesPartialDeletion() throws Exception {
+        Path trashDir = Files.createDirectories(distributions.resolve(TrashService.TRASH_DIR));
+        // What an interrupted purge leaves: a partly emptied entry and a stray file
+        Path partial = createTree(trashDir.resolve("sonarqube-9.9.0.65466-1"));
+        new FileTreeService().deleteTree(partial.resolve("lib"));
+        Files.writeString(trashDir.resolve("stray"), "");
+
+        assertEquals(2, service.purge());
+        assertFalse(Files.exists(partial));
+        assertFalse(Files.exists(trashDir.resolve("stray")));
+    }
+
+    @Test
+    void testPurgeSkipsTrashLockedByAnotherPurge() throws Exception {
+        Path trashDir = Files.createDirectories(distributions.resolve(TrashService.TRASH_DIR));
+        Path entry = createTree(trashDir.resolve("sonarqube-9.9.0.65466-1"));
+
+        try (FileChannel channel = FileChannel.open(trashDir.resolve(".purge.lock"),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            assertEquals(-1, service.purge());
+        }
+        assertTrue(Files.exists(entry));
+    }
+
+    private Path createTree(Path root) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(root.resolve("lib/dir" + i + "/nested"));
+            Files.writeString(dir.resolve("file.jar"), "content");
+            Files.writeString(root.resolve("lib/dir" + i + "/top.txt"), "content");
+        }
+        Files.createDirectories(root.resolve("data/es8"));
+        Files.writeString(root.resolve("data/sonar.mv.db"), "database");
+        Files.writeString(root.resolve("token"), "squ");
+        return root;
+    }
+}
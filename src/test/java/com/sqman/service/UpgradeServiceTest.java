@@ -0,0 +1,146 @@
+package com.sqman.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpgradeServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private Path target;
+    private UpgradeService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = createInstance("10.3.0.82913", "sonar-java-plugin-7.30.jar");
+        target = createInstance("10.7.0.96327", "sonar-java-plugin-8.5.jar");
+        Path configFile = tempDir.resolve("sqman.properties");
+        Files.writeString(configFile, "storage.distributions=" + tempDir.resolve("dist") + "\n");
+        service = new UpgradeService(new ConfigService(configFile));
+    }
+
+    @Test
+    void testCopyState() throws IOException {
+        Files.writeString(source.resolve("data/sonar.mv.db"), "database");
+        Files.createDirectories(source.resolve("data/es8/nodes"));
+        Files.writeString(source.resolve("data/es8/nodes/index"), "index");
+        Files.writeString(source.resolve("lib/extensions/custom-plugin-1.0.jar"), "custom");
+        Files.writeString(source.resolve("token"), "squ_123");
+        Files.writeString(source.resolve("conf/sonar.properties"),
+            "sonar.web.port=9100\n"
+                + "sonar.path.temp=/hot/temp\n"
+                + "sonar.web.javaAdditionalOpts=-XX:SharedArchiveFile=" + source.resolve("cds/web.jsa") + "\n");
+        Files.writeString(target.resolve("data/old.mv.db"), "old");
+
+        assertTrue(service.hasData(target));
+        UpgradeService.Report report = service.copyState(source, target);
+
+        assertEquals("database", Files.readString(target.resolve("data/sonar.mv.db")));
+        assertFalse(Files.exists(target.resolve("data/old.mv.db")));
+        assertFalse(Files.exists(target.resolve("data/es8")), "search indexes are rebuilt by the new version");
+        assertEquals("squ_123", Files.readString(target.resolve("token")));
+
+        String settings = Files.readString(target.resolve("conf/sonar.properties"));
+        assertTrue(settings.contains("sonar.web.port=9100"));
+        assertFalse(settings.contains("sonar.path.temp"));
+        assertFalse(settings.contains("SharedArchiveFile"));
+        assertEquals(List.of("sonar.web.port"), report.getSettings());
+
+        assertTrue(Files.exists(target.resolve("lib/extensions/custom-plugin-1.0.jar")));
+        assertTrue(Files.exists(target.resolve("lib/extensions/sonar-java-plugin-8.5.jar")));
+        assertFalse(Files.exists(target.resolve("lib/extensions/sonar-java-plugin-7.30.jar")));
+        assertEquals(List.of("custom-plugin-1.0.jar"), report.getCopiedPlugins());
+        assertEquals(List.of("sonar-java-plugin-7.30.jar"), report.getSkippedPlugins());
+    }
+
+    @Test
+    void testOnlyExternalDatabasesAreMigratable() throws IOException {
+        assertFalse(service.isMigratable(source));
+        Files.writeString(source.resolve("conf/sonar.properties"), "sonar.jdbc.url=jdbc:h2:tcp://localhost:9092/sonar\n");
+        assertFalse(service.isMigratable(source));
+        Files.writeString(source.resolve("conf/sonar.properties"), "sonar.jdbc.url=jdbc:postgresql://localhost/sonar\n");
+        assertTrue(service.isMigratable(source));
+    }
+
+    @Test
+    void testMigrateDrivesDatabaseMigration() throws Exception {
+        AtomicInteger migrateCalls = new AtomicInteger();
+        AtomicInteger statusPolls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/system/status", exchange -> respond(exchange,
+            migrateCalls.get() == 0 ? "{\"status\":\"DB_MIGRATION_NEEDED\"}"
+                : statusPolls.incrementAndGet() < 3 ? "{\"status\":\"DB_MIGRATION_RUNNING\"}"
+                : "{\"status\":\"UP\"}"));
+        server.createContext("/api/system/migrate_db", exchange -> {
+            migrateCalls.incrementAndGet();
+            respond(exchange, "{\"state\":\"MIGRATION_RUNNING\",\"message\":\"Database migration is running.\"}");
+        });
+        server.createContext("/api/system/db_migration_status", exchange -> respond(exchange,
+            "{\"state\":\"MIGRATION_RUNNING\",\"message\":\"Step " + statusPolls.get() + "\"}"));
+        server.start();
+        try {
+            List<String> messages = new ArrayList<>();
+
+            assertTrue(service.migrate(server.getAddress().getPort(), messages::add));
+
+            assertEquals(1, migrateCalls.get());
+            assertTrue(messages.contains("Step 1"), messages.toString());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testMigrateReportsUnsupportedDatabase() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/system/status", exchange -> respond(exchange, "{\"status\":\"DB_MIGRATION_NEEDED\"}"));
+        server.createContext("/api/system/migrate_db", exchange -> respond(exchange,
+            "{\"state\":\"NOT_SUPPORTED\",\"message\":\"Upgrade is not supported on embedded database.\"}"));
+        server.start();
+        try {
+            List<String> messages = new ArrayList<>();
+
+            assertFalse(service.migrate(server.getAddress().getPort(), messages::add));
+
+            assertTrue(messages.get(messages.size() - 1).contains("not supported on embedded database"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private Path createInstance(String version, String bundledPlugin) throws IOException {
+        Path instance = Files.createDirectories(tempDir.resolve("dist/sonarqube-" + version));
+        Files.createDirectories(instance.resolve("conf"));
+        Files.createDirectories(instance.resolve("data"));
+        Files.createDirectories(instance.resolve("lib/extensions"));
+        Files.writeString(instance.resolve("lib/extensions/" + bundledPlugin), "bundled");
+        Files.writeString(instance.resolve("conf/sonar.properties"), "");
+        return instance;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}